@@ -0,0 +1,176 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.async;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import to.networld.schandler.interfaces.ICard;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * Asynchronous facade for a card. Every reader has one worker thread that
+ * executes the operations of all cards of this reader one after another, so
+ * the caller does not need a thread per operation. The returned
+ * {@link CardFuture} objects could be used blocking or with callbacks.<p/>
+ * 
+ * The facade uses the synchronous methods of the wrapped card, both could be
+ * used side by side.
+ * 
+ * @param <C> The type of the wrapped card.
+ * @author Alex Oberhauser
+ */
+public class AsyncCard<C extends ICard> {
+	private static final Map<String, ExecutorService> EXECUTORS = new HashMap<String, ExecutorService>();
+	
+	protected final C card;
+	
+	/**
+	 * @param _card The card that should be accessed asynchronous.
+	 */
+	public AsyncCard(C _card) {
+		assert(_card != null);
+		this.card = _card;
+	}
+	
+	/**
+	 * @return The wrapped card.
+	 */
+	public C getCard() {
+		return this.card;
+	}
+	
+	/**
+	 * Executes the work in one transaction on the worker thread of the reader.
+	 * 
+	 * @param _work The work that should be executed.
+	 * @return The future result of the work.
+	 */
+	public <T> CardFuture<T> submit(final ICardTransaction<T> _work) {
+		CardFuture<T> future = new CardFuture<T>(new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				return card.inTransaction(_work);
+			}
+		});
+		getExecutor(this.card.getTerminal()).execute(future);
+		return future;
+	}
+	
+	/**
+	 * @param _command The command encoded in bytes.
+	 * @return The future response of the card.
+	 * @see ICard#sendAPDUCommandToCard(byte[])
+	 */
+	public CardFuture<ResponseAPDU> sendAPDUCommandToCard(final byte[] _command) {
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.sendAPDUCommandToCard(_command);
+			}
+		});
+	}
+	
+	/**
+	 * @param _command The command encapsulated in {@link CommandAPDU}
+	 * @return The future response of the card.
+	 * @see ICard#sendAPDUCommandToCard(CommandAPDU)
+	 */
+	public CardFuture<ResponseAPDU> sendAPDUCommandToCard(final CommandAPDU _command) {
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.sendAPDUCommandToCard(_command);
+			}
+		});
+	}
+	
+	/**
+	 * @return The future UID of the card.
+	 * @see ICard#getUID()
+	 */
+	public CardFuture<String> getUID() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getUID();
+			}
+		});
+	}
+	
+	/**
+	 * @param _terminal The reader.
+	 * @return The single threaded executor of the reader.
+	 */
+	protected static ExecutorService getExecutor(final CardTerminal _terminal) {
+		synchronized (EXECUTORS) {
+			ExecutorService executor = EXECUTORS.get(_terminal.getName());
+			if ( executor == null || executor.isShutdown() ) {
+				executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable _runnable) {
+						Thread thread = new Thread(_runnable, "schandler-" + _terminal.getName());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+				EXECUTORS.put(_terminal.getName(), executor);
+			}
+			return executor;
+		}
+	}
+	
+	/**
+	 * Stops the worker threads of all readers after the submitted operations are executed.
+	 * 
+	 * @param _timeout The maximal time to wait for the running operations.
+	 * @param _unit The unit of the timeout.
+	 * @return True if all workers are terminated.
+	 * @throws InterruptedException
+	 */
+	public static boolean shutdown(long _timeout, TimeUnit _unit) throws InterruptedException {
+		ExecutorService[] executors;
+		synchronized (EXECUTORS) {
+			executors = EXECUTORS.values().toArray(new ExecutorService[EXECUTORS.size()]);
+			EXECUTORS.clear();
+		}
+		for ( ExecutorService executor : executors )
+			executor.shutdown();
+		long deadline = System.nanoTime() + _unit.toNanos(_timeout);
+		boolean terminated = true;
+		for ( ExecutorService executor : executors ) {
+			long remaining = deadline - System.nanoTime();
+			if ( !executor.awaitTermination(Math.max(remaining, 0), TimeUnit.NANOSECONDS) )
+				terminated = false;
+		}
+		return terminated;
+	}
+}
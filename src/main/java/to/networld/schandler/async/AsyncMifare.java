@@ -0,0 +1,156 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.async;
+
+import javax.smartcardio.ResponseAPDU;
+
+import to.networld.schandler.card.BasicMifare;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * Asynchronous facade for Mifare cards. The data that should be written is
+ * copied when the operation is submitted, so the caller could reuse the array.
+ * 
+ * @author Alex Oberhauser
+ */
+public class AsyncMifare extends AsyncCard<BasicMifare> {
+	
+	/**
+	 * @param _card The Mifare card that should be accessed asynchronous.
+	 */
+	public AsyncMifare(BasicMifare _card) {
+		super(_card);
+	}
+	
+	/**
+	 * @see BasicMifare#readBlockData(byte, byte[], byte, byte, byte)
+	 */
+	public CardFuture<ResponseAPDU> readBlockData(final byte _keyType,
+			final byte[] _key,
+			final byte _msb,
+			final byte _lsb,
+			final byte _keyNumber) {
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.readBlockData(_keyType, _key, _msb, _lsb, _keyNumber);
+			}
+		});
+	}
+	
+	/**
+	 * @see BasicMifare#readBlocks(byte, byte[], byte, int, int)
+	 */
+	public CardFuture<ResponseAPDU> readBlocks(final byte _keyType,
+			final byte[] _key,
+			final byte _keyNumber,
+			final int _firstBlock,
+			final int _blockCount) {
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.readBlocks(_keyType, _key, _keyNumber, _firstBlock, _blockCount);
+			}
+		});
+	}
+	
+	/**
+	 * @see BasicMifare#readSector(byte, byte[], byte, int)
+	 */
+	public CardFuture<ResponseAPDU> readSector(final byte _keyType,
+			final byte[] _key,
+			final byte _keyNumber,
+			final int _sector) {
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.readSector(_keyType, _key, _keyNumber, _sector);
+			}
+		});
+	}
+	
+	/**
+	 * @see BasicMifare#readData(byte, byte[], byte)
+	 */
+	public CardFuture<String> readData(final byte _keyType,
+			final byte[] _key,
+			final byte _keyNumber) {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.readData(_keyType, _key, _keyNumber);
+			}
+		});
+	}
+	
+	/**
+	 * @see BasicMifare#writeBlockData(byte, byte[], byte, byte, byte, byte[])
+	 */
+	public CardFuture<ResponseAPDU> writeBlockData(final byte _keyType,
+			final byte[] _key,
+			final byte _msb,
+			final byte _lsb,
+			final byte _keyNumber,
+			byte[] _data) {
+		final byte[] data = _data.clone();
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.writeBlockData(_keyType, _key, _msb, _lsb, _keyNumber, data);
+			}
+		});
+	}
+	
+	/**
+	 * @see BasicMifare#writeBlocks(byte, byte[], byte, int, byte[])
+	 */
+	public CardFuture<ResponseAPDU> writeBlocks(final byte _keyType,
+			final byte[] _key,
+			final byte _keyNumber,
+			final int _firstBlock,
+			byte[] _data) {
+		final byte[] data = _data.clone();
+		return this.submit(new ICardTransaction<ResponseAPDU>() {
+			@Override
+			public ResponseAPDU execute() throws Exception {
+				return card.writeBlocks(_keyType, _key, _keyNumber, _firstBlock, data);
+			}
+		});
+	}
+	
+	/**
+	 * @see BasicMifare#writeData(byte, byte[], byte, byte[])
+	 */
+	public CardFuture<Void> writeData(final byte _keyType,
+			final byte[] _key,
+			final byte _keyNumber,
+			byte[] _data) {
+		final byte[] data = _data.clone();
+		return this.submit(new ICardTransaction<Void>() {
+			@Override
+			public Void execute() throws Exception {
+				card.writeData(_keyType, _key, _keyNumber, data);
+				return null;
+			}
+		});
+	}
+}
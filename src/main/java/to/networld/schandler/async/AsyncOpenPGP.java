@@ -0,0 +1,136 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.async;
+
+import to.networld.schandler.card.OpenPGP;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * Asynchronous facade for OpenPGP cards.
+ * 
+ * @author Alex Oberhauser
+ */
+public class AsyncOpenPGP extends AsyncCard<OpenPGP> {
+	
+	/**
+	 * @param _card The OpenPGP card that should be accessed asynchronous.
+	 */
+	public AsyncOpenPGP(OpenPGP _card) {
+		super(_card);
+	}
+	
+	/**
+	 * @see OpenPGP#getData(byte, byte)
+	 */
+	public CardFuture<byte[]> getData(final byte _p1, final byte _p2) {
+		return this.submit(new ICardTransaction<byte[]>() {
+			@Override
+			public byte[] execute() throws Exception {
+				return card.getData(_p1, _p2);
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getAID()
+	 */
+	public CardFuture<String> getAID() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getAID();
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getLoginData()
+	 */
+	public CardFuture<String> getLoginData() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getLoginData();
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getName()
+	 */
+	public CardFuture<String> getName() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getName();
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getURL()
+	 */
+	public CardFuture<String> getURL() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getURL();
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getGender()
+	 */
+	public CardFuture<String> getGender() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getGender();
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getLanguage()
+	 */
+	public CardFuture<String> getLanguage() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getLanguage();
+			}
+		});
+	}
+	
+	/**
+	 * @see OpenPGP#getUserData()
+	 */
+	public CardFuture<String> getUserData() {
+		return this.submit(new ICardTransaction<String>() {
+			@Override
+			public String execute() throws Exception {
+				return card.getUserData();
+			}
+		});
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+import to.networld.schandler.interfaces.ICardCallback;
+import to.networld.schandler.interfaces.ICardFunction;
+
+/**
+ * Result of an asynchronous card operation. Besides the blocking methods of
+ * {@link java.util.concurrent.Future} callbacks could be registered, that are
+ * notified as soon as the operation completes. That allows to overlap the card
+ * I/O with other work.<p/>
+ * 
+ * Without an {@link Executor} the callbacks are executed by the thread that
+ * completes the operation, for the operations of {@link AsyncCard} that is the
+ * single worker thread of the reader. Callbacks that block or take long should
+ * therefore be registered with an own executor. An exception thrown by a
+ * callback is passed to the uncaught exception handler of the executing thread,
+ * the other callbacks are notified anyway.
+ * 
+ * @param <T> The result type of the operation.
+ * @author Alex Oberhauser
+ */
+public class CardFuture<T> extends FutureTask<T> {
+	private final List<Runnable> listeners = new ArrayList<Runnable>();
+	private boolean notified = false;
+	
+	public CardFuture(Callable<T> _callable) {
+		super(_callable);
+	}
+	
+	/**
+	 * Registers a callback. If the operation is already completed the callback
+	 * is executed immediately by the calling thread.
+	 * 
+	 * @param _callback The callback that should be notified.
+	 * @return This future.
+	 */
+	public CardFuture<T> addCallback(ICardCallback<? super T> _callback) {
+		return this.addCallback(_callback, null);
+	}
+	
+	/**
+	 * Registers a callback that is executed by the given executor.
+	 * 
+	 * @param _callback The callback that should be notified.
+	 * @param _executor The executor of the callback, null to execute it by the completing thread.
+	 * @return This future.
+	 */
+	public CardFuture<T> addCallback(final ICardCallback<? super T> _callback, Executor _executor) {
+		assert(_callback != null);
+		this.addListener(new Runnable() {
+			@Override
+			public void run() {
+				notifyCallback(_callback);
+			}
+		}, _executor);
+		return this;
+	}
+	
+	/**
+	 * @param _function The transformation of the result.
+	 * @return The future transformed result.
+	 * @see #transform(ICardFunction, Executor)
+	 */
+	public <R> CardFuture<R> transform(ICardFunction<? super T, ? extends R> _function) {
+		return this.transform(_function, null);
+	}
+	
+	/**
+	 * Returns a future that completes with the transformed result of this
+	 * operation. If this operation fails or is cancelled the returned future
+	 * fails with the same cause and the function is not executed.
+	 * 
+	 * @param _function The transformation of the result.
+	 * @param _executor The executor of the function, null to execute it by the completing thread.
+	 * @return The future transformed result.
+	 */
+	public <R> CardFuture<R> transform(final ICardFunction<? super T, ? extends R> _function, Executor _executor) {
+		assert(_function != null);
+		CardFuture<R> transformed = new CardFuture<R>(new Callable<R>() {
+			@Override
+			public R call() throws Exception {
+				T result;
+				try {
+					result = get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if ( cause instanceof Exception )
+						throw (Exception)cause;
+					throw e;
+				}
+				return _function.apply(result);
+			}
+		});
+		this.addListener(transformed, _executor);
+		return transformed;
+	}
+	
+	@Override
+	protected void done() {
+		List<Runnable> pending;
+		synchronized (this.listeners) {
+			this.notified = true;
+			pending = new ArrayList<Runnable>(this.listeners);
+			this.listeners.clear();
+		}
+		for ( Runnable listener : pending )
+			execute(listener);
+	}
+	
+	private void addListener(Runnable _listener, final Executor _executor) {
+		Runnable listener = _listener;
+		if ( _executor != null ) {
+			final Runnable task = _listener;
+			listener = new Runnable() {
+				@Override
+				public void run() {
+					_executor.execute(task);
+				}
+			};
+		}
+		synchronized (this.listeners) {
+			if ( !this.notified ) {
+				this.listeners.add(listener);
+				return;
+			}
+		}
+		execute(listener);
+	}
+	
+	/**
+	 * Executes the listener, its failure must not prevent the notification of
+	 * the other listeners nor terminate the worker thread of the reader.
+	 */
+	private static void execute(Runnable _listener) {
+		try {
+			_listener.run();
+		} catch (RuntimeException e) {
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+	
+	private void notifyCallback(ICardCallback<? super T> _callback) {
+		T result;
+		try {
+			result = this.get();
+		} catch (ExecutionException e) {
+			_callback.onFailure(e.getCause());
+			return;
+		} catch (CancellationException e) {
+			_callback.onFailure(e);
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			_callback.onFailure(e);
+			return;
+		}
+		_callback.onSuccess(result);
+	}
+}
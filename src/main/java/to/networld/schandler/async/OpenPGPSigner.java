@@ -0,0 +1,184 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.async;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.ResponseAPDU;
+
+import to.networld.schandler.card.OpenPGP;
+import to.networld.schandler.card.StatusWord;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * Pipeline that signs hashes with the signature key of one OpenPGP card. The
+ * hashes are queued and signed back-to-back on the worker thread of the
+ * reader inside one transaction. Every batch starts with the selection of the
+ * application, see {@link OpenPGP#selectFile()}. On a logical channel of the
+ * signer the selection and the verification of PW1 survive between the
+ * batches, on the basic channel the application is selected and PW1 verified
+ * again for every batch.<p/>
+ * 
+ * If the selection, the verification or the transaction fails the signer stops and fails
+ * all pending and following signatures, so the retry counter of the card is
+ * not used up.
+ * 
+ * @author Alex Oberhauser
+ */
+public class OpenPGPSigner {
+	private final OpenPGP card;
+	private final byte[] pin;
+	private final Queue<SignRequest> queue = new LinkedList<SignRequest>();
+	private boolean draining = false;
+	private Throwable failure = null;
+	
+	/**
+	 * @param _card The OpenPGP card with the signature key.
+	 * @param _pin PW1 as UTF-8 bytes.
+	 */
+	public OpenPGPSigner(OpenPGP _card, byte[] _pin) {
+		assert((_card != null) && (_pin != null));
+		this.card = _card;
+		this.pin = _pin.clone();
+	}
+	
+	/**
+	 * @return The card of this signer.
+	 */
+	public OpenPGP getCard() {
+		return this.card;
+	}
+	
+	/**
+	 * Queues the hash for signing.
+	 * 
+	 * @param _digestInfo The DigestInfo for RSA keys, the plain hash for ECDSA keys.
+	 * @return The future signature.
+	 * @see OpenPGP#computeDigitalSignature(byte[])
+	 */
+	public CardFuture<byte[]> sign(byte[] _digestInfo) {
+		SignRequest request = new SignRequest(this.card, _digestInfo.clone());
+		boolean startDrain;
+		synchronized (this) {
+			if ( this.failure != null ) {
+				request.fail(this.failure);
+				return request;
+			}
+			this.queue.add(request);
+			startDrain = !this.draining;
+			this.draining = true;
+		}
+		if ( startDrain ) {
+			AsyncCard.getExecutor(this.card.getTerminal()).execute(new Runnable() {
+				@Override
+				public void run() {
+					drain();
+				}
+			});
+		}
+		return request;
+	}
+	
+	/**
+	 * @return The number of signatures that are queued and not yet started.
+	 */
+	public synchronized int getPendingCount() {
+		return this.queue.size();
+	}
+	
+	/**
+	 * @return The reason why the signer stopped, null if it is working.
+	 */
+	public synchronized Throwable getFailure() {
+		return this.failure;
+	}
+	
+	private synchronized SignRequest poll() {
+		SignRequest request = this.queue.poll();
+		if ( request == null )
+			this.draining = false;
+		return request;
+	}
+	
+	/**
+	 * Signs the queued hashes until the queue is empty.
+	 */
+	private void drain() {
+		try {
+			this.card.inTransaction(new ICardTransaction<Void>() {
+				@Override
+				public Void execute() throws Exception {
+					ResponseAPDU select = card.selectFile();
+					if ( select.getSW() != StatusWord.SUCCESS )
+						throw new CardException("Unable to select the OpenPGP application: " + OpenPGP.STATUS_WORDS.getMessage(select.getSW()));
+					SignRequest request;
+					while ( (request = poll()) != null ) {
+						try {
+							if ( !card.isVerified(OpenPGP.PW1_SIGN) )
+								card.verify(OpenPGP.PW1_SIGN, pin);
+						} catch (CardException e) {
+							request.fail(e);
+							throw e;
+						}
+						request.run();
+					}
+					return null;
+				}
+			});
+		} catch (Throwable e) {
+			this.stop(e);
+		}
+	}
+	
+	/**
+	 * Fails the pending signatures and the signatures that are queued later.
+	 */
+	private void stop(Throwable _failure) {
+		SignRequest[] pending;
+		synchronized (this) {
+			this.failure = _failure;
+			this.draining = false;
+			pending = this.queue.toArray(new SignRequest[this.queue.size()]);
+			this.queue.clear();
+		}
+		for ( SignRequest request : pending )
+			request.fail(_failure);
+	}
+	
+	private static class SignRequest extends CardFuture<byte[]> {
+		SignRequest(final OpenPGP _card, final byte[] _digestInfo) {
+			super(new Callable<byte[]>() {
+				@Override
+				public byte[] call() throws Exception {
+					return _card.computeDigitalSignature(_digestInfo);
+				}
+			});
+		}
+		
+		void fail(Throwable _failure) {
+			this.setException(_failure);
+		}
+	}
+}
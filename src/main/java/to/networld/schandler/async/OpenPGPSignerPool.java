@@ -0,0 +1,85 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.async;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Spreads signatures across several OpenPGP cards, every hash is queued at
+ * the working signer with the fewest pending signatures. The cards work in
+ * parallel if they are inserted in different readers. All cards should hold
+ * the same signature key.
+ * 
+ * @author Alex Oberhauser
+ */
+public class OpenPGPSignerPool {
+	private final List<OpenPGPSigner> signers = new ArrayList<OpenPGPSigner>();
+	
+	/**
+	 * @param _signer The signer of one card.
+	 */
+	public synchronized void add(OpenPGPSigner _signer) {
+		assert(_signer != null);
+		this.signers.add(_signer);
+	}
+	
+	/**
+	 * @param _signer The signer that should not get new signatures.
+	 * @return True if the signer was part of the pool.
+	 */
+	public synchronized boolean remove(OpenPGPSigner _signer) {
+		return this.signers.remove(_signer);
+	}
+	
+	/**
+	 * @return The signers of the pool.
+	 */
+	public synchronized List<OpenPGPSigner> getSigners() {
+		return new ArrayList<OpenPGPSigner>(this.signers);
+	}
+	
+	/**
+	 * @param _digestInfo The DigestInfo for RSA keys, the plain hash for ECDSA keys.
+	 * @return The future signature.
+	 * @throws IllegalStateException If the pool has no working signer.
+	 * @see OpenPGPSigner#sign(byte[])
+	 */
+	public CardFuture<byte[]> sign(byte[] _digestInfo) {
+		OpenPGPSigner selected = null;
+		int selectedPending = Integer.MAX_VALUE;
+		synchronized (this) {
+			for ( OpenPGPSigner signer : this.signers ) {
+				if ( signer.getFailure() != null )
+					continue;
+				int pending = signer.getPendingCount();
+				if ( pending < selectedPending ) {
+					selected = signer;
+					selectedPending = pending;
+				}
+			}
+		}
+		if ( selected == null )
+			throw new IllegalStateException("No working signer in the pool");
+		return selected.sign(_digestInfo);
+	}
+}
@@ -20,6 +20,8 @@
 
 package to.networld.schandler.card;
 
+import java.nio.ByteBuffer;
+
 import javax.smartcardio.Card;
 import javax.smartcardio.CardChannel;
 import javax.smartcardio.CardException;
@@ -30,6 +32,7 @@ import javax.smartcardio.ResponseAPDU;
 import to.networld.schandler.common.HashValueHandler;
 import to.networld.schandler.common.HexHandler;
 import to.networld.schandler.interfaces.ICard;
+import to.networld.schandler.interfaces.ICardTransaction;
 
 /**
  * Basic class that encapsulates the functions and values that are
@@ -43,9 +46,46 @@ public class BasicCard implements ICard {
 	protected Card card;
 	private CardTerminal terminal;
 	private String protocol;
+	private CardDescriptor descriptor = null;
+	
+	/*
+	 * UID of the connected card, fetched once per connection. The hex form and
+	 * the hash values are computed on first use.
+	 */
+	private byte[] uid = null;
+	private String uidHex = null;
+	private final String[] uidHashes = new String[HASH_TYPE.values().length];
 	
 	public static final byte[] GET_UID = new byte[] { (byte)0xFF, (byte)0xCA, (byte)0x00, (byte)0x00, (byte)0x00 };
 	
+	/** The maximal length of a response that is assembled with GET RESPONSE. */
+	public static final int MAX_RESPONSE_LENGTH = 65536;
+	
+	/*
+	 * Reusable buffers of the allocation free command path, see transmit().
+	 * The response buffer needs space for 256 data bytes and the status word.
+	 * Both buffers grow for extended length commands and chained responses.
+	 */
+	protected ByteBuffer commandBuffer = ByteBuffer.allocate(261);
+	protected ByteBuffer responseBuffer = ByteBuffer.allocate(258);
+	private final ByteBuffer getResponseBuffer = ByteBuffer.allocate(5);
+	private int lastStatusWord = -1;
+	
+	/*
+	 * Overrides the extended length capability of the descriptor, null if not set.
+	 */
+	private Boolean extendedLength = null;
+	
+	/*
+	 * Nesting depth of the current transaction, 0 if the card is not exclusively held.
+	 */
+	private int transactionDepth = 0;
+	
+	/*
+	 * Logical channel of the LogicalChannelPool, null if the basic channel is used.
+	 */
+	private ManagedChannel logicalChannel = null;
+	
 	/**
 	 * A abstract card object that provides the functions and values that are the same for
 	 * all cards.
@@ -61,13 +101,102 @@ public class BasicCard implements ICard {
 	
 	@Override
 	public synchronized boolean connectToCard() throws CardException {
+		if ( this.transactionDepth > 0 )
+			throw new CardException("Unable to reconnect inside a transaction");
 		if ( this.terminal.isCardPresent() ) {
+			this.releaseLogicalChannel();
+			this.resetSessionState();
+			this.clearUID();
+			this.extendedLength = null;
 			this.card = this.terminal.connect(this.protocol);
+			this.descriptor = CardDescriptor.forATR(this.card.getATR().getBytes());
 			return true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Called every time the connection to the card is (re)established or
+	 * released. Sub classes that cache state bound to the current card
+	 * session have to drop it here.
+	 */
+	protected void resetSessionState() {
+	}
+	
+	/**
+	 * Sends the following commands over a logical channel of the card instead of
+	 * the basic channel. Every client of the same card gets its own channel, so
+	 * the clients could work side by side without changing the selection of each
+	 * other. Their transactions are still executed one after another, see
+	 * {@link #beginTransaction()}.
+	 * 
+	 * @param _timeout The maximal time in milliseconds to wait for a free channel.
+	 * @return The channel, the selected AID is tracked by this class.
+	 * @throws CardException If no channel is available.
+	 */
+	public ManagedChannel openLogicalChannel(long _timeout) throws CardException {
+		return this.openLogicalChannel(null, _timeout);
+	}
+	
+	/**
+	 * Like {@link #openLogicalChannel(long)}, but prefers a released channel that
+	 * has the given application still selected.
+	 * 
+	 * @param _aid The AID that is going to be selected, null if not known.
+	 * @param _timeout The maximal time in milliseconds to wait for a free channel.
+	 * @return The channel, the selected AID is tracked by this class.
+	 * @throws CardException If no channel is available.
+	 */
+	public synchronized ManagedChannel openLogicalChannel(byte[] _aid, long _timeout) throws CardException {
+		assert (this.card != null);
+		if ( this.transactionDepth > 0 )
+			throw new CardException("Unable to change the channel inside a transaction");
+		this.releaseLogicalChannel();
+		try {
+			this.logicalChannel = LogicalChannelPool.forCard(this.card).acquire(_aid, _timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CardException("Interrupted while waiting for a logical channel", e);
+		}
+		this.resetSessionState();
+		return this.logicalChannel;
+	}
+	
+	/**
+	 * Gives the logical channel back to the pool, the pool resets its security
+	 * state before the next client gets it. The following commands are sent over
+	 * the basic channel again.
+	 * 
+	 * @throws CardException
+	 */
+	public synchronized void closeLogicalChannel() throws CardException {
+		if ( this.transactionDepth > 0 )
+			throw new CardException("Unable to change the channel inside a transaction");
+		if ( this.logicalChannel != null ) {
+			this.releaseLogicalChannel();
+			this.resetSessionState();
+		}
+	}
+	
+	private void releaseLogicalChannel() {
+		if ( this.logicalChannel != null ) {
+			this.logicalChannel.getPool().release(this.logicalChannel);
+			this.logicalChannel = null;
+		}
+	}
+	
+	/**
+	 * @return The logical channel in use, null if the basic channel is used.
+	 */
+	public synchronized ManagedChannel getLogicalChannel() { return this.logicalChannel; }
+	
+	/**
+	 * @return The channel the commands are sent over.
+	 */
+	protected synchronized CardChannel getChannel() {
+		return this.logicalChannel != null ? this.logicalChannel.getChannel() : this.card.getBasicChannel();
+	}
+	
 	@Override
 	public synchronized void setTerminal(CardTerminal _terminal) {
 		assert(_terminal != null);
@@ -92,93 +221,409 @@ public class BasicCard implements ICard {
 	/**
 	 * Needed because the data will be send in reverse order.
 	 * 
-	 * @param _inputArray A byte array to reverse.
-	 * @return The input array in reverse order.
+	 * @param _array A byte array that is reversed in place.
 	 */
-	private byte[] reverseArray(byte[] _inputArray) {
-		int size = _inputArray.length;
-		byte[] returnArray = new byte[size];
-		for ( int i=size-1, j=0; i >= 0; i--, j++ ) {
-			returnArray[j] = _inputArray[i];
+	private static void reverseArray(byte[] _array) {
+		for ( int i=0, j=_array.length-1; i < j; i++, j-- ) {
+			byte tmp = _array[i];
+			_array[i] = _array[j];
+			_array[j] = tmp;
 		}
-		return returnArray;
+	}
+
+	/**
+	 * Fetches the UID with the GET UID command if it is not cached for the
+	 * current connection.
+	 * 
+	 * @return The cached UID, must not be modified.
+	 * @throws CardException
+	 */
+	private byte[] fetchUID() throws CardException {
+		if ( this.uid == null ) {
+			this.beginCommand(0xFF, 0xCA, 0x00, 0x00).put((byte)0x00);
+			int sw = this.transmit();
+			if ( sw != StatusWord.SUCCESS )
+				throw new CardException("Unable to read the UID, status word '" + Integer.toHexString(sw) + "'");
+			byte[] uidBytes = new byte[this.responseBuffer.limit()];
+			System.arraycopy(this.responseBuffer.array(), 0, uidBytes, 0, uidBytes.length);
+			if ( this.getCardDescriptor().isReversedUID() )
+				reverseArray(uidBytes);
+			this.uid = uidBytes;
+		}
+		return this.uid;
+	}
+	
+	/**
+	 * Forgets the UID and the values computed from it.
+	 */
+	private void clearUID() {
+		this.uid = null;
+		this.uidHex = null;
+		for ( int count = 0; count < this.uidHashes.length; count++ )
+			this.uidHashes[count] = null;
+	}
+	
+	@Override
+	public synchronized byte[] getUIDBytes() throws Exception {
+		return this.fetchUID().clone();
+	}
+	
+	/**
+	 * Copies the UID into the given array, without allocating a new one.
+	 * 
+	 * @param _dst The destination array.
+	 * @param _offset The offset in the destination array.
+	 * @return The length of the UID in bytes.
+	 * @throws CardException
+	 */
+	public synchronized int getUID(byte[] _dst, int _offset) throws CardException {
+		byte[] uidBytes = this.fetchUID();
+		System.arraycopy(uidBytes, 0, _dst, _offset, uidBytes.length);
+		return uidBytes.length;
 	}
 
 	@Override
 	public synchronized String getUID() throws Exception {
-		ResponseAPDU res = this.sendAPDUCommandToCard(GET_UID);
-		CardType type = this.getCardType();
-		if ( type == CardType.ICODE1
-				|| type == CardType.ICODEEPC 
-				|| type == CardType.ICODESLI
-				|| type == CardType.ICODEUID
-				|| type == CardType.SRF55V02P
-				|| type == CardType.SRF55V02S
-				|| type == CardType.SRF55V10P
-				|| type == CardType.SRF55V10S )
-			return HexHandler.getHexString(this.reverseArray(res.getData()));
-		else
-			return HexHandler.getHexString(res.getData());
+		if ( this.uidHex == null )
+			this.uidHex = HexHandler.getHexString(this.fetchUID());
+		return this.uidHex;
 	}
 	
+	/**
+	 * The hash value is computed over the lower case hex digits of the UID, as
+	 * ASCII bytes encoded directly from the cached UID.
+	 */
 	@Override
 	public synchronized String getUIDHash(HASH_TYPE _hashType) throws Exception {
-		switch (_hashType) {
-			case SHA1:
-				return HashValueHandler.computeSHA1(this.getUID().replace(" ", ""));
-			case SHA256:
-				return HashValueHandler.computeSHA256(this.getUID().replace(" ", ""));
-			case SHA512:
-				return HashValueHandler.computeSHA512(this.getUID().replace(" ", ""));
-			default:
-				return null;
-		}
+		String hash = this.uidHashes[_hashType.ordinal()];
+		if ( hash != null )
+			return hash;
+		byte[] uidBytes = this.fetchUID();
+		ByteBuffer hexDigits = ByteBuffer.allocate(uidBytes.length * 2);
+		HexHandler.encode(ByteBuffer.wrap(uidBytes), hexDigits, false);
+		hash = HexHandler.getHexString(HashValueHandler.digest(_hashType, hexDigits.array()), false);
+		this.uidHashes[_hashType.ordinal()] = hash;
+		return hash;
 	}
 	
+	/**
+	 * Sends the command, 61xx responses are completed with GET RESPONSE and
+	 * 6Cxx responses are repeated with the correct Le, see {@link #transmit()}.
+	 */
 	@Override
 	public synchronized ResponseAPDU sendAPDUCommandToCard(byte[] _command) throws CardException {
 		assert (this.card != null);
-		CommandAPDU com = new CommandAPDU(_command);
-		
-		try {
-			this.card.beginExclusive();
-			CardChannel channel = this.card.getBasicChannel();
-			ResponseAPDU response = channel.transmit(com);
-			return response;
-		} finally {
-			this.card.endExclusive();
-		}
+		this.commandBuffer = ensureCapacity(this.commandBuffer, _command.length, false);
+		this.commandBuffer.clear();
+		this.commandBuffer.put(_command);
+		this.transmit();
+		return this.getLastResponse();
 	}
 
+	/**
+	 * Sends the command, 61xx responses are completed with GET RESPONSE and
+	 * 6Cxx responses are repeated with the correct Le, see {@link #transmit()}.
+	 */
 	@Override
 	public synchronized ResponseAPDU sendAPDUCommandToCard(CommandAPDU _command) throws CardException {
+		return this.sendAPDUCommandToCard(_command.getBytes());
+	}
+	
+	/**
+	 * @return True if the card accepts extended length commands (Lc and Le up to 65535).
+	 */
+	public synchronized boolean isExtendedLengthSupported() {
+		if ( this.extendedLength != null )
+			return this.extendedLength;
+		CardDescriptor cardDescriptor = this.getCardDescriptor();
+		return cardDescriptor != null && cardDescriptor.isExtendedLengthSupported();
+	}
+	
+	/**
+	 * Overrides the extended length capability of the ATR until the card is
+	 * disconnected, for example with the capabilities an application reports.
+	 * 
+	 * @param _supported True if the card accepts extended length commands.
+	 */
+	public synchronized void setExtendedLengthSupported(boolean _supported) {
+		this.extendedLength = _supported;
+	}
+	
+	/**
+	 * Starts a new command in the reusable {@link #commandBuffer}. The caller
+	 * appends Lc, the data and Le and sends the command with {@link #transmit()}.
+	 * 
+	 * @return The command buffer, positioned after the header.
+	 */
+	protected ByteBuffer beginCommand(int _cla, int _ins, int _p1, int _p2) {
+		this.commandBuffer.clear();
+		this.commandBuffer.put((byte)_cla).put((byte)_ins).put((byte)_p1).put((byte)_p2);
+		return this.commandBuffer;
+	}
+	
+	/**
+	 * Appends Lc, the data and Le to the command started with {@link #beginCommand(int, int, int, int)}.
+	 * The short encoding is used if possible, otherwise the extended encoding.
+	 * 
+	 * @param _data The command data, could be null.
+	 * @param _offset The offset of the command data.
+	 * @param _length The length of the command data, 0 for no data.
+	 * @param _ne The expected response length, 0 for none and 65536 for the maximum.
+	 * @throws CardException If the command needs the extended encoding but the card does not support it.
+	 */
+	protected synchronized void finishCommand(byte[] _data, int _offset, int _length, int _ne) throws CardException {
+		if ( _length < 0 || _length > 65535 || _ne < 0 || _ne > 65536 )
+			throw new IllegalArgumentException("Invalid command length '" + _length + "' or expected length '" + _ne + "'");
+		boolean extended = _length > 255 || _ne > 256;
+		if ( extended && !this.isExtendedLengthSupported() )
+			throw new CardException("The card does not support extended length commands");
+		this.commandBuffer = ensureCapacity(this.commandBuffer, this.commandBuffer.position() + _length + 7, true);
+		if ( _length > 0 ) {
+			if ( extended )
+				this.commandBuffer.put((byte)0x00).put((byte)(_length >> 8)).put((byte)_length);
+			else
+				this.commandBuffer.put((byte)_length);
+			this.commandBuffer.put(_data, _offset, _length);
+		}
+		if ( _ne > 0 ) {
+			if ( extended ) {
+				if ( _length == 0 )
+					this.commandBuffer.put((byte)0x00);
+				this.commandBuffer.put((byte)(_ne >> 8)).put((byte)_ne);
+			} else {
+				this.commandBuffer.put((byte)_ne);
+			}
+		}
+	}
+	
+	/**
+	 * Sends the command of the {@link #commandBuffer} without allocating APDU objects.
+	 * Afterwards the {@link #responseBuffer} holds the response data between position
+	 * 0 and the limit, the status word is not included.<p/>
+	 * 
+	 * If the card answers with 61xx the remaining data is fetched with GET RESPONSE
+	 * and appended, if it answers with 6Cxx the command is repeated once with the
+	 * Le the card asked for. A card that keeps answering with 61xx fails after
+	 * {@link #MAX_RESPONSE_LENGTH} bytes or as soon as a GET RESPONSE returns no data.
+	 * 
+	 * @return The status word of the response, for example 0x9000
+	 * @throws CardException
+	 */
+	protected synchronized int transmit() throws CardException {
 		assert (this.card != null);
-		
+		this.commandBuffer.flip();
+		this.beginTransaction();
+		try {
+			int length = this.exchange(this.commandBuffer, 0);
+			if ( (this.lastStatusWord & 0xFF00) == StatusWord.WRONG_LE && this.correctLe(this.lastStatusWord & 0xFF) ) {
+				this.commandBuffer.rewind();
+				length = this.exchange(this.commandBuffer, 0);
+			}
+			while ( (this.lastStatusWord & 0xFF00) == StatusWord.BYTES_REMAINING ) {
+				this.getResponseBuffer.clear();
+				this.getResponseBuffer.put((byte)(this.commandBuffer.get(0) & 0x03)).put((byte)0xC0)
+					.put((byte)0x00).put((byte)0x00).put((byte)this.lastStatusWord);
+				this.getResponseBuffer.flip();
+				int previous = length;
+				length = this.exchange(this.getResponseBuffer, length);
+				if ( length > MAX_RESPONSE_LENGTH )
+					throw new CardException("The response is longer than '" + MAX_RESPONSE_LENGTH + "' bytes");
+				if ( length == previous && (this.lastStatusWord & 0xFF00) == StatusWord.BYTES_REMAINING )
+					throw new CardException("GET RESPONSE returned no data but announced more");
+			}
+			this.responseBuffer.position(0);
+			this.responseBuffer.limit(length);
+			if ( this.logicalChannel != null && this.commandBuffer.get(1) == (byte)0xA4 )
+				this.trackSelection();
+			return this.lastStatusWord;
+		} finally {
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Remembers the AID of a successful SELECT by name on the logical channel,
+	 * every other SELECT makes the selection unknown.
+	 */
+	private void trackSelection() {
+		byte[] aid = null;
+		int length = this.commandBuffer.limit();
+		if ( this.lastStatusWord == StatusWord.SUCCESS && this.commandBuffer.get(2) == 0x04 && length > 5 ) {
+			int lc = this.commandBuffer.get(4) & 0xFF;
+			int offset = 5;
+			if ( lc == 0 && length > 7 ) {
+				lc = ((this.commandBuffer.get(5) & 0xFF) << 8) | (this.commandBuffer.get(6) & 0xFF);
+				offset = 7;
+			}
+			if ( lc > 0 && offset + lc <= length ) {
+				aid = new byte[lc];
+				System.arraycopy(this.commandBuffer.array(), offset, aid, 0, lc);
+			}
+		}
+		this.logicalChannel.setSelectedAID(aid);
+	}
+	
+	/**
+	 * Sends one command and puts the response data at the given offset of the
+	 * {@link #responseBuffer}.
+	 * 
+	 * @return The end of the response data, the status word is stored in {@link #lastStatusWord}.
+	 */
+	private int exchange(ByteBuffer _command, int _offset) throws CardException {
+		boolean extended = _command.limit() > 5 && _command.get(4) == 0x00;
+		this.responseBuffer.limit(this.responseBuffer.capacity());
+		this.responseBuffer.position(_offset);
+		this.responseBuffer = ensureCapacity(this.responseBuffer, _offset + (extended ? 65538 : 258), true);
+		this.responseBuffer.limit(this.responseBuffer.capacity());
+		this.getChannel().transmit(_command, this.responseBuffer);
+		int end = this.responseBuffer.position();
+		if ( end - _offset < 2 )
+			throw new CardException("Response APDU without status word");
+		this.lastStatusWord = StatusWord.toInt(this.responseBuffer.get(end - 2), this.responseBuffer.get(end - 1));
+		StatusWord.record(this.lastStatusWord);
+		return end - 2;
+	}
+	
+	/**
+	 * Replaces the Le of the command in the {@link #commandBuffer}.
+	 * 
+	 * @return False if the command has no Le field.
+	 */
+	private boolean correctLe(int _le) {
+		int length = this.commandBuffer.limit();
+		if ( length == 5 ) {
+			this.commandBuffer.put(4, (byte)_le);
+			return true;
+		}
+		int lc = this.commandBuffer.get(4) & 0xFF;
+		if ( lc != 0 && length == 6 + lc ) {
+			this.commandBuffer.put(length - 1, (byte)_le);
+			return true;
+		}
+		if ( lc == 0 && length == 7 ) {
+			this.commandBuffer.put(5, (byte)0x00).put(6, (byte)_le);
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @param _buffer The buffer.
+	 * @param _capacity The needed capacity.
+	 * @param _keep True if the content up to the position should be kept.
+	 * @return The given buffer or a larger one with the same content and position.
+	 */
+	private static ByteBuffer ensureCapacity(ByteBuffer _buffer, int _capacity, boolean _keep) {
+		if ( _buffer.capacity() >= _capacity )
+			return _buffer;
+		ByteBuffer larger = ByteBuffer.allocate(Math.max(_capacity, _buffer.capacity() * 2));
+		if ( _keep ) {
+			_buffer.flip();
+			larger.put(_buffer);
+		}
+		return larger;
+	}
+	
+	/**
+	 * @return The status word of the last command sent with {@link #transmit()}, -1 if none.
+	 */
+	public synchronized int getLastStatusWord() {
+		return this.lastStatusWord;
+	}
+	
+	/**
+	 * @return The last response of {@link #transmit()} as {@link ResponseAPDU}.
+	 */
+	protected ResponseAPDU getLastResponse() {
+		int length = this.responseBuffer.limit();
+		byte[] apdu = new byte[length + 2];
+		System.arraycopy(this.responseBuffer.array(), 0, apdu, 0, length);
+		apdu[length] = (byte)(this.lastStatusWord >> 8);
+		apdu[length + 1] = (byte)this.lastStatusWord;
+		return new ResponseAPDU(apdu);
+	}
+	
+	@Override
+	public synchronized <T> T inTransaction(ICardTransaction<T> _work) throws Exception {
+		this.beginTransaction();
 		try {
-			this.card.beginExclusive();
-			CardChannel channel = this.card.getBasicChannel();
-			ResponseAPDU response = channel.transmit(_command);
-			return response;
+			return _work.execute();
 		} finally {
-			this.card.endExclusive();
+			this.endTransaction();
 		}
 	}
 	
+	/**
+	 * Acquires exclusive access to the card, if this is not already done by an
+	 * outer transaction. Every call has to be followed by {@link #endTransaction()}.<p/>
+	 * 
+	 * This is also done on a logical channel: while a thread holds the card
+	 * exclusively the commands of all other threads fail, whatever channel they
+	 * use. The clients of one card in this JVM therefore wait for each other,
+	 * so their transactions are executed one after another.
+	 * 
+	 * @throws CardException If the thread is interrupted while waiting for the card.
+	 */
+	protected synchronized void beginTransaction() throws CardException {
+		assert (this.card != null);
+		if ( this.transactionDepth == 0 )
+			CardLock.forCard(this.card).lock(this.card);
+		this.transactionDepth++;
+	}
+	
+	/**
+	 * Releases the exclusive access to the card if the outermost transaction ends.
+	 * 
+	 * @throws CardException
+	 */
+	protected synchronized void endTransaction() throws CardException {
+		assert (this.transactionDepth > 0);
+		this.transactionDepth--;
+		if ( this.transactionDepth == 0 )
+			CardLock.forCard(this.card).unlock(this.card);
+	}
+	
+	/**
+	 * @return True if a transaction on this card is active.
+	 */
+	public synchronized boolean isInTransaction() {
+		return this.transactionDepth > 0;
+	}
+	
+	/**
+	 * Gives the logical channel back. The card itself is only disconnected if no
+	 * other client uses a logical channel of it anymore, otherwise the connection
+	 * is left to the remaining clients.
+	 */
 	@Override
 	public synchronized void  disconnect(boolean _reset) throws CardException {
-		this.card.disconnect(_reset);
+		if ( this.transactionDepth > 0 )
+			throw new CardException("Unable to disconnect inside a transaction");
+		this.releaseLogicalChannel();
+		this.resetSessionState();
+		this.clearUID();
+		this.extendedLength = null;
+		this.descriptor = null;
+		if ( LogicalChannelPool.closeUnused(this.card) )
+			this.card.disconnect(_reset);
+	}
+	
+	/**
+	 * The descriptor is parsed from the ATR when the card is connected and
+	 * cached until the card is disconnected.
+	 * 
+	 * @return The descriptor of the connected card, null if no card is connected.
+	 */
+	public synchronized CardDescriptor getCardDescriptor() {
+		if ( this.card == null ) return null;
+		if ( this.descriptor == null )
+			this.descriptor = CardDescriptor.forATR(this.card.getATR().getBytes());
+		return this.descriptor;
 	}
 	
 	@Override
 	public synchronized CardType getCardType() {
-		if ( this.card == null) return null;
-		byte[] atr = this.card.getATR().getBytes();
-		
-		int typeNr = (int)atr[14];
-		CardType[] values = CardType.values();
-		if ( typeNr < values.length )
-			return values[typeNr];
-		else
-			return CardType.UNKNOWN;
+		CardDescriptor cardDescriptor = this.getCardDescriptor();
+		return cardDescriptor == null ? null : cardDescriptor.getCardType();
 	}
 }
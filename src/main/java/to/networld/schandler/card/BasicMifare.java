@@ -20,14 +20,22 @@
 
 package to.networld.schandler.card;
 
-import java.util.Vector;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 import javax.smartcardio.CardException;
 import javax.smartcardio.CardTerminal;
 import javax.smartcardio.ResponseAPDU;
 
+import to.networld.schandler.common.BlockCursor;
 import to.networld.schandler.common.HexHandler;
 import to.networld.schandler.common.exceptions.WrongDataBlockLengthException;
+import to.networld.schandler.interfaces.IBlockListener;
 
 /**
  * PC/SC 2.0 - Mifare
@@ -67,12 +75,31 @@ public class BasicMifare extends BasicCard {
 	public static final byte[] WRONG_PARAMETER = new byte[] { (byte)0x6B, (byte)0x00 };
 	public static final byte[] WRONG_KEY_LENGTH = new byte[] { (byte)0x69, (byte)0x89 };
 	public static final byte[] MEMORY_FAILURE = new byte[] { (byte)0x65, (byte)0x81 };
+	
+	/**
+	 * The ISO 7816-4 status words with the messages of the PC/SC storage card commands.
+	 */
+	public static final StatusWord.Table STATUS_WORDS = StatusWord.ISO7816.overlay(
+			new int[] { 0x6400, 0x6700, 0x6800, 0x6982, 0x6A81, 0x6B00, 0x6989, 0x6581 },
+			new String[] { "Card execution error",
+				"Wrong length",
+				"Invalid class (CLA) byte",
+				"Security status not satisfied. This can include wrong data structure, wrong keys, incorrect padding.",
+				"Invalid Instruction (INS) Byte",
+				"Wrong parameter P1 or P2",
+				"Wrong key length",
+				"Memory failure, addressed by P1-P2 it does not exist" });
 	/*
 	 * END Response Message Codes
 	 */
 	
+	/**
+	 * The user data blocks of the card, see {@link MifareLayout#getDataBlocks()}.
+	 */
 	public final byte[] USER_DATA_FIELDS;
 	
+	private final MifareLayout layout;
+	
 	public static final byte[] GET_UID = new byte[] { (byte)0xFF, (byte)0xCA, (byte)0x00, (byte)0x00, (byte)0x00 };
 	
 	/**
@@ -80,8 +107,23 @@ public class BasicMifare extends BasicCard {
 	 */
 	public static final byte[] STD_KEY = new byte[]{ (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF };
 	
+	/*
+	 * The sector the card is currently authenticated to, together with the key
+	 * that was used. Only valid for the current connection, -1 if none.
+	 */
+	private int authenticatedSector = -1;
+	private byte authenticatedKeyType;
+	private byte[] authenticatedKey;
+	
+	/*
+	 * Remembers per reader name if READ BINARY and UPDATE BINARY are able to access
+	 * more than one block with one command. No entry means not tested yet.
+	 */
+	private static final Map<String, Boolean> MULTI_BLOCK_READ = new HashMap<String, Boolean>();
+	private static final Map<String, Boolean> MULTI_BLOCK_WRITE = new HashMap<String, Boolean>();
+	
 	/**
-	 * The RFID Mifare Classic card with 1 Kilobyte of memory.
+	 * The RFID Mifare Classic card with 1 or 4 Kilobyte of memory (or a Mifare Mini).
 	 * 
 	 * @param terminal
 	 * @param protocol
@@ -93,76 +135,25 @@ public class BasicMifare extends BasicCard {
 		if ( !this.connectToCard() )
 			throw new CardException("No card found!");
 		
-		if ( this.getCardType() == CardType.Mifare1K ) {
-			/*
-			 * Data blocks that are writable.
-			 */
-			this.USER_DATA_FIELDS = new byte[] { 
-				            (byte)0x01, (byte)0x02, 
-				(byte)0x04, (byte)0x05, (byte)0x06,
-				(byte)0x08, (byte)0x09, (byte)0x0A,
-				(byte)0x0C, (byte)0x0D, (byte)0x0E,
-				(byte)0x10, (byte)0x11, (byte)0x12,
-				(byte)0x14, (byte)0x15, (byte)0x16,
-				(byte)0x18, (byte)0x19, (byte)0x2a,
-				(byte)0x1c, (byte)0x1d, (byte)0x1e,
-				(byte)0x20, (byte)0x21, (byte)0x22,
-				(byte)0x24, (byte)0x25, (byte)0x26,
-				(byte)0x28, (byte)0x29, (byte)0x2a,
-				(byte)0x2c, (byte)0x2d, (byte)0x2e,
-				(byte)0x30, (byte)0x31, (byte)0x32,
-				(byte)0x34, (byte)0x35, (byte)0x36,
-				(byte)0x38, (byte)0x39, (byte)0x3a,
-				(byte)0x3c, (byte)0x3d, (byte)0x3e };
-			this.MAX_BLOCKS = 64;
-		} else if ( this.getCardType() == CardType.Mifare4K ) {
-			/*
-			 * Data blocks that are writable.
-			 */
-			this.USER_DATA_FIELDS = new byte[] {
-				            (byte)0x01, (byte)0x02,
-				(byte)0x04, (byte)0x05, (byte)0x06,
-				(byte)0x08, (byte)0x09, (byte)0x0A,
-				(byte)0x0C, (byte)0x0D, (byte)0x0E,
-				(byte)0x10, (byte)0x11, (byte)0x12,
-				(byte)0x14, (byte)0x15, (byte)0x16,
-				(byte)0x18, (byte)0x19, (byte)0x2a,
-				(byte)0x1c, (byte)0x1d, (byte)0x1e,
-				(byte)0x20, (byte)0x21, (byte)0x22,
-				(byte)0x24, (byte)0x25, (byte)0x26,
-				(byte)0x28, (byte)0x29, (byte)0x2a,
-				(byte)0x2c, (byte)0x2d, (byte)0x2e,
-				(byte)0x30, (byte)0x31, (byte)0x32,
-				(byte)0x34, (byte)0x35, (byte)0x36,
-				(byte)0x38, (byte)0x39, (byte)0x3a,
-				(byte)0x3c, (byte)0x3d, (byte)0x3e,
-
-				(byte)0x40, (byte)0x41, (byte)0x42,
-				(byte)0x44, (byte)0x45, (byte)0x46,
-				(byte)0x48, (byte)0x49, (byte)0x4a,
-				(byte)0x4c, (byte)0x4d, (byte)0x4e,
-				(byte)0x50, (byte)0x51, (byte)0x52,
-				(byte)0x54, (byte)0x55, (byte)0x56,
-				(byte)0x58, (byte)0x59, (byte)0x5a,
-				(byte)0x5c, (byte)0x5d, (byte)0x5e,
-				(byte)0x60, (byte)0x61, (byte)0x62,
-				(byte)0x64, (byte)0x65, (byte)0x66,
-				(byte)0x68, (byte)0x69, (byte)0x6a,
-				(byte)0x6c, (byte)0x6d, (byte)0x6e,
-				(byte)0x70, (byte)0x71, (byte)0x72,
-				(byte)0x74, (byte)0x75, (byte)0x76,
-				(byte)0x78, (byte)0x79, (byte)0x7a,
-				(byte)0x7c, (byte)0x7d, (byte)0x7e,
-
-				(byte)0x80, (byte)0x81, (byte)0x82, (byte)0x83, (byte)0x84, (byte)0x85, (byte)0x86, (byte)0x87, (byte)0x88, (byte)0x89, (byte)0x8a, (byte)0x8b, (byte)0x8c, (byte)0x8d, (byte)0x8e,
-				(byte)0x90, (byte)0x91, (byte)0x92, (byte)0x93, (byte)0x94, (byte)0x95, (byte)0x96, (byte)0x97, (byte)0x98, (byte)0x99, (byte)0x9a, (byte)0x9b, (byte)0x9c, (byte)0x9d, (byte)0x9e,
-				(byte)0xa0, (byte)0xa1, (byte)0xa2, (byte)0xa3, (byte)0xa4, (byte)0xa5, (byte)0xa6, (byte)0xa7, (byte)0xa8, (byte)0xa9, (byte)0xaa, (byte)0xab, (byte)0xac, (byte)0xad, (byte)0xae,
-			};
-			this.MAX_BLOCKS = 176;
-		} else {
-			throw new CardException("That seems not to be a 'Mifare 1K' or 'Mifare 4K' card. The detected card is of the type: '"
+		this.layout = MifareLayout.forCardType(this.getCardType());
+		if ( this.layout == null )
+			throw new CardException("That seems not to be a 'Mifare Mini', 'Mifare 1K' or 'Mifare 4K' card. The detected card is of the type: '"
 						+ this.getCardType() + "'");
-		}
+		/*
+		 * Data blocks that are writable.
+		 */
+		int[] dataBlocks = this.layout.getDataBlocks();
+		this.USER_DATA_FIELDS = new byte[dataBlocks.length];
+		for ( int count = 0; count < dataBlocks.length; count++ )
+			this.USER_DATA_FIELDS[count] = (byte)dataBlocks[count];
+		this.MAX_BLOCKS = this.layout.getBlockCount();
+	}
+	
+	/**
+	 * @return The memory layout of this card.
+	 */
+	public MifareLayout getLayout() {
+		return this.layout;
 	}
 	
 	/**
@@ -174,30 +165,68 @@ public class BasicMifare extends BasicCard {
 	 */
 	public static String getResponseMessage(byte[] _responseArray) throws Exception {
 		if ( _responseArray.length > 2 ) return HexHandler.getHexString(_responseArray);
-		if ( _responseArray[0] ==  SUCCESS[0] && _responseArray[1] == SUCCESS[1] )
-			return "Success";
-		else if ( _responseArray[0] ==  CARD_EXECUTION_ERROR[0] && _responseArray[1] == CARD_EXECUTION_ERROR[1] )
-			return "Card execution error";
-		else if ( _responseArray[0] ==  WRONG_LENGTH[0] && _responseArray[1] == WRONG_LENGTH[1] )
-			return "Wrong length";
-		else if ( _responseArray[0] ==  INVALID_CLASS_BYTE[0] && _responseArray[1] == INVALID_CLASS_BYTE[1] )
-			return "Invalid class (CLA) byte";
-		else if ( _responseArray[0] == SECURITY_ERROR[0] && _responseArray[1] == SECURITY_ERROR[1] )
-			return "Security status not satisfied. This can include wrong data structure, wrong keys, incorrect padding.";
-		else if ( _responseArray[0] ==  INVALID_INSTRUCTION[0] && _responseArray[1] == INVALID_INSTRUCTION[1] )
-			return "Invalid Instruction (INS) Byte";
-		else if ( _responseArray[0] ==  WRONG_PARAMETER[0] && _responseArray[1] == WRONG_PARAMETER[1] )
-			return "Wrong parameter P1 or P2";
-		else if ( _responseArray[0] ==  WRONG_KEY_LENGTH[0] && _responseArray[1] == WRONG_KEY_LENGTH[1] )
-			return "Wrong key length";
-		else if ( _responseArray[0] ==  MEMORY_FAILURE[0] && _responseArray[1] == MEMORY_FAILURE[1] )
-			return "Memory failure, addressed by P1-P2 it does not exist";
-		return "Unknown Response Message";
+		return STATUS_WORDS.getMessage(StatusWord.toInt(_responseArray[0], _responseArray[1]));
+	}
+	
+	@Override
+	protected void resetSessionState() {
+		super.resetSessionState();
+		this.invalidateAuthentication();
 	}
 	
 	/**
+	 * Forgets the sector authentication of the current session. The next block
+	 * access will trigger a new sector login.
+	 */
+	public synchronized void invalidateAuthentication() {
+		this.authenticatedSector = -1;
+		this.authenticatedKey = null;
+	}
+	
+	/**
+	 * @return True if the card is already authenticated to the sector with the given key.
+	 */
+	private boolean isAuthenticated(int _sector, byte _keyType, byte[] _key) {
+		return this.authenticatedSector == _sector
+			&& this.authenticatedKeyType == _keyType
+			&& Arrays.equals(this.authenticatedKey, _key);
+	}
+	
+	/**
+	 * Authenticates to the sector of the given block, if the card is not already
+	 * authenticated to this sector with the same key.
 	 * 
-	 * 1. Load the key into the memory.<br/>
+	 * @return The status word of the sector login, 0x9000 if the cached authentication was used.
+	 */
+	private int ensureSectorLogin(byte _keyType,
+			byte[] _key,
+			int _block,
+			byte _keyNumber) throws Exception {
+		int sector = this.layout.getSectorOfBlock(_block);
+		if ( this.isAuthenticated(sector, _keyType, _key) )
+			return StatusWord.SUCCESS;
+		this.invalidateAuthentication();
+		int status = this.sectorLogin(_keyType, _key, _block, _keyNumber);
+		if ( status == StatusWord.SUCCESS ) {
+			this.authenticatedSector = sector;
+			this.authenticatedKeyType = _keyType;
+			this.authenticatedKey = _key.clone();
+		}
+		return status;
+	}
+	
+	/**
+	 * Drops the cached authentication if a block access failed. The tag is halted
+	 * after every failed READ or UPDATE, whatever status word the reader reports.
+	 */
+	private void checkSecurityStatus(int _statusWord) {
+		if ( _statusWord != StatusWord.SUCCESS )
+			this.invalidateAuthentication();
+	}
+	
+	/**
+	 * 
+	 * 1. Load the key into the memory, if the reader slot does not already hold it.<br/>
 	 * 2. Authenticate with the previously loaded key.<p/>
 	 * 
 	 * The following example reads from a Mikare 1K/4K card with standard key
@@ -206,66 +235,110 @@ public class BasicMifare extends BasicCard {
 	 * <ul>
 	 * 		<li> _keyType = 0x60</li>
 	 * 		<li> _key = 0xFF 0xFF 0xFF 0xFF 0xFF 0xFF</li>
-	 *		<li> _accessStart = 0x00</li>
-	 *		<li> _accessEnd = 0x00</li>
+	 *		<li> _block = 0x00</li>
 	 *		<li> _keyNumber = 0x01</li>
 	 * </ul>
 	 * 
 	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
 	 * @param _key The key as byte array.
-	 * @param _msb The beginning of the area that is accessed.
-	 * @param _lsb The end of the area that is accessed. From 0x00 (dec: 0) to 0x3F (dec: 63)
+	 * @param _block The block that is accessed. From 0x00 (dec: 0) to 0x3F (dec: 63) for a 1K card.
 	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
-	 * @return A ResponseAPDU from the load key or authenticate phase. 
+	 * @return The status word of the load key or authenticate phase. 
 	 * @throws Exception 
 	 */
-	private synchronized ResponseAPDU sectorLogin(byte _keyType,
+	private synchronized int sectorLogin(byte _keyType,
 			byte[] _key, 
-			byte _msb, 
-			byte _lsb, 
+			int _block, 
 			byte _keyNumber) throws Exception {
+		ReaderKeySlots keySlots = ReaderKeySlots.forTerminal(this.getTerminal());
+		boolean cachedKey = keySlots.holds(_keyNumber, _key);
+		if ( !cachedKey ) {
+			int loadKeyStatus = this.transmitLoadKey(_keyNumber, _key, true);
+			if ( loadKeyStatus != StatusWord.SUCCESS )
+				return loadKeyStatus;
+		}
 		/*
-		 * Load Key
+		 * Authenticate
 		 */
-		int keyLength = _key.length;
-		byte[] loadKeyCommand = new byte[5 + _key.length];
-		loadKeyCommand[0] = (byte)0xFF; // CLA
-		loadKeyCommand[1] = (byte)0x82; // INS
-		loadKeyCommand[2] = (byte)0x20; // P1
-		loadKeyCommand[3] = _keyNumber; // P2
-		loadKeyCommand[4] = HexHandler.getByte(keyLength); // Le
-		
-		int endLoopValue = 5 + keyLength;
-		for ( int count=5, nr=0; count <  endLoopValue; count++, nr++ ) {
-			loadKeyCommand[count] = _key[nr];
-		}
-		ResponseAPDU loadKeyResponse = this.sendAPDUCommandToCard(loadKeyCommand);
-		byte[] loadKeyStatus = loadKeyResponse.getBytes();
-		if ( loadKeyStatus[0] == SUCCESS[0] && loadKeyStatus[1] == SUCCESS[1] ) {
+		ByteBuffer authCommand = this.beginCommand(0xFF, 0x86, 0x00, 0x00);
+		authCommand.put((byte)0x05);          // Lc
+		authCommand.put((byte)0x01);          // Version
+		authCommand.put((byte)(_block >> 8)); // Address MSB (most significant bit)
+		authCommand.put((byte)_block);        // Address LSB (least significant bit)
+		authCommand.put(_keyType);
+		authCommand.put(_keyNumber);
+		int authStatus = this.transmit();
+		if ( authStatus != StatusWord.SUCCESS ) {
+			keySlots.forget(_keyNumber);
 			/*
-			 * Authenticate
+			 * The slot could be overwritten by another application, retry once with a fresh key.
 			 */
-			byte[] authCommand = new byte[10];
-			authCommand[0] = (byte)0xFF;   // CLA
-			authCommand[1] = (byte)0x86;   // INS
-			authCommand[2] = (byte)0x00;   // P1
-			authCommand[3] = (byte)0x00;   // P2
-			authCommand[4] = (byte)0x05;   // Le
-			authCommand[5] = (byte)0x01;   // Version
-			authCommand[6] = _msb;         // Address MSB (most significant bit)
-			authCommand[7] = _lsb;         // Address LSB (least significant bit)
-			authCommand[8] = _keyType;
-			authCommand[9] = _keyNumber;
-			ResponseAPDU authResponse = this.sendAPDUCommandToCard(authCommand);
-			return authResponse;
+			if ( cachedKey )
+				return this.sectorLogin(_keyType, _key, _block, _keyNumber);
+		}
+		return authStatus;
+	}
+	
+	/**
+	 * Loads the key into the given key slot of the reader and remembers it in the
+	 * {@link ReaderKeySlots} registry of the reader. Following sector logins with
+	 * the same key and key number will skip the LOAD KEY command.
+	 * 
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _key The key as byte array.
+	 * @param _nonVolatile True to store the key in the non-volatile memory of the reader.
+	 * @return The response of the LOAD KEY command.
+	 * @throws Exception
+	 */
+	public synchronized ResponseAPDU loadKey(byte _keyNumber, byte[] _key, boolean _nonVolatile) throws Exception {
+		this.transmitLoadKey(_keyNumber, _key, _nonVolatile);
+		return this.getLastResponse();
+	}
+	
+	private int transmitLoadKey(byte _keyNumber, byte[] _key, boolean _nonVolatile) throws Exception {
+		ByteBuffer loadKeyCommand = this.beginCommand(0xFF, 0x82, _nonVolatile ? 0x20 : 0x00, _keyNumber);
+		loadKeyCommand.put((byte)_key.length); // Lc
+		loadKeyCommand.put(_key);
+		int status = this.transmit();
+		ReaderKeySlots keySlots = ReaderKeySlots.forTerminal(this.getTerminal());
+		if ( status == StatusWord.SUCCESS )
+			keySlots.store(_keyNumber, _key, _nonVolatile);
+		else
+			keySlots.forget(_keyNumber);
+		return status;
+	}
+	
+	/**
+	 * Loads a set of keys into the reader at the beginning of a session. Keys that
+	 * are already stored in the given slots are not uploaded again.
+	 * 
+	 * @param _keyNumbers The key slots, one entry per key.
+	 * @param _keys The keys as byte arrays.
+	 * @param _nonVolatile True to store the keys in the non-volatile memory of the reader.
+	 * @return True if all keys are available in the reader.
+	 * @throws Exception
+	 */
+	public synchronized boolean preloadKeys(byte[] _keyNumbers, byte[][] _keys, boolean _nonVolatile) throws Exception {
+		if ( _keyNumbers.length != _keys.length )
+			throw new IllegalArgumentException("Expected one key number per key but found '"
+					+ _keyNumbers.length + "' key numbers and '" + _keys.length + "' keys");
+		ReaderKeySlots keySlots = ReaderKeySlots.forTerminal(this.getTerminal());
+		boolean success = true;
+		for ( int count = 0; count < _keys.length; count++ ) {
+			if ( keySlots.holds(_keyNumbers[count], _keys[count]) ) continue;
+			if ( this.transmitLoadKey(_keyNumbers[count], _keys[count], _nonVolatile) != StatusWord.SUCCESS )
+				success = false;
 		}
-		return loadKeyResponse;
+		return success;
 	}
 	
 	/**
 	 * 1. Load the key into the memory.<br/>
 	 * 2. Authenticate with the previously loaded key.<br/>
-	 * 3. Read data from the card
+	 * 3. Read data from the card<p/>
+	 * 
+	 * Step 1 and 2 are skipped if the card is already authenticated to the
+	 * sector of the block with the same key during the current connection.<p/>
 	 * 
 	 * The following example should work with a new Mifare 1K/4K card:<p/>
 	 * 
@@ -290,21 +363,282 @@ public class BasicMifare extends BasicCard {
 			byte _msb, 
 			byte _lsb, 
 			byte _keyNumber) throws Exception {
-		ResponseAPDU sectorLoginResponse = this.sectorLogin(_keyType, _key, _msb, _lsb, _keyNumber);
-		byte[] sectorLoginStatus = sectorLoginResponse.getBytes();
-		if ( sectorLoginStatus[0] == SUCCESS[0] && sectorLoginStatus[1] == SUCCESS[1] ) {
-			byte[] readCommand = new byte[5];
-			readCommand[0] = (byte)0xFF; // CLA
-			readCommand[1] = (byte)0xB0; // INS
-			readCommand[2] = _msb;       // P1 == Address MSB (most significant bit)
-			readCommand[3] = _lsb;       // P2 == Address LSB (least significant bit)
-			readCommand[4] = (byte)0x00;
-			ResponseAPDU readResponse = this.sendAPDUCommandToCard(readCommand);
-			return readResponse;
+		this.beginTransaction();
+		try {
+			int block = ((_msb & 0xFF) << 8) | (_lsb & 0xFF);
+			if ( this.ensureSectorLogin(_keyType, _key, block, _keyNumber) == StatusWord.SUCCESS )
+				this.transmitRead(block, 0x00);
+			return this.getLastResponse();
+		} finally {
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Sends a READ BINARY command, the data is afterwards in the response buffer.
+	 * 
+	 * @param _block The first block.
+	 * @param _length The expected length, 0x00 for one block.
+	 * @return The status word.
+	 */
+	private int transmitRead(int _block, int _length) throws Exception {
+		ByteBuffer readCommand = this.beginCommand(0xFF, 0xB0, _block >> 8, _block); // P1/P2 == Address MSB/LSB
+		readCommand.put((byte)_length); // Le
+		int status = this.transmit();
+		this.checkSecurityStatus(status);
+		return status;
+	}
+	
+	/**
+	 * Reads a number of consecutive blocks of one sector. If the reader supports it all
+	 * blocks are read with one READ BINARY command, otherwise block by block.<p/>
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _firstBlock The first block that should be read.
+	 * @param _blockCount The number of blocks, all blocks have to be data blocks of the same sector.
+	 * @return If no error had occurred the data of all blocks, otherwise the failed response.
+	 * @throws Exception
+	 */
+	public synchronized ResponseAPDU readBlocks(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _firstBlock,
+			int _blockCount) throws Exception {
+		byte[] data = new byte[_blockCount * 16 + 2];
+		if ( this.readBlocks(_keyType, _key, _keyNumber, _firstBlock, _blockCount, data, 0) != StatusWord.SUCCESS )
+			return this.getLastResponse();
+		data[data.length - 2] = SUCCESS[0];
+		data[data.length - 1] = SUCCESS[1];
+		return new ResponseAPDU(data);
+	}
+	
+	/**
+	 * Allocation free variant of {@link #readBlocks(byte, byte[], byte, int, int)} that
+	 * copies the block data into the given array.
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _firstBlock The first block that should be read.
+	 * @param _blockCount The number of blocks, all blocks have to be data blocks of the same sector.
+	 * @param _dst The array for the block data, needs space for 16 bytes per block.
+	 * @param _offset The offset in the array.
+	 * @return The status word, 0x9000 if all blocks were read.
+	 * @throws Exception
+	 */
+	public synchronized int readBlocks(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _firstBlock,
+			int _blockCount,
+			byte[] _dst,
+			int _offset) throws Exception {
+		this.beginTransaction();
+		try {
+			this.checkBlockRange(_firstBlock, _blockCount);
+			int count = 0;
+			if ( _blockCount > 1 ) {
+				String readerName = this.getTerminal().getName();
+				Boolean multiBlock;
+				synchronized (MULTI_BLOCK_READ) { multiBlock = MULTI_BLOCK_READ.get(readerName); }
+				if ( multiBlock == null ) {
+					/*
+					 * The probe starts after the first block was read, so the sector is
+					 * authenticated and readable and a failure is not caused by the key
+					 * or the access conditions.
+					 */
+					int status = this.readBlock(_keyType, _key, _keyNumber, _firstBlock, _dst, _offset);
+					if ( status != StatusWord.SUCCESS )
+						return status;
+					count = 1;
+					if ( _blockCount - count > 1 ) {
+						int length = (_blockCount - count) * 16;
+						status = this.transmitRead(_firstBlock + count, length);
+						if ( status == StatusWord.SUCCESS && this.responseBuffer.limit() == length ) {
+							synchronized (MULTI_BLOCK_READ) { MULTI_BLOCK_READ.put(readerName, true); }
+							this.responseBuffer.get(_dst, _offset + 16, length);
+							return status;
+						}
+						if ( status == StatusWord.SUCCESS || status == StatusWord.WRONG_LENGTH
+								|| (status & 0xFF00) == StatusWord.WRONG_LE || StatusWord.isNotSupported(status) )
+							synchronized (MULTI_BLOCK_READ) { MULTI_BLOCK_READ.put(readerName, false); }
+						/*
+						 * Some readers halt the card after an unsupported command.
+						 */
+						this.invalidateAuthentication();
+					}
+				} else if ( multiBlock ) {
+					int status = this.ensureSectorLogin(_keyType, _key, _firstBlock, _keyNumber);
+					if ( status != StatusWord.SUCCESS )
+						return status;
+					int length = _blockCount * 16;
+					status = this.transmitRead(_firstBlock, length);
+					if ( status != StatusWord.SUCCESS )
+						return status;
+					if ( this.responseBuffer.limit() != length )
+						throw new CardException("Expected '" + length + "' bytes from block " + _firstBlock + " but found '" + this.responseBuffer.limit() + "'");
+					this.responseBuffer.get(_dst, _offset, length);
+					return status;
+				}
+			}
+		
+			for ( ; count < _blockCount; count++ ) {
+				int status = this.readBlock(_keyType, _key, _keyNumber, _firstBlock + count, _dst, _offset + count * 16);
+				if ( status != StatusWord.SUCCESS )
+					return status;
+			}
+			return StatusWord.SUCCESS;
+		} finally {
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Reads one block with its own READ BINARY command.
+	 * 
+	 * @return The status word, 0x9000 if the block was copied to the array.
+	 */
+	private int readBlock(byte _keyType, byte[] _key, byte _keyNumber, int _block, byte[] _dst, int _offset) throws Exception {
+		int status = this.ensureSectorLogin(_keyType, _key, _block, _keyNumber);
+		if ( status == StatusWord.SUCCESS )
+			status = this.transmitRead(_block, 0x00);
+		if ( status != StatusWord.SUCCESS )
+			return status;
+		if ( this.responseBuffer.limit() != 16 )
+			throw new CardException("Expected '16' bytes from block " + _block + " but found '" + this.responseBuffer.limit() + "'");
+		this.responseBuffer.get(_dst, _offset, 16);
+		return status;
+	}
+	
+	/**
+	 * Reads all data blocks of a sector. The sector trailer and the manufacturer
+	 * block are not included.
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _sector The sector that should be read.
+	 * @return If no error had occurred the data of all data blocks, otherwise the failed response.
+	 * @throws Exception
+	 */
+	public synchronized ResponseAPDU readSector(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _sector) throws Exception {
+		return this.readBlocks(_keyType, _key, _keyNumber,
+				this.layout.getFirstDataBlockOfSector(_sector),
+				this.layout.getDataBlockCountOfSector(_sector));
+	}
+	
+	/**
+	 * Allocation free variant of {@link #readSector(byte, byte[], byte, int)}.
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _sector The sector that should be read.
+	 * @param _dst The array for the block data, needs space for 16 bytes per data block.
+	 * @param _offset The offset in the array.
+	 * @return The status word, 0x9000 if all blocks were read.
+	 * @throws Exception
+	 */
+	public synchronized int readSector(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _sector,
+			byte[] _dst,
+			int _offset) throws Exception {
+		return this.readBlocks(_keyType, _key, _keyNumber,
+				this.layout.getFirstDataBlockOfSector(_sector),
+				this.layout.getDataBlockCountOfSector(_sector),
+				_dst, _offset);
+	}
+	
+	/**
+	 * Checks that the blocks are data blocks of one sector.
+	 */
+	private void checkBlockRange(int _firstBlock, int _blockCount) {
+		if ( _blockCount < 1 || _firstBlock < 0 || _firstBlock + _blockCount > this.MAX_BLOCKS )
+			throw new IllegalArgumentException("Block range " + _firstBlock + " (+" + _blockCount + ") out of card memory");
+		int sector = this.layout.getSectorOfBlock(_firstBlock);
+		int trailer = this.layout.getTrailerOfSector(sector);
+		if ( _firstBlock + _blockCount - 1 >= trailer )
+			throw new IllegalArgumentException("Block range " + _firstBlock + " (+" + _blockCount + ") is not within the data blocks of sector " + sector);
+	}
+	
+	/**
+	 * Executes all reads and writes of the plan sector by sector. Every sector is
+	 * authenticated at most once and consecutive blocks are transferred together.
+	 * 
+	 * @param _plan The planned block accesses.
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _listener Receives the read blocks, could be null if the plan includes only writes.
+	 * @throws Exception If a block could not be read or written.
+	 */
+	public synchronized void execute(MifareAccessPlan _plan,
+			byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			IBlockListener _listener) throws Exception {
+		this.beginTransaction();
+		try {
+			if ( _plan.getLayout() != this.layout )
+				throw new IllegalArgumentException("The plan was created for a " + _plan.getLayout() + " card, but this is a " + this.layout + " card");
+			List<MifareAccessPlan.Run> runs = _plan.getRuns();
+			boolean stop = false;
+			int stopSector = -1;
+			for ( MifareAccessPlan.Run run : runs ) {
+				if ( stop && run.getSector() != stopSector ) break;
+				int status;
+				if ( run.isWrite() )
+					status = this.writeBlocks(_keyType, _key, _keyNumber, run.getFirstBlock(), run.getData(), run.getDataOffset(), run.getDataLength());
+				else
+					status = this.readBlocks(_keyType, _key, _keyNumber, run.getFirstBlock(), run.getBlockCount(), run.getData(), run.getDataOffset());
+				if ( status != StatusWord.SUCCESS )
+					throw new CardException("Unable to " + (run.isWrite() ? "write" : "read") + " block " + run.getFirstBlock()
+							+ " (+" + run.getBlockCount() + "): " + STATUS_WORDS.getMessage(status));
+				if ( run.isWrite() || _listener == null || stop ) continue;
+				for ( int count = 0; count < run.getBlockCount(); count++ ) {
+					if ( !_listener.blockRead(run.getFirstBlock() + count, run.getData(), run.getDataOffset() + count * MifareLayout.BLOCK_SIZE) ) {
+						stop = true;
+						stopSector = run.getSector();
+						break;
+					}
+				}
+			}
+		} finally {
+			this.endTransaction();
 		}
-		return sectorLoginResponse;
 	}
 	
+	/**
+	 * Executes the plan and returns the read blocks.
+	 * 
+	 * @param _plan The planned block accesses.
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @return The read blocks sorted by block number.
+	 * @throws Exception If a block could not be read or written.
+	 */
+	public synchronized SortedMap<Integer, byte[]> execute(MifareAccessPlan _plan,
+			byte _keyType,
+			byte[] _key,
+			byte _keyNumber) throws Exception {
+		final SortedMap<Integer, byte[]> blocks = new TreeMap<Integer, byte[]>();
+		this.execute(_plan, _keyType, _key, _keyNumber, new IBlockListener() {
+			@Override
+			public boolean blockRead(int _block, byte[] _data, int _offset) {
+				blocks.put(_block, Arrays.copyOfRange(_data, _offset, _offset + MifareLayout.BLOCK_SIZE));
+				return true;
+			}
+		});
+		return blocks;
+	}
 	
 	/**
 	 * Beginning from the 0x01 block until a 0x00 Byte is reached.
@@ -319,21 +653,45 @@ public class BasicMifare extends BasicCard {
 	public synchronized String readData(byte _keyType,
 			byte[] _key,
 			byte _keyNumber) throws Exception {
-		String retString = new String();
-		for ( int count = 0; count < this.USER_DATA_FIELDS.length; count++ ) {
-			ResponseAPDU response = this.readBlockData(_keyType, _key, (byte)0x00, USER_DATA_FIELDS[count], _keyNumber);
-			byte[] retData = response.getData();
-			if ( retData[0] == (byte)0x00 ) break;
-			retString += HexHandler.getHexToAscii(retData);
-		}
-		return retString;
+		MifareAccessPlan plan = new MifareAccessPlan(this.layout);
+		for ( int count = 0; count < this.layout.getDataBlockCount(); count++ )
+			plan.read(this.layout.getDataBlock(count));
+		final StringBuffer retString = new StringBuffer();
+		this.execute(plan, _keyType, _key, _keyNumber, new IBlockListener() {
+			@Override
+			public boolean blockRead(int _block, byte[] _data, int _offset) {
+				if ( _data[_offset] == (byte)0x00 ) return false;
+				retString.append(HexHandler.getHexToAscii(Arrays.copyOfRange(_data, _offset, _offset + MifareLayout.BLOCK_SIZE)));
+				return true;
+			}
+		});
+		return retString.toString();
 	}
 
+	/**
+	 * Opens a seekable channel over the user data area of the card. The
+	 * channel reads ahead one sector at a time and writes back only the
+	 * changed blocks.
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @return A channel over the user data area.
+	 */
+	public MifareDataChannel openDataChannel(byte _keyType,
+			byte[] _key,
+			byte _keyNumber) {
+		return new MifareDataChannel(this, _keyType, _key, _keyNumber);
+	}
+	
 	/**
 	 * 1. Load the key into the memory.<br/>
 	 * 2. Authenticate with the previously loaded key.<br/>
 	 * 3. Write Data to the block.<p/>
 	 * 
+	 * Step 1 and 2 are skipped if the card is already authenticated to the
+	 * sector of the block with the same key during the current connection.<p/>
+	 * 
 	 * The following example should work with a new Mifare 1K/4K card:<p/>
 	 * 
 	 * <ul>
@@ -359,24 +717,158 @@ public class BasicMifare extends BasicCard {
 			byte _keyNumber,
 			byte[] _data) throws Exception {
 		if ( _data.length != 16 ) throw new WrongDataBlockLengthException("Expected '16' byte entries but found '" + _data.length + "'");
-		ResponseAPDU sectorLoginResponse = this.sectorLogin(_keyType, _key, _msb, _lsb, _keyNumber);
-		byte[] sectorLoginStatus = sectorLoginResponse.getBytes();
-		if ( sectorLoginStatus[0] == SUCCESS[0] && sectorLoginStatus[1] == SUCCESS[1] ) {
-			int dataLength = _data.length;
-			byte[] writeCommand = new byte[5 + dataLength];
-			writeCommand[0] = (byte)0xFF; // CLA
-			writeCommand[1] = (byte)0xD6; // INS
-			writeCommand[2] = _msb;	      // P1 == Address MSB (most significant bit)
-			writeCommand[3] = _lsb;       // P2 == Address LSB (least significant bit)
-			writeCommand[4] = HexHandler.getByte(dataLength); // Le
-			int endLoopValue = 5 + dataLength;
-			for ( int count=5, nr=0; count <  endLoopValue; count++, nr++ ) {
-				writeCommand[count] = _data[nr];
+		this.beginTransaction();
+		try {
+			int block = ((_msb & 0xFF) << 8) | (_lsb & 0xFF);
+			if ( this.ensureSectorLogin(_keyType, _key, block, _keyNumber) == StatusWord.SUCCESS )
+				this.transmitWrite(block, _data, 0, _data.length);
+			return this.getLastResponse();
+		} finally {
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Sends an UPDATE BINARY command.
+	 * 
+	 * @param _block The first block.
+	 * @param _data The array with the data.
+	 * @param _offset The offset of the data in the array.
+	 * @param _length The length of the data, 16 bytes per block.
+	 * @return The status word.
+	 */
+	private int transmitWrite(int _block, byte[] _data, int _offset, int _length) throws Exception {
+		ByteBuffer writeCommand = this.beginCommand(0xFF, 0xD6, _block >> 8, _block); // P1/P2 == Address MSB/LSB
+		writeCommand.put((byte)_length); // Lc
+		writeCommand.put(_data, _offset, _length);
+		int status = this.transmit();
+		this.checkSecurityStatus(status);
+		return status;
+	}
+	
+	/**
+	 * Writes a number of consecutive blocks of one sector. If the reader supports it all
+	 * blocks are written with one UPDATE BINARY command, otherwise block by block.<p/>
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _firstBlock The first block that should be written.
+	 * @param _data The data, a multiple of 16 bytes. All blocks have to be data blocks of the same sector.
+	 * @return The response of the last write command or the failed response.
+	 * @throws Exception
+	 */
+	public synchronized ResponseAPDU writeBlocks(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _firstBlock,
+			byte[] _data) throws Exception {
+		this.writeBlocks(_keyType, _key, _keyNumber, _firstBlock, _data, 0, _data.length);
+		return this.getLastResponse();
+	}
+	
+	/**
+	 * Allocation free variant of {@link #writeBlocks(byte, byte[], byte, int, byte[])}.
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _firstBlock The first block that should be written.
+	 * @param _data The array with the data.
+	 * @param _offset The offset of the data in the array.
+	 * @param _length The length of the data, a multiple of 16 bytes.
+	 * @return The status word, 0x9000 if all blocks were written.
+	 * @throws Exception
+	 */
+	public synchronized int writeBlocks(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _firstBlock,
+			byte[] _data,
+			int _offset,
+			int _length) throws Exception {
+		if ( _length == 0 || _length % 16 != 0 ) throw new WrongDataBlockLengthException("Expected a multiple of '16' byte entries but found '" + _length + "'");
+		this.beginTransaction();
+		try {
+			int blockCount = _length / 16;
+			this.checkBlockRange(_firstBlock, blockCount);
+			int count = 0;
+			if ( blockCount > 1 ) {
+				String readerName = this.getTerminal().getName();
+				Boolean multiBlock;
+				synchronized (MULTI_BLOCK_WRITE) { multiBlock = MULTI_BLOCK_WRITE.get(readerName); }
+				if ( multiBlock == null ) {
+					/*
+					 * The probe starts after the first block was written, so the sector is
+					 * authenticated and writable and a failure is not caused by the key
+					 * or the access conditions.
+					 */
+					int status = this.writeBlock(_keyType, _key, _keyNumber, _firstBlock, _data, _offset);
+					if ( status != StatusWord.SUCCESS )
+						return status;
+					count = 1;
+					if ( blockCount - count > 1 ) {
+						status = this.transmitWrite(_firstBlock + count, _data, _offset + 16, _length - 16);
+						if ( status == StatusWord.SUCCESS ) {
+							synchronized (MULTI_BLOCK_WRITE) { MULTI_BLOCK_WRITE.put(readerName, true); }
+							return status;
+						}
+						if ( status == StatusWord.WRONG_LENGTH || StatusWord.isNotSupported(status) )
+							synchronized (MULTI_BLOCK_WRITE) { MULTI_BLOCK_WRITE.put(readerName, false); }
+						this.invalidateAuthentication();
+					}
+				} else if ( multiBlock ) {
+					int status = this.ensureSectorLogin(_keyType, _key, _firstBlock, _keyNumber);
+					if ( status != StatusWord.SUCCESS )
+						return status;
+					return this.transmitWrite(_firstBlock, _data, _offset, _length);
+				}
+			}
+		
+			for ( ; count < blockCount; count++ ) {
+				int status = this.writeBlock(_keyType, _key, _keyNumber, _firstBlock + count, _data, _offset + count * 16);
+				if ( status != StatusWord.SUCCESS )
+					return status;
 			}
-			ResponseAPDU writeResponse = this.sendAPDUCommandToCard(writeCommand);
-			return writeResponse;
+			return StatusWord.SUCCESS;
+		} finally {
+			this.endTransaction();
 		}
-		return sectorLoginResponse;
+	}
+	
+	/**
+	 * Writes one block with its own UPDATE BINARY command.
+	 * 
+	 * @return The status word, 0x9000 if the block was written.
+	 */
+	private int writeBlock(byte _keyType, byte[] _key, byte _keyNumber, int _block, byte[] _data, int _offset) throws Exception {
+		int status = this.ensureSectorLogin(_keyType, _key, _block, _keyNumber);
+		if ( status == StatusWord.SUCCESS )
+			status = this.transmitWrite(_block, _data, _offset, 16);
+		return status;
+	}
+	
+	/**
+	 * Writes all data blocks of a sector. The sector trailer and the manufacturer
+	 * block are not touched.
+	 * 
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @param _sector The sector that should be written.
+	 * @param _data The data, 16 bytes per data block of the sector.
+	 * @return The response of the last write command or the failed response.
+	 * @throws Exception
+	 */
+	public synchronized ResponseAPDU writeSector(byte _keyType,
+			byte[] _key,
+			byte _keyNumber,
+			int _sector,
+			byte[] _data) throws Exception {
+		int firstBlock = this.layout.getFirstDataBlockOfSector(_sector);
+		int blockCount = this.layout.getDataBlockCountOfSector(_sector);
+		if ( _data.length != blockCount * 16 ) throw new WrongDataBlockLengthException("Expected '" + (blockCount * 16) + "' byte entries but found '" + _data.length + "'");
+		return this.writeBlocks(_keyType, _key, _keyNumber, firstBlock, _data);
 	}
 	
 	/**
@@ -404,12 +896,14 @@ public class BasicMifare extends BasicCard {
 			byte[] _key,
 			byte _keyNumber,
 			byte[] _data) throws Exception {
-		Vector<byte[]> blocks = HexHandler.splitArray(_data);
-		for ( int count = 0; count < this.USER_DATA_FIELDS.length; count++ ) {
-			if ( blocks.isEmpty() ) break;
-			this.writeBlockData(_keyType, _key, (byte)0x00, this.USER_DATA_FIELDS[count], _keyNumber, blocks.firstElement());
-			blocks.remove(0);
-		}
+		BlockCursor blocks = new BlockCursor(_data);
+		if ( blocks.getBlockCount() > this.layout.getDataBlockCount() )
+			throw new WrongDataBlockLengthException("The data needs '" + blocks.getBlockCount() + "' blocks, but the card has only '"
+					+ this.layout.getDataBlockCount() + "' data blocks");
+		MifareAccessPlan plan = new MifareAccessPlan(this.layout);
+		while ( blocks.next() )
+			plan.write(this.layout.getDataBlock(blocks.getIndex()), blocks.getBlock());
+		this.execute(plan, _keyType, _key, _keyNumber, null);
 	}
 	
 	/**
@@ -423,8 +917,10 @@ public class BasicMifare extends BasicCard {
 	public synchronized void formatCard(byte _keyType,
 			byte[] _key,
 			byte _keyNumber) throws Exception {
-		for ( int count = 0; count < this.USER_DATA_FIELDS.length; count++ ) {
-			this.writeBlockData(_keyType, _key, (byte)0x00, USER_DATA_FIELDS[count], _keyNumber, HexHandler.initEmptyBlock());
-		}
+		MifareAccessPlan plan = new MifareAccessPlan(this.layout);
+		byte[] emptyBlock = HexHandler.initEmptyBlock();
+		for ( int count = 0; count < this.layout.getDataBlockCount(); count++ )
+			plan.write(this.layout.getDataBlock(count), emptyBlock);
+		this.execute(plan, _keyType, _key, _keyNumber, null);
 	}
 }
@@ -0,0 +1,372 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import to.networld.schandler.interfaces.ICard.CardType;
+
+/**
+ * Immutable description of a card, derived from its ATR. Contactless storage
+ * cards are reported by PC/SC readers with the ATR defined in part 3 of the
+ * PC/SC specification:
+ * 
+ * <pre>
+ * 3B 8F 80 01 80 4F 0C A0 00 00 03 06 SS NN NN 00 00 00 00 TCK
+ * </pre>
+ * 
+ * SS is the standard of the card, NN NN the card name that is the entry in
+ * the {@link CardType} enumeration. Descriptors of the known ATRs are
+ * precomputed, use {@link #forATR(byte[])} to get one.
+ * 
+ * @author Alex Oberhauser
+ */
+public final class CardDescriptor {
+	
+	/**
+	 * The standard byte (SS) of the PC/SC part 3 ATR.
+	 */
+	public enum Standard {
+		NONE(0x00),
+		ISO14443A_1(0x01),
+		ISO14443A_2(0x02),
+		ISO14443A_3(0x03),
+		ISO14443B_1(0x05),
+		ISO14443B_2(0x06),
+		ISO14443B_3(0x07),
+		ISO15693_1(0x09),
+		ISO15693_2(0x0A),
+		ISO15693_3(0x0B),
+		ISO15693_4(0x0C),
+		ISO7816_10_I2C(0x0D),
+		ISO7816_10_EXTENDED_I2C(0x0E),
+		ISO7816_10_2WBP(0x0F),
+		ISO7816_10_3WBP(0x10),
+		FELICA(0x11),
+		LOW_FREQUENCY(0x40),
+		UNKNOWN(-1);
+		
+		private final int code;
+		
+		private Standard(int _code) {
+			this.code = _code;
+		}
+		
+		public int getCode() { return this.code; }
+		
+		/**
+		 * @param _code The standard byte of the ATR.
+		 * @return The standard or {@link #UNKNOWN}.
+		 */
+		public static Standard forCode(int _code) {
+			for ( Standard standard : values() ) {
+				if ( standard.code == _code )
+					return standard;
+			}
+			return UNKNOWN;
+		}
+	}
+	
+	private static final byte[] PCSC_RID = new byte[] { (byte)0xA0, (byte)0x00, (byte)0x00, (byte)0x03, (byte)0x06 };
+	
+	/*
+	 * Descriptors of the known ATRs and of the ATRs seen so far, keyed by the ATR bytes.
+	 */
+	private static final Map<ByteBuffer, CardDescriptor> KNOWN_ATRS = new HashMap<ByteBuffer, CardDescriptor>();
+	private static final int MAX_CACHED_ATRS = 256;
+	
+	static {
+		for ( CardType type : CardType.values() ) {
+			Standard standard = getTypicalStandard(type);
+			if ( standard != null ) {
+				CardDescriptor descriptor = parse(createStorageCardATR(standard, type));
+				KNOWN_ATRS.put(ByteBuffer.wrap(descriptor.atr), descriptor);
+			}
+		}
+	}
+	
+	private final byte[] atr;
+	private final boolean valid;
+	private final CardType cardType;
+	private final Standard standard;
+	private final byte[] historicalBytes;
+	private final int blockSize;
+	private final int blockCount;
+	private final boolean reversedUID;
+	private final boolean extendedLength;
+	
+	private CardDescriptor(byte[] _atr, boolean _valid, CardType _cardType, Standard _standard, byte[] _historicalBytes) {
+		this.atr = _atr;
+		this.valid = _valid;
+		this.cardType = _cardType;
+		this.standard = _standard;
+		this.historicalBytes = _historicalBytes;
+		int[] geometry = getGeometry(_cardType);
+		this.blockSize = geometry[0];
+		this.blockCount = geometry[1];
+		this.reversedUID = _cardType == CardType.ICODE1
+				|| _cardType == CardType.ICODEEPC
+				|| _cardType == CardType.ICODESLI
+				|| _cardType == CardType.ICODEUID
+				|| _cardType == CardType.SRF55V02P
+				|| _cardType == CardType.SRF55V02S
+				|| _cardType == CardType.SRF55V10P
+				|| _cardType == CardType.SRF55V10S;
+		this.extendedLength = hasExtendedLengthCapability(_historicalBytes);
+	}
+	
+	/**
+	 * Reads the card capabilities (compact-TLV tag 7) of historical bytes in
+	 * the format of ISO 7816-4, as found in the ATR or for example in the
+	 * data object 5F52 of an OpenPGP card.
+	 * 
+	 * @param _historical The historical bytes.
+	 * @return True if the third software function byte announces extended Lc and Le fields.
+	 */
+	public static boolean hasExtendedLengthCapability(byte[] _historical) {
+		if ( _historical.length < 1 )
+			return false;
+		int category = _historical[0] & 0xFF;
+		if ( category != 0x00 && category != 0x80 )
+			return false;
+		int end = category == 0x00 ? _historical.length - 3 : _historical.length;
+		int pos = 1;
+		while ( pos < end ) {
+			int tag = (_historical[pos] >> 4) & 0x0F;
+			int length = _historical[pos] & 0x0F;
+			if ( pos + 1 + length > end )
+				return false;
+			if ( tag == 0x07 && length >= 3 )
+				return (_historical[pos + 3] & 0x40) != 0;
+			pos += 1 + length;
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the descriptor of the ATR. Known ATRs are looked up, all other are
+	 * parsed and remembered.
+	 * 
+	 * @param _atr The ATR of the card.
+	 * @return The descriptor of the card, never null.
+	 */
+	public static CardDescriptor forATR(byte[] _atr) {
+		synchronized (KNOWN_ATRS) {
+			CardDescriptor descriptor = KNOWN_ATRS.get(ByteBuffer.wrap(_atr));
+			if ( descriptor != null )
+				return descriptor;
+		}
+		CardDescriptor descriptor = parse(_atr);
+		synchronized (KNOWN_ATRS) {
+			if ( KNOWN_ATRS.size() < MAX_CACHED_ATRS )
+				KNOWN_ATRS.put(ByteBuffer.wrap(descriptor.atr), descriptor);
+		}
+		return descriptor;
+	}
+	
+	/**
+	 * Parses the ATR according to ISO 7816-3 and reads the card type and
+	 * standard from the historical bytes if they follow PC/SC part 3. If the
+	 * structure or the check byte is wrong, the descriptor is marked as
+	 * invalid and the card type is {@link CardType#UNKNOWN}.
+	 * 
+	 * @param _atr The ATR of the card.
+	 * @return The descriptor of the card, never null.
+	 */
+	public static CardDescriptor parse(byte[] _atr) {
+		byte[] atr = _atr.clone();
+		if ( atr.length < 2 || (atr[0] != (byte)0x3B && atr[0] != (byte)0x3F) )
+			return invalid(atr);
+		int historicalCount = atr[1] & 0x0F;
+		int indicator = atr[1] & 0xF0;
+		boolean checkByte = false;
+		int pos = 2;
+		while ( true ) {
+			pos += Integer.bitCount(indicator & 0x70);
+			if ( (indicator & 0x80) == 0 )
+				break;
+			if ( pos >= atr.length )
+				return invalid(atr);
+			int td = atr[pos++] & 0xFF;
+			if ( (td & 0x0F) != 0 )
+				checkByte = true;
+			indicator = td & 0xF0;
+		}
+		int end = pos + historicalCount;
+		if ( atr.length != end + (checkByte ? 1 : 0) )
+			return invalid(atr);
+		if ( checkByte ) {
+			int tck = 0;
+			for ( int count = 1; count < atr.length; count++ )
+				tck ^= atr[count];
+			if ( tck != 0 )
+				return invalid(atr);
+		}
+		byte[] historical = new byte[historicalCount];
+		System.arraycopy(atr, pos, historical, 0, historicalCount);
+		
+		CardType type = CardType.UNKNOWN;
+		Standard standard = Standard.UNKNOWN;
+		if ( isStorageCard(historical) ) {
+			standard = Standard.forCode(historical[8] & 0xFF);
+			int name = ((historical[9] & 0xFF) << 8) | (historical[10] & 0xFF);
+			if ( name < CardType.UNKNOWN.ordinal() )
+				type = CardType.values()[name];
+		}
+		return new CardDescriptor(atr, true, type, standard, historical);
+	}
+	
+	private static CardDescriptor invalid(byte[] _atr) {
+		return new CardDescriptor(_atr, false, CardType.UNKNOWN, Standard.UNKNOWN, new byte[0]);
+	}
+	
+	/**
+	 * Category indicator 0x80, AID tag 0x4F with the PC/SC RID, standard and card name.
+	 */
+	private static boolean isStorageCard(byte[] _historical) {
+		if ( _historical.length < 11 || _historical[0] != (byte)0x80 || _historical[1] != (byte)0x4F )
+			return false;
+		int length = _historical[2] & 0xFF;
+		if ( length < 8 || _historical.length < 3 + length )
+			return false;
+		for ( int count = 0; count < PCSC_RID.length; count++ ) {
+			if ( _historical[3 + count] != PCSC_RID[count] )
+				return false;
+		}
+		return true;
+	}
+	
+	private static byte[] createStorageCardATR(Standard _standard, CardType _type) {
+		byte[] atr = new byte[] { (byte)0x3B, (byte)0x8F, (byte)0x80, (byte)0x01, (byte)0x80, (byte)0x4F, (byte)0x0C,
+				(byte)0xA0, (byte)0x00, (byte)0x00, (byte)0x03, (byte)0x06, (byte)_standard.getCode(),
+				(byte)(_type.ordinal() >> 8), (byte)_type.ordinal(), (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00, (byte)0x00 };
+		byte tck = 0;
+		for ( int count = 1; count < atr.length - 1; count++ )
+			tck ^= atr[count];
+		atr[atr.length - 1] = tck;
+		return atr;
+	}
+	
+	/**
+	 * @return The standard the readers report for the card type, null if there is no precomputed ATR.
+	 */
+	private static Standard getTypicalStandard(CardType _type) {
+		switch ( _type ) {
+			case Mifare1K:
+			case Mifare4K:
+			case MifareMini:
+			case MifareUltraLight:
+				return Standard.ISO14443A_3;
+			case SR176:
+			case SRIX4K:
+				return Standard.ISO14443B_3;
+			case SRF55V10P:
+			case SRF55V02P:
+			case SRF55V10S:
+			case SRF55V02S:
+			case TAG_IT:
+			case LRI512:
+			case LRI64:
+			case LRI12:
+			case LRI128:
+			case ICODESLI:
+			case ICODE1:
+			case ICODEUID:
+			case ICODEEPC:
+			case TEMPSENS:
+				return Standard.ISO15693_3;
+			default:
+				return null;
+		}
+	}
+	
+	/**
+	 * @return The block size in bytes and the number of blocks, 0 if not known.
+	 */
+	private static int[] getGeometry(CardType _type) {
+		switch ( _type ) {
+			case MifareMini:
+				return new int[] { MifareLayout.BLOCK_SIZE, MifareLayout.MINI.getBlockCount() };
+			case Mifare1K:
+				return new int[] { MifareLayout.BLOCK_SIZE, MifareLayout.CLASSIC_1K.getBlockCount() };
+			case Mifare4K:
+				return new int[] { MifareLayout.BLOCK_SIZE, MifareLayout.CLASSIC_4K.getBlockCount() };
+			case MifareUltraLight:
+				return new int[] { 4, 16 };
+			case ICODESLI:
+				return new int[] { 4, 28 };
+			case LRI512:
+				return new int[] { 4, 16 };
+			default:
+				return new int[] { 0, 0 };
+		}
+	}
+	
+	/**
+	 * @return A copy of the ATR.
+	 */
+	public byte[] getATR() { return this.atr.clone(); }
+	
+	/**
+	 * @return False if the ATR violates the structure of ISO 7816-3 or has a wrong check byte.
+	 */
+	public boolean isValid() { return this.valid; }
+	
+	public CardType getCardType() { return this.cardType; }
+	
+	/**
+	 * @return The standard of a PC/SC part 3 storage card, otherwise {@link Standard#UNKNOWN}.
+	 */
+	public Standard getStandard() { return this.standard; }
+	
+	/**
+	 * @return A copy of the historical bytes.
+	 */
+	public byte[] getHistoricalBytes() { return this.historicalBytes.clone(); }
+	
+	/**
+	 * @return The block size in bytes, 0 if not known.
+	 */
+	public int getBlockSize() { return this.blockSize; }
+	
+	/**
+	 * @return The number of blocks, 0 if not known.
+	 */
+	public int getBlockCount() { return this.blockCount; }
+	
+	/**
+	 * @return True if the reader returns the UID of the card in reverse order.
+	 */
+	public boolean isReversedUID() { return this.reversedUID; }
+	
+	/**
+	 * @return True if the card capabilities of the historical bytes announce extended Lc and Le fields.
+	 */
+	public boolean isExtendedLengthSupported() { return this.extendedLength; }
+	
+	@Override
+	public String toString() {
+		return this.cardType + " (" + this.standard + ")";
+	}
+}
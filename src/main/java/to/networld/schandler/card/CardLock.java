@@ -0,0 +1,105 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.card;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardException;
+
+/**
+ * Serialises the exclusive access of all clients of one card inside the JVM.
+ * {@link Card#beginExclusive()} fails instead of waiting if another thread
+ * holds the card, and while it is held the commands of all other threads fail,
+ * also on logical channels. Therefore every client waits here until the card
+ * is free and takes the exclusive access only then.<p/>
+ * 
+ * The lock is reentrant per thread, the card is held exclusively from the
+ * first {@link #lock(Card)} until the matching last {@link #unlock(Card)}.
+ * 
+ * @author Alex Oberhauser
+ */
+final class CardLock {
+	private static final Map<Card, CardLock> LOCKS = new WeakHashMap<Card, CardLock>();
+	
+	private Thread owner = null;
+	private int holds = 0;
+	
+	private CardLock() {
+	}
+	
+	/**
+	 * @param _card The connected card.
+	 * @return The lock of the card.
+	 */
+	static CardLock forCard(Card _card) {
+		synchronized (LOCKS) {
+			CardLock lock = LOCKS.get(_card);
+			if ( lock == null ) {
+				lock = new CardLock();
+				LOCKS.put(_card, lock);
+			}
+			return lock;
+		}
+	}
+	
+	/**
+	 * Waits until no other thread holds the card and acquires the exclusive access.
+	 * 
+	 * @param _card The card of this lock.
+	 * @throws CardException If the exclusive access fails or the thread is interrupted.
+	 */
+	synchronized void lock(Card _card) throws CardException {
+		Thread current = Thread.currentThread();
+		if ( this.owner != current ) {
+			while ( this.owner != null ) {
+				try {
+					this.wait();
+				} catch (InterruptedException e) {
+					current.interrupt();
+					throw new CardException("Interrupted while waiting for the exclusive access to the card", e);
+				}
+			}
+			_card.beginExclusive();
+			this.owner = current;
+		}
+		this.holds++;
+	}
+	
+	/**
+	 * Releases the exclusive access if the outermost lock of the thread ends.
+	 * 
+	 * @param _card The card of this lock.
+	 * @throws CardException
+	 */
+	synchronized void unlock(Card _card) throws CardException {
+		if ( this.owner != Thread.currentThread() )
+			throw new IllegalMonitorStateException("The card is not held by the current thread");
+		if ( --this.holds > 0 )
+			return;
+		this.owner = null;
+		this.notifyAll();
+		_card.endExclusive();
+	}
+}
@@ -18,10 +18,23 @@
  * along with this software.  If not, see <http://www.gnu.org/licenses/>
  */
 
+
 package to.networld.schandler.card;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.smartcardio.CardException;
 import javax.smartcardio.CardTerminal;
 
+import to.networld.schandler.common.BerTlv;
+import to.networld.schandler.common.exceptions.MalformedTLVException;
+
 /**
  * Implements functionality of RFID card implemented with the 
  * ISO 15693 specification.<p/>
@@ -29,13 +42,77 @@ import javax.smartcardio.CardTerminal;
  * The {@link BasicCard#getUID()} method from the super class 
  * is able to detect the card type and reverse the gained UID.<p/>
  * 
- * <b>TODO:</b> Add more specialized methods for the card handling. 
- *              At the moment is only possible to read out the UID 
- *              from the card.
+ * The blocks are accessed with the ISO 15693 commands READ MULTIPLE BLOCKS
+ * and WRITE MULTIPLE BLOCKS, sent with the transparent exchange of the reader
+ * (PC/SC part 3, INS 0xC2). If the reader does not support it the PC/SC
+ * storage card commands READ BINARY and UPDATE BINARY are used instead.<p/>
+ * 
+ * With the transparent exchange all tags in the field could be found with
+ * {@link #inventory()} and accessed with their UID, without a connection per tag.
  * 
  * @author Alex Oberhauser
  */
 public class ISO15693 extends BasicCard {
+	/*
+	 * ISO 15693-3 request flags and commands.
+	 */
+	public static final int FLAG_HIGH_DATA_RATE = 0x02;
+	public static final int FLAG_INVENTORY = 0x04;
+	public static final int FLAG_ADDRESS = 0x20;
+	public static final int FLAG_ONE_SLOT = 0x20;
+	public static final int FLAG_OPTION = 0x40;
+	public static final int INVENTORY = 0x01;
+	public static final int READ_SINGLE_BLOCK = 0x20;
+	public static final int WRITE_SINGLE_BLOCK = 0x21;
+	public static final int READ_MULTIPLE_BLOCKS = 0x23;
+	public static final int WRITE_MULTIPLE_BLOCKS = 0x24;
+	public static final int GET_SYSTEM_INFORMATION = 0x2B;
+	
+	/**
+	 * Collision resolution of {@link ISO15693#inventory(InventoryMode)}.
+	 */
+	public enum InventoryMode {
+		/** Every collision is split with one more mask bit, needs the fewest requests for a few tags. */
+		SINGLE_SLOT,
+		/** Every collision is split into 16 slots with four more mask bits, faster for many tags. */
+		SIXTEEN_SLOTS
+	}
+	
+	/*
+	 * Outcome of one request with the transparent exchange.
+	 */
+	private static final int TAG_RESPONSE = 0;
+	private static final int NO_RESPONSE = 1;
+	private static final int COLLISION = 2;
+	
+	/*
+	 * Generic error of the transparent exchange if no tag answered in time.
+	 */
+	private static final int NO_RESPONSE_ERROR = 0x6401;
+	
+	/*
+	 * Maximal number of addressed tags whose system information is kept.
+	 */
+	private static final int MAX_ADDRESSED_TAGS = 256;
+	
+	/**
+	 * The number of blocks that are read with one READ MULTIPLE BLOCKS by default.
+	 */
+	public static final int DEFAULT_MAX_BLOCKS_PER_READ = 32;
+	
+	/*
+	 * Remembers per reader name if the transparent exchange and READ BINARY of
+	 * more than one block are supported. No entry means not tested yet.
+	 */
+	private static final Map<String, Boolean> TRANSPARENT_EXCHANGE = new HashMap<String, Boolean>();
+	private static final Map<String, Boolean> MULTI_BLOCK_READ = new HashMap<String, Boolean>();
+	
+	private final ByteBuffer frame = ByteBuffer.allocate(252);
+	private int maxBlocksPerRead = DEFAULT_MAX_BLOCKS_PER_READ;
+	private boolean sessionOpen = false;
+	private ISO15693SystemInfo systemInfo = null;
+	private final Map<ByteBuffer, ISO15693SystemInfo> addressedInfos = new HashMap<ByteBuffer, ISO15693SystemInfo>();
+	private Boolean writeMultiple = null;
 	
 	/**
 	 * @param terminal
@@ -45,4 +122,636 @@ public class ISO15693 extends BasicCard {
 		super(terminal, protocol);
 	}
 	
+	@Override
+	protected void resetSessionState() {
+		super.resetSessionState();
+		this.sessionOpen = false;
+		this.systemInfo = null;
+		this.addressedInfos.clear();
+		this.writeMultiple = null;
+	}
+	
+	/**
+	 * @param _maxBlocks The maximal number of blocks of one READ MULTIPLE BLOCKS command.
+	 */
+	public synchronized void setMaxBlocksPerRead(int _maxBlocks) {
+		if ( _maxBlocks < 1 || _maxBlocks > 256 ) throw new IllegalArgumentException("Invalid number of blocks '" + _maxBlocks + "'");
+		this.maxBlocksPerRead = _maxBlocks;
+	}
+	
+	public synchronized int getMaxBlocksPerRead() { return this.maxBlocksPerRead; }
+	
+	/**
+	 * @return True if the reader forwards ISO 15693 commands with the transparent exchange.
+	 * @throws CardException
+	 */
+	public synchronized boolean isTransparentExchangeSupported() throws CardException {
+		if ( this.sessionOpen )
+			return true;
+		Boolean supported;
+		synchronized (TRANSPARENT_EXCHANGE) { supported = TRANSPARENT_EXCHANGE.get(this.getTerminal().getName()); }
+		if ( supported == null ) {
+			this.beginTransaction();
+			try {
+				supported = this.openSession();
+				if ( supported )
+					this.closeSession();
+			} finally {
+				this.endTransaction();
+			}
+		}
+		return supported;
+	}
+	
+	/**
+	 * Starts a transparent session if the reader supports it and no session is open.
+	 * 
+	 * @return True if a session is open.
+	 */
+	private boolean openSession() throws CardException {
+		if ( this.sessionOpen )
+			return true;
+		String readerName = this.getTerminal().getName();
+		Boolean supported;
+		synchronized (TRANSPARENT_EXCHANGE) { supported = TRANSPARENT_EXCHANGE.get(readerName); }
+		if ( supported != null && !supported )
+			return false;
+		this.beginCommand(0xFF, 0xC2, 0x00, 0x00).put((byte)0x02).put((byte)0x81).put((byte)0x00).put((byte)0x00);
+		int sw = this.transmit();
+		if ( sw == StatusWord.SUCCESS )
+			sw = this.getGenericError();
+		boolean opened = sw == StatusWord.SUCCESS;
+		/**
+		 * Only a definitive answer is remembered, after other errors the reader is asked again.
+		 */
+		if ( supported == null && (opened || StatusWord.isNotSupported(sw)) )
+			synchronized (TRANSPARENT_EXCHANGE) { TRANSPARENT_EXCHANGE.put(readerName, opened); }
+		this.sessionOpen = opened;
+		return opened;
+	}
+	
+	/**
+	 * Ends the transparent session, the reader continues with its own polling.
+	 */
+	private void closeSession() throws CardException {
+		this.sessionOpen = false;
+		this.beginCommand(0xFF, 0xC2, 0x00, 0x00).put((byte)0x02).put((byte)0x82).put((byte)0x00).put((byte)0x00);
+		this.transmit();
+	}
+	
+	/**
+	 * @return The status word of the generic error data object 0xC0, 0x9000 if not present.
+	 */
+	private int getGenericError() throws CardException {
+		BerTlv error = this.findResponseObject(0xC0);
+		if ( error == null || error.getLength() < 3 )
+			return StatusWord.SUCCESS;
+		ByteBuffer value = error.getValue();
+		return StatusWord.toInt(value.get(1), value.get(2));
+	}
+	
+	private BerTlv findResponseObject(int _tag) throws CardException {
+		try {
+			return BerTlv.search(this.responseBuffer.duplicate(), _tag);
+		} catch (MalformedTLVException e) {
+			throw new CardException("Malformed transparent exchange response", e);
+		}
+	}
+	
+	/**
+	 * Starts a new ISO 15693 request in the reusable frame buffer.
+	 * 
+	 * @param _command The ISO 15693 command.
+	 * @param _option True if the option flag should be set.
+	 * @param _uid The UID of the addressed tag MSB first, null for the selected tag.
+	 * @return The frame buffer, positioned after the command or the UID.
+	 */
+	private ByteBuffer beginFrame(int _command, boolean _option, byte[] _uid) {
+		this.frame.clear();
+		int flags = FLAG_HIGH_DATA_RATE | (_option ? FLAG_OPTION : 0) | (_uid != null ? FLAG_ADDRESS : 0);
+		this.frame.put((byte)flags).put((byte)_command);
+		if ( _uid != null ) {
+			if ( _uid.length != 8 )
+				throw new IllegalArgumentException("The UID needs '8' bytes but has '" + _uid.length + "'");
+			/**
+			 * The UID is sent LSB first.
+			 */
+			for ( int count = 7; count >= 0; count-- )
+				this.frame.put(_uid[count]);
+		}
+		return this.frame;
+	}
+	
+	/**
+	 * Sends the request of the frame buffer with the transparent exchange. A
+	 * session has to be open, see {@link #openSession()}. Afterwards the
+	 * response of the tag without the flags byte is in the response buffer
+	 * between the position and the limit.
+	 * 
+	 * @throws CardException If the reader or the tag reports an error.
+	 */
+	private void transceive() throws CardException {
+		int result = this.exchangeFrame();
+		if ( result == NO_RESPONSE )
+			throw new CardException("No response of the tag");
+		if ( result == COLLISION )
+			throw new CardException("Collision of several tags, address the tag with its UID");
+		int flags = this.responseBuffer.get(this.responseBuffer.position()) & 0xFF;
+		if ( (flags & 0x01) != 0 ) {
+			int code = this.responseBuffer.remaining() > 1 ? this.responseBuffer.get(this.responseBuffer.position() + 1) & 0xFF : 0x0F;
+			throw new CardException("ISO 15693 error '" + Integer.toHexString(code) + "': " + getErrorMessage(code));
+		}
+		this.responseBuffer.position(this.responseBuffer.position() + 1);
+	}
+	
+	/**
+	 * Sends the request of the frame buffer with the transparent exchange.
+	 * Afterwards the response of the tag with the flags byte is in the
+	 * response buffer between the position and the limit.
+	 * 
+	 * @return {@link #TAG_RESPONSE}, {@link #NO_RESPONSE} or {@link #COLLISION}.
+	 * @throws CardException If the reader rejects the request.
+	 */
+	private int exchangeFrame() throws CardException {
+		this.frame.flip();
+		int length = this.frame.remaining();
+		ByteBuffer command = this.beginCommand(0xFF, 0xC2, 0x00, 0x01);
+		if ( length > 127 )
+			command.put((byte)(length + 3)).put((byte)0x95).put((byte)0x81).put((byte)length);
+		else
+			command.put((byte)(length + 2)).put((byte)0x95).put((byte)length);
+		command.put(this.frame).put((byte)0x00);
+		int sw = this.transmit();
+		if ( sw != StatusWord.SUCCESS )
+			throw new CardException("Transparent exchange failed: " + StatusWord.ISO7816.getMessage(sw));
+		int error = this.getGenericError();
+		if ( error == NO_RESPONSE_ERROR )
+			return NO_RESPONSE;
+		/**
+		 * The response status reports CRC, collision, parity and framing errors,
+		 * that are caused by several tags that answer at the same time.
+		 */
+		BerTlv status = this.findResponseObject(0x96);
+		if ( status != null && status.getLength() > 0 && this.responseBuffer.get(status.getValueOffset()) != 0x00 )
+			return COLLISION;
+		if ( error != StatusWord.SUCCESS )
+			throw new CardException("Transparent exchange failed: " + StatusWord.ISO7816.getMessage(error));
+		BerTlv response = this.findResponseObject(0x97);
+		if ( response == null || response.getLength() == 0 )
+			return NO_RESPONSE;
+		this.responseBuffer.limit(response.getValueOffset() + response.getLength());
+		this.responseBuffer.position(response.getValueOffset());
+		return TAG_RESPONSE;
+	}
+	
+	/**
+	 * @param _code The error code of ISO 15693-3.
+	 * @return The description of the error code.
+	 */
+	public static String getErrorMessage(int _code) {
+		switch ( _code ) {
+			case 0x01: return "The command is not supported";
+			case 0x02: return "The command is not recognised";
+			case 0x03: return "The option is not supported";
+			case 0x0F: return "Unknown error";
+			case 0x10: return "The specified block is not available";
+			case 0x11: return "The specified block is already locked";
+			case 0x12: return "The specified block is locked and its content cannot be changed";
+			case 0x13: return "The specified block was not successfully programmed";
+			case 0x14: return "The specified block was not successfully locked";
+			default: return _code >= 0xA0 && _code <= 0xDF ? "Custom command error code" : "Reserved error code";
+		}
+	}
+	
+	/**
+	 * Reads the memory geometry once per session with GET SYSTEM INFORMATION. If
+	 * the reader does not support the transparent exchange the geometry is taken
+	 * from the ATR, see {@link CardDescriptor#getBlockSize()}.
+	 * 
+	 * @return The system information of the tag.
+	 * @throws CardException
+	 */
+	public synchronized ISO15693SystemInfo getSystemInfo() throws CardException {
+		if ( this.systemInfo != null )
+			return this.systemInfo;
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = !this.sessionOpen && this.openSession();
+			if ( this.sessionOpen ) {
+				this.systemInfo = this.requestSystemInfo(null);
+			} else {
+				CardDescriptor descriptor = this.getCardDescriptor();
+				byte[] uidBytes = new byte[8];
+				int length = this.getUID(uidBytes, 0);
+				byte[] uid = new byte[length];
+				System.arraycopy(uidBytes, 0, uid, 0, length);
+				this.systemInfo = new ISO15693SystemInfo(uid, -1, -1,
+						descriptor == null ? 0 : descriptor.getBlockSize(),
+						descriptor == null ? 0 : descriptor.getBlockCount(), -1);
+			}
+			return this.systemInfo;
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Reads the memory geometry of a tag in the field with an addressed GET SYSTEM
+	 * INFORMATION, the result is kept for the session. Needs the transparent exchange.
+	 * 
+	 * @param _uid The UID of the tag MSB first, see {@link #inventory()}.
+	 * @return The system information of the tag.
+	 * @throws CardException
+	 */
+	public synchronized ISO15693SystemInfo getSystemInfo(byte[] _uid) throws CardException {
+		ByteBuffer key = ByteBuffer.wrap(_uid);
+		ISO15693SystemInfo info = this.addressedInfos.get(key);
+		if ( info != null )
+			return info;
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = this.openAddressedSession();
+			info = this.requestSystemInfo(_uid);
+			if ( this.addressedInfos.size() >= MAX_ADDRESSED_TAGS )
+				this.addressedInfos.clear();
+			this.addressedInfos.put(ByteBuffer.wrap(_uid.clone()), info);
+			return info;
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	private ISO15693SystemInfo requestSystemInfo(byte[] _uid) throws CardException {
+		this.beginFrame(GET_SYSTEM_INFORMATION, false, _uid);
+		this.transceive();
+		return ISO15693SystemInfo.parse(this.responseBuffer.array(),
+				this.responseBuffer.position(), this.responseBuffer.remaining());
+	}
+	
+	/**
+	 * Opens the transparent session for addressed commands.
+	 * 
+	 * @return True if the session was opened by this call.
+	 * @throws CardException If the reader does not support the transparent exchange.
+	 */
+	private boolean openAddressedSession() throws CardException {
+		boolean opened = !this.sessionOpen && this.openSession();
+		if ( !this.sessionOpen )
+			throw new CardException("Addressed commands need the transparent exchange of the reader");
+		return opened;
+	}
+	
+	/**
+	 * @return The block size of the tag.
+	 * @throws CardException If the block size is not known.
+	 */
+	private static int getKnownBlockSize(ISO15693SystemInfo _info) throws CardException {
+		if ( _info.getBlockSize() == 0 )
+			throw new CardException("The memory geometry of the tag is not known");
+		return _info.getBlockSize();
+	}
+	
+	/**
+	 * Reads consecutive blocks with as few commands as possible.
+	 * 
+	 * @param _firstBlock The first block.
+	 * @param _blockCount The number of blocks.
+	 * @param _dst The array for the block data, needs space for block size * block count bytes.
+	 * @param _offset The offset in the array.
+	 * @throws CardException
+	 */
+	public synchronized void readBlocks(int _firstBlock, int _blockCount, byte[] _dst, int _offset) throws CardException {
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = !this.sessionOpen && this.openSession();
+			this.readBlocks(null, this.getSystemInfo(), _firstBlock, _blockCount, _dst, _offset);
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Reads consecutive blocks of a tag in the field with addressed commands,
+	 * without a connection to the tag. Needs the transparent exchange.
+	 * 
+	 * @param _uid The UID of the tag MSB first, see {@link #inventory()}.
+	 * @param _firstBlock The first block.
+	 * @param _blockCount The number of blocks.
+	 * @param _dst The array for the block data, needs space for block size * block count bytes.
+	 * @param _offset The offset in the array.
+	 * @throws CardException
+	 */
+	public synchronized void readBlocks(byte[] _uid, int _firstBlock, int _blockCount, byte[] _dst, int _offset) throws CardException {
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = this.openAddressedSession();
+			this.readBlocks(_uid, this.getSystemInfo(_uid), _firstBlock, _blockCount, _dst, _offset);
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	private void readBlocks(byte[] _uid, ISO15693SystemInfo _info, int _firstBlock, int _blockCount, byte[] _dst, int _offset) throws CardException {
+		int blockSize = getKnownBlockSize(_info);
+		checkBlockRange(_info, _firstBlock, _blockCount);
+		int count = 0;
+		while ( count < _blockCount ) {
+			int chunk;
+			if ( this.sessionOpen ) {
+				chunk = Math.min(_blockCount - count, this.maxBlocksPerRead);
+				this.beginFrame(chunk == 1 ? READ_SINGLE_BLOCK : READ_MULTIPLE_BLOCKS, false, _uid)
+					.put((byte)(_firstBlock + count));
+				if ( chunk > 1 )
+					this.frame.put((byte)(chunk - 1));
+				this.transceive();
+			} else {
+				chunk = this.readBinary(_firstBlock + count, _blockCount - count, blockSize);
+			}
+			int length = chunk * blockSize;
+			if ( this.responseBuffer.remaining() != length )
+				throw new CardException("Expected '" + length + "' bytes from block " + (_firstBlock + count) + " but found '" + this.responseBuffer.remaining() + "'");
+			this.responseBuffer.get(_dst, _offset + count * blockSize, length);
+			count += chunk;
+		}
+	}
+	
+	/**
+	 * Reads blocks with READ BINARY, more than one block if the reader supports it.
+	 * 
+	 * @return The number of blocks in the response buffer.
+	 */
+	private int readBinary(int _block, int _blockCount, int _blockSize) throws CardException {
+		String readerName = this.getTerminal().getName();
+		Boolean multiBlock;
+		synchronized (MULTI_BLOCK_READ) { multiBlock = MULTI_BLOCK_READ.get(readerName); }
+		int chunk = Math.min(_blockCount, 256 / _blockSize);
+		if ( chunk > 1 && (multiBlock == null || multiBlock) ) {
+			int length = chunk * _blockSize;
+			this.beginCommand(0xFF, 0xB0, _block >> 8, _block).put((byte)length);
+			int sw = this.transmit();
+			if ( sw == StatusWord.SUCCESS && this.responseBuffer.remaining() == length ) {
+				if ( multiBlock == null )
+					synchronized (MULTI_BLOCK_READ) { MULTI_BLOCK_READ.put(readerName, true); }
+				return chunk;
+			}
+			/**
+			 * The blocks are in the memory range, so a shorter response or a
+			 * rejected Le means the reader reads one block at a time. Other
+			 * errors are not remembered and the single block read decides.
+			 */
+			if ( sw == StatusWord.SUCCESS || sw == StatusWord.WRONG_LENGTH
+					|| (sw & 0xFF00) == StatusWord.WRONG_LE || StatusWord.isNotSupported(sw) )
+				synchronized (MULTI_BLOCK_READ) { MULTI_BLOCK_READ.put(readerName, false); }
+		}
+		this.beginCommand(0xFF, 0xB0, _block >> 8, _block).put((byte)_blockSize);
+		int sw = this.transmit();
+		if ( sw != StatusWord.SUCCESS )
+			throw new CardException("Unable to read block " + _block + ": " + StatusWord.ISO7816.getMessage(sw));
+		return 1;
+	}
+	
+	/**
+	 * @param _block The block number.
+	 * @return The data of the block.
+	 * @throws CardException
+	 */
+	public synchronized byte[] readBlock(int _block) throws CardException {
+		byte[] data = new byte[getKnownBlockSize(this.getSystemInfo())];
+		this.readBlocks(_block, 1, data, 0);
+		return data;
+	}
+	
+	/**
+	 * Reads the whole user memory with the fewest exchanges the reader allows.
+	 * 
+	 * @return The memory of the tag.
+	 * @throws CardException If the memory geometry is not known.
+	 */
+	public synchronized byte[] readAll() throws CardException {
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = !this.sessionOpen && this.openSession();
+			ISO15693SystemInfo info = this.getSystemInfo();
+			byte[] memory = new byte[getKnownBlockSize(info) * info.getBlockCount()];
+			this.readBlocks(null, info, 0, info.getBlockCount(), memory, 0);
+			return memory;
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Reads the whole user memory of a tag in the field with addressed commands.
+	 * 
+	 * @param _uid The UID of the tag MSB first, see {@link #inventory()}.
+	 * @return The memory of the tag.
+	 * @throws CardException If the memory geometry is not known.
+	 */
+	public synchronized byte[] readAll(byte[] _uid) throws CardException {
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = this.openAddressedSession();
+			ISO15693SystemInfo info = this.getSystemInfo(_uid);
+			byte[] memory = new byte[getKnownBlockSize(info) * info.getBlockCount()];
+			this.readBlocks(_uid, info, 0, info.getBlockCount(), memory, 0);
+			return memory;
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Finds all tags in the field with 16 slot collision resolution.
+	 * 
+	 * @return The UIDs of the tags MSB first.
+	 * @throws CardException
+	 * @see #inventory(InventoryMode)
+	 */
+	public synchronized List<byte[]> inventory() throws CardException {
+		return this.inventory(InventoryMode.SIXTEEN_SLOTS);
+	}
+	
+	/**
+	 * Finds all tags in the field with the ISO 15693 anticollision. The first
+	 * INVENTORY is sent without mask, a collision is resolved by repeating it
+	 * with longer masks of the UID. The transparent exchange is not able to
+	 * send the EOF between the slots, so the 16 slots are sent as 16 one slot
+	 * requests with four more mask bits. Needs the transparent exchange.
+	 * 
+	 * @param _mode The collision resolution.
+	 * @return The UIDs of the tags MSB first, every tag once.
+	 * @throws CardException
+	 */
+	public synchronized List<byte[]> inventory(InventoryMode _mode) throws CardException {
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = this.openAddressedSession();
+			List<byte[]> uids = new ArrayList<byte[]>();
+			Set<ByteBuffer> seen = new HashSet<ByteBuffer>();
+			if ( this.inventorySlot(0, 0L, uids, seen) == COLLISION )
+				this.resolveCollision(_mode == InventoryMode.SIXTEEN_SLOTS ? 4 : 1, 0, 0L, uids, seen);
+			return uids;
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Splits the tags that match the mask into 2^bits groups and repeats the INVENTORY per group.
+	 */
+	private void resolveCollision(int _bits, int _maskLength, long _mask, List<byte[]> _uids, Set<ByteBuffer> _seen) throws CardException {
+		int maskLength = Math.min(_maskLength + _bits, 64);
+		if ( maskLength == _maskLength )
+			throw new CardException("Unable to resolve the collision of tags with the same UID");
+		for ( long value = 0; value < (1L << (maskLength - _maskLength)); value++ ) {
+			long mask = _mask | (value << _maskLength);
+			if ( this.inventorySlot(maskLength, mask, _uids, _seen) == COLLISION )
+				this.resolveCollision(_bits, maskLength, mask, _uids, _seen);
+		}
+	}
+	
+	/**
+	 * Appends a one slot INVENTORY request to the frame. The mask is sent LSB
+	 * first in as many bytes as the mask length needs, the bits above the mask
+	 * length are cleared.
+	 * 
+	 * @param _frame The frame buffer.
+	 * @param _maskLength The number of mask bits, 0 to 64.
+	 * @param _mask The mask, the first UID bit in the lowest bit.
+	 * @return The frame buffer.
+	 */
+	static ByteBuffer putInventoryRequest(ByteBuffer _frame, int _maskLength, long _mask) {
+		if ( _maskLength < 0 || _maskLength > 64 )
+			throw new IllegalArgumentException("Invalid mask length '" + _maskLength + "'");
+		_frame.put((byte)(FLAG_HIGH_DATA_RATE | FLAG_INVENTORY | FLAG_ONE_SLOT)).put((byte)INVENTORY).put((byte)_maskLength);
+		long mask = _maskLength == 64 ? _mask : _mask & ((1L << _maskLength) - 1);
+		for ( int count = 0; count < (_maskLength + 7) / 8; count++ )
+			_frame.put((byte)(mask >>> (count * 8)));
+		return _frame;
+	}
+	
+	/**
+	 * Sends a one slot INVENTORY with the mask and adds the UID of the answering tag.
+	 * 
+	 * @return {@link #TAG_RESPONSE}, {@link #NO_RESPONSE} or {@link #COLLISION}.
+	 */
+	private int inventorySlot(int _maskLength, long _mask, List<byte[]> _uids, Set<ByteBuffer> _seen) throws CardException {
+		this.frame.clear();
+		putInventoryRequest(this.frame, _maskLength, _mask);
+		int result = this.exchangeFrame();
+		if ( result != TAG_RESPONSE )
+			return result;
+		int position = this.responseBuffer.position();
+		if ( this.responseBuffer.remaining() < 10 || (this.responseBuffer.get(position) & 0x01) != 0 )
+			return COLLISION;
+		byte[] uid = new byte[8];
+		/**
+		 * The flags and the DSFID are followed by the UID LSB first.
+		 */
+		for ( int count = 0; count < 8; count++ )
+			uid[7 - count] = this.responseBuffer.get(position + 2 + count);
+		if ( _seen.add(ByteBuffer.wrap(uid)) )
+			_uids.add(uid);
+		return TAG_RESPONSE;
+	}
+	
+	/**
+	 * Writes consecutive blocks. With the transparent exchange WRITE MULTIPLE
+	 * BLOCKS is used if the tag supports it, otherwise every block is written
+	 * on its own.
+	 * 
+	 * @param _firstBlock The first block.
+	 * @param _data The array with the data, a multiple of the block size.
+	 * @param _offset The offset of the data.
+	 * @param _length The length of the data.
+	 * @throws CardException
+	 */
+	public synchronized void writeBlocks(int _firstBlock, byte[] _data, int _offset, int _length) throws CardException {
+		this.beginTransaction();
+		boolean opened = false;
+		try {
+			opened = !this.sessionOpen && this.openSession();
+			ISO15693SystemInfo info = this.getSystemInfo();
+			int blockSize = getKnownBlockSize(info);
+			if ( _length % blockSize != 0 )
+				throw new IllegalArgumentException("The data length '" + _length + "' is not a multiple of the block size '" + blockSize + "'");
+			int blockCount = _length / blockSize;
+			checkBlockRange(info, _firstBlock, blockCount);
+			/**
+			 * Tag-it HF-I tags only accept writes with the option flag.
+			 */
+			boolean option = this.getCardType() == CardType.TAG_IT;
+			int count = 0;
+			while ( count < blockCount ) {
+				int block = _firstBlock + count;
+				int position = _offset + count * blockSize;
+				if ( !this.sessionOpen ) {
+					this.beginCommand(0xFF, 0xD6, block >> 8, block).put((byte)blockSize).put(_data, position, blockSize);
+					int sw = this.transmit();
+					if ( sw != StatusWord.SUCCESS )
+						throw new CardException("Unable to write block " + block + ": " + StatusWord.ISO7816.getMessage(sw));
+					count++;
+					continue;
+				}
+				int chunk = Math.min(blockCount - count, (this.frame.capacity() - 4) / blockSize);
+				if ( chunk > 1 && (this.writeMultiple == null || this.writeMultiple) ) {
+					this.beginFrame(WRITE_MULTIPLE_BLOCKS, option, null).put((byte)block).put((byte)(chunk - 1))
+						.put(_data, position, chunk * blockSize);
+					try {
+						this.transceive();
+						this.writeMultiple = true;
+						count += chunk;
+						continue;
+					} catch (CardException e) {
+						if ( this.writeMultiple != null )
+							throw e;
+						this.writeMultiple = false;
+					}
+				}
+				this.beginFrame(WRITE_SINGLE_BLOCK, option, null).put((byte)block).put(_data, position, blockSize);
+				this.transceive();
+				count++;
+			}
+		} finally {
+			if ( opened )
+				this.closeSession();
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * @param _block The block number.
+	 * @param _data The data of the block, exactly one block.
+	 * @throws CardException
+	 */
+	public synchronized void writeBlock(int _block, byte[] _data) throws CardException {
+		this.writeBlocks(_block, _data, 0, _data.length);
+	}
+	
+	private static void checkBlockRange(ISO15693SystemInfo _info, int _firstBlock, int _blockCount) {
+		int blockCount = _info.getBlockCount();
+		if ( _firstBlock < 0 || _blockCount < 1 || (blockCount > 0 && _firstBlock + _blockCount > blockCount) || _firstBlock + _blockCount > 256 )
+			throw new IllegalArgumentException("Blocks " + _firstBlock + " to " + (_firstBlock + _blockCount - 1) + " are out of range");
+	}
 }
@@ -0,0 +1,129 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import javax.smartcardio.CardException;
+
+import to.networld.schandler.common.HexHandler;
+
+/**
+ * Immutable result of the ISO 15693 GET SYSTEM INFORMATION command with
+ * the memory geometry of the tag. Fields the tag does not report are -1.
+ * 
+ * @author Alex Oberhauser
+ */
+public final class ISO15693SystemInfo {
+	private static final int DSFID_PRESENT = 0x01;
+	private static final int AFI_PRESENT = 0x02;
+	private static final int MEMORY_SIZE_PRESENT = 0x04;
+	private static final int IC_REFERENCE_PRESENT = 0x08;
+	
+	private final byte[] uid;
+	private final int dsfid;
+	private final int afi;
+	private final int blockSize;
+	private final int blockCount;
+	private final int icReference;
+	
+	/**
+	 * @param _uid The UID, MSB first.
+	 * @param _dsfid The data storage format identifier, -1 if not known.
+	 * @param _afi The application family identifier, -1 if not known.
+	 * @param _blockSize The block size in bytes, 0 if not known.
+	 * @param _blockCount The number of blocks, 0 if not known.
+	 * @param _icReference The IC reference of the manufacturer, -1 if not known.
+	 */
+	public ISO15693SystemInfo(byte[] _uid, int _dsfid, int _afi, int _blockSize, int _blockCount, int _icReference) {
+		this.uid = _uid.clone();
+		this.dsfid = _dsfid;
+		this.afi = _afi;
+		this.blockSize = _blockSize;
+		this.blockCount = _blockCount;
+		this.icReference = _icReference;
+	}
+	
+	/**
+	 * @param _response The response of the tag without the flags byte.
+	 * @param _offset The offset of the information flags.
+	 * @param _length The length of the response.
+	 * @return The parsed system information.
+	 * @throws CardException If the response is too short for the announced fields.
+	 */
+	public static ISO15693SystemInfo parse(byte[] _response, int _offset, int _length) throws CardException {
+		int end = _offset + _length;
+		int position = _offset;
+		if ( _length < 9 )
+			throw new CardException("GET SYSTEM INFORMATION response too short, found '" + _length + "' bytes");
+		int infoFlags = _response[position++] & 0xFF;
+		byte[] uid = new byte[8];
+		/**
+		 * The tag sends the UID LSB first.
+		 */
+		for ( int count = 0; count < 8; count++ )
+			uid[7 - count] = _response[position++];
+		int needed = ((infoFlags & DSFID_PRESENT) != 0 ? 1 : 0) + ((infoFlags & AFI_PRESENT) != 0 ? 1 : 0)
+			+ ((infoFlags & MEMORY_SIZE_PRESENT) != 0 ? 2 : 0) + ((infoFlags & IC_REFERENCE_PRESENT) != 0 ? 1 : 0);
+		if ( end - position < needed )
+			throw new CardException("GET SYSTEM INFORMATION response too short for the flags '" + Integer.toHexString(infoFlags) + "'");
+		int dsfid = (infoFlags & DSFID_PRESENT) != 0 ? _response[position++] & 0xFF : -1;
+		int afi = (infoFlags & AFI_PRESENT) != 0 ? _response[position++] & 0xFF : -1;
+		int blockCount = 0;
+		int blockSize = 0;
+		if ( (infoFlags & MEMORY_SIZE_PRESENT) != 0 ) {
+			blockCount = (_response[position++] & 0xFF) + 1;
+			blockSize = (_response[position++] & 0x1F) + 1;
+		}
+		int icReference = (infoFlags & IC_REFERENCE_PRESENT) != 0 ? _response[position++] & 0xFF : -1;
+		return new ISO15693SystemInfo(uid, dsfid, afi, blockSize, blockCount, icReference);
+	}
+	
+	/**
+	 * @return A copy of the UID, MSB first.
+	 */
+	public byte[] getUID() { return this.uid.clone(); }
+	
+	public int getDSFID() { return this.dsfid; }
+	
+	public int getAFI() { return this.afi; }
+	
+	/**
+	 * @return The block size in bytes, 0 if not known.
+	 */
+	public int getBlockSize() { return this.blockSize; }
+	
+	/**
+	 * @return The number of blocks, 0 if not known.
+	 */
+	public int getBlockCount() { return this.blockCount; }
+	
+	/**
+	 * @return The size of the user memory in bytes, 0 if not known.
+	 */
+	public int getMemorySize() { return this.blockSize * this.blockCount; }
+	
+	public int getICReference() { return this.icReference; }
+	
+	@Override
+	public String toString() {
+		return "UID " + HexHandler.getHexString(this.uid, true) + ", " + this.blockCount + " blocks of " + this.blockSize + " bytes";
+	}
+}
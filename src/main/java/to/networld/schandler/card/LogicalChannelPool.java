@@ -0,0 +1,360 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CommandAPDU;
+
+/**
+ * Pool of the ISO 7816 logical channels of one card. Clients that work with
+ * the same inserted card acquire their own channel, so every client keeps
+ * its own application selection and security state.<p/>
+ * 
+ * A released channel stays open for the next client, so the MANAGE CHANNEL
+ * commands to open and close it are saved. Before it is handed out again its
+ * security state is reset: the known application is selected again, otherwise
+ * the channel is reset with MANAGE CHANNEL. If the reset fails the channel is
+ * closed. Providers that refuse MANAGE CHANNEL commands on a channel, like the
+ * one of the JDK, therefore only keep channels with a known selection.<p/>
+ * 
+ * There is one pool per card, use {@link #forCard(Card)} to get it. The pool
+ * is closed with {@link #closeUnused(Card)} when the last client disconnects.
+ * 
+ * @author Alex Oberhauser
+ */
+public class LogicalChannelPool {
+	/** Cards of the first interindustry class support the channels 1 to 3 besides the basic channel. */
+	public static final int DEFAULT_MAX_CHANNELS = 3;
+	
+	private static final Map<Card, LogicalChannelPool> POOLS = new HashMap<Card, LogicalChannelPool>();
+	
+	private final Card card;
+	private final List<ManagedChannel> leased = new ArrayList<ManagedChannel>();
+	private final List<ManagedChannel> idle = new ArrayList<ManagedChannel>();
+	private int opening = 0;
+	private int maxChannels = DEFAULT_MAX_CHANNELS;
+	private boolean closed = false;
+	
+	private LogicalChannelPool(Card _card) {
+		this.card = _card;
+	}
+	
+	/**
+	 * @param _card The connected card.
+	 * @return The channel pool of the card.
+	 */
+	public static LogicalChannelPool forCard(Card _card) {
+		assert(_card != null);
+		synchronized (POOLS) {
+			LogicalChannelPool pool = POOLS.get(_card);
+			if ( pool == null ) {
+				pool = new LogicalChannelPool(_card);
+				POOLS.put(_card, pool);
+			}
+			return pool;
+		}
+	}
+	
+	/**
+	 * Closes the pool of the card if no client leases a channel of it anymore.
+	 * 
+	 * @param _card The card that is going to be disconnected.
+	 * @return False if other clients still use a channel of the card.
+	 */
+	public static boolean closeUnused(Card _card) {
+		LogicalChannelPool pool;
+		synchronized (POOLS) {
+			pool = POOLS.get(_card);
+		}
+		return pool == null || pool.closeIfUnused();
+	}
+	
+	/**
+	 * @param _maxChannels The maximal number of logical channels, without the basic channel.
+	 */
+	public synchronized void setMaxChannels(int _maxChannels) {
+		if ( _maxChannels < 1 ) throw new IllegalArgumentException("At least one logical channel is needed, found '" + _maxChannels + "'");
+		this.maxChannels = _maxChannels;
+	}
+	
+	public synchronized int getMaxChannels() { return this.maxChannels; }
+	
+	/**
+	 * @param _timeout The maximal time in milliseconds to wait for a free channel.
+	 * @return The channel, it has to be given back with {@link #release(ManagedChannel)}.
+	 * @throws CardException If no channel could be opened, the timeout elapsed or the pool is closed.
+	 * @throws InterruptedException
+	 * @see #acquire(byte[], long)
+	 */
+	public ManagedChannel acquire(long _timeout) throws CardException, InterruptedException {
+		return this.acquire(null, _timeout);
+	}
+	
+	/**
+	 * Hands out an idle channel, preferably one that has the given application
+	 * selected, otherwise opens a new one. If the maximum is reached the call
+	 * waits until a channel is released.
+	 * 
+	 * @param _aid The AID the client is going to select, null if not known.
+	 * @param _timeout The maximal time in milliseconds to wait for a free channel.
+	 * @return The channel, it has to be given back with {@link #release(ManagedChannel)}.
+	 * @throws CardException If no channel could be opened, the timeout elapsed or the pool is closed.
+	 * @throws InterruptedException
+	 */
+	public ManagedChannel acquire(byte[] _aid, long _timeout) throws CardException, InterruptedException {
+		long deadline = System.currentTimeMillis() + _timeout;
+		synchronized (this) {
+			while ( true ) {
+				if ( this.closed )
+					throw new CardException("The channel pool of the card is closed");
+				ManagedChannel channel = this.takeIdle(_aid);
+				if ( channel != null ) {
+					this.leased.add(channel);
+					return channel;
+				}
+				if ( this.leased.size() + this.idle.size() + this.opening < this.maxChannels )
+					break;
+				long remaining = deadline - System.currentTimeMillis();
+				if ( remaining <= 0 )
+					throw new CardException("No free logical channel after " + _timeout + " ms");
+				this.wait(remaining);
+			}
+			this.opening++;
+		}
+		/**
+		 * Opening the channel waits for the exclusive access to the card, the
+		 * pool must not be locked meanwhile.
+		 */
+		ManagedChannel channel = null;
+		boolean leased = false;
+		try {
+			channel = new ManagedChannel(this, this.openChannel());
+		} finally {
+			synchronized (this) {
+				this.opening--;
+				this.notifyAll();
+				if ( channel != null && !this.closed ) {
+					this.leased.add(channel);
+					leased = true;
+				}
+			}
+		}
+		if ( !leased ) {
+			this.closeChannel(channel);
+			throw new CardException("The channel pool of the card is closed");
+		}
+		return channel;
+	}
+	
+	private CardChannel openChannel() throws CardException {
+		CardLock lock = CardLock.forCard(this.card);
+		lock.lock(this.card);
+		try {
+			return this.card.openLogicalChannel();
+		} finally {
+			lock.unlock(this.card);
+		}
+	}
+	
+	/**
+	 * @return The idle channel with the AID selected, otherwise the first idle channel.
+	 */
+	private ManagedChannel takeIdle(byte[] _aid) {
+		if ( this.idle.isEmpty() )
+			return null;
+		int index = 0;
+		if ( _aid != null ) {
+			for ( int count = 0; count < this.idle.size(); count++ ) {
+				if ( this.idle.get(count).isSelected(_aid) ) {
+					index = count;
+					break;
+				}
+			}
+		}
+		return this.idle.remove(index);
+	}
+	
+	/**
+	 * Resets the security state of the channel and keeps it open for the next
+	 * client. If the reset fails the channel is closed.
+	 * 
+	 * @param _channel The channel from {@link #acquire(byte[], long)}.
+	 */
+	public void release(ManagedChannel _channel) {
+		synchronized (this) {
+			if ( !this.leased.contains(_channel) )
+				return;
+		}
+		/**
+		 * The reset waits for the exclusive access to the card, the pool must
+		 * not be locked meanwhile. A closed pool has already closed the channel.
+		 */
+		boolean reset = this.resetChannel(_channel);
+		if ( !reset )
+			this.closeChannel(_channel);
+		synchronized (this) {
+			if ( this.leased.remove(_channel) && reset )
+				this.idle.add(_channel);
+			this.notifyAll();
+		}
+	}
+	
+	/**
+	 * Selects the known application again, that resets its security state, or
+	 * resets the channel with MANAGE CHANNEL if the selection is not known.
+	 * 
+	 * @return True if the channel was reset.
+	 */
+	private boolean resetChannel(ManagedChannel _channel) {
+		byte[] aid = _channel.getSelectedAID();
+		CommandAPDU command = aid != null
+			? new CommandAPDU(0x00, 0xA4, 0x04, 0x00, aid)
+			: new CommandAPDU(0x00, 0x70, 0x40, _channel.getChannelNumber());
+		CardLock lock = CardLock.forCard(this.card);
+		try {
+			lock.lock(this.card);
+			try {
+				if ( StatusWord.isSuccess(_channel.getChannel().transmit(command).getSW()) )
+					return true;
+			} finally {
+				lock.unlock(this.card);
+			}
+		} catch (CardException e) {
+			/**
+			 * The channel is closed by the caller.
+			 */
+		} catch (IllegalArgumentException e) {
+			/**
+			 * The provider refuses MANAGE CHANNEL commands.
+			 */
+		} catch (IllegalStateException e) {
+			/**
+			 * The card was already disconnected.
+			 */
+		}
+		_channel.setSelectedAID(null);
+		return false;
+	}
+	
+	private void closeChannel(ManagedChannel _channel) {
+		_channel.setSelectedAID(null);
+		CardLock lock = CardLock.forCard(this.card);
+		try {
+			lock.lock(this.card);
+			try {
+				_channel.getChannel().close();
+			} finally {
+				lock.unlock(this.card);
+			}
+		} catch (CardException e) {
+			/**
+			 * The card does not know the channel anymore.
+			 */
+		} catch (IllegalStateException e) {
+			/**
+			 * The card was already disconnected.
+			 */
+		}
+	}
+	
+	/**
+	 * @return The number of channels that are in use.
+	 */
+	public synchronized int getLeasedChannels() {
+		return this.leased.size();
+	}
+	
+	/**
+	 * @return The number of open channels that wait for the next client.
+	 */
+	public synchronized int getIdleChannels() {
+		return this.idle.size();
+	}
+	
+	/**
+	 * Removes the pool from the registry and closes all channels, also the ones
+	 * in use. Waiting and later calls of {@link #acquire(byte[], long)} fail.
+	 * Has to be called before the card is disconnected.
+	 */
+	public void close() {
+		List<ManagedChannel> channels;
+		synchronized (this) {
+			channels = this.takeChannels();
+		}
+		this.closeChannels(channels);
+	}
+	
+	/**
+	 * Closes the pool like {@link #close()}, but only if no channel is in use.
+	 * 
+	 * @return False if a channel is in use and the pool stays open.
+	 */
+	private boolean closeIfUnused() {
+		List<ManagedChannel> channels;
+		synchronized (this) {
+			if ( !this.leased.isEmpty() )
+				return false;
+			channels = this.takeChannels();
+		}
+		this.closeChannels(channels);
+		return true;
+	}
+	
+	/**
+	 * Marks the pool as closed and takes all channels out of it.
+	 */
+	private List<ManagedChannel> takeChannels() {
+		this.closed = true;
+		List<ManagedChannel> channels = new ArrayList<ManagedChannel>(this.leased);
+		channels.addAll(this.idle);
+		this.leased.clear();
+		this.idle.clear();
+		this.notifyAll();
+		return channels;
+	}
+	
+	/**
+	 * Closes the channels without locking the pool and removes it from the registry.
+	 */
+	private void closeChannels(List<ManagedChannel> _channels) {
+		for ( ManagedChannel channel : _channels )
+			this.closeChannel(channel);
+		synchronized (POOLS) {
+			if ( POOLS.get(this.card) == this )
+				POOLS.remove(this.card);
+		}
+	}
+	
+	/**
+	 * @return True if the pool was closed.
+	 */
+	public synchronized boolean isClosed() {
+		return this.closed;
+	}
+}
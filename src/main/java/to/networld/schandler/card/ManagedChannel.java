@@ -0,0 +1,77 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.util.Arrays;
+
+import javax.smartcardio.CardChannel;
+
+/**
+ * Logical channel of a {@link LogicalChannelPool} that remembers which
+ * application is selected on it. The selection is tracked by
+ * {@link BasicCard} for every SELECT by name sent over the channel.
+ * 
+ * @author Alex Oberhauser
+ */
+public class ManagedChannel {
+	private final LogicalChannelPool pool;
+	private final CardChannel channel;
+	private byte[] selectedAID = null;
+	
+	ManagedChannel(LogicalChannelPool _pool, CardChannel _channel) {
+		this.pool = _pool;
+		this.channel = _channel;
+	}
+	
+	public LogicalChannelPool getPool() { return this.pool; }
+	
+	public CardChannel getChannel() { return this.channel; }
+	
+	public int getChannelNumber() { return this.channel.getChannelNumber(); }
+	
+	/**
+	 * @return A copy of the AID that is selected on this channel, null if not known.
+	 */
+	public synchronized byte[] getSelectedAID() {
+		return this.selectedAID == null ? null : this.selectedAID.clone();
+	}
+	
+	/**
+	 * @param _aid The AID of the application.
+	 * @return True if the application is selected on this channel.
+	 */
+	public synchronized boolean isSelected(byte[] _aid) {
+		return Arrays.equals(this.selectedAID, _aid);
+	}
+	
+	/**
+	 * @param _aid The AID of the selected application, null if the selection is not known.
+	 */
+	synchronized void setSelectedAID(byte[] _aid) {
+		this.selectedAID = _aid == null ? null : _aid.clone();
+	}
+	
+	@Override
+	public String toString() {
+		return "Logical channel " + this.getChannelNumber();
+	}
+}
@@ -0,0 +1,216 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import to.networld.schandler.common.exceptions.WrongDataBlockLengthException;
+
+/**
+ * Collects block reads and writes and groups them by sector. Executed with
+ * {@link BasicMifare#execute(MifareAccessPlan, byte, byte[], byte, to.networld.schandler.interfaces.IBlockListener)}
+ * every sector is authenticated only once and consecutive blocks of a sector are
+ * transferred together.<p/>
+ * 
+ * The plan holds one buffer with a slot for every data block of the card. The
+ * written data is copied into the slot of its block and the blocks are read
+ * into their slots, so the runs are slices of this buffer and the card is
+ * accessed without further copies. A plan should not be executed by several
+ * cards at the same time.<p/>
+ * 
+ * If a block is added more than once the last operation wins, a write always
+ * supersedes a read of the same block.
+ * 
+ * @author Alex Oberhauser
+ */
+public class MifareAccessPlan {
+	private final MifareLayout layout;
+	private final byte[] data;
+	/*
+	 * The planned blocks, True for a write and False for a read.
+	 */
+	private final TreeMap<Integer, Boolean> operations = new TreeMap<Integer, Boolean>();
+	
+	/**
+	 * A sequence of consecutive blocks of one sector with the same operation.
+	 */
+	public static class Run {
+		private final int sector;
+		private final int firstBlock;
+		private final int blockCount;
+		private final boolean write;
+		private final byte[] data;
+		private final int dataOffset;
+		
+		private Run(int _sector, int _firstBlock, int _blockCount, boolean _write, byte[] _data, int _dataOffset) {
+			this.sector = _sector;
+			this.firstBlock = _firstBlock;
+			this.blockCount = _blockCount;
+			this.write = _write;
+			this.data = _data;
+			this.dataOffset = _dataOffset;
+		}
+		
+		public int getSector() { return this.sector; }
+		
+		public int getFirstBlock() { return this.firstBlock; }
+		
+		public int getBlockCount() { return this.blockCount; }
+		
+		public boolean isWrite() { return this.write; }
+		
+		/**
+		 * @return The buffer of the plan, it holds the data that should be written or receives the read blocks.
+		 */
+		public byte[] getData() { return this.data; }
+		
+		/**
+		 * @return The offset of the first block of the run in {@link #getData()}.
+		 */
+		public int getDataOffset() { return this.dataOffset; }
+		
+		/**
+		 * @return The length of the blocks of the run in bytes.
+		 */
+		public int getDataLength() { return this.blockCount * MifareLayout.BLOCK_SIZE; }
+	}
+	
+	/**
+	 * @param _layout The memory layout of the card.
+	 */
+	public MifareAccessPlan(MifareLayout _layout) {
+		assert(_layout != null);
+		this.layout = _layout;
+		this.data = new byte[_layout.getDataSize()];
+	}
+	
+	public MifareLayout getLayout() { return this.layout; }
+	
+	/**
+	 * Adds a read of the user data block.
+	 * 
+	 * @param _block The block number.
+	 * @return This plan.
+	 */
+	public synchronized MifareAccessPlan read(int _block) {
+		this.checkBlock(_block);
+		if ( !this.operations.containsKey(_block) )
+			this.operations.put(_block, Boolean.FALSE);
+		return this;
+	}
+	
+	/**
+	 * Adds a write of the user data block.
+	 * 
+	 * @param _block The block number.
+	 * @param _data The block data, 16 bytes.
+	 * @return This plan.
+	 * @throws WrongDataBlockLengthException
+	 */
+	public synchronized MifareAccessPlan write(int _block, byte[] _data) throws WrongDataBlockLengthException {
+		this.checkBlock(_block);
+		if ( _data.length != MifareLayout.BLOCK_SIZE ) throw new WrongDataBlockLengthException("Expected '16' byte entries but found '" + _data.length + "'");
+		System.arraycopy(_data, 0, this.data, this.getSlot(_block), MifareLayout.BLOCK_SIZE);
+		this.operations.put(_block, Boolean.TRUE);
+		return this;
+	}
+	
+	/**
+	 * Adds a write of the user data block. The next 16 bytes are taken from the
+	 * buffer and its position is moved behind them.
+	 * 
+	 * @param _block The block number.
+	 * @param _data The buffer with the block data, at least 16 bytes remaining.
+	 * @return This plan.
+	 * @throws WrongDataBlockLengthException
+	 */
+	public synchronized MifareAccessPlan write(int _block, ByteBuffer _data) throws WrongDataBlockLengthException {
+		this.checkBlock(_block);
+		if ( _data.remaining() < MifareLayout.BLOCK_SIZE ) throw new WrongDataBlockLengthException("Expected '16' byte entries but found '" + _data.remaining() + "'");
+		_data.get(this.data, this.getSlot(_block), MifareLayout.BLOCK_SIZE);
+		this.operations.put(_block, Boolean.TRUE);
+		return this;
+	}
+	
+	/**
+	 * @return The number of blocks in this plan.
+	 */
+	public synchronized int size() {
+		return this.operations.size();
+	}
+	
+	/**
+	 * Removes all operations.
+	 */
+	public synchronized void clear() {
+		this.operations.clear();
+	}
+	
+	/**
+	 * Returns the operations grouped by sector in ascending block order. Consecutive
+	 * blocks of one sector with the same operation are merged into one run.
+	 * 
+	 * @return The runs of this plan.
+	 */
+	public synchronized List<Run> getRuns() {
+		List<Run> runs = new ArrayList<Run>();
+		int runSector = -1;
+		int runFirst = -1;
+		int runCount = 0;
+		boolean runWrite = false;
+		for ( Map.Entry<Integer, Boolean> entry : this.operations.entrySet() ) {
+			int block = entry.getKey();
+			boolean write = entry.getValue();
+			int sector = this.layout.getSectorOfBlock(block);
+			if ( runCount > 0 && (sector != runSector || write != runWrite || block != runFirst + runCount) ) {
+				runs.add(new Run(runSector, runFirst, runCount, runWrite, this.data, this.getSlot(runFirst)));
+				runCount = 0;
+			}
+			if ( runCount == 0 ) {
+				runSector = sector;
+				runFirst = block;
+				runWrite = write;
+			}
+			runCount++;
+		}
+		if ( runCount > 0 )
+			runs.add(new Run(runSector, runFirst, runCount, runWrite, this.data, this.getSlot(runFirst)));
+		return runs;
+	}
+	
+	/**
+	 * The data blocks of one sector have consecutive slots, so the blocks of a
+	 * run are one slice of the buffer.
+	 */
+	private int getSlot(int _block) {
+		return this.layout.getDataIndexOfBlock(_block) * MifareLayout.BLOCK_SIZE;
+	}
+	
+	private void checkBlock(int _block) {
+		if ( !this.layout.isDataBlock(_block) )
+			throw new IllegalArgumentException("Block " + _block + " is not a user data block of a " + this.layout + " card");
+	}
+}
@@ -0,0 +1,280 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+
+/**
+ * Seekable channel over the user data area of a Mifare card. The position is an
+ * offset in the user data area, the manufacturer block and the sector trailers
+ * are skipped, see {@link MifareLayout}.<p/>
+ * 
+ * On every access to a sector that is not buffered the whole sector is read
+ * ahead into a reusable buffer. Writes change the buffer and are written back,
+ * only the changed blocks, if another sector is accessed or on {@link #flush()}
+ * and {@link #close()}.<p/>
+ * 
+ * The buffered sector belongs to the card it was read from. If another card
+ * is connected the changes of the buffered sector are not written, the write
+ * back fails instead.<p/>
+ * 
+ * The methods follow the java.nio.channels.SeekableByteChannel contract, except
+ * that the size of the channel is fixed by the card memory.
+ * 
+ * @author Alex Oberhauser
+ */
+public class MifareDataChannel implements ByteChannel {
+	private final BasicMifare card;
+	private final byte keyType;
+	private final byte[] key;
+	private final byte keyNumber;
+	private final MifareLayout layout;
+	
+	private final byte[] sectorBuffer;
+	private final boolean[] dirtyBlocks;
+	private int bufferedSector = -1;
+	private byte[] bufferedUID = null;
+	private long position = 0;
+	private boolean open = true;
+	
+	/**
+	 * @param _card The card that is connected to the reader.
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 */
+	public MifareDataChannel(BasicMifare _card, byte _keyType, byte[] _key, byte _keyNumber) {
+		this.card = _card;
+		this.keyType = _keyType;
+		this.key = _key.clone();
+		this.keyNumber = _keyNumber;
+		this.layout = _card.getLayout();
+		int maxDataBlocks = 0;
+		for ( int sector = 0; sector < this.layout.getSectorCount(); sector++ )
+			maxDataBlocks = Math.max(maxDataBlocks, this.layout.getDataBlockCountOfSector(sector));
+		this.sectorBuffer = new byte[maxDataBlocks * MifareLayout.BLOCK_SIZE];
+		this.dirtyBlocks = new boolean[maxDataBlocks];
+	}
+	
+	@Override
+	public synchronized boolean isOpen() {
+		return this.open;
+	}
+	
+	/**
+	 * Writes the buffered changes to the card and closes the channel.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if ( !this.open ) return;
+		try {
+			this.flush();
+		} finally {
+			this.open = false;
+		}
+	}
+	
+	/**
+	 * @return The current position in the user data area.
+	 */
+	public synchronized long position() throws IOException {
+		this.checkOpen();
+		return this.position;
+	}
+	
+	/**
+	 * @param _newPosition The new position in the user data area.
+	 * @return This channel.
+	 */
+	public synchronized MifareDataChannel position(long _newPosition) throws IOException {
+		this.checkOpen();
+		if ( _newPosition < 0 ) throw new IllegalArgumentException("Negative position " + _newPosition);
+		this.position = _newPosition;
+		return this;
+	}
+	
+	/**
+	 * @return The size of the user data area in bytes.
+	 */
+	public long size() throws IOException {
+		this.checkOpen();
+		return this.layout.getDataSize();
+	}
+	
+	@Override
+	public synchronized int read(ByteBuffer _dst) throws IOException {
+		this.checkOpen();
+		if ( this.position >= this.layout.getDataSize() ) return -1;
+		int read = 0;
+		while ( _dst.hasRemaining() && this.position < this.layout.getDataSize() ) {
+			int offset = this.bufferSector();
+			int length = Math.min(_dst.remaining(), this.getBufferedLength() - offset);
+			_dst.put(this.sectorBuffer, offset, length);
+			this.position += length;
+			read += length;
+		}
+		return read;
+	}
+	
+	@Override
+	public synchronized int write(ByteBuffer _src) throws IOException {
+		this.checkOpen();
+		if ( _src.hasRemaining() && this.position >= this.layout.getDataSize() )
+			throw new IOException("Position " + this.position + " is beyond the end of the card memory");
+		int written = 0;
+		while ( _src.hasRemaining() && this.position < this.layout.getDataSize() ) {
+			int offset = this.bufferSector();
+			int length = Math.min(_src.remaining(), this.getBufferedLength() - offset);
+			_src.get(this.sectorBuffer, offset, length);
+			for ( int block = offset / MifareLayout.BLOCK_SIZE; block <= (offset + length - 1) / MifareLayout.BLOCK_SIZE; block++ )
+				this.dirtyBlocks[block] = true;
+			this.position += length;
+			written += length;
+		}
+		return written;
+	}
+	
+	/**
+	 * Writes the changed blocks of the buffered sector to the card.
+	 * 
+	 * @throws IOException If the blocks could not be written.
+	 */
+	public synchronized void flush() throws IOException {
+		if ( this.bufferedSector == -1 || !this.isDirty() ) return;
+		if ( !this.isBufferedCard() ) {
+			int sector = this.bufferedSector;
+			this.discardSector();
+			throw new IOException("Sector " + sector + " was read from another card, the changes are not written");
+		}
+		int firstBlock = this.layout.getFirstDataBlockOfSector(this.bufferedSector);
+		int blockCount = this.layout.getDataBlockCountOfSector(this.bufferedSector);
+		int count = 0;
+		try {
+			while ( count < blockCount ) {
+				if ( !this.dirtyBlocks[count] ) {
+					count++;
+					continue;
+				}
+				int runStart = count;
+				while ( count < blockCount && this.dirtyBlocks[count] ) count++;
+				int status = this.card.writeBlocks(this.keyType, this.key, this.keyNumber, firstBlock + runStart,
+						this.sectorBuffer, runStart * MifareLayout.BLOCK_SIZE, (count - runStart) * MifareLayout.BLOCK_SIZE);
+				if ( status != StatusWord.SUCCESS )
+					throw new IOException("Unable to write block " + (firstBlock + runStart) + ": "
+							+ BasicMifare.STATUS_WORDS.getMessage(status));
+				for ( int block = runStart; block < count; block++ )
+					this.dirtyBlocks[block] = false;
+			}
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Unable to write sector " + this.bufferedSector, e);
+		}
+	}
+	
+	/**
+	 * @return A stream that reads from the current position of this channel.
+	 */
+	public InputStream getInputStream() {
+		return Channels.newInputStream(this);
+	}
+	
+	/**
+	 * @return A stream that writes to the current position of this channel.
+	 */
+	public OutputStream getOutputStream() {
+		return Channels.newOutputStream(this);
+	}
+	
+	/**
+	 * Makes sure that the sector of the current position is buffered.
+	 * 
+	 * @return The offset of the current position in the sector buffer.
+	 */
+	private int bufferSector() throws IOException {
+		int dataIndex = (int)(this.position / MifareLayout.BLOCK_SIZE);
+		int block = this.layout.getDataBlock(dataIndex);
+		int sector = this.layout.getSectorOfBlock(block);
+		if ( sector == this.bufferedSector && !this.isDirty() && !this.isBufferedCard() )
+			this.discardSector();
+		if ( sector != this.bufferedSector ) {
+			this.flush();
+			this.discardSector();
+			try {
+				this.bufferedUID = this.card.getUIDBytes();
+				int status = this.card.readSector(this.keyType, this.key, this.keyNumber, sector, this.sectorBuffer, 0);
+				if ( status != StatusWord.SUCCESS )
+					throw new IOException("Unable to read sector " + sector + ": "
+							+ BasicMifare.STATUS_WORDS.getMessage(status));
+			} catch (IOException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new IOException("Unable to read sector " + sector, e);
+			}
+			this.bufferedSector = sector;
+		}
+		int firstIndex = this.layout.getDataIndexOfBlock(this.layout.getFirstDataBlockOfSector(sector));
+		return (int)(this.position - (long)firstIndex * MifareLayout.BLOCK_SIZE);
+	}
+	
+	/**
+	 * @return True if a block of the buffered sector was changed.
+	 */
+	private boolean isDirty() {
+		for ( boolean dirty : this.dirtyBlocks ) {
+			if ( dirty ) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return True if the buffered sector was read from the connected card.
+	 */
+	private boolean isBufferedCard() throws IOException {
+		try {
+			return Arrays.equals(this.bufferedUID, this.card.getUIDBytes());
+		} catch (Exception e) {
+			throw new IOException("Unable to read the UID of the card", e);
+		}
+	}
+	
+	private void discardSector() {
+		this.bufferedSector = -1;
+		this.bufferedUID = null;
+		Arrays.fill(this.dirtyBlocks, false);
+	}
+	
+	private int getBufferedLength() {
+		return this.layout.getDataBlockCountOfSector(this.bufferedSector) * MifareLayout.BLOCK_SIZE;
+	}
+	
+	private void checkOpen() throws ClosedChannelException {
+		if ( !this.open ) throw new ClosedChannelException();
+	}
+}
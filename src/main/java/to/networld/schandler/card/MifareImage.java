@@ -0,0 +1,261 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import javax.smartcardio.CardException;
+
+import to.networld.schandler.interfaces.IBlockListener;
+
+/**
+ * In-memory image of the user data area of a Mifare card. The data blocks are
+ * loaded once into one contiguous buffer, could be modified in memory and are
+ * written back with {@link #commit(boolean)}. Only blocks that differ from the
+ * content of the card are written.<p/>
+ * 
+ * The offsets are relative to the user data area, the manufacturer block and
+ * the sector trailers are not part of the image, see {@link MifareLayout}.<p/>
+ * 
+ * The image remembers the UID of the card it was read from and refuses to
+ * commit to another card, use {@link #reload()} after the card was replaced.
+ * 
+ * @author Alex Oberhauser
+ */
+public class MifareImage {
+	private final BasicMifare card;
+	private final byte keyType;
+	private final byte[] key;
+	private final byte keyNumber;
+	private final MifareLayout layout;
+	
+	private final byte[] buffer;
+	private final byte[] cardContent;
+	private byte[] uid = null;
+	
+	private MifareImage(BasicMifare _card, byte _keyType, byte[] _key, byte _keyNumber) {
+		this.card = _card;
+		this.keyType = _keyType;
+		this.key = _key.clone();
+		this.keyNumber = _keyNumber;
+		this.layout = _card.getLayout();
+		this.buffer = new byte[this.layout.getDataSize()];
+		this.cardContent = new byte[this.layout.getDataSize()];
+	}
+	
+	/**
+	 * Reads all user data blocks of the card into a new image.
+	 * 
+	 * @param _card The card that is connected to the reader.
+	 * @param _keyType Could be 0x60 for KeyA or 0x61 for KeyB
+	 * @param _key The key as byte array.
+	 * @param _keyNumber 0x01, 0x1A, 0x1B should work as key number.
+	 * @return The image of the user data area.
+	 * @throws Exception
+	 */
+	public static MifareImage load(BasicMifare _card, byte _keyType, byte[] _key, byte _keyNumber) throws Exception {
+		MifareImage image = new MifareImage(_card, _keyType, _key, _keyNumber);
+		image.reload();
+		return image;
+	}
+	
+	/**
+	 * Reads the user data area again from the card. All changes that are not
+	 * committed are lost. The image is bound to the currently connected card.
+	 * 
+	 * @throws Exception
+	 */
+	public synchronized void reload() throws Exception {
+		this.uid = null;
+		byte[] cardUID = this.card.getUIDBytes();
+		MifareAccessPlan plan = new MifareAccessPlan(this.layout);
+		for ( int count = 0; count < this.layout.getDataBlockCount(); count++ )
+			plan.read(this.layout.getDataBlock(count));
+		this.card.execute(plan, this.keyType, this.key, this.keyNumber, new IBlockListener() {
+			@Override
+			public boolean blockRead(int _block, byte[] _data, int _offset) {
+				int index = layout.getDataIndexOfBlock(_block) * MifareLayout.BLOCK_SIZE;
+				System.arraycopy(_data, _offset, cardContent, index, MifareLayout.BLOCK_SIZE);
+				return true;
+			}
+		});
+		System.arraycopy(this.cardContent, 0, this.buffer, 0, this.buffer.length);
+		this.uid = cardUID;
+	}
+	
+	/**
+	 * @return A copy of the UID of the card the image was read from.
+	 */
+	public synchronized byte[] getUID() {
+		return this.uid == null ? null : this.uid.clone();
+	}
+	
+	/**
+	 * @return The size of the user data area in bytes.
+	 */
+	public int size() {
+		return this.buffer.length;
+	}
+	
+	public MifareLayout getLayout() {
+		return this.layout;
+	}
+	
+	/**
+	 * Direct access to the buffer of the image. Changes to the returned array are
+	 * written to the card with the next {@link #commit(boolean)}.
+	 * 
+	 * @return The buffer of the image.
+	 */
+	public byte[] getBuffer() {
+		return this.buffer;
+	}
+	
+	public synchronized byte get(int _offset) {
+		return this.buffer[_offset];
+	}
+	
+	public synchronized void set(int _offset, byte _value) {
+		this.buffer[_offset] = _value;
+	}
+	
+	/**
+	 * Copies data from the image into the given array.
+	 * 
+	 * @param _offset The offset in the image.
+	 * @param _dst The destination array.
+	 * @param _dstOffset The offset in the destination array.
+	 * @param _length The number of bytes.
+	 */
+	public synchronized void read(int _offset, byte[] _dst, int _dstOffset, int _length) {
+		System.arraycopy(this.buffer, _offset, _dst, _dstOffset, _length);
+	}
+	
+	/**
+	 * Copies data from the given array into the image.
+	 * 
+	 * @param _offset The offset in the image.
+	 * @param _src The source array.
+	 * @param _srcOffset The offset in the source array.
+	 * @param _length The number of bytes.
+	 */
+	public synchronized void write(int _offset, byte[] _src, int _srcOffset, int _length) {
+		System.arraycopy(_src, _srcOffset, this.buffer, _offset, _length);
+	}
+	
+	/**
+	 * Sets all bytes of the image to the given value.
+	 * 
+	 * @param _value For example 0x00 to format the card with the next commit.
+	 */
+	public synchronized void fill(byte _value) {
+		Arrays.fill(this.buffer, _value);
+	}
+	
+	/**
+	 * Discards all changes that are not committed.
+	 */
+	public synchronized void revert() {
+		System.arraycopy(this.cardContent, 0, this.buffer, 0, this.buffer.length);
+	}
+	
+	/**
+	 * @return The block numbers of all blocks that differ from the card content.
+	 */
+	public synchronized int[] getDirtyBlocks() {
+		int[] dirty = new int[this.layout.getDataBlockCount()];
+		int dirtyCount = 0;
+		for ( int count = 0; count < dirty.length; count++ ) {
+			if ( this.isDirty(count) )
+				dirty[dirtyCount++] = this.layout.getDataBlock(count);
+		}
+		return Arrays.copyOf(dirty, dirtyCount);
+	}
+	
+	/**
+	 * @return True if at least one block differs from the card content.
+	 */
+	public synchronized boolean isDirty() {
+		for ( int count = 0; count < this.layout.getDataBlockCount(); count++ ) {
+			if ( this.isDirty(count) ) return true;
+		}
+		return false;
+	}
+	
+	private boolean isDirty(int _index) {
+		int start = _index * MifareLayout.BLOCK_SIZE;
+		for ( int pos = start; pos < start + MifareLayout.BLOCK_SIZE; pos++ ) {
+			if ( this.buffer[pos] != this.cardContent[pos] ) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes all changed blocks to the card.
+	 * 
+	 * @param _verify True to read back the written blocks and compare them with the image.
+	 * @return The number of written blocks.
+	 * @throws Exception If a block could not be written, the verification failed
+	 * or the connected card is not the card the image was read from.
+	 */
+	public synchronized int commit(boolean _verify) throws Exception {
+		int[] dirty = this.getDirtyBlocks();
+		if ( dirty.length == 0 ) return 0;
+		if ( !Arrays.equals(this.uid, this.card.getUIDBytes()) )
+			throw new CardException("The image was read from another card, the changes are not written");
+		MifareAccessPlan plan = new MifareAccessPlan(this.layout);
+		for ( int block : dirty ) {
+			int index = this.layout.getDataIndexOfBlock(block) * MifareLayout.BLOCK_SIZE;
+			plan.write(block, ByteBuffer.wrap(this.buffer, index, MifareLayout.BLOCK_SIZE));
+		}
+		this.card.execute(plan, this.keyType, this.key, this.keyNumber, null);
+		
+		if ( _verify ) {
+			plan.clear();
+			for ( int block : dirty )
+				plan.read(block);
+			final int[] mismatch = new int[] { -1 };
+			this.card.execute(plan, this.keyType, this.key, this.keyNumber, new IBlockListener() {
+				@Override
+				public boolean blockRead(int _block, byte[] _data, int _offset) {
+					int index = layout.getDataIndexOfBlock(_block) * MifareLayout.BLOCK_SIZE;
+					for ( int count = 0; count < MifareLayout.BLOCK_SIZE; count++ ) {
+						if ( _data[_offset + count] != buffer[index + count] ) {
+							mismatch[0] = _block;
+							return false;
+						}
+					}
+					return true;
+				}
+			});
+			if ( mismatch[0] != -1 )
+				throw new CardException("Verification of block " + mismatch[0] + " failed, the card content differs from the written data");
+		}
+		
+		for ( int block : dirty ) {
+			int index = this.layout.getDataIndexOfBlock(block) * MifareLayout.BLOCK_SIZE;
+			System.arraycopy(this.buffer, index, this.cardContent, index, MifareLayout.BLOCK_SIZE);
+		}
+		return dirty.length;
+	}
+}
@@ -0,0 +1,203 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package to.networld.schandler.card;
+
+import to.networld.schandler.interfaces.ICard.CardType;
+
+/**
+ * Immutable memory layout of a Mifare Classic card. The first 32 sectors have
+ * 4 blocks, the upper 8 sectors of a Mifare 4K card have 16 blocks. The last
+ * block of every sector is the sector trailer with the keys and access
+ * conditions, block 0 is the read only manufacturer block.<p/>
+ * 
+ * The user data blocks are all blocks except the manufacturer block and the
+ * sector trailers. They are numbered from 0 in ascending block order.
+ * 
+ * @author Alex Oberhauser
+ */
+public final class MifareLayout {
+	/** Mifare Mini, 5 sectors with 4 blocks. */
+	public static final MifareLayout MINI = new MifareLayout("Mifare Mini", 5, 0);
+	/** Mifare Classic 1K, 16 sectors with 4 blocks. */
+	public static final MifareLayout CLASSIC_1K = new MifareLayout("Mifare 1K", 16, 0);
+	/** Mifare Classic 4K, 32 sectors with 4 blocks and 8 sectors with 16 blocks. */
+	public static final MifareLayout CLASSIC_4K = new MifareLayout("Mifare 4K", 32, 8);
+	
+	public static final int BLOCK_SIZE = 16;
+	
+	private final String name;
+	private final int sectorCount;
+	private final int blockCount;
+	private final int[] blockToSector;
+	private final int[] dataBlocks;
+	private final int[] blockToDataIndex;
+	private final int[] sectorToFirstDataIndex;
+	
+	private MifareLayout(String _name, int _smallSectors, int _largeSectors) {
+		this.name = _name;
+		this.sectorCount = _smallSectors + _largeSectors;
+		this.blockCount = _smallSectors * 4 + _largeSectors * 16;
+		this.blockToSector = new int[this.blockCount];
+		this.blockToDataIndex = new int[this.blockCount];
+		this.sectorToFirstDataIndex = new int[this.sectorCount + 1];
+		int[] data = new int[this.blockCount];
+		int dataCount = 0;
+		for ( int sector = 0; sector < this.sectorCount; sector++ ) {
+			this.sectorToFirstDataIndex[sector] = dataCount;
+			int first = this.getFirstBlockOfSector(sector);
+			int trailer = first + this.getBlockCountOfSector(sector) - 1;
+			for ( int block = first; block <= trailer; block++ ) {
+				this.blockToSector[block] = sector;
+				if ( block == 0 || block == trailer ) {
+					this.blockToDataIndex[block] = -1;
+				} else {
+					this.blockToDataIndex[block] = dataCount;
+					data[dataCount++] = block;
+				}
+			}
+		}
+		this.sectorToFirstDataIndex[this.sectorCount] = dataCount;
+		this.dataBlocks = new int[dataCount];
+		System.arraycopy(data, 0, this.dataBlocks, 0, dataCount);
+	}
+	
+	/**
+	 * @param _type The card type, for example from {@link BasicCard#getCardType()}
+	 * @return The layout of the card type or null if it is not a Mifare Classic card.
+	 */
+	public static MifareLayout forCardType(CardType _type) {
+		if ( _type == CardType.Mifare1K ) return CLASSIC_1K;
+		if ( _type == CardType.Mifare4K ) return CLASSIC_4K;
+		if ( _type == CardType.MifareMini ) return MINI;
+		return null;
+	}
+	
+	public int getSectorCount() { return this.sectorCount; }
+	
+	/**
+	 * @return The number of blocks, including the manufacturer block and sector trailers.
+	 */
+	public int getBlockCount() { return this.blockCount; }
+	
+	/**
+	 * @return The number of user data blocks.
+	 */
+	public int getDataBlockCount() { return this.dataBlocks.length; }
+	
+	/**
+	 * @return The size of the user data area in bytes.
+	 */
+	public int getDataSize() { return this.dataBlocks.length * BLOCK_SIZE; }
+	
+	/**
+	 * @param _block The block number.
+	 * @return The sector that includes the block.
+	 */
+	public int getSectorOfBlock(int _block) {
+		return this.blockToSector[_block];
+	}
+	
+	/**
+	 * @param _sector The sector number.
+	 * @return The first block of the sector.
+	 */
+	public int getFirstBlockOfSector(int _sector) {
+		if ( _sector < 32 )
+			return _sector * 4;
+		return 128 + (_sector - 32) * 16;
+	}
+	
+	/**
+	 * @param _sector The sector number.
+	 * @return The number of blocks of the sector, including the sector trailer.
+	 */
+	public int getBlockCountOfSector(int _sector) {
+		return _sector < 32 ? 4 : 16;
+	}
+	
+	/**
+	 * @param _sector The sector number.
+	 * @return The block number of the sector trailer.
+	 */
+	public int getTrailerOfSector(int _sector) {
+		return this.getFirstBlockOfSector(_sector) + this.getBlockCountOfSector(_sector) - 1;
+	}
+	
+	/**
+	 * @param _block The block number.
+	 * @return True if the block is a sector trailer.
+	 */
+	public boolean isTrailer(int _block) {
+		return _block == this.getTrailerOfSector(this.blockToSector[_block]);
+	}
+	
+	/**
+	 * @param _block The block number.
+	 * @return True if the block is a user data block.
+	 */
+	public boolean isDataBlock(int _block) {
+		return _block >= 0 && _block < this.blockCount && this.blockToDataIndex[_block] != -1;
+	}
+	
+	/**
+	 * @param _index The index of the user data block, beginning with 0.
+	 * @return The block number of the n-th user data block.
+	 */
+	public int getDataBlock(int _index) {
+		return this.dataBlocks[_index];
+	}
+	
+	/**
+	 * @param _block The block number.
+	 * @return The index of the block in the user data area or -1 if it is no user data block.
+	 */
+	public int getDataIndexOfBlock(int _block) {
+		return this.blockToDataIndex[_block];
+	}
+	
+	/**
+	 * @return A copy of all user data block numbers in ascending order.
+	 */
+	public int[] getDataBlocks() {
+		return this.dataBlocks.clone();
+	}
+	
+	/**
+	 * @param _sector The sector number.
+	 * @return The first user data block of the sector.
+	 */
+	public int getFirstDataBlockOfSector(int _sector) {
+		return this.dataBlocks[this.sectorToFirstDataIndex[_sector]];
+	}
+	
+	/**
+	 * @param _sector The sector number.
+	 * @return The number of user data blocks of the sector.
+	 */
+	public int getDataBlockCountOfSector(int _sector) {
+		return this.sectorToFirstDataIndex[_sector + 1] - this.sectorToFirstDataIndex[_sector];
+	}
+	
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
@@ -20,11 +20,10 @@
 
 package to.networld.schandler.card;
 
-import java.util.Vector;
+import java.util.Arrays;
 
 import javax.smartcardio.CardException;
 import javax.smartcardio.CardTerminal;
-import javax.smartcardio.CommandAPDU;
 import javax.smartcardio.ResponseAPDU;
 
 import to.networld.schandler.common.HexHandler;
@@ -58,6 +57,22 @@ public class OpenPGP extends BasicCard {
 	public static final byte[] WRONG_LENGTH = new byte[] { (byte)0x67, (byte)0x00 };
 	public static final byte[] MEMORY_FAILURE = new byte[] { (byte)0x65, (byte)0x81 };
 	public static final byte[] TERMINATION_STATE = new byte[] { (byte)0x62, (byte)0x85 };
+	
+	/**
+	 * The ISO 7816-4 status words with the messages of the OpenPGP card specification.
+	 */
+	public static final StatusWord.Table STATUS_WORDS = StatusWord.ISO7816.overlay(
+			new int[] { 0x6581, 0x6700, 0x6982, 0x6983, 0x6985, 0x6987, 0x6988, 0x6B00, 0x6D00, 0x6E00 },
+			new String[] { "Memory failure",
+				"Wrong length (Lc and/or Le)",
+				"Security status not satisfied / PW wrong / PW not checked (command not allowed) / Secure messaging incorrect (checksum and/or cryptogram)",
+				"Authentication method blocked / PW blocked (error counter zero)",
+				"Condition of use not satisfied",
+				"Expected SM data objects missing (e.g. SM-key, SSC)",
+				"SM data objects incorrect (e.g. wrong TLV-structure in command data)",
+				"Wrong parameters P1-P2",
+				"Instruction (INS) not supported",
+				"Class (CLA) not supported" });
 	/*
 	 * END Response Message Codes
 	 */
@@ -65,6 +80,49 @@ public class OpenPGP extends BasicCard {
 	public static final byte[] SELECT_FILE = new byte[] { (byte)0x00, (byte)0xA4, (byte)0x04, (byte)0x00, (byte)0x06, 
 		(byte)0xD2, (byte)0x76, (byte)0x00, (byte)0x01, (byte)0x24, (byte)0x01, (byte)0x00 };
 	
+	/**
+	 * AID of the OpenPGP application, as sent with {@link #SELECT_FILE}.
+	 */
+	public static final byte[] AID = new byte[] { (byte)0xD2, (byte)0x76, (byte)0x00, (byte)0x01, (byte)0x24, (byte)0x01 };
+	
+	private static final byte[] SELECTED = new byte[] { (byte)0x90, (byte)0x00 };
+	
+	/**
+	 * PW1 for PSO:COMPUTE DIGITAL SIGNATURE.
+	 */
+	public static final int PW1_SIGN = 0x81;
+	/**
+	 * PW1 for PSO:DECIPHER and INTERNAL AUTHENTICATE.
+	 */
+	public static final int PW1 = 0x82;
+	/**
+	 * PW3, the admin password.
+	 */
+	public static final int PW3 = 0x83;
+	
+	/*
+	 * Control reference templates of the keys, see readPublicKey(int).
+	 */
+	public static final int KEY_SIGNATURE = 0xB6;
+	public static final int KEY_DECIPHER = 0xB8;
+	public static final int KEY_AUTHENTICATION = 0xA4;
+	
+	private OpenPGPProfile profile = null;
+	private OpenPGPProfileCache profileCache = OpenPGPProfileCache.getShared();
+	private byte[] applicationIdentifier = null;
+	
+	/*
+	 * True if the application was selected on the basic channel inside the
+	 * current transaction, see endTransaction().
+	 */
+	private boolean selected = false;
+	
+	/*
+	 * Verified passwords of the current card session, indexed by reference - 0x81.
+	 */
+	private final boolean[] verified = new boolean[3];
+	private Boolean signaturePINReusable = null;
+	
 	/**
 	 * OpenPGP card (also used for the FSFE card). 
 	 * 
@@ -86,68 +144,411 @@ public class OpenPGP extends BasicCard {
 	 */
 	public static String getResponseMessage(byte[] _responseArray) throws Exception {
 		if ( _responseArray.length > 2 ) return HexHandler.getHexString(_responseArray);
-		if ( _responseArray[0] ==  SUCCESS[0] && _responseArray[1] == SUCCESS[1] )
-			return "Success";
-		else if ( _responseArray[0] ==  TERMINATION_STATE[0] && _responseArray[1] == TERMINATION_STATE[1] )
-			return "Selected file in termination state";
-		else if ( _responseArray[0] ==  MEMORY_FAILURE[0] && _responseArray[1] == MEMORY_FAILURE[1] )
-			return "Memory failure";
-		else if ( _responseArray[0] ==  WRONG_LENGTH[0] && _responseArray[1] == WRONG_LENGTH[1] )
-			return "Wrong length (Lc and/or Le)";
-		else if ( _responseArray[0] ==  UNSUPPORTED_SECURE_MESSAGING[0] && _responseArray[1] == UNSUPPORTED_SECURE_MESSAGING[1] )
-			return "Secure messaging not supported";
-		else if ( _responseArray[0] ==  EXPECTED_LAST_COMMAND[0] && _responseArray[1] == EXPECTED_LAST_COMMAND[1] )
-			return "Last command of the chain expected";
-		else if ( _responseArray[0] ==  UNSUPPORTED_COMMAND_CHAINING[0] && _responseArray[1] == UNSUPPORTED_COMMAND_CHAINING[1] )
-			return "Command chaining not supported";
-		else if ( _responseArray[0] ==  SECURITY_STATUS_NOT_SATISFIED[0] && _responseArray[1] == SECURITY_STATUS_NOT_SATISFIED[1] )
-			return "Security status not satisfied / PW wrong / PW not checked (command not allowed) / Secure messaging incorrect (checksum and/or cryptogram)";	
-		else if ( _responseArray[0] ==  AUTH_OR_PW_BLOCKED[0] && _responseArray[1] == AUTH_OR_PW_BLOCKED[1] )
-			return "Authentication method blocked / PW blocked (error counter zero)";
-		else if ( _responseArray[0] == USE_CONDITION_NOT_SATISFIED[0] && _responseArray[1] == USE_CONDITION_NOT_SATISFIED[1] )
-			return "Condition of use not satisfied";
-		else if ( _responseArray[0] == MISSING_SM_DATA[0] && _responseArray[1] == MISSING_SM_DATA[1] )
-			return "Expected SM data objects missing (e.g. SM-key, SSC)";
-		else if ( _responseArray[0] == INCORRECT_SM_DATA[0] && _responseArray[1] == INCORRECT_SM_DATA[1] )
-			return "SM data objects incorrect (e.g. wrong TLV-structure in command data)";
-		else if ( _responseArray[0] == INCORRECT_DATA_PARAMETER[0] && _responseArray[1] == INCORRECT_DATA_PARAMETER[1] )
-			return "Incorrect parameters in the data field";
-		else if ( _responseArray[0] == DATA_NOT_FOUND[0] && _responseArray[1] == DATA_NOT_FOUND[1] )
-			return "Referenced data not found";
-		else if ( _responseArray[0] == WRONG_PARAMETER[0] && _responseArray[1] == WRONG_PARAMETER[1] )
-			return "Wrong parameters P1-P2";
-		else if ( _responseArray[0] == INS_NOT_SUPPORTED[0] && _responseArray[1] == INS_NOT_SUPPORTED[1] )
-			return "Instruction (INS) not supported";
-		else if ( _responseArray[0] == CLA_NOT_SUPPORTED[0] && _responseArray[1] == CLA_NOT_SUPPORTED[1] )
-			return "Class (CLA) not supported";
-		
-		return "Unknown Response Message";	
+		return STATUS_WORDS.getMessage(StatusWord.toInt(_responseArray[0], _responseArray[1]));
 	}
 	
+	/**
+	 * Selects the OpenPGP application. No command is sent and the verified
+	 * passwords are kept if the application is already selected on the logical
+	 * channel of this client, see {@link #openLogicalChannel(long)}, or on the
+	 * basic channel inside the current transaction. Between two transactions
+	 * other clients could select another application on the basic channel.
+	 * 
+	 * @return The response of the SELECT command.
+	 * @throws CardException
+	 */
 	public synchronized ResponseAPDU selectFile() throws CardException {
-		return this.sendAPDUCommandToCard(OpenPGP.SELECT_FILE);
+		ManagedChannel channel = this.getLogicalChannel();
+		if ( this.selected || (channel != null && channel.isSelected(AID)) )
+			return new ResponseAPDU(SELECTED);
+		this.profile = null;
+		this.applicationIdentifier = null;
+		this.clearVerification();
+		ResponseAPDU response = this.sendAPDUCommandToCard(OpenPGP.SELECT_FILE);
+		this.selected = response.getSW() == StatusWord.SUCCESS;
+		return response;
+	}
+	
+	/**
+	 * Prefers a released channel that has the OpenPGP application still
+	 * selected, so {@link #selectFile()} does not need to send the SELECT.
+	 */
+	@Override
+	public ManagedChannel openLogicalChannel(long _timeout) throws CardException {
+		return this.openLogicalChannel(AID, _timeout);
+	}
+	
+	/**
+	 * Forgets the selection on the basic channel when the outermost transaction
+	 * ends, other clients could change it before the next one.
+	 */
+	@Override
+	protected synchronized void endTransaction() throws CardException {
+		super.endTransaction();
+		if ( !this.isInTransaction() && this.getLogicalChannel() == null )
+			this.selected = false;
+	}
+	
+	/**
+	 * Every SELECT sent over this connection, also the ones sent with
+	 * {@link #sendAPDUCommandToCard(byte[])}, makes the selection and the
+	 * verified passwords unknown. Every PUT DATA and every key generation
+	 * drops the cached data of the card.
+	 */
+	@Override
+	protected synchronized int transmit() throws CardException {
+		byte ins = this.commandBuffer.get(1);
+		if ( ins == (byte)0xA4 ) {
+			this.selected = false;
+			this.clearVerification();
+		}
+		if ( ins != (byte)0xDA && ins != (byte)0xDB && !(ins == (byte)0x47 && this.commandBuffer.get(2) == (byte)0x80) )
+			return super.transmit();
+		try {
+			return super.transmit();
+		} finally {
+			this.invalidateCachedData();
+		}
+	}
+	
+	/**
+	 * Drops the profile of this connection and the entry of the card in the
+	 * profile cache, the whole cache if the application identifier is not known.
+	 */
+	private void invalidateCachedData() {
+		this.profile = null;
+		this.signaturePINReusable = null;
+		if ( this.profileCache == null )
+			return;
+		if ( this.applicationIdentifier != null )
+			this.profileCache.invalidate(this.applicationIdentifier);
+		else
+			this.profileCache.clear();
 	}
 	
 	/**
 	 * Method that will be used to read out the data. Could be called externally or
 	 * in the wrapper methods.
 	 * 
+	 * Large data objects are requested with extended length if the card supports
+	 * it, otherwise they are fetched with GET RESPONSE.
+	 * 
 	 * @param _p1 The first parameter P1
 	 * @param _p2 The second parameter P2
-	 * @return The data as byte array.
+	 * @return The data as byte array, empty if the card returned an error.
 	 * @throws Exception
 	 */
 	public synchronized byte[] getData(byte _p1, byte _p2) throws Exception {
-		byte[] commandByteArray = new byte[] { (byte)0x00, (byte)0xCA, _p1, _p2, (byte)0xFF };
-		Vector<Integer> commandVector = HexHandler.getHexToInt(commandByteArray);
-		CommandAPDU command = new CommandAPDU(commandVector.get(0),
-				commandVector.get(1),
-				commandVector.get(2),
-				commandVector.get(3),
-				commandVector.get(4));
-		ResponseAPDU dataAPDU = this.sendAPDUCommandToCard(command);
-		System.out.println("[!!] DEBUG: " + getResponseMessage(dataAPDU.getBytes()));
-		return dataAPDU.getData();
+		this.beginCommand(0x00, 0xCA, _p1, _p2);
+		this.finishCommand(null, 0, 0, this.getMaxResponseLength());
+		this.transmit();
+		byte[] data = new byte[this.responseBuffer.limit()];
+		this.responseBuffer.get(data);
+		return data;
+	}
+	
+	/**
+	 * @return The largest Le the card accepts, 65536 with extended length and 256 otherwise.
+	 */
+	private int getMaxResponseLength() {
+		return this.isExtendedLengthSupported() ? 65536 : 256;
+	}
+	
+	/**
+	 * Reads the cardholder and application related data with one transaction
+	 * and caches the profile until the card is disconnected. The profile is
+	 * also stored in the {@link OpenPGPProfileCache}. The application has to be
+	 * selected before, see {@link #selectFile()}.
+	 * 
+	 * @return The profile of the card.
+	 * @throws Exception
+	 */
+	public synchronized OpenPGPProfile readProfile() throws Exception {
+		this.beginTransaction();
+		try {
+			byte[] applicationData = this.getData((byte)0x00, (byte)0x6E);
+			OpenPGPProfile profile = new OpenPGPProfile(this.getData((byte)0x00, (byte)0x65),
+					applicationData,
+					this.getData((byte)0x00, (byte)0x5E),
+					this.getData((byte)0x5F, (byte)0x50));
+			if ( profile.isExtendedLengthSupported() )
+				this.setExtendedLengthSupported(true);
+			byte[] aid = profile.getAIDBytes();
+			if ( aid.length > 0 ) {
+				this.applicationIdentifier = aid;
+				if ( this.profileCache != null )
+					this.profileCache.putProfile(aid, profile);
+			}
+			this.profile = profile;
+			return this.profile;
+		} finally {
+			this.endTransaction();
+		}
+	}
+	
+	/**
+	 * Returns the profile of the current session. Otherwise the application
+	 * identifier is read and the profile is taken from the {@link OpenPGPProfileCache},
+	 * only if the card is not cached the whole profile is read.
+	 * 
+	 * @return The cached profile, it is read if not already done.
+	 * @throws Exception
+	 */
+	public synchronized OpenPGPProfile getProfile() throws Exception {
+		if ( this.profile != null )
+			return this.profile;
+		if ( this.profileCache != null ) {
+			OpenPGPProfile cached = this.profileCache.getProfile(this.getAIDBytes());
+			if ( cached != null ) {
+				if ( cached.isExtendedLengthSupported() )
+					this.setExtendedLengthSupported(true);
+				this.profile = cached;
+				return this.profile;
+			}
+		}
+		return this.readProfile();
+	}
+	
+	/**
+	 * @param _profileCache The cache for the profiles and public keys, null to disable caching.
+	 */
+	public synchronized void setProfileCache(OpenPGPProfileCache _profileCache) {
+		this.profileCache = _profileCache;
+	}
+	
+	public synchronized OpenPGPProfileCache getProfileCache() { return this.profileCache; }
+	
+	/**
+	 * Reads the full application identifier (data object 0x4F) once per session.
+	 * It includes the manufacturer and the serial number of the card.
+	 * 
+	 * @return A copy of the application identifier.
+	 * @throws Exception If the card does not return the application identifier.
+	 */
+	public synchronized byte[] getAIDBytes() throws Exception {
+		if ( this.applicationIdentifier == null ) {
+			byte[] aid = this.getData((byte)0x00, (byte)0x4F);
+			if ( aid.length == 0 )
+				throw new CardException("Unable to read the application identifier: " + STATUS_WORDS.getMessage(this.getLastStatusWord()));
+			this.applicationIdentifier = aid;
+		}
+		return this.applicationIdentifier.clone();
+	}
+	
+	/**
+	 * Writes the data object and drops the cached data of the card. PW3 has
+	 * to be verified before, PW1 for the private use data objects 0101 and 0103.
+	 * 
+	 * @param _tag The tag of the data object, for example 0x5B for the name.
+	 * @param _data The new content of the data object.
+	 * @throws Exception
+	 */
+	public synchronized void putData(int _tag, byte[] _data) throws Exception {
+		int reference = (_tag == 0x0101 || _tag == 0x0103) ? PW1 : PW3;
+		/**
+		 * With a known application identifier only the entry of this card is
+		 * dropped from the cache, see transmit().
+		 */
+		if ( this.profileCache != null )
+			this.getAIDBytes();
+		this.transmitChained(0xDA, _tag >> 8 & 0xFF, _tag & 0xFF, _data, 0, reference);
+	}
+	
+	/**
+	 * Reads the public key (GENERATE ASYMMETRIC KEY PAIR with P1 0x81).
+	 * 
+	 * @param _key {@link #KEY_SIGNATURE}, {@link #KEY_DECIPHER} or {@link #KEY_AUTHENTICATION}
+	 * @return The public key template 0x7F49.
+	 * @throws CardException If the card does not return the key.
+	 */
+	public synchronized byte[] readPublicKey(int _key) throws CardException {
+		byte[] crt = new byte[] { (byte)_key, 0x00 };
+		return this.transmitChained(0x47, 0x81, 0x00, crt, this.getMaxResponseLength(), PW1);
+	}
+	
+	/**
+	 * @param _key {@link #KEY_SIGNATURE}, {@link #KEY_DECIPHER} or {@link #KEY_AUTHENTICATION}
+	 * @return The public key template 0x7F49, from the {@link OpenPGPProfileCache} if possible.
+	 * @throws Exception
+	 */
+	public synchronized byte[] getPublicKey(int _key) throws Exception {
+		if ( this.profileCache == null )
+			return this.readPublicKey(_key);
+		byte[] aid = this.getAIDBytes();
+		byte[] publicKey = this.profileCache.getPublicKey(aid, _key);
+		if ( publicKey == null ) {
+			this.getProfile();
+			publicKey = this.readPublicKey(_key);
+			this.profileCache.putPublicKey(aid, _key, publicKey);
+		}
+		return publicKey;
+	}
+	
+	@Override
+	protected void resetSessionState() {
+		super.resetSessionState();
+		this.profile = null;
+		this.applicationIdentifier = null;
+		this.selected = false;
+		this.clearVerification();
+	}
+	
+	private void clearVerification() {
+		this.signaturePINReusable = null;
+		for ( int count = 0; count < this.verified.length; count++ )
+			this.verified[count] = false;
+	}
+	
+	private static int passwordIndex(int _reference) {
+		if ( _reference < PW1_SIGN || _reference > PW3 )
+			throw new IllegalArgumentException("Unknown password reference '" + Integer.toHexString(_reference) + "'");
+		return _reference - PW1_SIGN;
+	}
+	
+	/**
+	 * Verifies the password. The verification is kept until the card is
+	 * disconnected or the application is selected again, see {@link #isVerified(int)}.
+	 * 
+	 * @param _reference {@link #PW1_SIGN}, {@link #PW1} or {@link #PW3}
+	 * @param _pin The password as UTF-8 bytes.
+	 * @throws CardException If the password is wrong or blocked.
+	 */
+	public synchronized void verify(int _reference, byte[] _pin) throws CardException {
+		int index = passwordIndex(_reference);
+		this.verified[index] = false;
+		this.beginCommand(0x00, 0x20, 0x00, _reference);
+		try {
+			this.finishCommand(_pin, 0, _pin.length, 0);
+			int sw = this.transmit();
+			if ( sw != StatusWord.SUCCESS )
+				throw new CardException("Verification of the password '" + Integer.toHexString(_reference) + "' failed: " + STATUS_WORDS.getMessage(sw));
+			this.verified[index] = true;
+		} finally {
+			/**
+			 * Do not keep the password in the reusable command buffer.
+			 */
+			Arrays.fill(this.commandBuffer.array(), (byte)0x00);
+		}
+	}
+	
+	/**
+	 * @param _reference {@link #PW1_SIGN}, {@link #PW1} or {@link #PW3}
+	 * @return True if the password was verified in the current card session.
+	 */
+	public synchronized boolean isVerified(int _reference) {
+		return this.verified[passwordIndex(_reference)];
+	}
+	
+	/**
+	 * Signs the hash with the signature key (PSO:COMPUTE DIGITAL SIGNATURE).
+	 * {@link #PW1_SIGN} has to be verified before. If the card accepts PW1 only
+	 * for one signature the verification is dropped afterwards.
+	 * 
+	 * @param _digestInfo The DigestInfo for RSA keys, the plain hash for ECDSA keys.
+	 * @return The signature.
+	 * @throws Exception
+	 */
+	public synchronized byte[] computeDigitalSignature(byte[] _digestInfo) throws Exception {
+		boolean reusable = this.isSignaturePINReusable();
+		byte[] signature = this.performSecurityOperation(0x2A, 0x9E, 0x9A, _digestInfo, PW1_SIGN);
+		if ( !reusable )
+			this.verified[passwordIndex(PW1_SIGN)] = false;
+		return signature;
+	}
+	
+	/**
+	 * @return True if a verified {@link #PW1_SIGN} is valid for several signatures.
+	 * @throws Exception
+	 * @see OpenPGPProfile#isSignaturePINReusable()
+	 */
+	public synchronized boolean isSignaturePINReusable() throws Exception {
+		if ( this.profile != null )
+			return this.profile.isSignaturePINReusable();
+		if ( this.signaturePINReusable == null ) {
+			byte[] status = this.getData((byte)0x00, (byte)0xC4);
+			this.signaturePINReusable = status.length > 0 && status[0] == 0x01;
+		}
+		return this.signaturePINReusable;
+	}
+	
+	/**
+	 * Deciphers the cryptogram with the decryption key (PSO:DECIPHER).
+	 * {@link #PW1} has to be verified before.
+	 * 
+	 * @param _data The padding indicator 0x00 followed by the cryptogram for RSA keys, the cipher DO for ECDH keys.
+	 * @return The plain data.
+	 * @throws Exception
+	 */
+	public synchronized byte[] decipher(byte[] _data) throws Exception {
+		return this.performSecurityOperation(0x2A, 0x80, 0x86, _data, PW1);
+	}
+	
+	/**
+	 * Signs the challenge with the authentication key (INTERNAL AUTHENTICATE).
+	 * {@link #PW1} has to be verified before.
+	 * 
+	 * @param _data The authentication input, for example a DigestInfo.
+	 * @return The response of the card.
+	 * @throws Exception
+	 */
+	public synchronized byte[] internalAuthenticate(byte[] _data) throws Exception {
+		return this.performSecurityOperation(0x88, 0x00, 0x00, _data, PW1);
+	}
+	
+	/**
+	 * Sends the security operation with the largest Le, see {@link #transmitChained(int, int, int, byte[], int, int)}.
+	 */
+	private byte[] performSecurityOperation(int _ins, int _p1, int _p2, byte[] _data, int _reference) throws CardException {
+		return this.transmitChained(_ins, _p1, _p2, _data, this.getMaxResponseLength(), _reference);
+	}
+	
+	/**
+	 * Sends the command, data that does not fit into a short command is sent
+	 * with extended length or, if the card does not support it, with command chaining.
+	 * 
+	 * @param _ne The expected response length, 0 for none.
+	 * @param _reference The password that is dropped if the card answers 6982.
+	 * @return The response data.
+	 * @throws CardException If the card does not return 9000.
+	 */
+	private byte[] transmitChained(int _ins, int _p1, int _p2, byte[] _data, int _ne, int _reference) throws CardException {
+		boolean extended = this.isExtendedLengthSupported();
+		this.beginTransaction();
+		try {
+			int offset = 0;
+			if ( !extended ) {
+				while ( _data.length - offset > 255 ) {
+					this.beginCommand(0x10, _ins, _p1, _p2);
+					this.finishCommand(_data, offset, 255, 0);
+					this.checkStatus(this.transmit(), _reference);
+					offset += 255;
+				}
+			}
+			this.beginCommand(0x00, _ins, _p1, _p2);
+			this.finishCommand(_data, offset, _data.length - offset, _ne);
+			this.checkStatus(this.transmit(), _reference);
+			byte[] result = new byte[this.responseBuffer.limit()];
+			this.responseBuffer.get(result);
+			return result;
+		} finally {
+			this.endTransaction();
+		}
+	}
+	
+	private void checkStatus(int _sw, int _reference) throws CardException {
+		if ( _sw == StatusWord.SUCCESS )
+			return;
+		if ( _sw == StatusWord.SECURITY_STATUS_NOT_SATISFIED )
+			this.verified[passwordIndex(_reference)] = false;
+		throw new CardException("Command failed: " + STATUS_WORDS.getMessage(_sw));
+	}
+	
+	/**
+	 * @return The cardholder certificate (data object 7F21), empty if not present.
+	 * @throws Exception
+	 */
+	public synchronized byte[] getCertificate() throws Exception {
+		return this.getData((byte)0x7F, (byte)0x21);
 	}
 	
 	/**
@@ -157,7 +558,7 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getAID() throws Exception {
-		return HexHandler.getHexString(this.getData((byte)0x00, (byte)0x4F));
+		return this.getProfile().getAID();
 	}
 	
 	/**
@@ -167,7 +568,7 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getLoginData() throws Exception {
-		return HexHandler.getHexToAscii(this.getData((byte)0x00, (byte)0x5E));
+		return this.getProfile().getLoginData();
 	}
 	
 	/**
@@ -175,7 +576,7 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getName() throws Exception {
-		return HexHandler.getHexToAscii(this.getData((byte)0x00, (byte)0x5B));
+		return this.getProfile().getName();
 	}
 
 	/**
@@ -183,7 +584,7 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getURL() throws Exception {
-		return HexHandler.getHexToAscii(this.getData((byte)0x5F, (byte)0x50));
+		return this.getProfile().getURL();
 	}
 	
 	/**
@@ -193,7 +594,7 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getGender() throws Exception {
-		return HexHandler.getHexString(this.getData((byte)0x5F, (byte)0x35));
+		return this.getProfile().getGender();
 	}
 	
 	/**
@@ -203,7 +604,7 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getLanguage() throws Exception {
-		return HexHandler.getHexToAscii(this.getData((byte)0x5F, (byte)0x2D));
+		return this.getProfile().getLanguage();
 	}
 	
 	/**
@@ -213,6 +614,6 @@ public class OpenPGP extends BasicCard {
 	 * @throws Exception 
 	 */
 	public synchronized String getUserData() throws Exception {
-		return HexHandler.getHexToAscii(this.getData((byte)0x00, (byte)0x65));
+		return this.getProfile().getUserData();
 	}
 }
@@ -0,0 +1,223 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+
+import to.networld.schandler.common.BerTlv;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.common.exceptions.MalformedTLVException;
+
+/**
+ * Immutable snapshot of the cardholder and application data of an OpenPGP
+ * card. The fields are parsed from the constructed data objects 0x65
+ * (Cardholder Related Data) and 0x6E (Application Related Data) and the
+ * simple data objects 0x5E (Login data) and 0x5F50 (URL), see
+ * {@link OpenPGP#readProfile()}. The constructed data objects are parsed
+ * with {@link BerTlv}.
+ * 
+ * @author Alex Oberhauser
+ */
+public final class OpenPGPProfile {
+	public static final int TAG_AID = 0x4F;
+	public static final int TAG_NAME = 0x5B;
+	public static final int TAG_LOGIN_DATA = 0x5E;
+	public static final int TAG_LANGUAGE = 0x5F2D;
+	public static final int TAG_SEX = 0x5F35;
+	public static final int TAG_URL = 0x5F50;
+	public static final int TAG_HISTORICAL_BYTES = 0x5F52;
+	public static final int TAG_CARDHOLDER_DATA = 0x65;
+	public static final int TAG_APPLICATION_DATA = 0x6E;
+	public static final int TAG_EXTENDED_LENGTH_INFO = 0x7F66;
+	public static final int TAG_PW_STATUS = 0xC4;
+	
+	private static final byte[] EMPTY = new byte[0];
+	
+	private final byte[] cardholderData;
+	private final byte[] applicationData;
+	private final ByteBuffer cardholderContent;
+	private final ByteBuffer applicationContent;
+	private final byte[] aid;
+	private final byte[] name;
+	private final byte[] language;
+	private final byte[] sex;
+	private final byte[] historicalBytes;
+	private final byte[] loginData;
+	private final byte[] url;
+	private final boolean extendedLength;
+	private final boolean signaturePINReusable;
+	
+	/**
+	 * @param _cardholderData The data object 0x65 as returned by the card, could be empty.
+	 * @param _applicationData The data object 0x6E as returned by the card, could be empty.
+	 * @param _loginData The content of the data object 0x5E, could be empty.
+	 * @param _url The content of the data object 0x5F50, could be empty.
+	 * @throws MalformedTLVException If a constructed data object is not valid BER-TLV.
+	 */
+	public OpenPGPProfile(byte[] _cardholderData, byte[] _applicationData, byte[] _loginData, byte[] _url) throws MalformedTLVException {
+		this.cardholderData = _cardholderData.clone();
+		this.applicationData = _applicationData.clone();
+		this.loginData = _loginData.clone();
+		this.url = _url.clone();
+		this.cardholderContent = unwrap(this.cardholderData, TAG_CARDHOLDER_DATA);
+		this.applicationContent = unwrap(this.applicationData, TAG_APPLICATION_DATA);
+		this.name = getValue(this.cardholderContent, TAG_NAME);
+		this.language = getValue(this.cardholderContent, TAG_LANGUAGE);
+		this.sex = getValue(this.cardholderContent, TAG_SEX);
+		this.aid = getValue(this.applicationContent, TAG_AID);
+		this.historicalBytes = getValue(this.applicationContent, TAG_HISTORICAL_BYTES);
+		this.extendedLength = CardDescriptor.hasExtendedLengthCapability(this.historicalBytes)
+			|| BerTlv.search(this.applicationContent, TAG_EXTENDED_LENGTH_INFO) != null;
+		byte[] pwStatus = getValue(this.applicationContent, TAG_PW_STATUS);
+		this.signaturePINReusable = pwStatus.length > 0 && pwStatus[0] == 0x01;
+	}
+	
+	/**
+	 * Some cards return the constructed data object with its tag, others only the content.
+	 * 
+	 * @return A read only view of the content of the data object.
+	 */
+	private static ByteBuffer unwrap(byte[] _data, int _tag) throws MalformedTLVException {
+		BerTlv outer = new BerTlv(_data);
+		if ( outer.next() && outer.getTag() == _tag && !outer.next() ) {
+			outer.rewind();
+			outer.next();
+			return outer.getValue();
+		}
+		return ByteBuffer.wrap(_data).asReadOnlyBuffer();
+	}
+	
+	/**
+	 * @return The value of the first data object with the tag on any level, empty if not found.
+	 */
+	private static byte[] getValue(ByteBuffer _content, int _tag) throws MalformedTLVException {
+		BerTlv tlv = BerTlv.search(_content, _tag);
+		return tlv == null ? EMPTY : tlv.getValueBytes();
+	}
+	
+	/**
+	 * Looks up a data object inside the cardholder or application related data,
+	 * for example "6E/73/C5" for the fingerprints or "65/5B" for the name.
+	 * 
+	 * @param _path Tags in hex separated by '/', starting with 65 or 6E.
+	 * @return A read only view of the value or null if the data object was not found.
+	 * @throws MalformedTLVException
+	 */
+	public ByteBuffer find(String _path) throws MalformedTLVException {
+		int[] path = BerTlv.parsePath(_path);
+		ByteBuffer content;
+		if ( path[0] == TAG_CARDHOLDER_DATA )
+			content = this.cardholderContent;
+		else if ( path[0] == TAG_APPLICATION_DATA )
+			content = this.applicationContent;
+		else
+			throw new IllegalArgumentException("The path '" + _path + "' has to start with 65 or 6E");
+		if ( path.length == 1 )
+			return content.duplicate();
+		int[] inner = new int[path.length - 1];
+		System.arraycopy(path, 1, inner, 0, inner.length);
+		BerTlv tlv = BerTlv.find(content, inner);
+		return tlv == null ? null : tlv.getValue();
+	}
+	
+	/**
+	 * @return The Application Identifier as hex string.
+	 * @throws Exception
+	 */
+	public String getAID() throws Exception {
+		return HexHandler.getHexString(this.aid);
+	}
+	
+	/**
+	 * @return The login name of the card owner.
+	 */
+	public String getLoginData() {
+		return HexHandler.getHexToAscii(this.loginData);
+	}
+	
+	/**
+	 * @return The name of the card owner.
+	 */
+	public String getName() {
+		return HexHandler.getHexToAscii(this.name);
+	}
+	
+	/**
+	 * @return The URL of the public key.
+	 */
+	public String getURL() {
+		return HexHandler.getHexToAscii(this.url);
+	}
+	
+	/**
+	 * @return The gender of the card owner as hex string (ISO 5218).
+	 * @throws Exception
+	 */
+	public String getGender() throws Exception {
+		return HexHandler.getHexString(this.sex);
+	}
+	
+	/**
+	 * @return The language preferences of the card owner.
+	 */
+	public String getLanguage() {
+		return HexHandler.getHexToAscii(this.language);
+	}
+	
+	/**
+	 * @return The cardholder related data concatenated to one string.
+	 */
+	public String getUserData() {
+		return HexHandler.getHexToAscii(this.cardholderData);
+	}
+	
+	/**
+	 * @return True if the historical bytes or the extended length information announce extended Lc and Le fields.
+	 */
+	public boolean isExtendedLengthSupported() { return this.extendedLength; }
+	
+	/**
+	 * @return True if a verified PW1 is valid for several signatures, false if the
+	 * card needs a VERIFY before every PSO:COMPUTE DIGITAL SIGNATURE.
+	 */
+	public boolean isSignaturePINReusable() { return this.signaturePINReusable; }
+	
+	/**
+	 * @return A copy of the application identifier, empty if not present.
+	 */
+	public byte[] getAIDBytes() { return this.aid.clone(); }
+	
+	/**
+	 * @return A copy of the historical bytes of the application related data.
+	 */
+	public byte[] getHistoricalBytes() { return this.historicalBytes.clone(); }
+	
+	/**
+	 * @return A copy of the data object 0x65.
+	 */
+	public byte[] getCardholderData() { return this.cardholderData.clone(); }
+	
+	/**
+	 * @return A copy of the data object 0x6E.
+	 */
+	public byte[] getApplicationData() { return this.applicationData.clone(); }
+}
@@ -0,0 +1,187 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of the data read from OpenPGP cards, keyed by the full
+ * application identifier (data object 0x4F) that includes the serial number
+ * of the card. It holds the parsed cardholder and application related data
+ * (with the key fingerprints) and the retrieved public keys, so a card that
+ * is presented again only costs SELECT and GET DATA 0x4F.<p/>
+ * 
+ * The least recently used entry is dropped if the cache is full, entries
+ * expire after the time to live. {@link OpenPGP#putData(int, byte[])}
+ * invalidates the entry of the card.
+ * 
+ * @author Alex Oberhauser
+ */
+public class OpenPGPProfileCache {
+	public static final int DEFAULT_CAPACITY = 64;
+	public static final long DEFAULT_TIME_TO_LIVE = 10 * 60 * 1000;
+	
+	private static final OpenPGPProfileCache SHARED = new OpenPGPProfileCache(DEFAULT_CAPACITY, DEFAULT_TIME_TO_LIVE);
+	
+	private final int capacity;
+	private final long timeToLive;
+	private final Map<ByteBuffer, CacheEntry> entries;
+	private long hits = 0;
+	private long misses = 0;
+	
+	/**
+	 * Cached data of one card.
+	 */
+	private static class CacheEntry {
+		private final long createdAt = System.currentTimeMillis();
+		private OpenPGPProfile profile = null;
+		private final Map<Integer, byte[]> publicKeys = new HashMap<Integer, byte[]>();
+	}
+	
+	/**
+	 * @param _capacity The maximal number of cards.
+	 * @param _timeToLive The time in milliseconds after that an entry expires.
+	 */
+	public OpenPGPProfileCache(final int _capacity, long _timeToLive) {
+		if ( _capacity < 1 ) throw new IllegalArgumentException("The capacity has to be positive, found '" + _capacity + "'");
+		this.capacity = _capacity;
+		this.timeToLive = _timeToLive;
+		this.entries = new LinkedHashMap<ByteBuffer, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<ByteBuffer, CacheEntry> _eldest) {
+				return this.size() > _capacity;
+			}
+		};
+	}
+	
+	/**
+	 * @return The cache that is used by all {@link OpenPGP} objects by default.
+	 */
+	public static OpenPGPProfileCache getShared() {
+		return SHARED;
+	}
+	
+	/**
+	 * @return The entry of the card, null if not cached or expired.
+	 */
+	private CacheEntry lookup(byte[] _aid) {
+		ByteBuffer key = ByteBuffer.wrap(_aid);
+		CacheEntry entry = this.entries.get(key);
+		if ( entry != null && System.currentTimeMillis() - entry.createdAt >= this.timeToLive ) {
+			this.entries.remove(key);
+			entry = null;
+		}
+		return entry;
+	}
+	
+	/**
+	 * @param _aid The application identifier of the card.
+	 * @return The cached profile, null if not cached or expired.
+	 */
+	public synchronized OpenPGPProfile getProfile(byte[] _aid) {
+		CacheEntry entry = this.lookup(_aid);
+		if ( entry == null || entry.profile == null ) {
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		return entry.profile;
+	}
+	
+	/**
+	 * Stores the profile, the public keys of an older entry of the card are dropped.
+	 * 
+	 * @param _aid The application identifier of the card.
+	 * @param _profile The profile read from the card.
+	 */
+	public synchronized void putProfile(byte[] _aid, OpenPGPProfile _profile) {
+		assert(_profile != null);
+		CacheEntry entry = new CacheEntry();
+		entry.profile = _profile;
+		this.entries.put(ByteBuffer.wrap(_aid.clone()), entry);
+	}
+	
+	/**
+	 * @param _aid The application identifier of the card.
+	 * @param _key {@link OpenPGP#KEY_SIGNATURE}, {@link OpenPGP#KEY_DECIPHER} or {@link OpenPGP#KEY_AUTHENTICATION}
+	 * @return A copy of the cached public key template, null if not cached.
+	 */
+	public synchronized byte[] getPublicKey(byte[] _aid, int _key) {
+		CacheEntry entry = this.lookup(_aid);
+		byte[] publicKey = entry == null ? null : entry.publicKeys.get(_key);
+		if ( publicKey == null ) {
+			this.misses++;
+			return null;
+		}
+		this.hits++;
+		return publicKey.clone();
+	}
+	
+	/**
+	 * Stores the public key. Only cards with a cached profile keep public keys.
+	 * 
+	 * @param _aid The application identifier of the card.
+	 * @param _key {@link OpenPGP#KEY_SIGNATURE}, {@link OpenPGP#KEY_DECIPHER} or {@link OpenPGP#KEY_AUTHENTICATION}
+	 * @param _publicKey The public key template 0x7F49 as read from the card.
+	 */
+	public synchronized void putPublicKey(byte[] _aid, int _key, byte[] _publicKey) {
+		CacheEntry entry = this.lookup(_aid);
+		if ( entry != null )
+			entry.publicKeys.put(_key, _publicKey.clone());
+	}
+	
+	/**
+	 * Drops the cached data of the card.
+	 * 
+	 * @param _aid The application identifier of the card.
+	 */
+	public synchronized void invalidate(byte[] _aid) {
+		this.entries.remove(ByteBuffer.wrap(_aid));
+	}
+	
+	/**
+	 * Drops the cached data of all cards.
+	 */
+	public synchronized void clear() {
+		this.entries.clear();
+	}
+	
+	/**
+	 * @return The number of cached cards, expired entries included.
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+	
+	public int getCapacity() { return this.capacity; }
+	
+	public long getTimeToLive() { return this.timeToLive; }
+	
+	public synchronized long getHitCount() { return this.hits; }
+	
+	public synchronized long getMissCount() { return this.misses; }
+}
@@ -0,0 +1,130 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+package to.networld.schandler.card;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Registry that remembers which key is stored in which key slot of a reader.
+ * The keys are loaded with the LOAD KEY command into the volatile or
+ * non-volatile memory of the reader and stay there across card sessions, so
+ * there is no need to upload the same key again before every authentication.<p/>
+ *
+ * There is one registry per reader, use {@link #forTerminal(CardTerminal)} to
+ * get it.
+ *
+ * @author Alex Oberhauser
+ */
+public class ReaderKeySlots {
+	private static final Map<String, ReaderKeySlots> REGISTRIES = new HashMap<String, ReaderKeySlots>();
+
+	private final Map<Byte, byte[]> volatileSlots = new HashMap<Byte, byte[]>();
+	private final Map<Byte, byte[]> nonVolatileSlots = new HashMap<Byte, byte[]>();
+
+	private ReaderKeySlots() {
+	}
+
+	/**
+	 * @param _terminal The reader.
+	 * @return The key slot registry of the given reader.
+	 */
+	public static ReaderKeySlots forTerminal(CardTerminal _terminal) {
+		assert(_terminal != null);
+		synchronized (REGISTRIES) {
+			ReaderKeySlots slots = REGISTRIES.get(_terminal.getName());
+			if ( slots == null ) {
+				slots = new ReaderKeySlots();
+				REGISTRIES.put(_terminal.getName(), slots);
+			}
+			return slots;
+		}
+	}
+
+	/**
+	 * Forgets the volatile slots of the reader, the reader loses them if it is
+	 * unplugged or powered off. Called by the {@link to.networld.schandler.reader.CardPresenceMonitor}
+	 * and the {@link to.networld.schandler.reader.ReaderEngine} if a reader is detached.
+	 *
+	 * @param _terminal The reader.
+	 */
+	public static void readerDetached(CardTerminal _terminal) {
+		ReaderKeySlots slots;
+		synchronized (REGISTRIES) {
+			slots = REGISTRIES.get(_terminal.getName());
+		}
+		if ( slots != null )
+			slots.clearVolatile();
+	}
+
+	/**
+	 * @param _keyNumber The key slot of the reader.
+	 * @param _key The key as byte array.
+	 * @return True if the slot holds the given key in volatile or non-volatile memory.
+	 */
+	public synchronized boolean holds(byte _keyNumber, byte[] _key) {
+		return Arrays.equals(this.volatileSlots.get(_keyNumber), _key)
+			|| Arrays.equals(this.nonVolatileSlots.get(_keyNumber), _key);
+	}
+
+	/**
+	 * Remembers that the key was successfully loaded into the slot.
+	 *
+	 * @param _keyNumber The key slot of the reader.
+	 * @param _key The key as byte array.
+	 * @param _nonVolatile True if the key was stored in the non-volatile memory.
+	 */
+	public synchronized void store(byte _keyNumber, byte[] _key, boolean _nonVolatile) {
+		this.forget(_keyNumber);
+		if ( _nonVolatile )
+			this.nonVolatileSlots.put(_keyNumber, _key.clone());
+		else
+			this.volatileSlots.put(_keyNumber, _key.clone());
+	}
+
+	/**
+	 * Forgets the content of a slot, for example after a failed authentication.
+	 *
+	 * @param _keyNumber The key slot of the reader.
+	 */
+	public synchronized void forget(byte _keyNumber) {
+		this.volatileSlots.remove(_keyNumber);
+		this.nonVolatileSlots.remove(_keyNumber);
+	}
+
+	/**
+	 * Forgets the content of the volatile slots, see {@link #readerDetached(CardTerminal)}.
+	 */
+	public synchronized void clearVolatile() {
+		this.volatileSlots.clear();
+	}
+
+	/**
+	 * Forgets the content of all slots.
+	 */
+	public synchronized void clear() {
+		this.volatileSlots.clear();
+		this.nonVolatileSlots.clear();
+	}
+}
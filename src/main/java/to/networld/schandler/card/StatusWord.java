@@ -0,0 +1,299 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Status word (SW1 SW2) of a response APDU. The status words of ISO 7816-4
+ * are registered in a table with one entry per 16 bit value, so that the
+ * lookup is a single array access. The parameterized families 61xx, 6Cxx and
+ * 63Cx have one entry per value of the low byte.<p/>
+ * 
+ * Card classes that use other messages for some status words derive an
+ * overlay table with {@link Table#overlay(int[], String[])}. Callers that
+ * only need to branch compare the int value, for example with
+ * {@link #SUCCESS}, without allocating anything.<p/>
+ * 
+ * Every status word received by {@link BasicCard} is counted, see
+ * {@link #getCount(int)}.
+ * 
+ * @author Alex Oberhauser
+ */
+public final class StatusWord {
+	public static final int SUCCESS = 0x9000;
+	public static final int BYTES_REMAINING = 0x6100;
+	public static final int END_OF_FILE = 0x6282;
+	public static final int TERMINATION_STATE = 0x6285;
+	public static final int VERIFICATION_FAILED = 0x63C0;
+	public static final int EXECUTION_ERROR = 0x6400;
+	public static final int MEMORY_FAILURE = 0x6581;
+	public static final int WRONG_LENGTH = 0x6700;
+	public static final int CLA_FUNCTION_NOT_SUPPORTED = 0x6800;
+	public static final int LOGICAL_CHANNEL_NOT_SUPPORTED = 0x6881;
+	public static final int SECURE_MESSAGING_NOT_SUPPORTED = 0x6882;
+	public static final int LAST_COMMAND_EXPECTED = 0x6883;
+	public static final int COMMAND_CHAINING_NOT_SUPPORTED = 0x6884;
+	public static final int COMMAND_NOT_ALLOWED = 0x6900;
+	public static final int SECURITY_STATUS_NOT_SATISFIED = 0x6982;
+	public static final int AUTH_METHOD_BLOCKED = 0x6983;
+	public static final int CONDITIONS_NOT_SATISFIED = 0x6985;
+	public static final int WRONG_DATA = 0x6A80;
+	public static final int FUNCTION_NOT_SUPPORTED = 0x6A81;
+	public static final int FILE_NOT_FOUND = 0x6A82;
+	public static final int DATA_NOT_FOUND = 0x6A88;
+	public static final int WRONG_P1_P2 = 0x6B00;
+	public static final int WRONG_LE = 0x6C00;
+	public static final int INS_NOT_SUPPORTED = 0x6D00;
+	public static final int CLA_NOT_SUPPORTED = 0x6E00;
+	public static final int NO_PRECISE_DIAGNOSIS = 0x6F00;
+	
+	/** Message for status words that are not registered. */
+	public static final String UNKNOWN_MESSAGE = "Unknown Response Message";
+	
+	/**
+	 * Lookup table from the 16 bit status word to its description.
+	 */
+	public static final class Table {
+		private final StatusWord[] entries;
+		
+		private Table(StatusWord[] _entries) {
+			this.entries = _entries;
+		}
+		
+		/**
+		 * @param _sw The status word.
+		 * @return The registered status word or null if it is unknown.
+		 */
+		public StatusWord lookup(int _sw) {
+			return this.entries[_sw & 0xFFFF];
+		}
+		
+		/**
+		 * @param _sw The status word.
+		 * @return The message of the status word or {@link StatusWord#UNKNOWN_MESSAGE}.
+		 */
+		public String getMessage(int _sw) {
+			StatusWord entry = this.entries[_sw & 0xFFFF];
+			return entry == null ? UNKNOWN_MESSAGE : entry.message;
+		}
+		
+		/**
+		 * Derives a table that uses the given messages and falls back to this
+		 * table for all other status words.
+		 * 
+		 * @param _sws The status words with different messages.
+		 * @param _messages The messages, same length as the status words.
+		 * @return The derived table.
+		 */
+		public Table overlay(int[] _sws, String[] _messages) {
+			if ( _sws.length != _messages.length )
+				throw new IllegalArgumentException("Expected '" + _sws.length + "' messages but found '" + _messages.length + "'");
+			StatusWord[] derived = this.entries.clone();
+			for ( int count = 0; count < _sws.length; count++ )
+				derived[_sws[count] & 0xFFFF] = new StatusWord(_sws[count], _messages[count]);
+			return new Table(derived);
+		}
+	}
+	
+	/** The status words of ISO 7816-4. */
+	public static final Table ISO7816;
+	
+	private static final AtomicLongArray COUNTERS = new AtomicLongArray(0x10000);
+	
+	static {
+		StatusWord[] entries = new StatusWord[0x10000];
+		define(entries, SUCCESS, "Success");
+		define(entries, 0x6200, "Warning, state of non-volatile memory unchanged");
+		define(entries, 0x6281, "Part of returned data may be corrupted");
+		define(entries, END_OF_FILE, "End of file reached before reading Le bytes");
+		define(entries, 0x6283, "Selected file invalidated");
+		define(entries, 0x6284, "FCI not formatted according to ISO 7816-4");
+		define(entries, TERMINATION_STATE, "Selected file in termination state");
+		define(entries, 0x6300, "Warning, state of non-volatile memory changed");
+		define(entries, 0x6381, "File filled up by the last write");
+		define(entries, EXECUTION_ERROR, "Execution error, state of non-volatile memory unchanged");
+		define(entries, 0x6401, "Immediate response required by the card");
+		define(entries, 0x6500, "Execution error, state of non-volatile memory changed");
+		define(entries, MEMORY_FAILURE, "Memory failure");
+		define(entries, WRONG_LENGTH, "Wrong length");
+		define(entries, CLA_FUNCTION_NOT_SUPPORTED, "Functions in CLA not supported");
+		define(entries, LOGICAL_CHANNEL_NOT_SUPPORTED, "Logical channel not supported");
+		define(entries, SECURE_MESSAGING_NOT_SUPPORTED, "Secure messaging not supported");
+		define(entries, LAST_COMMAND_EXPECTED, "Last command of the chain expected");
+		define(entries, COMMAND_CHAINING_NOT_SUPPORTED, "Command chaining not supported");
+		define(entries, COMMAND_NOT_ALLOWED, "Command not allowed");
+		define(entries, 0x6981, "Command incompatible with file structure");
+		define(entries, SECURITY_STATUS_NOT_SATISFIED, "Security status not satisfied");
+		define(entries, AUTH_METHOD_BLOCKED, "Authentication method blocked");
+		define(entries, 0x6984, "Reference data not usable");
+		define(entries, CONDITIONS_NOT_SATISFIED, "Conditions of use not satisfied");
+		define(entries, 0x6986, "Command not allowed, no current EF");
+		define(entries, 0x6987, "Expected secure messaging data objects missing");
+		define(entries, 0x6988, "Incorrect secure messaging data objects");
+		define(entries, 0x6A00, "Wrong parameters P1-P2");
+		define(entries, WRONG_DATA, "Incorrect parameters in the data field");
+		define(entries, FUNCTION_NOT_SUPPORTED, "Function not supported");
+		define(entries, FILE_NOT_FOUND, "File or application not found");
+		define(entries, 0x6A83, "Record not found");
+		define(entries, 0x6A84, "Not enough memory space in the file");
+		define(entries, 0x6A85, "Nc inconsistent with TLV structure");
+		define(entries, 0x6A86, "Incorrect parameters P1-P2");
+		define(entries, 0x6A87, "Nc inconsistent with P1-P2");
+		define(entries, DATA_NOT_FOUND, "Referenced data not found");
+		define(entries, 0x6A89, "File already exists");
+		define(entries, 0x6A8A, "DF name already exists");
+		define(entries, WRONG_P1_P2, "Wrong parameters P1-P2");
+		define(entries, INS_NOT_SUPPORTED, "Instruction code not supported or invalid");
+		define(entries, CLA_NOT_SUPPORTED, "Class not supported");
+		define(entries, NO_PRECISE_DIAGNOSIS, "No precise diagnosis");
+		for ( int count = 0; count < 0x100; count++ ) {
+			define(entries, BYTES_REMAINING | count, (count == 0 ? 256 : count) + " response bytes still available");
+			define(entries, WRONG_LE | count, "Wrong Le field, " + count + " bytes available");
+		}
+		for ( int count = 0; count < 0x10; count++ )
+			define(entries, VERIFICATION_FAILED | count, "Verification failed, " + count + " tries left");
+		ISO7816 = new Table(entries);
+	}
+	
+	private static void define(StatusWord[] _entries, int _sw, String _message) {
+		_entries[_sw] = new StatusWord(_sw, _message);
+	}
+	
+	private final int code;
+	private final String message;
+	
+	private StatusWord(int _code, String _message) {
+		this.code = _code & 0xFFFF;
+		this.message = _message;
+	}
+	
+	/**
+	 * @param _sw The status word.
+	 * @return The registered ISO 7816-4 status word or a new one with the unknown message.
+	 */
+	public static StatusWord valueOf(int _sw) {
+		StatusWord entry = ISO7816.lookup(_sw);
+		return entry != null ? entry : new StatusWord(_sw, UNKNOWN_MESSAGE);
+	}
+	
+	/**
+	 * @param _sw1 The first status byte.
+	 * @param _sw2 The second status byte.
+	 * @return The 16 bit status word.
+	 */
+	public static int toInt(byte _sw1, byte _sw2) {
+		return ((_sw1 & 0xFF) << 8) | (_sw2 & 0xFF);
+	}
+	
+	/**
+	 * @param _sw The status word.
+	 * @return True if the card definitively does not support the command, that is 6A81, 6D00 or 6E00.
+	 */
+	public static boolean isNotSupported(int _sw) {
+		return _sw == FUNCTION_NOT_SUPPORTED || _sw == INS_NOT_SUPPORTED || _sw == CLA_NOT_SUPPORTED;
+	}
+	
+	/**
+	 * @param _sw The status word.
+	 * @return True for 9000 and the 61xx family.
+	 */
+	public static boolean isSuccess(int _sw) {
+		return _sw == SUCCESS || (_sw & 0xFF00) == BYTES_REMAINING;
+	}
+	
+	/**
+	 * @param _sw The status word.
+	 * @return True for the warnings 62xx and 63xx.
+	 */
+	public static boolean isWarning(int _sw) {
+		int sw1 = _sw & 0xFF00;
+		return sw1 == 0x6200 || sw1 == 0x6300;
+	}
+	
+	/**
+	 * Counts a received status word.
+	 * 
+	 * @param _sw The status word.
+	 */
+	public static void record(int _sw) {
+		COUNTERS.incrementAndGet(_sw & 0xFFFF);
+	}
+	
+	/**
+	 * @param _sw The status word.
+	 * @return How often the status word was received.
+	 */
+	public static long getCount(int _sw) {
+		return COUNTERS.get(_sw & 0xFFFF);
+	}
+	
+	/**
+	 * @return All received status words with their counts, in ascending order.
+	 */
+	public static Map<Integer, Long> getCounts() {
+		Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for ( int sw = 0; sw < COUNTERS.length(); sw++ ) {
+			long count = COUNTERS.get(sw);
+			if ( count > 0 )
+				counts.put(sw, count);
+		}
+		return counts;
+	}
+	
+	/**
+	 * Sets all counters to zero.
+	 */
+	public static void resetCounts() {
+		for ( int sw = 0; sw < COUNTERS.length(); sw++ )
+			COUNTERS.set(sw, 0);
+	}
+	
+	public int getCode() { return this.code; }
+	
+	public byte getSW1() { return (byte)(this.code >> 8); }
+	
+	public byte getSW2() { return (byte)this.code; }
+	
+	public String getMessage() { return this.message; }
+	
+	public boolean isSuccess() { return isSuccess(this.code); }
+	
+	public boolean isWarning() { return isWarning(this.code); }
+	
+	@Override
+	public boolean equals(Object _other) {
+		return _other instanceof StatusWord && ((StatusWord)_other).code == this.code;
+	}
+	
+	@Override
+	public int hashCode() {
+		return this.code;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%04X: %s", this.code, this.message);
+	}
+}
@@ -0,0 +1,317 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.common;
+
+import java.nio.ByteBuffer;
+
+import to.networld.schandler.common.exceptions.MalformedTLVException;
+
+/**
+ * Cursor over BER-TLV encoded data objects (ISO 7816-4). The cursor walks the
+ * data in place, tag, length and value are read from the backing buffer and
+ * never copied. Constructed data objects are parsed only if the caller
+ * descends into them with {@link #descend()}.<p/>
+ * 
+ * Data objects could be looked up by tag path, for example
+ * <code>BerTlv.find(data, "6E/73/C5")</code> for the fingerprints inside the
+ * application related data of an OpenPGP card.<p/>
+ * 
+ * The 0x00 and 0xFF bytes between data objects are skipped as padding.
+ * 
+ * @author Alex Oberhauser
+ */
+public class BerTlv {
+	private final ByteBuffer buffer;
+	private final int start;
+	private final int end;
+	
+	private int next;
+	private int tagOffset = -1;
+	private int tag;
+	private boolean constructed;
+	private int valueOffset;
+	private int length;
+	
+	/**
+	 * @param _data The remaining bytes of the buffer are parsed. The buffer is not modified.
+	 */
+	public BerTlv(ByteBuffer _data) {
+		this(_data.duplicate(), _data.position(), _data.limit());
+	}
+	
+	/**
+	 * @param _data The encoded data objects.
+	 * @param _offset The offset of the first data object.
+	 * @param _length The length of the encoded data objects.
+	 */
+	public BerTlv(byte[] _data, int _offset, int _length) {
+		this(ByteBuffer.wrap(_data), _offset, _offset + _length);
+	}
+	
+	/**
+	 * @param _data The encoded data objects.
+	 */
+	public BerTlv(byte[] _data) {
+		this(_data, 0, _data.length);
+	}
+	
+	private BerTlv(ByteBuffer _buffer, int _start, int _end) {
+		this.buffer = _buffer;
+		this.start = _start;
+		this.end = _end;
+		this.next = _start;
+	}
+	
+	/**
+	 * Moves to the next data object on this level.
+	 * 
+	 * @return False if there is no further data object.
+	 * @throws MalformedTLVException If the tag or length is truncated or the value exceeds the data.
+	 */
+	public boolean next() throws MalformedTLVException {
+		int pos = this.next;
+		while ( pos < this.end && isPadding(this.buffer.get(pos)) )
+			pos++;
+		if ( pos >= this.end ) {
+			this.next = this.end;
+			this.tagOffset = -1;
+			return false;
+		}
+		this.tagOffset = pos;
+		int first = this.buffer.get(pos++) & 0xFF;
+		this.constructed = (first & 0x20) != 0;
+		int value = first;
+		if ( (first & 0x1F) == 0x1F ) {
+			int b;
+			do {
+				if ( pos >= this.end ) throw new MalformedTLVException("Truncated tag at offset " + this.tagOffset);
+				if ( value > 0xFFFFFF ) throw new MalformedTLVException("Tag at offset " + this.tagOffset + " is longer than 4 bytes");
+				b = this.buffer.get(pos++) & 0xFF;
+				value = (value << 8) | b;
+			} while ( (b & 0x80) != 0 );
+		}
+		this.tag = value;
+		if ( pos >= this.end ) throw new MalformedTLVException("Missing length of tag " + Integer.toHexString(this.tag).toUpperCase());
+		int len = this.buffer.get(pos++) & 0xFF;
+		if ( len > 0x80 ) {
+			int count = len & 0x7F;
+			if ( count > 3 || pos + count > this.end )
+				throw new MalformedTLVException("Unsupported or truncated length of tag " + Integer.toHexString(this.tag).toUpperCase());
+			len = 0;
+			for ( ; count > 0; count-- )
+				len = (len << 8) | (this.buffer.get(pos++) & 0xFF);
+		} else if ( len == 0x80 ) {
+			throw new MalformedTLVException("Indefinite length of tag " + Integer.toHexString(this.tag).toUpperCase() + " is not supported");
+		}
+		if ( pos + len > this.end )
+			throw new MalformedTLVException("Value of tag " + Integer.toHexString(this.tag).toUpperCase() + " needs '" + len
+					+ "' bytes but only '" + (this.end - pos) + "' are available");
+		this.valueOffset = pos;
+		this.length = len;
+		this.next = pos + len;
+		return true;
+	}
+	
+	private static boolean isPadding(byte _b) {
+		return _b == (byte)0x00 || _b == (byte)0xFF;
+	}
+	
+	/**
+	 * Moves before the first data object of this level.
+	 */
+	public void rewind() {
+		this.next = this.start;
+		this.tagOffset = -1;
+	}
+	
+	/**
+	 * Moves forward to the next data object with the given tag on this level.
+	 * 
+	 * @param _tag The tag, for example 0x5F50.
+	 * @return False if there is no such data object.
+	 * @throws MalformedTLVException
+	 */
+	public boolean seek(int _tag) throws MalformedTLVException {
+		while ( this.next() ) {
+			if ( this.tag == _tag )
+				return true;
+		}
+		return false;
+	}
+	
+	private void checkCurrent() {
+		if ( this.tagOffset < 0 ) throw new IllegalStateException("The cursor is not positioned on a data object");
+	}
+	
+	/**
+	 * @return The tag of the current data object, multi byte tags include all bytes (e.g. 0x5F50).
+	 */
+	public int getTag() {
+		this.checkCurrent();
+		return this.tag;
+	}
+	
+	/**
+	 * @return True if the current data object is constructed.
+	 */
+	public boolean isConstructed() {
+		this.checkCurrent();
+		return this.constructed;
+	}
+	
+	/**
+	 * @return The length of the value of the current data object.
+	 */
+	public int getLength() {
+		this.checkCurrent();
+		return this.length;
+	}
+	
+	/**
+	 * @return The absolute offset of the value in the backing buffer.
+	 */
+	public int getValueOffset() {
+		this.checkCurrent();
+		return this.valueOffset;
+	}
+	
+	/**
+	 * @return A read only view of the value of the current data object, the data is not copied.
+	 */
+	public ByteBuffer getValue() {
+		this.checkCurrent();
+		ByteBuffer value = this.buffer.asReadOnlyBuffer();
+		value.limit(this.valueOffset + this.length);
+		value.position(this.valueOffset);
+		return value.slice();
+	}
+	
+	/**
+	 * @return A copy of the value of the current data object.
+	 */
+	public byte[] getValueBytes() {
+		this.checkCurrent();
+		byte[] value = new byte[this.length];
+		for ( int count = 0; count < this.length; count++ )
+			value[count] = this.buffer.get(this.valueOffset + count);
+		return value;
+	}
+	
+	/**
+	 * Copies the value of the current data object into the given array.
+	 * 
+	 * @param _dst The destination array.
+	 * @param _offset The offset in the destination array.
+	 * @return The length of the value.
+	 */
+	public int getValue(byte[] _dst, int _offset) {
+		this.checkCurrent();
+		ByteBuffer value = this.buffer.duplicate();
+		value.limit(this.valueOffset + this.length);
+		value.position(this.valueOffset);
+		value.get(_dst, _offset, this.length);
+		return this.length;
+	}
+	
+	/**
+	 * @return A cursor over the data objects inside the value of the current data object.
+	 */
+	public BerTlv descend() {
+		this.checkCurrent();
+		return new BerTlv(this.buffer, this.valueOffset, this.valueOffset + this.length);
+	}
+	
+	/**
+	 * @param _path Tags in hex, separated by '/', for example "6E/73/C5".
+	 * @return The tags of the path.
+	 * @throws NumberFormatException If a tag is not a hex number.
+	 */
+	public static int[] parsePath(String _path) {
+		String[] parts = _path.split("/");
+		int[] tags = new int[parts.length];
+		for ( int count = 0; count < parts.length; count++ )
+			tags[count] = Integer.parseInt(parts[count].trim(), 16);
+		return tags;
+	}
+	
+	/**
+	 * Follows the tag path, every tag except the last has to be a constructed data object.
+	 * 
+	 * @param _data The encoded data objects.
+	 * @param _path The tags of the path, outermost first.
+	 * @return A cursor positioned on the data object of the last tag or null if not found.
+	 * @throws MalformedTLVException
+	 */
+	public static BerTlv find(ByteBuffer _data, int[] _path) throws MalformedTLVException {
+		BerTlv cursor = new BerTlv(_data);
+		for ( int count = 0; count < _path.length; count++ ) {
+			if ( !cursor.seek(_path[count]) )
+				return null;
+			if ( count < _path.length - 1 )
+				cursor = cursor.descend();
+		}
+		return cursor;
+	}
+	
+	/**
+	 * @param _data The encoded data objects.
+	 * @param _path Tags in hex, separated by '/', for example "6E/73/C5".
+	 * @return A cursor positioned on the data object of the last tag or null if not found.
+	 * @throws MalformedTLVException
+	 * @see #find(ByteBuffer, int[])
+	 */
+	public static BerTlv find(ByteBuffer _data, String _path) throws MalformedTLVException {
+		return find(_data, parsePath(_path));
+	}
+	
+	/**
+	 * Searches depth first for the first data object with the given tag, on any level.
+	 * 
+	 * @param _data The encoded data objects.
+	 * @param _tag The tag.
+	 * @return A cursor positioned on the data object or null if not found.
+	 * @throws MalformedTLVException
+	 */
+	public static BerTlv search(ByteBuffer _data, int _tag) throws MalformedTLVException {
+		return new BerTlv(_data).search(_tag);
+	}
+	
+	private BerTlv search(int _tag) throws MalformedTLVException {
+		while ( this.next() ) {
+			if ( this.tag == _tag )
+				return this;
+			if ( this.constructed ) {
+				BerTlv inner = this.descend().search(_tag);
+				if ( inner != null )
+					return inner;
+			}
+		}
+		return null;
+	}
+	
+	@Override
+	public String toString() {
+		if ( this.tagOffset < 0 )
+			return "BerTlv[" + this.start + ".." + this.end + "]";
+		return Integer.toHexString(this.tag).toUpperCase() + " (" + this.length + " bytes)";
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Walks block by block over a payload without copying it. The current block
+ * is exposed as window of one read only buffer over the payload, only the
+ * last block is copied into a zero padded buffer if the payload does not end
+ * on a block boundary. The window buffer is reused for every block.<p/>
+ * 
+ * Like {@link HexHandler#splitArray(byte[])} an empty payload results in one
+ * empty block.
+ * 
+ * @author Alex Oberhauser
+ */
+public class BlockCursor {
+	/** The block size of the Mifare cards. */
+	public static final int DEFAULT_BLOCK_SIZE = 16;
+	
+	private final ByteBuffer payload;
+	private final int offset;
+	private final int length;
+	private final int blockSize;
+	private final int blockCount;
+	private final ByteBuffer padded;
+	private int index = -1;
+	
+	/**
+	 * @param _data The payload.
+	 * @param _offset The offset of the payload in the array.
+	 * @param _length The length of the payload.
+	 * @param _blockSize The size of one block.
+	 */
+	public BlockCursor(byte[] _data, int _offset, int _length, int _blockSize) {
+		this(ByteBuffer.wrap(_data, _offset, _length), _blockSize);
+	}
+	
+	/**
+	 * @param _data The payload, split into blocks of 16 bytes.
+	 */
+	public BlockCursor(byte[] _data) {
+		this(_data, 0, _data.length, DEFAULT_BLOCK_SIZE);
+	}
+	
+	/**
+	 * @param _data The remaining bytes of the buffer are the payload. The buffer is not modified.
+	 * @param _blockSize The size of one block.
+	 */
+	public BlockCursor(ByteBuffer _data, int _blockSize) {
+		if ( _blockSize < 1 ) throw new IllegalArgumentException("The block size has to be positive, found '" + _blockSize + "'");
+		this.payload = _data.asReadOnlyBuffer();
+		this.offset = _data.position();
+		this.length = _data.remaining();
+		this.blockSize = _blockSize;
+		this.blockCount = Math.max(1, (this.length + _blockSize - 1) / _blockSize);
+		this.padded = ByteBuffer.allocate(_blockSize);
+	}
+	
+	/**
+	 * @return The number of blocks of the payload.
+	 */
+	public int getBlockCount() { return this.blockCount; }
+	
+	public int getBlockSize() { return this.blockSize; }
+	
+	/**
+	 * @return The index of the current block, -1 before the first call of {@link #next()}.
+	 */
+	public int getIndex() { return this.index; }
+	
+	/**
+	 * @return True if there is a block after the current one.
+	 */
+	public boolean hasNext() {
+		return this.index + 1 < this.blockCount;
+	}
+	
+	/**
+	 * Moves to the next block.
+	 * 
+	 * @return False if there is no further block.
+	 */
+	public boolean next() {
+		if ( !this.hasNext() )
+			return false;
+		this.index++;
+		return true;
+	}
+	
+	/**
+	 * Moves before the first block.
+	 */
+	public void rewind() {
+		this.index = -1;
+	}
+	
+	/**
+	 * @return True if the current block was padded with 0x00 bytes.
+	 */
+	public boolean isPadded() {
+		return (this.index + 1) * this.blockSize > this.length;
+	}
+	
+	/**
+	 * Returns the current block. The remaining bytes of the returned buffer are
+	 * exactly one block. The buffer is reused by the cursor and only valid until
+	 * the next call of {@link #next()} or {@link #getBlock()}.
+	 * 
+	 * @return The current block.
+	 */
+	public ByteBuffer getBlock() {
+		if ( this.index < 0 ) throw new IllegalStateException("The cursor is before the first block");
+		int start = this.offset + this.index * this.blockSize;
+		if ( !this.isPadded() ) {
+			this.payload.limit(start + this.blockSize);
+			this.payload.position(start);
+			return this.payload;
+		}
+		int available = Math.max(0, this.offset + this.length - start);
+		this.padded.clear();
+		this.payload.limit(start + available);
+		this.payload.position(start);
+		this.padded.put(this.payload);
+		while ( this.padded.hasRemaining() )
+			this.padded.put((byte)0x00);
+		this.padded.flip();
+		return this.padded;
+	}
+	
+	/**
+	 * Copies the current block into the given array.
+	 * 
+	 * @param _dst The destination array, needs space for one block.
+	 * @param _offset The offset in the destination array.
+	 * @return The block size.
+	 */
+	public int copyTo(byte[] _dst, int _offset) {
+		this.getBlock().get(_dst, _offset, this.blockSize);
+		return this.blockSize;
+	}
+}
@@ -20,7 +20,13 @@
 
 package to.networld.schandler.common;
 
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.security.DigestException;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import to.networld.schandler.interfaces.ICard.HASH_TYPE;
 
 /**
  * A class that provides methods for the computation of hash value.<p/>
@@ -33,9 +39,190 @@ import java.security.MessageDigest;
  *     <li> SHA-512 </li>
  * </ul>
  * 
+ * Every thread reuses its own {@link MessageDigest} instances, so the
+ * provider lookup is done only once per thread and algorithm. The methods
+ * with byte array or {@link ByteBuffer} output do not allocate memory.
+ * 
  * @author Alex Oberhauser
  */
 public class HashValueHandler {
+	private static final String[] ALGORITHMS = new String[] { "SHA-1", "SHA-256", "SHA-512" };
+	private static final int[] DIGEST_LENGTHS = new int[] { 20, 32, 64 };
+	
+	/*
+	 * Size of the chunks that are passed to all digests in turn by digestAll,
+	 * small enough to stay in the CPU cache.
+	 */
+	private static final int CHUNK_SIZE = 4096;
+	
+	private static final ThreadLocal<MessageDigest[]> DIGESTS = new ThreadLocal<MessageDigest[]>() {
+		@Override
+		protected MessageDigest[] initialValue() {
+			return new MessageDigest[ALGORITHMS.length];
+		}
+	};
+	
+	/**
+	 * @param _hashType The hash type.
+	 * @return The reset digest of the current thread.
+	 */
+	private static MessageDigest getDigest(HASH_TYPE _hashType) {
+		MessageDigest[] digests = DIGESTS.get();
+		int index = _hashType.ordinal();
+		if ( digests[index] == null ) {
+			try {
+				digests[index] = MessageDigest.getInstance(ALGORITHMS[index]);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("The algorithm '" + ALGORITHMS[index] + "' is not available", e);
+			}
+		} else {
+			digests[index].reset();
+		}
+		return digests[index];
+	}
+	
+	/**
+	 * @param _hashType The hash type.
+	 * @return The length of the hash value in bytes.
+	 */
+	public static int getDigestLength(HASH_TYPE _hashType) {
+		return DIGEST_LENGTHS[_hashType.ordinal()];
+	}
+	
+	/**
+	 * @param _hashType The hash type.
+	 * @param _data The input data.
+	 * @param _offset The offset of the input data.
+	 * @param _length The length of the input data.
+	 * @return The hash value.
+	 */
+	public static byte[] digest(HASH_TYPE _hashType, byte[] _data, int _offset, int _length) {
+		MessageDigest md = getDigest(_hashType);
+		md.update(_data, _offset, _length);
+		return md.digest();
+	}
+	
+	/**
+	 * @param _hashType The hash type.
+	 * @param _data The input data.
+	 * @return The hash value.
+	 */
+	public static byte[] digest(HASH_TYPE _hashType, byte[] _data) {
+		return digest(_hashType, _data, 0, _data.length);
+	}
+	
+	/**
+	 * Computes the hash value into the given array.
+	 * 
+	 * @param _hashType The hash type.
+	 * @param _data The input data.
+	 * @param _offset The offset of the input data.
+	 * @param _length The length of the input data.
+	 * @param _output The array for the hash value.
+	 * @param _outputOffset The offset in the output array.
+	 * @return The length of the hash value in bytes.
+	 * @throws DigestException If the output array is too small.
+	 */
+	public static int digest(HASH_TYPE _hashType, byte[] _data, int _offset, int _length,
+			byte[] _output, int _outputOffset) throws DigestException {
+		int length = getDigestLength(_hashType);
+		if ( _output.length - _outputOffset < length )
+			throw new DigestException("Expected '" + length + "' bytes in the output array but found '" + (_output.length - _outputOffset) + "'");
+		MessageDigest md = getDigest(_hashType);
+		md.update(_data, _offset, _length);
+		return md.digest(_output, _outputOffset, length);
+	}
+	
+	/**
+	 * Computes the hash value of the remaining bytes of the input buffer and puts
+	 * it into the output buffer. The position of the input buffer is moved to its
+	 * limit, the position of the output buffer behind the hash value.
+	 * 
+	 * @param _hashType The hash type.
+	 * @param _input The input data.
+	 * @param _output The buffer for the hash value.
+	 * @throws DigestException If the output buffer is too small.
+	 */
+	public static void digest(HASH_TYPE _hashType, ByteBuffer _input, ByteBuffer _output) throws DigestException {
+		MessageDigest md = getDigest(_hashType);
+		md.update(_input);
+		int length = getDigestLength(_hashType);
+		if ( _output.remaining() < length )
+			throw new DigestException("Expected '" + length + "' bytes in the output buffer but found '" + _output.remaining() + "'");
+		if ( _output.hasArray() ) {
+			md.digest(_output.array(), _output.arrayOffset() + _output.position(), length);
+			_output.position(_output.position() + length);
+		} else {
+			_output.put(md.digest());
+		}
+	}
+	
+	/**
+	 * Computes SHA-1, SHA-256 and SHA-512 with one pass over the input data.
+	 * 
+	 * @param _data The input data.
+	 * @param _offset The offset of the input data.
+	 * @param _length The length of the input data.
+	 * @return The hash values, indexed by the ordinal of the {@link HASH_TYPE}.
+	 */
+	public static byte[][] digestAll(byte[] _data, int _offset, int _length) {
+		MessageDigest[] digests = getAllDigests();
+		for ( int chunk = 0; chunk < _length; chunk += CHUNK_SIZE ) {
+			int chunkLength = Math.min(CHUNK_SIZE, _length - chunk);
+			for ( MessageDigest md : digests )
+				md.update(_data, _offset + chunk, chunkLength);
+		}
+		byte[][] hashes = new byte[digests.length][];
+		for ( int count = 0; count < digests.length; count++ )
+			hashes[count] = digests[count].digest();
+		return hashes;
+	}
+	
+	/**
+	 * Computes SHA-1, SHA-256 and SHA-512 with one pass over the remaining bytes
+	 * of the input buffer. The position of the input buffer is moved to its limit.
+	 * 
+	 * @param _input The input data.
+	 * @param _output Arrays for the hash values, indexed by the ordinal of the
+	 * 		{@link HASH_TYPE} and at least as long as the hash value.
+	 * @throws DigestException If an output array is too small.
+	 */
+	public static void digestAll(ByteBuffer _input, byte[][] _output) throws DigestException {
+		MessageDigest[] digests = getAllDigests();
+		int limit = _input.limit();
+		while ( _input.hasRemaining() ) {
+			int chunkLimit = Math.min(limit, _input.position() + CHUNK_SIZE);
+			int position = _input.position();
+			for ( MessageDigest md : digests ) {
+				_input.limit(chunkLimit);
+				_input.position(position);
+				md.update(_input);
+			}
+			_input.limit(limit);
+		}
+		for ( int count = 0; count < digests.length; count++ )
+			digests[count].digest(_output[count], 0, DIGEST_LENGTHS[count]);
+	}
+	
+	private static MessageDigest[] getAllDigests() {
+		HASH_TYPE[] types = HASH_TYPE.values();
+		MessageDigest[] digests = new MessageDigest[types.length];
+		for ( int count = 0; count < types.length; count++ )
+			digests[count] = getDigest(types[count]);
+		return digests;
+	}
+	
+	/**
+	 * Computes the hash value of the UTF-8 encoded string.
+	 * 
+	 * @param _hashType The hash type.
+	 * @param _data Input data as string.
+	 * @return The hash value as hex string.
+	 * @throws Exception
+	 */
+	public static String computeHash(HASH_TYPE _hashType, String _data) throws Exception {
+		return HexHandler.getHexString(digest(_hashType, getUTF8Bytes(_data)));
+	}
 	
 	/**
 	 * Computes the SHA-1 value.
@@ -45,11 +232,7 @@ public class HashValueHandler {
 	 * @throws Exception
 	 */
 	public static String computeSHA1(String _data) throws Exception {
-	    MessageDigest md = MessageDigest.getInstance("SHA-1");
-	    byte[] sha1hash = new byte[40];
-	    md.update(_data.getBytes("UTF-8"), 0, _data.length());
-	    sha1hash = md.digest();
-	    return HexHandler.getHexString(sha1hash).replace(" ", "");
+		return computeHash(HASH_TYPE.SHA1, _data);
 	}
 	
 	/**
@@ -60,11 +243,7 @@ public class HashValueHandler {
 	 * @throws Exception
 	 */
 	public static String computeSHA256(String _data) throws Exception {
-	    MessageDigest md = MessageDigest.getInstance("SHA-256");
-	    byte[] sha256hash = new byte[64];
-	    md.update(_data.getBytes("UTF-8"), 0, _data.length());
-	    sha256hash = md.digest();
-	    return HexHandler.getHexString(sha256hash).replace(" ", "");
+		return computeHash(HASH_TYPE.SHA256, _data);
 	}
 	
 	/**
@@ -75,10 +254,14 @@ public class HashValueHandler {
 	 * @throws Exception
 	 */
 	public static String computeSHA512(String _data) throws Exception {
-	    MessageDigest md = MessageDigest.getInstance("SHA-512");
-	    byte[] sha512hash = new byte[128];
-	    md.update(_data.getBytes("UTF-8"), 0, _data.length());
-	    sha512hash = md.digest();
-	    return HexHandler.getHexString(sha512hash).replace(" ", "");
+		return computeHash(HASH_TYPE.SHA512, _data);
+	}
+	
+	private static byte[] getUTF8Bytes(String _data) {
+		try {
+			return _data.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 is not supported", e);
+		}
 	}
 }
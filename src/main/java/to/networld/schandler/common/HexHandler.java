@@ -20,7 +20,9 @@
 
 package to.networld.schandler.common;
 
-import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -29,6 +31,21 @@ import java.util.Vector;
  * @author Alex Oberhauser
  */
 public abstract class HexHandler {
+	private static final char[] LOWER_DIGITS = "0123456789abcdef".toCharArray();
+	private static final char[] UPPER_DIGITS = "0123456789ABCDEF".toCharArray();
+	
+	/*
+	 * Value of every ASCII hex digit, -1 for all other characters.
+	 */
+	private static final byte[] DIGIT_VALUES = new byte[128];
+	
+	static {
+		Arrays.fill(DIGIT_VALUES, (byte)-1);
+		for ( int count = 0; count < 16; count++ ) {
+			DIGIT_VALUES[LOWER_DIGITS[count]] = (byte)count;
+			DIGIT_VALUES[UPPER_DIGITS[count]] = (byte)count;
+		}
+	}
 	
 	/**
 	 * Converts the byte in the hexadecimal representation encoded as String.
@@ -37,7 +54,7 @@ public abstract class HexHandler {
 	 * @return The String representation of this byte (in hexadecimal).
 	 */
 	public static String getByteToString(byte _b) {
-		return Integer.toString( ( _b & 0xff ) + 0x100, 16).substring(1);
+		return new String(new char[] { LOWER_DIGITS[(_b >> 4) & 0x0F], LOWER_DIGITS[_b & 0x0F] });
 	}
 	
 	/**
@@ -48,12 +65,158 @@ public abstract class HexHandler {
 	 * @throws Exception
 	 */
 	public static String getHexString(byte[] _byteArray) throws Exception {
-		String result = new String();
-		for ( int i=0; i < _byteArray.length; i++ ) {
-			result += getByteToString(_byteArray[i]);
-//			result += " ";
+		return getHexString(_byteArray, false);
+	}
+	
+	/**
+	 * Converts a byte array in a String.
+	 * 
+	 * @param _byteArray A array of bytes.
+	 * @param _upperCase True for the digits A-F, false for a-f.
+	 * @return The String representation of the byte Array.
+	 */
+	public static String getHexString(byte[] _byteArray, boolean _upperCase) {
+		char[] hex = new char[_byteArray.length * 2];
+		encode(_byteArray, 0, _byteArray.length, hex, 0, _upperCase);
+		return new String(hex);
+	}
+	
+	/**
+	 * Encodes the bytes in hexadecimal representation into the given array.
+	 * 
+	 * @param _src The input bytes.
+	 * @param _offset The offset of the input bytes.
+	 * @param _length The number of input bytes.
+	 * @param _dst The array for the hex digits, needs space for 2 * _length characters.
+	 * @param _dstOffset The offset in the output array.
+	 * @param _upperCase True for the digits A-F, false for a-f.
+	 * @return The number of written characters.
+	 */
+	public static int encode(byte[] _src, int _offset, int _length, char[] _dst, int _dstOffset, boolean _upperCase) {
+		char[] digits = _upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+		int pos = _dstOffset;
+		for ( int i = _offset; i < _offset + _length; i++ ) {
+			_dst[pos++] = digits[(_src[i] >> 4) & 0x0F];
+			_dst[pos++] = digits[_src[i] & 0x0F];
+		}
+		return pos - _dstOffset;
+	}
+	
+	/**
+	 * Appends the bytes in hexadecimal representation to the builder.
+	 * 
+	 * @param _src The input bytes.
+	 * @param _offset The offset of the input bytes.
+	 * @param _length The number of input bytes.
+	 * @param _dst The builder for the hex digits.
+	 * @param _upperCase True for the digits A-F, false for a-f.
+	 * @return The given builder.
+	 */
+	public static StringBuilder encode(byte[] _src, int _offset, int _length, StringBuilder _dst, boolean _upperCase) {
+		char[] digits = _upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+		_dst.ensureCapacity(_dst.length() + _length * 2);
+		for ( int i = _offset; i < _offset + _length; i++ ) {
+			_dst.append(digits[(_src[i] >> 4) & 0x0F]);
+			_dst.append(digits[_src[i] & 0x0F]);
 		}
-		return result.trim();
+		return _dst;
+	}
+	
+	/**
+	 * Encodes the remaining bytes of the input buffer as ASCII hex digits into
+	 * the output buffer. Both positions are moved behind the processed bytes.
+	 * 
+	 * @param _src The input bytes.
+	 * @param _dst The buffer for the ASCII hex digits.
+	 * @param _upperCase True for the digits A-F, false for a-f.
+	 */
+	public static void encode(ByteBuffer _src, ByteBuffer _dst, boolean _upperCase) {
+		if ( _dst.remaining() < _src.remaining() * 2 )
+			throw new BufferOverflowException();
+		char[] digits = _upperCase ? UPPER_DIGITS : LOWER_DIGITS;
+		while ( _src.hasRemaining() ) {
+			byte b = _src.get();
+			_dst.put((byte)digits[(b >> 4) & 0x0F]);
+			_dst.put((byte)digits[b & 0x0F]);
+		}
+	}
+	
+	/**
+	 * Decodes hex digits in upper or lower case into bytes.
+	 * 
+	 * @param _src The hex digits.
+	 * @param _offset The offset of the first digit.
+	 * @param _length The number of digits, has to be even.
+	 * @param _dst The array for the decoded bytes, needs space for _length / 2 bytes.
+	 * @param _dstOffset The offset in the output array.
+	 * @return The number of decoded bytes.
+	 * @throws NumberFormatException If the length is odd or a character is not a hex digit.
+	 */
+	public static int decode(CharSequence _src, int _offset, int _length, byte[] _dst, int _dstOffset) {
+		if ( _length % 2 != 0 )
+			throw new NumberFormatException("Expected an even number of hex digits but found '" + _length + "'");
+		int pos = _dstOffset;
+		for ( int i = _offset; i < _offset + _length; i += 2 )
+			_dst[pos++] = (byte)((getDigitValue(_src, i) << 4) | getDigitValue(_src, i + 1));
+		return pos - _dstOffset;
+	}
+	
+	/**
+	 * @param _src The hex digits in upper or lower case.
+	 * @return The decoded bytes.
+	 * @throws NumberFormatException If the length is odd or a character is not a hex digit.
+	 */
+	public static byte[] decode(CharSequence _src) {
+		byte[] result = new byte[_src.length() / 2];
+		decode(_src, 0, _src.length(), result, 0);
+		return result;
+	}
+	
+	/**
+	 * Decodes hex digits in upper or lower case into the output buffer. The
+	 * position of the output buffer is moved behind the decoded bytes.
+	 * 
+	 * @param _src The hex digits.
+	 * @param _dst The buffer for the decoded bytes.
+	 * @throws NumberFormatException If the length is odd or a character is not a hex digit.
+	 */
+	public static void decode(CharSequence _src, ByteBuffer _dst) {
+		int length = _src.length();
+		if ( length % 2 != 0 )
+			throw new NumberFormatException("Expected an even number of hex digits but found '" + length + "'");
+		if ( _dst.remaining() < length / 2 )
+			throw new BufferOverflowException();
+		for ( int i = 0; i < length; i += 2 )
+			_dst.put((byte)((getDigitValue(_src, i) << 4) | getDigitValue(_src, i + 1)));
+	}
+	
+	private static int getDigitValue(CharSequence _src, int _index) {
+		char c = _src.charAt(_index);
+		int value = c < 128 ? DIGIT_VALUES[c] : -1;
+		if ( value < 0 )
+			throw new NumberFormatException("The character '" + c + "' at position '" + _index + "' is not a hex digit");
+		return value;
+	}
+	
+	/**
+	 * Projects the bytes to printable ASCII characters, all other bytes are
+	 * replaced with the given character.
+	 * 
+	 * @param _src The input bytes.
+	 * @param _offset The offset of the input bytes.
+	 * @param _length The number of input bytes.
+	 * @param _dst The array for the characters, needs space for _length characters.
+	 * @param _dstOffset The offset in the output array.
+	 * @param _replacement The character for bytes that are not printable.
+	 * @return The number of written characters.
+	 */
+	public static int toAscii(byte[] _src, int _offset, int _length, char[] _dst, int _dstOffset, char _replacement) {
+		int pos = _dstOffset;
+		for ( int i = _offset; i < _offset + _length; i++ ) {
+			int value = _src[i] & 0xFF;
+			_dst[pos++] = ( value < 7 || value > 126 ) ? _replacement : (char)value;
+		}
+		return pos - _dstOffset;
 	}
 	
 	/**
@@ -61,14 +224,13 @@ public abstract class HexHandler {
 	 * @return The representation of the byte array in ascii code.
 	 */
 	public static String getHexToAscii(byte[] _byteArray) {
-		String result = new String();
-		for ( int i=0; i < _byteArray.length; i++ ) {
-			String hexValue = getByteToString(_byteArray[i]);
-			int value = Integer.parseInt(hexValue, 16);
-			if ( value < 7 || value > 126) result += " "; 
-			else result += (char)value;
-		}
-		return result.trim();
+		char[] ascii = new char[_byteArray.length];
+		toAscii(_byteArray, 0, _byteArray.length, ascii, 0, ' ');
+		int begin = 0;
+		int end = ascii.length;
+		while ( begin < end && ascii[begin] <= ' ' ) begin++;
+		while ( end > begin && ascii[end - 1] <= ' ' ) end--;
+		return new String(ascii, begin, end - begin);
 	}
 	
 	/**
@@ -79,21 +241,20 @@ public abstract class HexHandler {
 	 */
 	public static Vector<Integer> getHexToInt(byte[] _byteArray) {
 		Vector<Integer> result = new Vector<Integer>(_byteArray.length);
-		for ( int i=0; i < _byteArray.length; i++ ) {
-			String hexValue = getByteToString(_byteArray[i]);
-			result.add(Integer.parseInt(hexValue, 16));
-		}
+		for ( int i=0; i < _byteArray.length; i++ )
+			result.add(_byteArray[i] & 0xFF);
 		return result;
 	}
 	
+	/**
+	 * @param _value A value between 0 and 255.
+	 * @return The value as (signed) byte.
+	 * @throws NumberFormatException If the value does not fit into one byte.
+	 */
 	public static byte getByte(int _value) throws Exception {
 		if ( _value > 255 ) throw new NumberFormatException("The number is to big!");
-		String hexValue = Integer.toHexString(_value);
-		byte[] retValues = new BigInteger(hexValue, 16).toByteArray();
-		if ( retValues.length == 2 )
-			return retValues[1];
-		else 
-			return retValues[0];
+		if ( _value < 0 ) throw new NumberFormatException("The number is negative!");
+		return (byte)_value;
 	}
 	
 	/**
@@ -109,6 +270,7 @@ public abstract class HexHandler {
 	/**
 	 * Splits the given byte array into pieces of 16 byte long
 	 * arrays. 16 bytes is the block size of the tested card.
+	 * Use {@link BlockCursor} to walk over the blocks without copying.
 	 * 
 	 * @param _inputArray The byte array to split
 	 * @return A Vector with byte arrays of the size of 16.
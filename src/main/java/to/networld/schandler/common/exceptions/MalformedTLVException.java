@@ -0,0 +1,37 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.common.exceptions;
+
+/**
+ * Exception that indicates that a BER-TLV encoded data object is malformed,
+ * for example if the length exceeds the available data.
+ * 
+ * @author Alex Oberhauser
+ *
+ */
+public class MalformedTLVException extends Exception {
+	private static final long serialVersionUID = -4721904386110528563L;
+
+	public MalformedTLVException(String _exceptionMessage) {
+		super(_exceptionMessage);
+	}
+}
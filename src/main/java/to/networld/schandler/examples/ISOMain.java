@@ -20,11 +20,12 @@
 
 package to.networld.schandler.examples;
 
-import javax.smartcardio.CardException;
 import javax.smartcardio.CardTerminal;
 
 import to.networld.schandler.card.ISO15693;
-import to.networld.schandler.factories.ReaderFactory;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.interfaces.ICardPresenceListener;
+import to.networld.schandler.reader.CardPresenceMonitor;
 
 /**
  * @author Alex Oberhauser
@@ -35,18 +36,21 @@ public class ISOMain {
 	private static ISO15693 card = null;
 
 	private static void readISOCard(CardTerminal _terminal) throws Exception {
-		System.out.println("[*] Waiting for card   ...");
 		card = new ISO15693(_terminal, ISO15693.PROTOCOL_T1);
-		while ( !card.connectToCard() ) {
-			System.out.println("<<<< Please input a card and press then ENTER ... ");
-			while ( System.in.read() != '\n'); 
+		if ( !card.connectToCard() ) {
+			System.err.println("[!] Unable to connect to the card");
+			return;
 		}
 		
 		String currentUID = card.getUID();
 		if ( DEBUG ) {
 			System.out.println("[*] UID                " + currentUID);
 			System.out.println("[*] Card Type          " + card.getCardType());
+			System.out.println("[*] System Info        " + card.getSystemInfo());
+			if ( card.getSystemInfo().getMemorySize() > 0 )
+				System.out.println("[*] Memory             " + HexHandler.getHexString(card.readAll(), true));
 		}
+		card.disconnect(true);
 	}
 	
 	/**
@@ -56,28 +60,45 @@ public class ISOMain {
 	public static void main(String[] args) throws Exception {
 		if ( args.length > 0)
 			try { DEBUG = Boolean.parseBoolean(args[0]); } catch (Exception e) {}
+		
+		CardPresenceMonitor monitor = new CardPresenceMonitor();
+		monitor.addListener(new ICardPresenceListener() {
+			@Override
+			public void readerAttached(CardTerminal _terminal) {
+				System.out.println("[*] Reader attached    " + _terminal.getName());
+				System.out.println("[*] Waiting for card   ...");
+			}
 			
-		System.out.print("[*] Waiting for reader ...");
-		CardTerminal terminal = null;
-		boolean error = false;
-		do { 
-			try {
-				terminal = ReaderFactory.getReaderObject(ReaderFactory.OMNIKEY_5x21_RFID);
-				if ( terminal != null)
-					error = false;
-			} catch (CardException e) {
-				error = true;
-				System.out.print(".");
-				Thread.sleep(1000);
+			@Override
+			public void readerDetached(CardTerminal _terminal) {
+				System.out.println("[*] Reader detached    " + _terminal.getName());
 			}
-		} while ( error );
-		System.out.println();
+			
+			@Override
+			public void cardInserted(CardTerminal _terminal, long _detectedAt) {
+				try {
+					ISOMain.readISOCard(_terminal);
+				} catch (Exception e) {
+					System.err.println(e.getLocalizedMessage());
+				}
+			}
+			
+			@Override
+			public void cardRemoved(CardTerminal _terminal, long _detectedAt) {
+				System.out.println("[*] Waiting for card   ...");
+			}
+			
+			@Override
+			public void monitorFailed(CardTerminal _terminal, Throwable _cause) {
+				System.err.println("[!] " + _cause.getLocalizedMessage());
+			}
+		});
+		System.out.println("[*] Waiting for reader ...");
+		monitor.start();
 		
-		while ( true ) {
-			ISOMain.readISOCard(terminal);
-			System.out.print("<<<< Please press ENTER to scan for another card... ");
-			while ( System.in.read() != '\n'); 
-		}
+		System.out.println("<<<< Please press ENTER to stop ... ");
+		while ( System.in.read() != '\n');
+		monitor.stop(CardPresenceMonitor.DEFAULT_WAIT_TIMEOUT * 2);
 	}
 
 }
@@ -26,8 +26,9 @@ import javax.smartcardio.ResponseAPDU;
 
 import to.networld.schandler.card.BasicMifare;
 import to.networld.schandler.interfaces.ICard.HASH_TYPE;
+import to.networld.schandler.interfaces.ICardPresenceListener;
 import to.networld.schandler.common.HexHandler;
-import to.networld.schandler.factories.ReaderFactory;
+import to.networld.schandler.reader.CardPresenceMonitor;
 
 /**
  * @author Alex Oberhauser
@@ -74,13 +75,6 @@ public class MifareMain {
 	}
 	
 	public static void readRFIDCard(CardTerminal _terminal) throws Exception {
-		System.out.println("[*] Waiting for card   ...");
-			
-		while ( !_terminal.isCardPresent() ) {
-			System.out.println("<<<< Please input a card and press then ENTER ... ");
-			while ( System.in.read() != '\n'); 
-		}
-
 		try {
 			card = new BasicMifare(_terminal, BasicMifare.PROTOCOL_T1);
 			/**
@@ -110,28 +104,45 @@ public class MifareMain {
 	public static void main(String[] args) throws Exception {
 		if ( args.length > 0)
 			try { DEBUG = Boolean.parseBoolean(args[0]); } catch (Exception e) {}
-				
-		System.out.print("[*] Waiting for reader ...");
-		CardTerminal terminal = null;
-		boolean error = false;
-		do { 
-			try {
-				terminal = ReaderFactory.getReaderObject(ReaderFactory.OMNIKEY_5x21_RFID);
-				if ( terminal != null )
-					error = false;
-			} catch (CardException e) {
-				error = true;
-				System.out.print(".");
-				Thread.sleep(1000);
+		
+		CardPresenceMonitor monitor = new CardPresenceMonitor();
+		monitor.addListener(new ICardPresenceListener() {
+			@Override
+			public void readerAttached(CardTerminal _terminal) {
+				System.out.println("[*] Reader attached    " + _terminal.getName());
+				System.out.println("[*] Waiting for card   ...");
+			}
+			
+			@Override
+			public void readerDetached(CardTerminal _terminal) {
+				System.out.println("[*] Reader detached    " + _terminal.getName());
+			}
+			
+			@Override
+			public void cardInserted(CardTerminal _terminal, long _detectedAt) {
+				try {
+					MifareMain.readRFIDCard(_terminal);
+				} catch (Exception e) {
+					System.err.println(e.getLocalizedMessage());
+				}
+				System.out.println("[*] Handled in         " + ((System.nanoTime() - _detectedAt) / 1000000) + " ms");
+			}
+			
+			@Override
+			public void cardRemoved(CardTerminal _terminal, long _detectedAt) {
+				System.out.println("[*] Waiting for card   ...");
 			}
-		} while ( error );
-		System.out.println();
+			
+			@Override
+			public void monitorFailed(CardTerminal _terminal, Throwable _cause) {
+				System.err.println("[!] " + _cause.getLocalizedMessage());
+			}
+		});
+		System.out.println("[*] Waiting for reader ...");
+		monitor.start();
 		
-		while ( true ) {
-			MifareMain.readRFIDCard(terminal);
-			System.out.print("<<<< Please press ENTER to scan for another card... ");
-			while ( System.in.read() != '\n'); 
-		}
-
+		System.out.println("<<<< Please press ENTER to stop ... ");
+		while ( System.in.read() != '\n');
+		monitor.stop(CardPresenceMonitor.DEFAULT_WAIT_TIMEOUT * 2);
 	}
 }
@@ -0,0 +1,62 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.examples;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.CardTerminal;
+
+import to.networld.schandler.card.BasicMifare;
+import to.networld.schandler.interfaces.ICardHandler;
+import to.networld.schandler.reader.ReaderEngine;
+
+/**
+ * Reads the UID of every card presented to any of the attached readers.
+ * 
+ * @author Alex Oberhauser
+ */
+public class MultiReaderMain {
+	
+	public static void main(String[] args) throws Exception {
+		final ReaderEngine engine = new ReaderEngine(new ICardHandler() {
+			@Override
+			public void cardPresented(CardTerminal _terminal, long _presentedAt) throws Exception {
+				BasicMifare card = new BasicMifare(_terminal, BasicMifare.PROTOCOL_T1);
+				try {
+					System.out.println("[*] " + _terminal.getName() + " UID " + card.getUID());
+				} finally {
+					card.disconnect(true);
+				}
+			}
+			
+			@Override
+			public void handlingFailed(CardTerminal _terminal, Throwable _cause) {
+				System.err.println("[!] " + _terminal.getName() + " " + _cause.getLocalizedMessage());
+			}
+		});
+		System.out.println("[*] Attached " + engine.attachAll() + " reader(s)");
+		
+		System.out.println("<<<< Please press ENTER to stop ... ");
+		while ( System.in.read() != '\n');
+		engine.shutdown(5, TimeUnit.SECONDS);
+	}
+}
@@ -24,9 +24,11 @@ import javax.smartcardio.CardTerminal;
 import javax.smartcardio.ResponseAPDU;
 
 import to.networld.schandler.card.OpenPGP;
+import to.networld.schandler.card.OpenPGPProfile;
 import to.networld.schandler.common.HexHandler;
 import to.networld.schandler.factories.ReaderFactory;
 import to.networld.schandler.interfaces.ICard;
+import to.networld.schandler.interfaces.ICardTransaction;
 
 /**
  * Example implementation of the methods to show how they could be used.
@@ -42,16 +44,25 @@ public class OpenPGPMain {
 		while ( !card.connectToCard() ) {
 			Thread.sleep(500);
 		}
-		ResponseAPDU dataAPDU = card.selectFile();
-		System.out.println(OpenPGP.getResponseMessage(dataAPDU.getBytes()));
-		
-		System.out.println("AID      : " + card.getAID());
-		System.out.println("URL      : " + card.getURL());
-		System.out.println("LoginName: " + card.getLoginData());
-		System.out.println("Gender   : " + card.getGender());
-		System.out.println("Language : " + card.getLanguage());
-		System.out.println("User Data: " + card.getUserData());
-		System.out.println("Variable Data: " + HexHandler.getHexToAscii(card.getData((byte)0x00, (byte)0xC4)));
+		final OpenPGP openPGP = card;
+		card.inTransaction(new ICardTransaction<Void>() {
+			@Override
+			public Void execute() throws Exception {
+				ResponseAPDU dataAPDU = openPGP.selectFile();
+				System.out.println(OpenPGP.getResponseMessage(dataAPDU.getBytes()));
+				
+				OpenPGPProfile profile = openPGP.getProfile();
+				System.out.println("AID      : " + profile.getAID());
+				System.out.println("Name     : " + profile.getName());
+				System.out.println("URL      : " + profile.getURL());
+				System.out.println("LoginName: " + profile.getLoginData());
+				System.out.println("Gender   : " + profile.getGender());
+				System.out.println("Language : " + profile.getLanguage());
+				System.out.println("User Data: " + profile.getUserData());
+				System.out.println("Variable Data: " + HexHandler.getHexToAscii(openPGP.getData((byte)0x00, (byte)0xC4)));
+				return null;
+			}
+		});
 		card.disconnect(true);
 	}
 	
@@ -0,0 +1,40 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.interfaces;
+
+/**
+ * Callback that receives the blocks read by a batched card access.
+ * 
+ * @author Alex Oberhauser
+ */
+public interface IBlockListener {
+	
+	/**
+	 * Called once for every read block, in ascending block order.
+	 * 
+	 * @param _block The block number.
+	 * @param _data The array that holds the block data. Only valid during the call.
+	 * @param _offset The offset of the block data in the array.
+	 * @return False to stop the access after the current sector, otherwise True.
+	 */
+	public boolean blockRead(int _block, byte[] _data, int _offset);
+}
@@ -125,6 +125,18 @@ public interface ICard {
 	 */
 	public ResponseAPDU sendAPDUCommandToCard(CommandAPDU _command) throws CardException;
 	
+	/**
+	 * Executes the work while the card is exclusively held. All commands sent
+	 * during the work are part of one PC/SC transaction, no other application
+	 * is able to interleave commands. Transactions could be nested, only the
+	 * outermost transaction acquires and releases the card.
+	 * 
+	 * @param _work The work that should be executed.
+	 * @return The result of the work.
+	 * @throws Exception The exception thrown by the work.
+	 */
+	public <T> T inTransaction(ICardTransaction<T> _work) throws Exception;
+	
 	/**
 	 * Disconnect from the card.
 	 * 
@@ -134,22 +146,31 @@ public interface ICard {
 	public void  disconnect(boolean _reset) throws CardException;
 	
 	/**
-	 * The card type from the ATR bytes (entry 13 and 14).
-	 * The 14. byte is actually the entry in the type 
-	 * enumeration.
+	 * The card type from the card name of the ATR (entry 13 and 14),
+	 * that is actually the entry in the type enumeration.
 	 * 
 	 * @return The name of the card as enumeration entry.
 	 */
 	public CardType getCardType();
 	
 	/**
+	 * The UID is read once per connection and cached until the card is
+	 * disconnected.
+	 * 
 	 * @return The UID of the RFID card.
 	 * @throws Exception
 	 */
 	public String getUID() throws Exception;
+	
+	/**
+	 * @return A copy of the UID of the RFID card as byte array.
+	 * @throws Exception
+	 */
+	public byte[] getUIDBytes() throws Exception;
 
 	/**
-	 * Returns the hash value of the UID.
+	 * Returns the hash value of the UID. The value is computed once per
+	 * connection and hash type.
 	 *  
 	 * @param hashType What hash value type should be computed.
 	 * @return The hash value of the UID.
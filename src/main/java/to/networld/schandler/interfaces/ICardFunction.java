@@ -0,0 +1,41 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.interfaces;
+
+/**
+ * Transforms the result of an asynchronous card operation, see
+ * {@link to.networld.schandler.async.CardFuture#transform(ICardFunction)}.
+ * 
+ * @param <F> The result type of the operation.
+ * @param <T> The type of the transformed result.
+ * @author Alex Oberhauser
+ */
+public interface ICardFunction<F, T> {
+	
+	/**
+	 * @param _input The result of the operation.
+	 * @return The transformed result.
+	 * @throws Exception
+	 */
+	public T apply(F _input) throws Exception;
+}
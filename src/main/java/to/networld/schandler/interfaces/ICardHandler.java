@@ -0,0 +1,47 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.interfaces;
+
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Handler that is notified by the reader engine if a card was presented.
+ * The calls for one reader are executed one after another, the calls for
+ * different readers in parallel.
+ * 
+ * @author Alex Oberhauser
+ */
+public interface ICardHandler {
+	
+	/**
+	 * @param _terminal The reader with the presented card.
+	 * @param _presentedAt The time in milliseconds when the card was detected.
+	 * @throws Exception
+	 */
+	public void cardPresented(CardTerminal _terminal, long _presentedAt) throws Exception;
+	
+	/**
+	 * @param _terminal The reader that caused the error.
+	 * @param _cause The exception thrown by the handler or the reader.
+	 */
+	public void handlingFailed(CardTerminal _terminal, Throwable _cause);
+}
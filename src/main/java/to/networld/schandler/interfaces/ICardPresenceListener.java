@@ -0,0 +1,65 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.interfaces;
+
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Listener for the events of the card presence monitor. All events are
+ * delivered by the single monitor thread, so the listener should hand over
+ * long running work to another thread.
+ * 
+ * @author Alex Oberhauser
+ */
+public interface ICardPresenceListener {
+	
+	/**
+	 * @param _terminal The reader with the inserted card.
+	 * @param _detectedAt The value of {@link System#nanoTime()} when the insertion was detected.
+	 */
+	public void cardInserted(CardTerminal _terminal, long _detectedAt);
+	
+	/**
+	 * @param _terminal The reader of the removed card.
+	 * @param _detectedAt The value of {@link System#nanoTime()} when the removal was detected.
+	 */
+	public void cardRemoved(CardTerminal _terminal, long _detectedAt);
+	
+	/**
+	 * @param _terminal The reader that was plugged in.
+	 */
+	public void readerAttached(CardTerminal _terminal);
+	
+	/**
+	 * @param _terminal The reader that was unplugged.
+	 */
+	public void readerDetached(CardTerminal _terminal);
+	
+	/**
+	 * Called if a call of this listener threw an exception or if the PC/SC layer
+	 * failed. The other listeners and the following events are not affected.
+	 * 
+	 * @param _terminal The reader of the failed event, null if the failure is not bound to a reader.
+	 * @param _cause The exception thrown by the listener or the PC/SC layer.
+	 */
+	public void monitorFailed(CardTerminal _terminal, Throwable _cause);
+}
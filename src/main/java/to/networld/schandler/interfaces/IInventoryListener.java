@@ -0,0 +1,59 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.interfaces;
+
+import javax.smartcardio.CardTerminal;
+
+/**
+ * Listener for the events of the ISO 15693 inventory scanner. All events are
+ * delivered by the scanner thread, so the listener should hand over long
+ * running work to another thread. Addressed reads of the reported tag could
+ * be done directly in the listener.
+ * 
+ * @author Alex Oberhauser
+ */
+public interface IInventoryListener {
+	
+	/**
+	 * @param _terminal The reader that found the tag.
+	 * @param _uid The UID of the tag MSB first.
+	 * @param _detectedAt The value of {@link System#nanoTime()} when the tag was found.
+	 */
+	public void tagArrived(CardTerminal _terminal, byte[] _uid, long _detectedAt);
+	
+	/**
+	 * @param _terminal The reader that lost the tag.
+	 * @param _uid The UID of the tag MSB first.
+	 * @param _detectedAt The value of {@link System#nanoTime()} when the tag was missed.
+	 */
+	public void tagDeparted(CardTerminal _terminal, byte[] _uid, long _detectedAt);
+	
+	/**
+	 * Called if a call of this listener threw an exception or if the scanner
+	 * failed, for example because the reader does not support the transparent
+	 * exchange. The other listeners and the following events are not affected.
+	 * 
+	 * @param _terminal The reader of the scanner.
+	 * @param _cause The exception thrown by the listener or the reader.
+	 */
+	public void scanFailed(CardTerminal _terminal, Throwable _cause);
+}
@@ -0,0 +1,320 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.reader;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CardTerminals;
+import javax.smartcardio.CardTerminals.State;
+import javax.smartcardio.TerminalFactory;
+
+import to.networld.schandler.card.ReaderKeySlots;
+import to.networld.schandler.interfaces.ICardPresenceListener;
+
+/**
+ * Monitors all readers with one thread that blocks in
+ * {@link CardTerminals#waitForChange(long)} and notifies the registered
+ * listeners about inserted and removed cards and attached and detached
+ * readers.<p/>
+ * 
+ * A listener that throws an exception is informed with
+ * {@link ICardPresenceListener#monitorFailed(CardTerminal, Throwable)}, the
+ * event is still delivered to the other listeners.<p/>
+ * 
+ * The monitor measures the time between the detection of a card event and
+ * the return of the last listener, see {@link #getAverageLatency()} and
+ * {@link #getMaxLatency()}.
+ * 
+ * @author Alex Oberhauser
+ */
+public class CardPresenceMonitor {
+	/** Default time in milliseconds the monitor blocks before it checks for attached or detached readers. */
+	public static final long DEFAULT_WAIT_TIMEOUT = 500;
+	
+	private final CardTerminals terminals;
+	private final long waitTimeout;
+	private final List<ICardPresenceListener> listeners = new CopyOnWriteArrayList<ICardPresenceListener>();
+	private final Map<String, CardTerminal> readers = new HashMap<String, CardTerminal>();
+	private final Set<String> presentCards = new HashSet<String>();
+	private volatile boolean running = false;
+	private Thread thread;
+	
+	private long eventCount = 0;
+	private long totalLatency = 0;
+	private long maxLatency = 0;
+	
+	/**
+	 * @param _terminals The readers that should be monitored.
+	 * @param _waitTimeout Time in milliseconds the monitor blocks before it checks for attached or detached readers.
+	 */
+	public CardPresenceMonitor(CardTerminals _terminals, long _waitTimeout) {
+		assert(_terminals != null);
+		this.terminals = _terminals;
+		this.waitTimeout = _waitTimeout;
+	}
+	
+	/**
+	 * Monitors the readers of the default terminal factory.
+	 */
+	public CardPresenceMonitor() {
+		this(TerminalFactory.getDefault().terminals(), DEFAULT_WAIT_TIMEOUT);
+	}
+	
+	public void addListener(ICardPresenceListener _listener) {
+		this.listeners.add(_listener);
+	}
+	
+	public void removeListener(ICardPresenceListener _listener) {
+		this.listeners.remove(_listener);
+	}
+	
+	/**
+	 * Starts the monitor thread as daemon thread.
+	 */
+	public void start() {
+		this.start(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable _runnable) {
+				Thread thread = new Thread(_runnable);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Starts the monitor thread. Readers and cards that are already present
+	 * are reported as attached and inserted.
+	 * 
+	 * @param _threadFactory The factory for the monitor thread.
+	 */
+	public synchronized void start(ThreadFactory _threadFactory) {
+		if ( this.running ) return;
+		this.running = true;
+		this.thread = _threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				monitor();
+			}
+		});
+		this.thread.setName("schandler-presence-monitor");
+		this.thread.start();
+	}
+	
+	/**
+	 * Stops the monitor thread, at the latest after the wait timeout.
+	 * 
+	 * @param _timeout The maximal time in milliseconds to wait for the monitor thread.
+	 * @return True if the monitor thread is terminated.
+	 * @throws InterruptedException
+	 */
+	public boolean stop(long _timeout) throws InterruptedException {
+		Thread monitorThread;
+		synchronized (this) {
+			this.running = false;
+			monitorThread = this.thread;
+			this.thread = null;
+		}
+		if ( monitorThread == null )
+			return true;
+		monitorThread.join(_timeout);
+		return !monitorThread.isAlive();
+	}
+	
+	/**
+	 * @return True if the monitor thread is running.
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+	
+	/**
+	 * @return The number of card events that were delivered.
+	 */
+	public synchronized long getEventCount() {
+		return this.eventCount;
+	}
+	
+	/**
+	 * @return The average time in microseconds from the detection of a card event until all listeners returned.
+	 */
+	public synchronized long getAverageLatency() {
+		return this.eventCount == 0 ? 0 : this.totalLatency / this.eventCount / 1000;
+	}
+	
+	/**
+	 * @return The maximal time in microseconds from the detection of a card event until all listeners returned.
+	 */
+	public synchronized long getMaxLatency() {
+		return this.maxLatency / 1000;
+	}
+	
+	/**
+	 * Resets the latency statistics.
+	 */
+	public synchronized void resetStatistics() {
+		this.eventCount = 0;
+		this.totalLatency = 0;
+		this.maxLatency = 0;
+	}
+	
+	private void monitor() {
+		while ( this.running ) {
+			try {
+				this.updateReaders();
+				if ( this.readers.isEmpty() ) {
+					Thread.sleep(this.waitTimeout);
+					continue;
+				}
+				if ( !this.terminals.waitForChange(this.waitTimeout) )
+					continue;
+				long detectedAt = System.nanoTime();
+				for ( CardTerminal terminal : this.terminals.list(State.CARD_REMOVAL) )
+					this.fireCardRemoved(terminal, detectedAt);
+				for ( CardTerminal terminal : this.terminals.list(State.CARD_INSERTION) )
+					this.fireCardInserted(terminal, detectedAt);
+			} catch (CardException e) {
+				/**
+				 * Thrown by the PC/SC layer if the last reader was unplugged.
+				 */
+				this.updateDetachedReaders(new HashSet<String>());
+				this.sleep();
+			} catch (RuntimeException e) {
+				/**
+				 * The listener calls are guarded, so the PC/SC layer failed.
+				 */
+				this.fireMonitorFailed(null, e);
+				this.sleep();
+			} catch (InterruptedException e) {
+				this.running = false;
+			}
+		}
+	}
+	
+	private void updateReaders() throws CardException {
+		List<CardTerminal> current = this.terminals.list();
+		Set<String> names = new HashSet<String>();
+		for ( CardTerminal terminal : current )
+			names.add(terminal.getName());
+		this.updateDetachedReaders(names);
+		for ( CardTerminal terminal : current ) {
+			if ( this.readers.containsKey(terminal.getName()) )
+				continue;
+			this.readers.put(terminal.getName(), terminal);
+			for ( ICardPresenceListener listener : this.listeners ) {
+				try {
+					listener.readerAttached(terminal);
+				} catch (RuntimeException e) {
+					listenerFailed(listener, terminal, e);
+				}
+			}
+			if ( terminal.isCardPresent() )
+				this.fireCardInserted(terminal, System.nanoTime());
+		}
+	}
+	
+	private void updateDetachedReaders(Set<String> _names) {
+		for ( CardTerminal terminal : this.readers.values().toArray(new CardTerminal[this.readers.size()]) ) {
+			if ( _names.contains(terminal.getName()) )
+				continue;
+			this.readers.remove(terminal.getName());
+			ReaderKeySlots.readerDetached(terminal);
+			this.fireCardRemoved(terminal, System.nanoTime());
+			for ( ICardPresenceListener listener : this.listeners ) {
+				try {
+					listener.readerDetached(terminal);
+				} catch (RuntimeException e) {
+					listenerFailed(listener, terminal, e);
+				}
+			}
+		}
+	}
+	
+	private void fireCardInserted(CardTerminal _terminal, long _detectedAt) {
+		if ( !this.presentCards.add(_terminal.getName()) )
+			return;
+		for ( ICardPresenceListener listener : this.listeners ) {
+			try {
+				listener.cardInserted(_terminal, _detectedAt);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, _terminal, e);
+			}
+		}
+		this.recordLatency(_detectedAt);
+	}
+	
+	private void fireCardRemoved(CardTerminal _terminal, long _detectedAt) {
+		if ( !this.presentCards.remove(_terminal.getName()) )
+			return;
+		for ( ICardPresenceListener listener : this.listeners ) {
+			try {
+				listener.cardRemoved(_terminal, _detectedAt);
+			} catch (RuntimeException e) {
+				listenerFailed(listener, _terminal, e);
+			}
+		}
+		this.recordLatency(_detectedAt);
+	}
+	
+	private void fireMonitorFailed(CardTerminal _terminal, Throwable _cause) {
+		for ( ICardPresenceListener listener : this.listeners )
+			listenerFailed(listener, _terminal, _cause);
+	}
+	
+	/**
+	 * Reports the failure to the listener, a failure of the report itself is
+	 * dropped so it could not stop the delivery of the following events.
+	 */
+	private static void listenerFailed(ICardPresenceListener _listener, CardTerminal _terminal, Throwable _cause) {
+		try {
+			_listener.monitorFailed(_terminal, _cause);
+		} catch (RuntimeException e) {
+			/**
+			 * Nothing left to report to.
+			 */
+		}
+	}
+	
+	private synchronized void recordLatency(long _detectedAt) {
+		long latency = System.nanoTime() - _detectedAt;
+		this.eventCount++;
+		this.totalLatency += latency;
+		if ( latency > this.maxLatency )
+			this.maxLatency = latency;
+	}
+	
+	private void sleep() {
+		try {
+			Thread.sleep(this.waitTimeout);
+		} catch (InterruptedException e) {
+			this.running = false;
+		}
+	}
+}
@@ -0,0 +1,357 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.reader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadFactory;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+import to.networld.schandler.card.ISO15693;
+import to.networld.schandler.card.ISO15693.InventoryMode;
+import to.networld.schandler.interfaces.IInventoryListener;
+
+/**
+ * Scans the field of one reader with back-to-back ISO 15693 inventory rounds
+ * and notifies the registered listeners about arriving and departing tags.
+ * Every tag is reported once when it arrives, it departs after it was missed
+ * in a number of consecutive rounds, so a tag that is not found in a single
+ * round does not cause a new event.<p/>
+ * 
+ * The scanner keeps the connection to the reader open between the rounds,
+ * the listeners could read the tags with the addressed methods of the
+ * {@link ISO15693} object, for example {@link ISO15693#readAll(byte[])}.<p/>
+ * 
+ * A listener that throws an exception is informed with
+ * {@link IInventoryListener#scanFailed(CardTerminal, Throwable)}, the event is
+ * still delivered to the other listeners. If the reader does not support the
+ * transparent exchange the failure is reported and the scanner stops.
+ * 
+ * @author Alex Oberhauser
+ */
+public class InventoryScanner {
+	/** Default time in milliseconds the scanner waits for a tag if the field is empty. */
+	public static final long DEFAULT_WAIT_TIMEOUT = 500;
+	/** Default number of consecutive rounds a tag has to be missed until it departs. */
+	public static final int DEFAULT_DEPARTURE_ROUNDS = 2;
+	
+	private final ISO15693 card;
+	private final InventoryMode mode;
+	private final int departureRounds;
+	private final List<IInventoryListener> listeners = new CopyOnWriteArrayList<IInventoryListener>();
+	/*
+	 * Present tags with the number of consecutive rounds they were missed.
+	 */
+	private final Map<ByteBuffer, Integer> presentTags = new HashMap<ByteBuffer, Integer>();
+	private volatile boolean running = false;
+	private Thread thread;
+	private boolean connected = false;
+	
+	private long roundCount = 0;
+	private long tagCount = 0;
+	private long scanTime = 0;
+	
+	/**
+	 * @param _card The ISO 15693 card object of the reader, it is connected by the scanner.
+	 * @param _mode The collision resolution of the inventory rounds.
+	 * @param _departureRounds The number of consecutive rounds a tag has to be missed until it departs.
+	 */
+	public InventoryScanner(ISO15693 _card, InventoryMode _mode, int _departureRounds) {
+		assert((_card != null) && (_mode != null));
+		if ( _departureRounds < 1 ) throw new IllegalArgumentException("At least one round is needed, found '" + _departureRounds + "'");
+		this.card = _card;
+		this.mode = _mode;
+		this.departureRounds = _departureRounds;
+	}
+	
+	/**
+	 * Scans with 16 slot collision resolution.
+	 * 
+	 * @param _card The ISO 15693 card object of the reader, it is connected by the scanner.
+	 */
+	public InventoryScanner(ISO15693 _card) {
+		this(_card, InventoryMode.SIXTEEN_SLOTS, DEFAULT_DEPARTURE_ROUNDS);
+	}
+	
+	public void addListener(IInventoryListener _listener) {
+		this.listeners.add(_listener);
+	}
+	
+	public void removeListener(IInventoryListener _listener) {
+		this.listeners.remove(_listener);
+	}
+	
+	/**
+	 * Starts the scanner thread as daemon thread.
+	 */
+	public void start() {
+		this.start(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable _runnable) {
+				Thread thread = new Thread(_runnable);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Starts the scanner thread.
+	 * 
+	 * @param _threadFactory The factory for the scanner thread.
+	 */
+	public synchronized void start(ThreadFactory _threadFactory) {
+		if ( this.running ) return;
+		this.running = true;
+		this.thread = _threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				scan();
+			}
+		});
+		this.thread.setName("schandler-inventory-" + this.card.getTerminal().getName());
+		this.thread.start();
+	}
+	
+	/**
+	 * Stops the scanner thread after the current round, the present tags depart.
+	 * 
+	 * @param _timeout The maximal time in milliseconds to wait for the scanner thread.
+	 * @return True if the scanner thread is terminated.
+	 * @throws InterruptedException
+	 */
+	public boolean stop(long _timeout) throws InterruptedException {
+		Thread scannerThread;
+		synchronized (this) {
+			this.running = false;
+			scannerThread = this.thread;
+			this.thread = null;
+		}
+		if ( scannerThread == null )
+			return true;
+		scannerThread.join(_timeout);
+		return !scannerThread.isAlive();
+	}
+	
+	/**
+	 * @return True if the scanner thread is running.
+	 */
+	public boolean isRunning() {
+		return this.running;
+	}
+	
+	/**
+	 * @return The UIDs of the tags that are in the field, MSB first.
+	 */
+	public synchronized List<byte[]> getPresentTags() {
+		List<byte[]> uids = new ArrayList<byte[]>(this.presentTags.size());
+		for ( ByteBuffer uid : this.presentTags.keySet() )
+			uids.add(uid.array().clone());
+		return uids;
+	}
+	
+	/**
+	 * @return The number of inventory rounds.
+	 */
+	public synchronized long getRoundCount() {
+		return this.roundCount;
+	}
+	
+	/**
+	 * @return The number of tags found in all rounds, a tag counts once per round.
+	 */
+	public synchronized long getTagCount() {
+		return this.tagCount;
+	}
+	
+	/**
+	 * @return The number of tags found per second of inventory time.
+	 */
+	public synchronized double getTagsPerSecond() {
+		return this.scanTime == 0 ? 0 : this.tagCount * 1000000000.0 / this.scanTime;
+	}
+	
+	/**
+	 * Resets the statistics.
+	 */
+	public synchronized void resetStatistics() {
+		this.roundCount = 0;
+		this.tagCount = 0;
+		this.scanTime = 0;
+	}
+	
+	private void scan() {
+		CardTerminal terminal = this.card.getTerminal();
+		while ( this.running ) {
+			try {
+				if ( !terminal.isCardPresent() ) {
+					this.disconnect();
+					this.update(new ArrayList<byte[]>(), true);
+					terminal.waitForCardPresent(DEFAULT_WAIT_TIMEOUT);
+					continue;
+				}
+				if ( !this.connected )
+					this.connected = this.card.connectToCard();
+				if ( !this.connected )
+					continue;
+				if ( !this.card.isTransparentExchangeSupported() ) {
+					this.fireScanFailed(new CardException("The reader '" + terminal.getName() + "' does not support the transparent exchange"));
+					this.running = false;
+					continue;
+				}
+				long startedAt = System.nanoTime();
+				List<byte[]> uids = this.card.inventory(this.mode);
+				synchronized (this) {
+					this.roundCount++;
+					this.tagCount += uids.size();
+					this.scanTime += System.nanoTime() - startedAt;
+				}
+				this.update(uids, false);
+			} catch (CardException e) {
+				/**
+				 * The connection is lost if the activated tag left the field.
+				 */
+				this.disconnect();
+				this.sleep();
+			} catch (IllegalStateException e) {
+				/**
+				 * The listener calls are guarded, so the connection was closed.
+				 */
+				this.disconnect();
+				this.sleep();
+			} catch (RuntimeException e) {
+				this.fireScanFailed(e);
+				this.disconnect();
+				this.sleep();
+			}
+		}
+		this.disconnect();
+		this.update(new ArrayList<byte[]>(), true);
+	}
+	
+	/**
+	 * Reports the new tags of the round and the tags that were missed too often.
+	 * 
+	 * @param _uids The tags found in the round.
+	 * @param _departAll True if all present tags should depart.
+	 */
+	private void update(List<byte[]> _uids, boolean _departAll) {
+		long detectedAt = System.nanoTime();
+		List<byte[]> arrived = new ArrayList<byte[]>();
+		List<byte[]> departed = new ArrayList<byte[]>();
+		synchronized (this) {
+			Set<ByteBuffer> found = new HashSet<ByteBuffer>();
+			for ( byte[] uid : _uids ) {
+				ByteBuffer key = ByteBuffer.wrap(uid);
+				found.add(key);
+				if ( this.presentTags.put(key, 0) == null )
+					arrived.add(uid);
+			}
+			Iterator<Map.Entry<ByteBuffer, Integer>> iterator = this.presentTags.entrySet().iterator();
+			while ( iterator.hasNext() ) {
+				Map.Entry<ByteBuffer, Integer> entry = iterator.next();
+				if ( found.contains(entry.getKey()) )
+					continue;
+				int missed = entry.getValue() + 1;
+				if ( _departAll || missed >= this.departureRounds ) {
+					iterator.remove();
+					departed.add(entry.getKey().array());
+				} else {
+					entry.setValue(missed);
+				}
+			}
+		}
+		CardTerminal terminal = this.card.getTerminal();
+		for ( byte[] uid : departed ) {
+			for ( IInventoryListener listener : this.listeners ) {
+				try {
+					listener.tagDeparted(terminal, uid.clone(), detectedAt);
+				} catch (RuntimeException e) {
+					listenerFailed(listener, terminal, e);
+				}
+			}
+		}
+		for ( byte[] uid : arrived ) {
+			for ( IInventoryListener listener : this.listeners ) {
+				try {
+					listener.tagArrived(terminal, uid.clone(), detectedAt);
+				} catch (RuntimeException e) {
+					listenerFailed(listener, terminal, e);
+				}
+			}
+		}
+	}
+	
+	private void fireScanFailed(Throwable _cause) {
+		CardTerminal terminal = this.card.getTerminal();
+		for ( IInventoryListener listener : this.listeners )
+			listenerFailed(listener, terminal, _cause);
+	}
+	
+	/**
+	 * Reports the failure to the listener, a failure of the report itself is
+	 * dropped so it could not stop the delivery of the following events.
+	 */
+	private static void listenerFailed(IInventoryListener _listener, CardTerminal _terminal, Throwable _cause) {
+		try {
+			_listener.scanFailed(_terminal, _cause);
+		} catch (RuntimeException e) {
+			/**
+			 * Nothing left to report to.
+			 */
+		}
+	}
+	
+	private void disconnect() {
+		if ( !this.connected )
+			return;
+		this.connected = false;
+		try {
+			this.card.disconnect(false);
+		} catch (CardException e) {
+			/**
+			 * The connection is already lost.
+			 */
+		} catch (IllegalStateException e) {
+			/**
+			 * The connection is already lost.
+			 */
+		}
+	}
+	
+	private void sleep() {
+		try {
+			Thread.sleep(DEFAULT_WAIT_TIMEOUT);
+		} catch (InterruptedException e) {
+			this.running = false;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.reader;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+import to.networld.schandler.card.ReaderKeySlots;
+import to.networld.schandler.factories.ReaderFactory;
+import to.networld.schandler.interfaces.ICardHandler;
+
+/**
+ * Engine that drives a session loop for every attached reader. Every reader
+ * has a presence thread that waits for cards and a handler thread that passes
+ * the presented cards to the {@link ICardHandler}. Between them is a bounded
+ * queue, if the handler is too slow further presentations are dropped.<p/>
+ * 
+ * The threads are created with the given {@link ThreadFactory}, on a runtime
+ * with virtual threads a factory for virtual threads could be used.
+ * 
+ * @author Alex Oberhauser
+ */
+public class ReaderEngine {
+	/** Default number of presentations that could wait per reader. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 16;
+	/** Default time in milliseconds the presence thread blocks before it checks for a shutdown. */
+	public static final long DEFAULT_POLL_TIMEOUT = 250;
+	
+	private final ICardHandler handler;
+	private final ThreadFactory threadFactory;
+	private final int queueCapacity;
+	private final long pollTimeout;
+	private final Map<String, ReaderSession> sessions = new HashMap<String, ReaderSession>();
+	private boolean running = true;
+	
+	/**
+	 * @param _handler The handler for the presented cards.
+	 * @param _threadFactory Factory for the presence and handler threads.
+	 * @param _queueCapacity Number of presentations that could wait per reader.
+	 * @param _pollTimeout Time in milliseconds the presence thread blocks before it checks for a shutdown.
+	 */
+	public ReaderEngine(ICardHandler _handler, ThreadFactory _threadFactory, int _queueCapacity, long _pollTimeout) {
+		assert(_handler != null && _threadFactory != null);
+		if ( _queueCapacity < 1 ) throw new IllegalArgumentException("The queue capacity has to be positive, found '" + _queueCapacity + "'");
+		this.handler = _handler;
+		this.threadFactory = _threadFactory;
+		this.queueCapacity = _queueCapacity;
+		this.pollTimeout = _pollTimeout;
+	}
+	
+	/**
+	 * Creates an engine with daemon threads and the default queue capacity.
+	 * 
+	 * @param _handler The handler for the presented cards.
+	 */
+	public ReaderEngine(ICardHandler _handler) {
+		this(_handler, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable _runnable) {
+				Thread thread = new Thread(_runnable);
+				thread.setDaemon(true);
+				return thread;
+			}
+		}, DEFAULT_QUEUE_CAPACITY, DEFAULT_POLL_TIMEOUT);
+	}
+	
+	/**
+	 * Attaches all readers that are currently present and not attached yet.
+	 * Could be called again to pick up readers that were plugged in later.
+	 * 
+	 * @return The number of newly attached readers.
+	 * @throws CardException
+	 */
+	public int attachAll() throws CardException {
+		int attached = 0;
+		for ( CardTerminal terminal : ReaderFactory.getAllReaderObjects() ) {
+			if ( this.attach(terminal) )
+				attached++;
+		}
+		return attached;
+	}
+	
+	/**
+	 * Starts the session loop of the given reader.
+	 * 
+	 * @param _terminal The reader.
+	 * @return False if the reader is already attached.
+	 */
+	public synchronized boolean attach(CardTerminal _terminal) {
+		if ( !this.running ) throw new IllegalStateException("The reader engine is shut down");
+		ReaderSession session = this.sessions.get(_terminal.getName());
+		if ( session != null && session.isAlive() )
+			return false;
+		session = new ReaderSession(this, _terminal, this.queueCapacity);
+		this.sessions.put(_terminal.getName(), session);
+		session.start(this.threadFactory);
+		return true;
+	}
+	
+	/**
+	 * Stops the session loop of the given reader. Waiting presentations are
+	 * still passed to the handler. The volatile key slots of the reader are
+	 * forgotten, see {@link ReaderKeySlots#readerDetached(CardTerminal)}.
+	 * 
+	 * @param _terminal The reader.
+	 * @return False if the reader was not attached.
+	 */
+	public synchronized boolean detach(CardTerminal _terminal) {
+		ReaderSession session = this.sessions.remove(_terminal.getName());
+		if ( session == null )
+			return false;
+		session.stop(false);
+		ReaderKeySlots.readerDetached(_terminal);
+		return true;
+	}
+	
+	/**
+	 * @return The readers with a running session loop.
+	 */
+	public synchronized List<CardTerminal> getAttachedReaders() {
+		List<CardTerminal> readers = new ArrayList<CardTerminal>();
+		for ( ReaderSession session : this.sessions.values() ) {
+			if ( session.isAlive() )
+				readers.add(session.getTerminal());
+		}
+		return readers;
+	}
+	
+	/**
+	 * @param _terminal The reader.
+	 * @return The number of presentations of the reader that were dropped because the queue was full.
+	 */
+	public synchronized long getDroppedCount(CardTerminal _terminal) {
+		ReaderSession session = this.sessions.get(_terminal.getName());
+		return session == null ? 0 : session.getDroppedCount();
+	}
+	
+	/**
+	 * @param _terminal The reader.
+	 * @return The number of presentations of the reader that wait for the handler.
+	 */
+	public synchronized int getQueueSize(CardTerminal _terminal) {
+		ReaderSession session = this.sessions.get(_terminal.getName());
+		return session == null ? 0 : session.getQueueSize();
+	}
+	
+	/**
+	 * Stops all session loops. Presentations that are already queued are
+	 * passed to the handler before the handler threads terminate.
+	 * 
+	 * @param _timeout The maximal time to wait for the threads.
+	 * @param _unit The unit of the timeout.
+	 * @return True if all threads are terminated.
+	 * @throws InterruptedException
+	 */
+	public boolean shutdown(long _timeout, TimeUnit _unit) throws InterruptedException {
+		return this.shutdown(_timeout, _unit, false);
+	}
+	
+	/**
+	 * Stops all session loops and discards the queued presentations.
+	 * 
+	 * @param _timeout The maximal time to wait for the threads.
+	 * @param _unit The unit of the timeout.
+	 * @return True if all threads are terminated.
+	 * @throws InterruptedException
+	 */
+	public boolean shutdownNow(long _timeout, TimeUnit _unit) throws InterruptedException {
+		return this.shutdown(_timeout, _unit, true);
+	}
+	
+	private boolean shutdown(long _timeout, TimeUnit _unit, boolean _discard) throws InterruptedException {
+		List<ReaderSession> stopped;
+		synchronized (this) {
+			this.running = false;
+			stopped = new ArrayList<ReaderSession>(this.sessions.values());
+			this.sessions.clear();
+		}
+		for ( ReaderSession session : stopped )
+			session.stop(_discard);
+		long deadline = System.nanoTime() + _unit.toNanos(_timeout);
+		boolean terminated = true;
+		for ( ReaderSession session : stopped ) {
+			if ( !session.awaitTermination(deadline) )
+				terminated = false;
+		}
+		return terminated;
+	}
+	
+	/**
+	 * @return True if the engine was not shut down.
+	 */
+	public synchronized boolean isRunning() {
+		return this.running;
+	}
+	
+	ICardHandler getHandler() {
+		return this.handler;
+	}
+	
+	long getPollTimeout() {
+		return this.pollTimeout;
+	}
+}
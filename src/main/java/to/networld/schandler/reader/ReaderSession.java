@@ -0,0 +1,150 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.reader;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+
+import to.networld.schandler.card.ReaderKeySlots;
+
+/**
+ * Session loop of one reader, used by the {@link ReaderEngine}.
+ * 
+ * @author Alex Oberhauser
+ */
+class ReaderSession {
+	private final ReaderEngine engine;
+	private final CardTerminal terminal;
+	private final BlockingQueue<Long> queue;
+	private volatile boolean running = true;
+	private volatile boolean discard = false;
+	private long dropped = 0;
+	private Thread presenceThread;
+	private Thread handlerThread;
+	
+	ReaderSession(ReaderEngine _engine, CardTerminal _terminal, int _queueCapacity) {
+		this.engine = _engine;
+		this.terminal = _terminal;
+		this.queue = new ArrayBlockingQueue<Long>(_queueCapacity);
+	}
+	
+	CardTerminal getTerminal() {
+		return this.terminal;
+	}
+	
+	synchronized long getDroppedCount() {
+		return this.dropped;
+	}
+	
+	int getQueueSize() {
+		return this.queue.size();
+	}
+	
+	synchronized void start(ThreadFactory _threadFactory) {
+		this.presenceThread = _threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				waitForCards();
+			}
+		});
+		this.handlerThread = _threadFactory.newThread(new Runnable() {
+			@Override
+			public void run() {
+				handleCards();
+			}
+		});
+		this.presenceThread.setName("schandler-presence-" + this.terminal.getName());
+		this.handlerThread.setName("schandler-handler-" + this.terminal.getName());
+		this.presenceThread.start();
+		this.handlerThread.start();
+	}
+	
+	boolean isAlive() {
+		return this.running && this.presenceThread.isAlive();
+	}
+	
+	void stop(boolean _discard) {
+		this.discard = _discard;
+		this.running = false;
+		if ( _discard )
+			this.queue.clear();
+	}
+	
+	boolean awaitTermination(long _deadline) throws InterruptedException {
+		Thread[] threads = new Thread[] { this.presenceThread, this.handlerThread };
+		for ( Thread thread : threads ) {
+			long remaining = TimeUnit.NANOSECONDS.toMillis(_deadline - System.nanoTime());
+			if ( remaining > 0 )
+				thread.join(remaining);
+			if ( thread.isAlive() )
+				return false;
+		}
+		return true;
+	}
+	
+	private void waitForCards() {
+		long pollTimeout = this.engine.getPollTimeout();
+		try {
+			while ( this.running ) {
+				if ( !this.terminal.waitForCardPresent(pollTimeout) )
+					continue;
+				if ( !this.queue.offer(System.currentTimeMillis()) ) {
+					synchronized (this) {
+						this.dropped++;
+					}
+				}
+				while ( this.running && !this.terminal.waitForCardAbsent(pollTimeout) );
+			}
+		} catch (CardException e) {
+			/**
+			 * The reader is gone, it loses its volatile key slots.
+			 */
+			ReaderKeySlots.readerDetached(this.terminal);
+			this.engine.getHandler().handlingFailed(this.terminal, e);
+		} finally {
+			this.running = false;
+		}
+	}
+	
+	private void handleCards() {
+		long pollTimeout = this.engine.getPollTimeout();
+		try {
+			while ( this.running || (!this.discard && !this.queue.isEmpty()) ) {
+				Long presentedAt = this.queue.poll(pollTimeout, TimeUnit.MILLISECONDS);
+				if ( presentedAt == null || this.discard )
+					continue;
+				try {
+					this.engine.getHandler().cardPresented(this.terminal, presentedAt);
+				} catch (Throwable e) {
+					this.engine.getHandler().handlingFailed(this.terminal, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
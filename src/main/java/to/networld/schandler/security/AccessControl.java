@@ -21,13 +21,16 @@
 package to.networld.schandler.security;
 
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Random;
-import java.util.Vector;
-
-import javax.smartcardio.ResponseAPDU;
 
 import to.networld.schandler.card.BasicMifare;
+import to.networld.schandler.card.MifareAccessPlan;
+import to.networld.schandler.card.MifareLayout;
+import to.networld.schandler.interfaces.IBlockListener;
 import to.networld.schandler.interfaces.ICard.HASH_TYPE;
+import to.networld.schandler.interfaces.ICardTransaction;
+import to.networld.schandler.common.BlockCursor;
 import to.networld.schandler.common.HashValueHandler;
 import to.networld.schandler.common.HexHandler;
 
@@ -127,12 +130,25 @@ public class AccessControl {
 		return HashValueHandler.computeSHA512(uniqueToken);
 	}
 	
-	public boolean checkKey(BasicMifare _card) throws Exception {
-		String value = this.keyHandler.getKey(_card.getUIDHash(HASH_TYPE.SHA512));
-		if ( value == null ) return false;
-		String key = this.readKey(_card);
-		if ( key.equals(HashValueHandler.computeSHA512(value)) ) return true;
-		return false;
+	/**
+	 * Checks if the hash value of the key that is stored on the card matches the key
+	 * in the database. The card is exclusively held during the check.
+	 * 
+	 * @param _card The card that is connected to the reader.
+	 * @return True if the key on the card is valid.
+	 * @throws Exception
+	 */
+	public boolean checkKey(final BasicMifare _card) throws Exception {
+		return _card.inTransaction(new ICardTransaction<Boolean>() {
+			@Override
+			public Boolean execute() throws Exception {
+				String value = keyHandler.getKey(_card.getUIDHash(HASH_TYPE.SHA512));
+				if ( value == null ) return false;
+				String key = readKey(_card);
+				if ( key.equals(HashValueHandler.computeSHA512(value)) ) return true;
+				return false;
+			}
+		});
 	}
 	
 	/**
@@ -143,14 +159,38 @@ public class AccessControl {
 	 * @throws Exception
 	 */
 	private String readKey(BasicMifare _card) throws Exception {
-		String key = new String();
-		for ( int count = STARTING_KEY_BLOCK; count < _card.USER_DATA_FIELDS.length; count++ ) {
-			ResponseAPDU response = _card.readBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, _card.USER_DATA_FIELDS[count], (byte)0x01);
-			byte[] byteArray = response.getData();
-			if ( byteArray[0] == (byte)0x00 ) break;
-			key += HexHandler.getHexToAscii(byteArray);
+		MifareLayout layout = _card.getLayout();
+		MifareAccessPlan plan = new MifareAccessPlan(layout);
+		for ( int count = STARTING_KEY_BLOCK; count < layout.getDataBlockCount(); count++ )
+			plan.read(layout.getDataBlock(count));
+		final StringBuffer key = new StringBuffer();
+		_card.execute(plan, BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x01, new IBlockListener() {
+			@Override
+			public boolean blockRead(int _block, byte[] _data, int _offset) {
+				if ( _data[_offset] == (byte)0x00 ) return false;
+				key.append(HexHandler.getHexToAscii(Arrays.copyOfRange(_data, _offset, _offset + MifareLayout.BLOCK_SIZE)));
+				return true;
+			}
+		});
+		return key.toString();
+	}
+	
+	/**
+	 * Writes the key blocks to the card, beginning with the {@link #STARTING_KEY_BLOCK}.
+	 * 
+	 * @param _card The card that is connected to the reader.
+	 * @param _cardKey The hash value of the key.
+	 * @throws Exception
+	 */
+	private void writeKey(BasicMifare _card, String _cardKey) throws Exception {
+		MifareLayout layout = _card.getLayout();
+		MifareAccessPlan plan = new MifareAccessPlan(layout);
+		BlockCursor blocks = new BlockCursor(_cardKey.getBytes());
+		for ( int count = STARTING_KEY_BLOCK; count < layout.getDataBlockCount(); count++ ) {
+			if ( !blocks.next() ) break;
+			plan.write(layout.getDataBlock(count), blocks.getBlock());
 		}
-		return key;
+		_card.execute(plan, BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x01, null);
 	}
 	
 	/**
@@ -165,12 +205,7 @@ public class AccessControl {
 		String cardUID = _card.getUID();
 		if ( !this.checkKey(_card) ) return false;
 		String cardKey = this.generateKey(cardUID);
-		Vector<byte[]> blocks = HexHandler.splitArray(cardKey.getBytes());
-		for ( int count = STARTING_KEY_BLOCK; count < _card.USER_DATA_FIELDS.length; count++ ) {
-			if ( blocks.isEmpty() ) break;
-			_card.writeBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, _card.USER_DATA_FIELDS[count], (byte)0x01, blocks.firstElement());
-			blocks.remove(0);
-		}
+		this.writeKey(_card, cardKey);
 		return true;
 	}
 	
@@ -192,12 +227,7 @@ public class AccessControl {
 		} else {
 			cardKey = HashValueHandler.computeSHA512(oldKey);
 		}
-		Vector<byte[]> blocks = HexHandler.splitArray(cardKey.getBytes());
-		for ( int count = STARTING_KEY_BLOCK; count < _card.USER_DATA_FIELDS.length; count++ ) {
-			if ( blocks.isEmpty() ) break;
-			_card.writeBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, _card.USER_DATA_FIELDS[count], (byte)0x01, blocks.firstElement());
-			blocks.remove(0);
-		}
+		this.writeKey(_card, cardKey);
 		this.accessHandler.storeAccessRights(_card.getUIDHash(HASH_TYPE.SHA512), _right.ordinal());
 		return true;
 	}
@@ -0,0 +1,177 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.async;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+import to.networld.schandler.interfaces.ICardCallback;
+import to.networld.schandler.interfaces.ICardFunction;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class CardFutureTest extends TestCase {
+	
+	/**
+	 * Records the notifications of the callback.
+	 */
+	private static class RecordingCallback implements ICardCallback<Object> {
+		final List<String> events = new ArrayList<String>();
+		
+		@Override
+		public void onSuccess(Object _result) {
+			this.events.add("success:" + _result);
+		}
+		
+		@Override
+		public void onFailure(Throwable _cause) {
+			this.events.add("failure:" + _cause.getMessage());
+		}
+	}
+	
+	/**
+	 * Queues the tasks until they are run explicitly.
+	 */
+	private static class QueueExecutor implements Executor {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		
+		@Override
+		public void execute(Runnable _task) {
+			this.tasks.add(_task);
+		}
+		
+		void runAll() {
+			for ( Runnable task : this.tasks )
+				task.run();
+			this.tasks.clear();
+		}
+	}
+	
+	private static CardFuture<String> future(final String _result) {
+		return new CardFuture<String>(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				if ( _result == null )
+					throw new IllegalStateException("no result");
+				return _result;
+			}
+		});
+	}
+	
+	public void testCallbacksAreNotified() {
+		CardFuture<String> future = future("A");
+		RecordingCallback before = new RecordingCallback();
+		future.addCallback(before);
+		assertTrue(before.events.isEmpty());
+		future.run();
+		RecordingCallback after = new RecordingCallback();
+		future.addCallback(after);
+		assertEquals("[success:A]", before.events.toString());
+		assertEquals("[success:A]", after.events.toString());
+	}
+	
+	public void testFailingCallbackDoesNotStopTheOthers() {
+		final List<Throwable> reported = new ArrayList<Throwable>();
+		Thread.UncaughtExceptionHandler handler = Thread.currentThread().getUncaughtExceptionHandler();
+		Thread.currentThread().setUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+			@Override
+			public void uncaughtException(Thread _thread, Throwable _failure) {
+				reported.add(_failure);
+			}
+		});
+		try {
+			CardFuture<String> future = future("A");
+			future.addCallback(new ICardCallback<String>() {
+				@Override
+				public void onSuccess(String _result) {
+					throw new IllegalArgumentException("broken callback");
+				}
+				
+				@Override
+				public void onFailure(Throwable _cause) {
+					fail();
+				}
+			});
+			RecordingCallback callback = new RecordingCallback();
+			future.addCallback(callback);
+			future.run();
+			assertEquals("[success:A]", callback.events.toString());
+			assertEquals(1, reported.size());
+			assertEquals("broken callback", reported.get(0).getMessage());
+		} finally {
+			Thread.currentThread().setUncaughtExceptionHandler(handler);
+		}
+	}
+	
+	public void testCallbackExecutor() {
+		QueueExecutor executor = new QueueExecutor();
+		CardFuture<String> future = future(null);
+		RecordingCallback callback = new RecordingCallback();
+		future.addCallback(callback, executor);
+		future.run();
+		assertTrue(callback.events.isEmpty());
+		assertEquals(1, executor.tasks.size());
+		executor.runAll();
+		assertEquals("[failure:no result]", callback.events.toString());
+	}
+	
+	public void testTransform() throws Exception {
+		CardFuture<String> future = future("AB");
+		CardFuture<Integer> length = future.transform(new ICardFunction<String, Integer>() {
+			@Override
+			public Integer apply(String _input) {
+				return _input.length();
+			}
+		});
+		assertFalse(length.isDone());
+		future.run();
+		assertTrue(length.isDone());
+		assertEquals(2, length.get().intValue());
+	}
+	
+	public void testTransformPassesTheFailure() throws Exception {
+		CardFuture<String> future = future(null);
+		QueueExecutor executor = new QueueExecutor();
+		CardFuture<Integer> length = future.transform(new ICardFunction<String, Integer>() {
+			@Override
+			public Integer apply(String _input) {
+				fail();
+				return null;
+			}
+		}, executor);
+		future.run();
+		assertFalse(length.isDone());
+		executor.runAll();
+		try {
+			length.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+	}
+}
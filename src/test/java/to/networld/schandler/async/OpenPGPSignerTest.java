@@ -0,0 +1,116 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.async;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.CardException;
+
+import junit.framework.TestCase;
+import to.networld.schandler.card.OpenPGP;
+import to.networld.schandler.card.StubCard;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class OpenPGPSignerTest extends TestCase {
+	private static final String ATR = "3B02AABB";
+	private static final String SELECT = HexHandler.getHexString(OpenPGP.SELECT_FILE, true);
+	private static final String VERIFY = "00200081";
+	private static final byte[] DIGEST_INFO = new byte[] { 0x01, 0x02, 0x03 };
+	
+	private StubCard card;
+	private OpenPGP openPGP;
+	private OpenPGPSigner signer;
+	
+	/*
+	 * Status word of the SELECT command.
+	 */
+	private volatile String selectStatus = "9000";
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.card = new StubCard(ATR, new StubCard.Responder() {
+			@Override
+			public byte[] respond(int _channel, byte[] _command) {
+				switch ( _command[1] ) {
+					case (byte)0xA4: return HexHandler.decode(selectStatus);
+					case (byte)0xCA: return HexHandler.decode("019000");
+					case (byte)0x2A: return HexHandler.decode("AABB9000");
+					default: return HexHandler.decode("9000");
+				}
+			}
+		});
+		this.openPGP = new OpenPGP(this.card.getTerminal(this.getClass().getSimpleName() + "." + this.getName()), "T=1");
+		assertTrue(this.openPGP.connectToCard());
+		this.signer = new OpenPGPSigner(this.openPGP, "123456".getBytes());
+	}
+	
+	private byte[] sign() throws Exception {
+		return this.signer.sign(DIGEST_INFO).get(5, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Waits until the running batch ended, the worker thread of the reader executes one task after another.
+	 */
+	private void awaitBatch() throws Exception {
+		new AsyncCard<OpenPGP>(this.openPGP).submit(new ICardTransaction<Void>() {
+			@Override
+			public Void execute() {
+				return null;
+			}
+		}).get(5, TimeUnit.SECONDS);
+	}
+	
+	public void testEveryBatchSelectsOnTheBasicChannel() throws Exception {
+		assertEquals("AABB", HexHandler.getHexString(this.sign(), true));
+		this.awaitBatch();
+		this.sign();
+		assertEquals(2, this.card.count(SELECT));
+		assertEquals(2, this.card.count(VERIFY));
+	}
+	
+	public void testSelectionSurvivesOnTheLogicalChannel() throws Exception {
+		this.openPGP.openLogicalChannel(1000);
+		this.sign();
+		this.awaitBatch();
+		this.sign();
+		assertEquals(1, this.card.count("1:" + SELECT));
+		assertEquals(1, this.card.count("1:" + VERIFY));
+	}
+	
+	public void testFailedSelectionStopsBeforeTheVerification() throws Exception {
+		this.selectStatus = "6A82";
+		try {
+			this.sign();
+			fail("Signature without selected application");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof CardException);
+		}
+		assertEquals(0, this.card.count(VERIFY));
+		assertNotNull(this.signer.getFailure());
+	}
+}
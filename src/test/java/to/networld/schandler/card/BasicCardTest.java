@@ -0,0 +1,226 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import javax.smartcardio.CardException;
+import javax.smartcardio.ResponseAPDU;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HashValueHandler;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.interfaces.ICard.HASH_TYPE;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class BasicCardTest extends TestCase {
+	private static final String ATR = "3B02AABB";
+	private static final byte[] GET_CHALLENGE = HexHandler.decode("0084000008");
+	
+	/**
+	 * Answers every command with 8 data bytes and 9000.
+	 */
+	private static final StubCard.Responder ECHO = new StubCard.Responder() {
+		@Override
+		public byte[] respond(int _channel, byte[] _command) {
+			return HexHandler.decode("01020304050607089000");
+		}
+	};
+	
+	/**
+	 * Answers the commands with the scripted responses, unknown commands with 6D00.
+	 */
+	private static StubCard.Responder script(final String... _commandsAndResponses) {
+		return new StubCard.Responder() {
+			@Override
+			public byte[] respond(int _channel, byte[] _command) {
+				String command = HexHandler.getHexString(_command, true);
+				for ( int count = 0; count < _commandsAndResponses.length; count += 2 ) {
+					if ( _commandsAndResponses[count].equals(command) )
+						return HexHandler.decode(_commandsAndResponses[count + 1]);
+				}
+				return HexHandler.decode("6D00");
+			}
+		};
+	}
+	
+	private static String bytes(int _first, int _count) {
+		byte[] data = new byte[_count];
+		for ( int count = 0; count < _count; count++ )
+			data[count] = (byte)(_first + count);
+		return HexHandler.getHexString(data, true);
+	}
+	
+	private StubCard card;
+	private BasicCard basicCard;
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.connect(ECHO);
+	}
+	
+	private void connect(StubCard.Responder _responder) throws Exception {
+		this.card = new StubCard(ATR, _responder);
+		this.basicCard = new BasicCard(this.card.getTerminal(this.getClass().getSimpleName() + "." + this.getName()), "T=1");
+		assertTrue(this.basicCard.connectToCard());
+	}
+	
+	public void testEveryCommandIsExclusive() throws Exception {
+		this.basicCard.sendAPDUCommandToCard(GET_CHALLENGE);
+		this.basicCard.sendAPDUCommandToCard(GET_CHALLENGE);
+		assertEquals(2, this.card.getExclusiveCount());
+		assertFalse(this.card.isExclusive());
+		assertFalse(this.basicCard.isInTransaction());
+	}
+	
+	public void testNestedTransactions() throws Exception {
+		int result = this.basicCard.inTransaction(new ICardTransaction<Integer>() {
+			@Override
+			public Integer execute() throws Exception {
+				assertTrue(basicCard.isInTransaction());
+				basicCard.sendAPDUCommandToCard(GET_CHALLENGE);
+				return basicCard.inTransaction(new ICardTransaction<Integer>() {
+					@Override
+					public Integer execute() throws Exception {
+						basicCard.sendAPDUCommandToCard(GET_CHALLENGE);
+						assertTrue(card.isExclusive());
+						return basicCard.getLastStatusWord();
+					}
+				});
+			}
+		});
+		assertEquals(StatusWord.SUCCESS, result);
+		assertEquals(1, this.card.getExclusiveCount());
+		assertEquals(2, this.card.getCommands().size());
+		assertFalse(this.card.isExclusive());
+		assertFalse(this.basicCard.isInTransaction());
+	}
+	
+	public void testFailedTransactionReleasesTheCard() throws Exception {
+		try {
+			this.basicCard.inTransaction(new ICardTransaction<Void>() {
+				@Override
+				public Void execute() throws Exception {
+					basicCard.sendAPDUCommandToCard(GET_CHALLENGE);
+					throw new IllegalStateException("Failed");
+				}
+			});
+			fail("Exception not passed on");
+		} catch (IllegalStateException e) {
+		}
+		assertFalse(this.card.isExclusive());
+		assertFalse(this.basicCard.isInTransaction());
+		this.basicCard.sendAPDUCommandToCard(GET_CHALLENGE);
+		assertEquals(2, this.card.getExclusiveCount());
+	}
+	
+	public void testNoReconnectInsideATransaction() throws Exception {
+		this.basicCard.inTransaction(new ICardTransaction<Void>() {
+			@Override
+			public Void execute() throws Exception {
+				try {
+					basicCard.connectToCard();
+					fail("Reconnect inside a transaction accepted");
+				} catch (CardException e) {
+				}
+				try {
+					basicCard.disconnect(false);
+					fail("Disconnect inside a transaction accepted");
+				} catch (CardException e) {
+				}
+				return null;
+			}
+		});
+		assertFalse(this.card.isDisconnected());
+		this.basicCard.disconnect(false);
+		assertTrue(this.card.isDisconnected());
+	}
+	
+	public void testUIDHash() throws Exception {
+		String sha256 = this.basicCard.getUIDHash(HASH_TYPE.SHA256);
+		assertEquals(HashValueHandler.computeSHA256("0102030405060708"), sha256);
+		assertEquals(HashValueHandler.computeSHA1("0102030405060708"), this.basicCard.getUIDHash(HASH_TYPE.SHA1));
+		assertSame(sha256, this.basicCard.getUIDHash(HASH_TYPE.SHA256));
+		assertEquals(1, this.card.count("FFCA"));
+	}
+	
+	public void testGetResponseChaining() throws Exception {
+		this.connect(script("00B0000000", bytes(0, 256) + "6110",
+				"00C0000010", bytes(0, 16) + "9000"));
+		ResponseAPDU response = this.basicCard.sendAPDUCommandToCard(HexHandler.decode("00B0000000"));
+		assertEquals(StatusWord.SUCCESS, response.getSW());
+		assertEquals(bytes(0, 256) + bytes(0, 16), HexHandler.getHexString(response.getData(), true));
+		assertEquals("[00B0000000, 00C0000010]", this.card.getCommands().toString());
+		assertEquals(1, this.card.getExclusiveCount());
+	}
+	
+	public void testGetResponseKeepsTheChannel() throws Exception {
+		this.connect(script("01CA006E00", "6102", "01C0000002", "AABB9000"));
+		ResponseAPDU response = this.basicCard.sendAPDUCommandToCard(HexHandler.decode("01CA006E00"));
+		assertEquals("AABB", HexHandler.getHexString(response.getData(), true));
+		assertEquals("[01CA006E00, 01C0000002]", this.card.getCommands().toString());
+	}
+	
+	public void testWrongLeIsCorrected() throws Exception {
+		this.connect(script("00CA006E00", "6C04", "00CA006E04", "010203049000",
+				"00CA0065020A0B00", "6C02", "00CA0065020A0B02", "AABB9000"));
+		ResponseAPDU response = this.basicCard.sendAPDUCommandToCard(HexHandler.decode("00CA006E00"));
+		assertEquals(StatusWord.SUCCESS, response.getSW());
+		assertEquals("01020304", HexHandler.getHexString(response.getData(), true));
+		response = this.basicCard.sendAPDUCommandToCard(HexHandler.decode("00CA0065020A0B00"));
+		assertEquals("AABB", HexHandler.getHexString(response.getData(), true));
+		assertEquals("[00CA006E00, 00CA006E04, 00CA0065020A0B00, 00CA0065020A0B02]", this.card.getCommands().toString());
+	}
+	
+	public void testWrongLeWithoutLe() throws Exception {
+		this.connect(script("00DA006E020A0B", "6C04"));
+		ResponseAPDU response = this.basicCard.sendAPDUCommandToCard(HexHandler.decode("00DA006E020A0B"));
+		assertEquals(0x6C04, response.getSW());
+		assertEquals(1, this.card.getCommands().size());
+	}
+	
+	public void testEmptyGetResponse() throws Exception {
+		this.connect(script("00B0000000", "0102036110", "00C0000010", "6110"));
+		try {
+			this.basicCard.sendAPDUCommandToCard(HexHandler.decode("00B0000000"));
+			fail("Endless GET RESPONSE loop");
+		} catch (CardException e) {
+		}
+		assertFalse(this.card.isExclusive());
+	}
+	
+	public void testResponseLengthLimit() throws Exception {
+		this.connect(new StubCard.Responder() {
+			@Override
+			public byte[] respond(int _channel, byte[] _command) {
+				return HexHandler.decode(bytes(0, 256) + "6100");
+			}
+		});
+		try {
+			this.basicCard.sendAPDUCommandToCard(HexHandler.decode("00B0000000"));
+			fail("Response longer than the limit accepted");
+		} catch (CardException e) {
+		}
+		assertEquals(BasicCard.MAX_RESPONSE_LENGTH / 256 + 1, this.card.getCommands().size());
+	}
+}
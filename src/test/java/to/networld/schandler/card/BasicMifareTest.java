@@ -0,0 +1,226 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class BasicMifareTest extends TestCase {
+	private static final String AUTH = "FF860000050100";
+	private static final String LOAD_KEY = "FF82";
+	
+	private StubMifare tag;
+	private StubCard card;
+	private BasicMifare mifare;
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.tag = new StubMifare();
+		this.card = this.tag.getCard();
+		this.mifare = this.tag.connect(this.getClass().getSimpleName() + "." + this.getName());
+		this.card.clearCommands();
+	}
+	
+	private int read(int _block) throws Exception {
+		return this.mifare.readBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, (byte)_block, (byte)0x01).getSW();
+	}
+	
+	public void testAuthenticationIsCachedPerSector() throws Exception {
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		assertEquals(StatusWord.SUCCESS, this.read(5));
+		assertEquals(StatusWord.SUCCESS, this.read(6));
+		assertEquals(1, this.card.count(AUTH));
+		assertEquals(StatusWord.SUCCESS, this.read(8));
+		assertEquals(2, this.card.count(AUTH));
+		assertEquals(4, this.card.count("FFB0"));
+	}
+	
+	public void testOtherKeyAuthenticatesAgain() throws Exception {
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		assertEquals(StatusWord.SUCCESS, this.mifare.readBlockData(BasicMifare.KEY_B, BasicMifare.STD_KEY, (byte)0x00, (byte)5, (byte)0x01).getSW());
+		assertEquals(2, this.card.count(AUTH));
+	}
+	
+	public void testFailedReadDropsAuthentication() throws Exception {
+		this.tag.fail(5, 0x6A82);
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		assertEquals(0x6A82, this.read(5));
+		assertEquals(StatusWord.SUCCESS, this.read(6));
+		assertEquals(2, this.card.count(AUTH));
+	}
+	
+	public void testReaderFailureDropsAuthentication() throws Exception {
+		this.tag.fail(5, 0x6F00);
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		assertEquals(0x6F00, this.read(5));
+		assertEquals(StatusWord.SUCCESS, this.read(6));
+		assertEquals(2, this.card.count(AUTH));
+	}
+	
+	public void testFailedWriteDropsAuthentication() throws Exception {
+		this.tag.fail(5, 0x6281);
+		byte[] data = new byte[16];
+		assertEquals(StatusWord.SUCCESS, this.mifare.writeBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, (byte)4, (byte)0x01, data).getSW());
+		assertEquals(0x6281, this.mifare.writeBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, (byte)5, (byte)0x01, data).getSW());
+		assertEquals(StatusWord.SUCCESS, this.mifare.writeBlockData(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x00, (byte)6, (byte)0x01, data).getSW());
+		assertEquals(2, this.card.count(AUTH));
+	}
+	
+	public void testReconnectDropsAuthentication() throws Exception {
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		this.mifare.connectToCard();
+		assertEquals(StatusWord.SUCCESS, this.read(5));
+		assertEquals(2, this.card.count(AUTH));
+	}
+	
+	public void testLoadKeyIsSkippedAcrossConnections() throws Exception {
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		this.mifare.connectToCard();
+		assertEquals(StatusWord.SUCCESS, this.read(8));
+		assertEquals(1, this.card.count(LOAD_KEY));
+		assertEquals(2, this.card.count(AUTH));
+	}
+	
+	public void testOverwrittenSlotIsLoadedAgain() throws Exception {
+		assertEquals(StatusWord.SUCCESS, this.read(4));
+		this.tag.resetReader();
+		this.mifare.connectToCard();
+		assertEquals(StatusWord.SUCCESS, this.read(8));
+		assertEquals(2, this.card.count(LOAD_KEY));
+		assertEquals(3, this.card.count(AUTH));
+	}
+	
+	public void testPreloadSkipsLoadedKeys() throws Exception {
+		byte[] other = new byte[] { 1, 2, 3, 4, 5, 6 };
+		byte[] numbers = new byte[] { 0x02, 0x03 };
+		byte[][] keys = new byte[][] { BasicMifare.STD_KEY, other };
+		assertTrue(this.mifare.preloadKeys(numbers, keys, false));
+		assertTrue(this.mifare.preloadKeys(numbers, keys, false));
+		assertEquals(2, this.card.count(LOAD_KEY));
+		assertTrue(this.mifare.preloadKeys(new byte[] { 0x02 }, new byte[][] { other }, false));
+		assertEquals(3, this.card.count(LOAD_KEY));
+	}
+	
+	public void testDetachedReaderForgetsVolatileSlots() throws Exception {
+		byte[] numbers = new byte[] { 0x02, 0x03 };
+		byte[][] keys = new byte[][] { BasicMifare.STD_KEY, BasicMifare.STD_KEY };
+		assertTrue(this.mifare.preloadKeys(new byte[] { 0x02 }, new byte[][] { BasicMifare.STD_KEY }, false));
+		assertTrue(this.mifare.preloadKeys(new byte[] { 0x03 }, new byte[][] { BasicMifare.STD_KEY }, true));
+		ReaderKeySlots.readerDetached(this.mifare.getTerminal());
+		ReaderKeySlots slots = ReaderKeySlots.forTerminal(this.mifare.getTerminal());
+		assertFalse(slots.holds((byte)0x02, BasicMifare.STD_KEY));
+		assertTrue(slots.holds((byte)0x03, BasicMifare.STD_KEY));
+		assertTrue(this.mifare.preloadKeys(numbers, keys, false));
+		assertEquals(3, this.card.count(LOAD_KEY));
+	}
+	
+	private int readBlocks(int _firstBlock, int _blockCount, byte[] _dst) throws Exception {
+		return this.mifare.readBlocks(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x01, _firstBlock, _blockCount, _dst, 0);
+	}
+	
+	private int writeBlocks(int _firstBlock, byte[] _data) throws Exception {
+		return this.mifare.writeBlocks(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x01, _firstBlock, _data, 0, _data.length);
+	}
+	
+	private static void assertBlocks(int _firstBlock, byte[] _data) {
+		for ( int count = 0; count < _data.length / 16; count++ )
+			assertEquals(_firstBlock + count, _data[count * 16]);
+	}
+	
+	public void testMultiBlockReadIsProbedOnce() throws Exception {
+		byte[] data = new byte[48];
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(4, 3, data));
+		assertBlocks(4, data);
+		assertEquals(1, this.card.count("FFB0000400"));
+		assertEquals(1, this.card.count("FFB0000520"));
+		this.card.clearCommands();
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(8, 3, data));
+		assertBlocks(8, data);
+		assertEquals(1, this.card.count("FFB0"));
+		assertEquals(1, this.card.count("FFB0000830"));
+	}
+	
+	public void testMissingMultiBlockReadIsRemembered() throws Exception {
+		this.tag.setMultiBlockStatus(StatusWord.WRONG_LENGTH);
+		byte[] data = new byte[48];
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(4, 3, data));
+		assertBlocks(4, data);
+		assertEquals(1, this.card.count("FFB0000520"));
+		this.card.clearCommands();
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(8, 3, data));
+		assertBlocks(8, data);
+		assertEquals(3, this.card.count("FFB0"));
+		for ( String command : this.card.getCommands() )
+			assertFalse(command, command.startsWith("FFB0") && !command.endsWith("00"));
+	}
+	
+	public void testAmbiguousProbeFailureIsNotRemembered() throws Exception {
+		this.tag.setMultiBlockStatus(0x6300);
+		byte[] data = new byte[48];
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(4, 3, data));
+		assertBlocks(4, data);
+		this.tag.setMultiBlockStatus(StatusWord.SUCCESS);
+		this.card.clearCommands();
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(8, 3, data));
+		assertEquals(1, this.card.count("FFB0000920"));
+	}
+	
+	public void testInaccessibleSectorIsNotProbed() throws Exception {
+		this.tag.fail(4, 0x6982);
+		byte[] data = new byte[48];
+		assertEquals(0x6982, this.readBlocks(4, 3, data));
+		assertEquals(1, this.card.count("FFB0"));
+		this.card.clearCommands();
+		assertEquals(StatusWord.SUCCESS, this.readBlocks(8, 3, data));
+		assertEquals(1, this.card.count("FFB0000920"));
+	}
+	
+	public void testMultiBlockWriteIsProbedOnce() throws Exception {
+		byte[] data = new byte[48];
+		for ( int count = 0; count < 3; count++ )
+			data[count * 16] = (byte)(0x40 + count);
+		assertEquals(StatusWord.SUCCESS, this.writeBlocks(4, data));
+		assertEquals(1, this.card.count("FFD6000410"));
+		assertEquals(1, this.card.count("FFD6000520"));
+		this.card.clearCommands();
+		assertEquals(StatusWord.SUCCESS, this.writeBlocks(8, data));
+		assertEquals(1, this.card.count("FFD6000830"));
+		for ( int count = 0; count < 3; count++ ) {
+			assertEquals(0x40 + count, this.tag.getBlock(4 + count)[0]);
+			assertEquals(0x40 + count, this.tag.getBlock(8 + count)[0]);
+		}
+	}
+	
+	public void testMissingMultiBlockWriteIsRemembered() throws Exception {
+		this.tag.setMultiBlockStatus(0x6A81);
+		byte[] data = new byte[48];
+		data[32] = 0x42;
+		assertEquals(StatusWord.SUCCESS, this.writeBlocks(4, data));
+		assertEquals(0x42, this.tag.getBlock(6)[0]);
+		this.card.clearCommands();
+		assertEquals(StatusWord.SUCCESS, this.writeBlocks(8, data));
+		assertEquals(3, this.card.count("FFD6"));
+		assertEquals(0x42, this.tag.getBlock(10)[0]);
+	}
+}
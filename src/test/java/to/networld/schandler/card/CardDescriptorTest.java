@@ -0,0 +1,89 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import junit.framework.TestCase;
+import to.networld.schandler.card.CardDescriptor.Standard;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.interfaces.ICard.CardType;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class CardDescriptorTest extends TestCase {
+	private static final String MIFARE_1K = "3B8F8001804F0CA000000306030001000000006A";
+	
+	public void testStorageCard() {
+		CardDescriptor descriptor = CardDescriptor.parse(HexHandler.decode(MIFARE_1K));
+		assertTrue(descriptor.isValid());
+		assertEquals(CardType.Mifare1K, descriptor.getCardType());
+		assertEquals(Standard.ISO14443A_3, descriptor.getStandard());
+		assertEquals(15, descriptor.getHistoricalBytes().length);
+		assertEquals(MifareLayout.BLOCK_SIZE, descriptor.getBlockSize());
+		assertEquals(64, descriptor.getBlockCount());
+	}
+	
+	public void testWrongCheckByte() {
+		CardDescriptor descriptor = CardDescriptor.parse(HexHandler.decode("3B8F8001804F0CA000000306030001000000006B"));
+		assertFalse(descriptor.isValid());
+		assertEquals(CardType.UNKNOWN, descriptor.getCardType());
+		assertEquals(0, descriptor.getHistoricalBytes().length);
+	}
+	
+	public void testMissingCheckByte() {
+		CardDescriptor descriptor = CardDescriptor.parse(HexHandler.decode("3B8F8001804F0CA00000030603000100000000"));
+		assertFalse(descriptor.isValid());
+	}
+	
+	public void testWithoutCheckByte() {
+		/**
+		 * Only T=0 is announced, so the ATR ends without TCK.
+		 */
+		CardDescriptor descriptor = CardDescriptor.parse(HexHandler.decode("3B02AABB"));
+		assertTrue(descriptor.isValid());
+		assertEquals(CardType.UNKNOWN, descriptor.getCardType());
+		assertEquals("aabb", HexHandler.getHexString(descriptor.getHistoricalBytes(), false));
+	}
+	
+	public void testInvalidInitialCharacter() {
+		assertFalse(CardDescriptor.parse(HexHandler.decode("3A00")).isValid());
+		assertFalse(CardDescriptor.parse(new byte[] { (byte)0x3B }).isValid());
+	}
+	
+	public void testForATRIsCached() {
+		byte[] atr = HexHandler.decode(MIFARE_1K);
+		CardDescriptor first = CardDescriptor.forATR(atr);
+		atr[2] = 0x00;
+		assertSame(first, CardDescriptor.forATR(HexHandler.decode(MIFARE_1K)));
+		assertEquals(MIFARE_1K, HexHandler.getHexString(first.getATR(), true));
+	}
+	
+	public void testExtendedLengthCapability() {
+		/**
+		 * Category 0x00, card capabilities 0x73 with the third byte 0x40 and the status bytes.
+		 */
+		assertTrue(CardDescriptor.hasExtendedLengthCapability(HexHandler.decode("0073000040009000")));
+		assertFalse(CardDescriptor.hasExtendedLengthCapability(HexHandler.decode("0073000000009000")));
+		assertFalse(CardDescriptor.hasExtendedLengthCapability(HexHandler.decode("8073")));
+		assertFalse(CardDescriptor.hasExtendedLengthCapability(new byte[0]));
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HexHandler;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class ISO15693InventoryTest extends TestCase {
+	
+	private static String request(int _maskLength, long _mask) {
+		ByteBuffer frame = ByteBuffer.allocate(16);
+		ISO15693.putInventoryRequest(frame, _maskLength, _mask);
+		frame.flip();
+		byte[] data = new byte[frame.remaining()];
+		frame.get(data);
+		return HexHandler.getHexString(data, true);
+	}
+	
+	public void testWithoutMask() {
+		assertEquals("260100", request(0, 0));
+		assertEquals("260100", request(0, -1L));
+	}
+	
+	public void testMaskIsTruncatedToItsLength() {
+		assertEquals("26010405", request(4, 0x15));
+		assertEquals("2601080F", request(8, 0x10F));
+		assertEquals("26010C3402", request(12, 0xF1234));
+	}
+	
+	public void testMaskIsSentLSBFirst() {
+		assertEquals("26014007060504030201E0", request(64, 0xE001020304050607L));
+	}
+	
+	public void testInvalidLength() {
+		try {
+			request(65, 0);
+			fail("Mask length 65 accepted");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			request(-1, 0);
+			fail("Negative mask length accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,77 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import javax.smartcardio.CardException;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HexHandler;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class ISO15693SystemInfoTest extends TestCase {
+	
+	public void testAllFields() throws Exception {
+		byte[] response = HexHandler.decode("AA" + "0F" + "07060504030201E0" + "01" + "02" + "3F03" + "99" + "BB");
+		ISO15693SystemInfo info = ISO15693SystemInfo.parse(response, 1, response.length - 2);
+		assertEquals("e001020304050607", HexHandler.getHexString(info.getUID(), false));
+		assertEquals(0x01, info.getDSFID());
+		assertEquals(0x02, info.getAFI());
+		assertEquals(64, info.getBlockCount());
+		assertEquals(4, info.getBlockSize());
+		assertEquals(256, info.getMemorySize());
+		assertEquals(0x99, info.getICReference());
+	}
+	
+	public void testBlockSizeUsesFiveBits() throws Exception {
+		byte[] response = HexHandler.decode("04" + "07060504030201E0" + "1BE7");
+		ISO15693SystemInfo info = ISO15693SystemInfo.parse(response, 0, response.length);
+		assertEquals(28, info.getBlockCount());
+		assertEquals(8, info.getBlockSize());
+	}
+	
+	public void testAbsentFields() throws Exception {
+		byte[] response = HexHandler.decode("00" + "07060504030201E0");
+		ISO15693SystemInfo info = ISO15693SystemInfo.parse(response, 0, response.length);
+		assertEquals(-1, info.getDSFID());
+		assertEquals(-1, info.getAFI());
+		assertEquals(-1, info.getICReference());
+		assertEquals(0, info.getBlockCount());
+		assertEquals(0, info.getMemorySize());
+	}
+	
+	public void testTooShort() throws Exception {
+		byte[] response = HexHandler.decode("00" + "07060504030201");
+		try {
+			ISO15693SystemInfo.parse(response, 0, response.length);
+			fail("Short response accepted");
+		} catch (CardException e) {
+		}
+		response = HexHandler.decode("0F" + "07060504030201E0" + "0102" + "3F03");
+		try {
+			ISO15693SystemInfo.parse(response, 0, response.length);
+			fail("Missing IC reference accepted");
+		} catch (CardException e) {
+		}
+	}
+}
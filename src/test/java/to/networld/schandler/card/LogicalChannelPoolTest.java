@@ -0,0 +1,179 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.card;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.smartcardio.CardTerminal;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class LogicalChannelPoolTest extends TestCase {
+	private static final String ATR = "3B02AABB";
+	private static final byte[] AID = HexHandler.decode("A0000001");
+	private static final byte[] SELECT = HexHandler.decode("00A4040004A0000001");
+	private static final byte[] GET_CHALLENGE = HexHandler.decode("0084000008");
+	
+	private StubCard card;
+	private CardTerminal terminal;
+	
+	/*
+	 * Status word of the MANAGE CHANNEL reset.
+	 */
+	private String resetStatus = "9000";
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.card = new StubCard(ATR, new StubCard.Responder() {
+			@Override
+			public byte[] respond(int _channel, byte[] _command) {
+				if ( _command[1] == (byte)0x70 )
+					return HexHandler.decode(resetStatus);
+				return HexHandler.decode("9000");
+			}
+		});
+		this.terminal = this.card.getTerminal(this.getClass().getSimpleName() + "." + this.getName());
+	}
+	
+	private BasicCard client() throws Exception {
+		BasicCard client = new BasicCard(this.terminal, "T=1");
+		assertTrue(client.connectToCard());
+		return client;
+	}
+	
+	public void testReleasedChannelIsReselected() throws Exception {
+		BasicCard first = this.client();
+		ManagedChannel channel = first.openLogicalChannel(1000);
+		first.sendAPDUCommandToCard(SELECT);
+		assertTrue(channel.isSelected(AID));
+		first.closeLogicalChannel();
+		assertEquals("[1:00A4040004A0000001, 1:00A4040004A0000001]", this.card.getCommands().toString());
+		assertTrue(this.card.getClosedChannels().isEmpty());
+		
+		BasicCard second = this.client();
+		this.card.clearCommands();
+		assertSame(channel, second.openLogicalChannel(AID, 1000));
+		assertTrue(channel.isSelected(AID));
+		assertTrue(this.card.getCommands().isEmpty());
+		first.openLogicalChannel(HexHandler.decode("A0000002"), 1000);
+		assertEquals(2, first.getLogicalChannel().getChannelNumber());
+		assertEquals(2, channel.getPool().getLeasedChannels());
+		assertEquals(0, channel.getPool().getIdleChannels());
+	}
+	
+	public void testUnknownSelectionIsReset() throws Exception {
+		BasicCard client = this.client();
+		ManagedChannel channel = client.openLogicalChannel(1000);
+		client.sendAPDUCommandToCard(GET_CHALLENGE);
+		client.closeLogicalChannel();
+		assertEquals("[1:0084000008, 1:00704001]", this.card.getCommands().toString());
+		assertSame(channel, client.openLogicalChannel(1000));
+		assertTrue(this.card.getClosedChannels().isEmpty());
+	}
+	
+	public void testFailedResetClosesTheChannel() throws Exception {
+		this.resetStatus = "6A81";
+		BasicCard client = this.client();
+		ManagedChannel channel = client.openLogicalChannel(1000);
+		client.closeLogicalChannel();
+		assertEquals(Arrays.asList(1), this.card.getClosedChannels());
+		assertEquals(0, channel.getPool().getIdleChannels());
+		assertEquals(2, client.openLogicalChannel(1000).getChannelNumber());
+	}
+	
+	public void testDisconnectKeepsTheCardOfOtherClients() throws Exception {
+		BasicCard first = this.client();
+		BasicCard second = this.client();
+		LogicalChannelPool pool = first.openLogicalChannel(1000).getPool();
+		second.openLogicalChannel(1000);
+		first.disconnect(false);
+		assertFalse(this.card.isDisconnected());
+		assertFalse(pool.isClosed());
+		assertEquals(1, pool.getLeasedChannels());
+		second.sendAPDUCommandToCard(GET_CHALLENGE);
+		second.disconnect(false);
+		assertTrue(pool.isClosed());
+		assertTrue(this.card.isDisconnected());
+		assertEquals(Arrays.asList(1, 2), this.card.getClosedChannels());
+		assertNotSame(pool, LogicalChannelPool.forCard(this.card));
+	}
+	
+	public void testTransactionsOfLogicalChannelsAreSerialised() throws Exception {
+		final BasicCard first = this.client();
+		final BasicCard second = this.client();
+		first.openLogicalChannel(1000);
+		second.openLogicalChannel(1000);
+		final CountDownLatch inTransaction = new CountDownLatch(1);
+		final CountDownLatch finish = new CountDownLatch(1);
+		final List<Throwable> failures = new ArrayList<Throwable>();
+		Thread holder = new Thread() {
+			@Override
+			public void run() {
+				try {
+					first.inTransaction(new ICardTransaction<Void>() {
+						@Override
+						public Void execute() throws Exception {
+							first.sendAPDUCommandToCard(GET_CHALLENGE);
+							inTransaction.countDown();
+							finish.await();
+							first.sendAPDUCommandToCard(GET_CHALLENGE);
+							return null;
+						}
+					});
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}
+		};
+		Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				try {
+					second.sendAPDUCommandToCard(GET_CHALLENGE);
+				} catch (Throwable e) {
+					failures.add(e);
+				}
+			}
+		};
+		holder.start();
+		assertTrue(inTransaction.await(5, TimeUnit.SECONDS));
+		waiter.start();
+		waiter.join(200);
+		assertTrue(waiter.isAlive());
+		finish.countDown();
+		holder.join(5000);
+		waiter.join(5000);
+		assertTrue(failures.toString(), failures.isEmpty());
+		assertEquals("[1:0084000008, 1:0084000008, 2:0084000008]", this.card.getCommands().toString());
+		assertFalse(this.card.isExclusive());
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class MifareAccessPlanTest extends TestCase {
+	
+	private static byte[] block(int _value) {
+		byte[] data = new byte[MifareLayout.BLOCK_SIZE];
+		data[0] = (byte)_value;
+		return data;
+	}
+	
+	public void testRunsAreSlicesOfThePlanBuffer() throws Exception {
+		MifareAccessPlan plan = new MifareAccessPlan(MifareLayout.CLASSIC_1K);
+		plan.write(4, block(4)).write(5, ByteBuffer.wrap(block(5))).write(6, block(6));
+		List<MifareAccessPlan.Run> runs = plan.getRuns();
+		assertEquals(1, runs.size());
+		MifareAccessPlan.Run run = runs.get(0);
+		assertTrue(run.isWrite());
+		assertEquals(1, run.getSector());
+		assertEquals(4, run.getFirstBlock());
+		assertEquals(3, run.getBlockCount());
+		assertEquals(48, run.getDataLength());
+		assertEquals(2 * MifareLayout.BLOCK_SIZE, run.getDataOffset());
+		for ( int count = 0; count < 3; count++ )
+			assertEquals(4 + count, run.getData()[run.getDataOffset() + count * MifareLayout.BLOCK_SIZE]);
+	}
+	
+	public void testRunsAreSplit() throws Exception {
+		MifareAccessPlan plan = new MifareAccessPlan(MifareLayout.CLASSIC_1K);
+		plan.read(1).read(2).read(4).write(5, block(5)).read(6).read(9);
+		List<MifareAccessPlan.Run> runs = plan.getRuns();
+		assertEquals(5, runs.size());
+		assertEquals(1, runs.get(0).getFirstBlock());
+		assertEquals(2, runs.get(0).getBlockCount());
+		assertFalse(runs.get(1).isWrite());
+		assertEquals(4, runs.get(1).getFirstBlock());
+		assertTrue(runs.get(2).isWrite());
+		assertEquals(6, runs.get(3).getFirstBlock());
+		assertEquals(9, runs.get(4).getFirstBlock());
+		assertEquals(2, runs.get(4).getSector());
+	}
+	
+	public void testWriteSupersedesRead() throws Exception {
+		MifareAccessPlan plan = new MifareAccessPlan(MifareLayout.CLASSIC_1K);
+		plan.write(1, block(1)).read(1);
+		assertEquals(1, plan.size());
+		assertTrue(plan.getRuns().get(0).isWrite());
+	}
+	
+	public void testBufferPositionMoves() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(40);
+		new MifareAccessPlan(MifareLayout.CLASSIC_1K).write(1, data).write(2, data);
+		assertEquals(32, data.position());
+	}
+	
+	public void testInvalidBlocks() throws Exception {
+		MifareAccessPlan plan = new MifareAccessPlan(MifareLayout.CLASSIC_1K);
+		try {
+			plan.read(3);
+			fail("Sector trailer accepted");
+		} catch (IllegalArgumentException e) {
+		}
+		try {
+			plan.write(1, new byte[15]);
+			fail("Short block accepted");
+		} catch (Exception e) {
+		}
+	}
+}
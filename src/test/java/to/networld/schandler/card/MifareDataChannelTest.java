@@ -0,0 +1,93 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class MifareDataChannelTest extends TestCase {
+	private StubMifare tag;
+	private BasicMifare mifare;
+	private MifareDataChannel channel;
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.tag = new StubMifare();
+		this.mifare = this.tag.connect(this.getClass().getSimpleName() + "." + this.getName());
+		this.channel = this.mifare.openDataChannel(BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x01);
+	}
+	
+	public void testReadSkipsTrailers() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(5 * MifareLayout.BLOCK_SIZE);
+		assertEquals(data.capacity(), this.channel.read(data));
+		int[] blocks = new int[] { 1, 2, 4, 5, 6 };
+		for ( int count = 0; count < blocks.length; count++ )
+			assertEquals(blocks[count], data.get(count * MifareLayout.BLOCK_SIZE));
+		assertEquals(data.capacity(), this.channel.position());
+	}
+	
+	public void testWriteBack() throws Exception {
+		this.channel.position(2 * MifareLayout.BLOCK_SIZE + 1);
+		this.channel.write(ByteBuffer.wrap(new byte[] { 0x11, 0x12 }));
+		assertEquals(0, this.tag.getCard().count("FFD6"));
+		this.channel.position(5 * MifareLayout.BLOCK_SIZE);
+		this.channel.write(ByteBuffer.wrap(new byte[] { 0x13 }));
+		assertEquals(0x11, this.tag.getBlock(4)[1]);
+		this.channel.close();
+		assertEquals(0x13, this.tag.getBlock(8)[0]);
+		assertEquals(2, this.tag.getCard().count("FFD6"));
+	}
+	
+	public void testFlushRefusesAnotherCard() throws Exception {
+		this.channel.write(ByteBuffer.wrap(new byte[] { 0x11 }));
+		this.tag.swap(new byte[] { 0x0A, 0x0B, 0x0C, 0x0D }, 0x33);
+		this.mifare.connectToCard();
+		try {
+			this.channel.flush();
+			fail("Write back to another card accepted");
+		} catch (IOException e) {
+		}
+		assertEquals(0x33, this.tag.getBlock(1)[0]);
+		assertEquals(0, this.tag.getCard().count("FFD6"));
+		this.channel.position(0);
+		ByteBuffer data = ByteBuffer.allocate(1);
+		this.channel.read(data);
+		assertEquals(0x33, data.get(0));
+	}
+	
+	public void testReadDropsTheSectorOfAnotherCard() throws Exception {
+		ByteBuffer data = ByteBuffer.allocate(1);
+		this.channel.read(data);
+		assertEquals(1, data.get(0));
+		this.tag.swap(new byte[] { 0x0A, 0x0B, 0x0C, 0x0D }, 0x33);
+		this.mifare.connectToCard();
+		this.channel.position(0);
+		data.clear();
+		this.channel.read(data);
+		assertEquals(0x33, data.get(0));
+	}
+}
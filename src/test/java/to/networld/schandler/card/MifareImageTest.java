@@ -0,0 +1,88 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import javax.smartcardio.CardException;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HexHandler;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class MifareImageTest extends TestCase {
+	private StubMifare tag;
+	private BasicMifare mifare;
+	private MifareImage image;
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.tag = new StubMifare();
+		this.mifare = this.tag.connect(this.getClass().getSimpleName() + "." + this.getName());
+		this.image = MifareImage.load(this.mifare, BasicMifare.KEY_A, BasicMifare.STD_KEY, (byte)0x01);
+		this.tag.getCard().clearCommands();
+	}
+	
+	public void testLoad() {
+		assertEquals(MifareLayout.CLASSIC_1K.getDataSize(), this.image.size());
+		assertEquals(1, this.image.get(0));
+		assertEquals(4, this.image.get(2 * MifareLayout.BLOCK_SIZE));
+		assertEquals("01020304", HexHandler.getHexString(this.image.getUID(), false));
+		assertFalse(this.image.isDirty());
+	}
+	
+	public void testCommitWritesOnlyChangedBlocks() throws Exception {
+		this.image.set(2 * MifareLayout.BLOCK_SIZE + 1, (byte)0x55);
+		this.image.set(3 * MifareLayout.BLOCK_SIZE, (byte)0x66);
+		assertEquals(2, this.image.getDirtyBlocks().length);
+		assertEquals(2, this.image.commit(false));
+		assertEquals(0x55, this.tag.getBlock(4)[1]);
+		assertEquals(0x66, this.tag.getBlock(5)[0]);
+		assertEquals(2, this.tag.getCard().count("FFD6"));
+		assertFalse(this.image.isDirty());
+		assertEquals(0, this.image.commit(true));
+	}
+	
+	public void testCommitVerifies() throws Exception {
+		this.image.set(0, (byte)0x77);
+		assertEquals(1, this.image.commit(true));
+		assertEquals(1, this.tag.getCard().count("FFB0"));
+	}
+	
+	public void testCommitRefusesAnotherCard() throws Exception {
+		this.image.set(2 * MifareLayout.BLOCK_SIZE, (byte)0x55);
+		this.tag.swap(new byte[] { 0x0A, 0x0B, 0x0C, 0x0D }, 0x33);
+		this.mifare.connectToCard();
+		try {
+			this.image.commit(false);
+			fail("Commit to another card accepted");
+		} catch (CardException e) {
+		}
+		assertEquals(0x33, this.tag.getBlock(4)[0]);
+		assertEquals(0, this.tag.getCard().count("FFD6"));
+		this.image.reload();
+		assertEquals(0x33, this.image.get(0));
+		this.image.set(0, (byte)0x44);
+		assertEquals(1, this.image.commit(false));
+		assertEquals(0x44, this.tag.getBlock(1)[0]);
+	}
+}
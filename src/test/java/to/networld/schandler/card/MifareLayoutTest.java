@@ -0,0 +1,91 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import junit.framework.TestCase;
+import to.networld.schandler.interfaces.ICard.CardType;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class MifareLayoutTest extends TestCase {
+	
+	public void testGeometry() {
+		assertEquals(5, MifareLayout.MINI.getSectorCount());
+		assertEquals(20, MifareLayout.MINI.getBlockCount());
+		assertEquals(14, MifareLayout.MINI.getDataBlockCount());
+		assertEquals(16, MifareLayout.CLASSIC_1K.getSectorCount());
+		assertEquals(64, MifareLayout.CLASSIC_1K.getBlockCount());
+		assertEquals(47, MifareLayout.CLASSIC_1K.getDataBlockCount());
+		assertEquals(47 * MifareLayout.BLOCK_SIZE, MifareLayout.CLASSIC_1K.getDataSize());
+		assertEquals(40, MifareLayout.CLASSIC_4K.getSectorCount());
+		assertEquals(256, MifareLayout.CLASSIC_4K.getBlockCount());
+		assertEquals(32 * 3 + 8 * 15 - 1, MifareLayout.CLASSIC_4K.getDataBlockCount());
+	}
+	
+	public void testForCardType() {
+		assertSame(MifareLayout.CLASSIC_1K, MifareLayout.forCardType(CardType.Mifare1K));
+		assertSame(MifareLayout.CLASSIC_4K, MifareLayout.forCardType(CardType.Mifare4K));
+		assertSame(MifareLayout.MINI, MifareLayout.forCardType(CardType.MifareMini));
+		assertNull(MifareLayout.forCardType(CardType.MifareUltraLight));
+	}
+	
+	public void testSmallSectors() {
+		MifareLayout layout = MifareLayout.CLASSIC_1K;
+		assertEquals(0, layout.getSectorOfBlock(3));
+		assertEquals(1, layout.getSectorOfBlock(4));
+		assertEquals(7, layout.getTrailerOfSector(1));
+		assertTrue(layout.isTrailer(63));
+		assertFalse(layout.isDataBlock(0));
+		assertFalse(layout.isDataBlock(3));
+		assertFalse(layout.isDataBlock(64));
+		assertFalse(layout.isDataBlock(-1));
+		assertTrue(layout.isDataBlock(1));
+		assertEquals(1, layout.getDataBlock(0));
+		assertEquals(4, layout.getDataBlock(2));
+		assertEquals(2, layout.getDataIndexOfBlock(4));
+		assertEquals(-1, layout.getDataIndexOfBlock(7));
+		assertEquals(1, layout.getFirstDataBlockOfSector(0));
+		assertEquals(2, layout.getDataBlockCountOfSector(0));
+		assertEquals(4, layout.getFirstDataBlockOfSector(1));
+		assertEquals(3, layout.getDataBlockCountOfSector(1));
+	}
+	
+	public void testLargeSectors() {
+		MifareLayout layout = MifareLayout.CLASSIC_4K;
+		assertEquals(128, layout.getFirstBlockOfSector(32));
+		assertEquals(16, layout.getBlockCountOfSector(32));
+		assertEquals(143, layout.getTrailerOfSector(32));
+		assertEquals(32, layout.getSectorOfBlock(143));
+		assertEquals(33, layout.getSectorOfBlock(144));
+		assertEquals(15, layout.getDataBlockCountOfSector(39));
+		assertEquals(255, layout.getTrailerOfSector(39));
+		assertEquals(254, layout.getDataBlock(layout.getDataBlockCount() - 1));
+	}
+	
+	public void testDataIndexIsConsecutive() {
+		MifareLayout layout = MifareLayout.CLASSIC_4K;
+		int[] dataBlocks = layout.getDataBlocks();
+		for ( int count = 0; count < dataBlocks.length; count++ )
+			assertEquals(count, layout.getDataIndexOfBlock(dataBlocks[count]));
+	}
+}
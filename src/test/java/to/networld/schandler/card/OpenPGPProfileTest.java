@@ -0,0 +1,92 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HexHandler;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class OpenPGPProfileTest extends TestCase {
+	private static final String CARDHOLDER_CONTENT = "5B0A" + "446F653C3C4A6F686E" + "00"
+		+ "5F2D02" + "6465" + "5F350131";
+	private static final String APPLICATION_CONTENT = "4F04" + "D2760001"
+		+ "5F5205" + "0073000000"
+		+ "7314" + "C40401FF7F7F" + "C50C" + "0102030405060708090A0B0C";
+	
+	private static String wrap(String _tag, String _content) {
+		return _tag + HexHandler.getHexString(new byte[] { (byte)(_content.length() / 2) }, true) + _content;
+	}
+	
+	private static OpenPGPProfile profile(String _cardholder, String _application) throws Exception {
+		return new OpenPGPProfile(HexHandler.decode(_cardholder), HexHandler.decode(_application),
+			HexHandler.decode("6A646F65"), HexHandler.decode("687474703A2F2F6B6579"));
+	}
+	
+	private static void checkProfile(OpenPGPProfile _profile) throws Exception {
+		assertEquals("d2760001", _profile.getAID());
+		assertEquals("Doe<<John", _profile.getName());
+		assertEquals("de", _profile.getLanguage());
+		assertEquals("31", _profile.getGender());
+		assertEquals("jdoe", _profile.getLoginData());
+		assertEquals("http://key", _profile.getURL());
+		assertTrue(_profile.isSignaturePINReusable());
+		assertFalse(_profile.isExtendedLengthSupported());
+		ByteBuffer fingerprints = _profile.find("6E/73/C5");
+		assertEquals(12, fingerprints.remaining());
+		assertEquals(0x01, fingerprints.get(fingerprints.position()));
+		assertNull(_profile.find("6E/73/C6"));
+	}
+	
+	public void testWithOuterTag() throws Exception {
+		checkProfile(profile(wrap("65", CARDHOLDER_CONTENT), wrap("6E", APPLICATION_CONTENT)));
+	}
+	
+	public void testWithoutOuterTag() throws Exception {
+		checkProfile(profile(CARDHOLDER_CONTENT, APPLICATION_CONTENT));
+	}
+	
+	public void testEmptyData() throws Exception {
+		OpenPGPProfile profile = new OpenPGPProfile(new byte[0], new byte[0], new byte[0], new byte[0]);
+		assertEquals(0, profile.getAIDBytes().length);
+		assertEquals("", profile.getName());
+		assertFalse(profile.isSignaturePINReusable());
+		assertFalse(profile.isExtendedLengthSupported());
+	}
+	
+	public void testExtendedLength() throws Exception {
+		String historical = "5F5208" + "0073000040009000";
+		assertTrue(profile(CARDHOLDER_CONTENT, "4F04D2760001" + historical).isExtendedLengthSupported());
+		assertTrue(profile(CARDHOLDER_CONTENT, "4F04D2760001" + "7F66080202080002020800").isExtendedLengthSupported());
+	}
+	
+	public void testInvalidPath() throws Exception {
+		try {
+			profile(CARDHOLDER_CONTENT, APPLICATION_CONTENT).find("73/C5");
+			fail("Path outside 65 and 6E accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.card;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.HexHandler;
+import to.networld.schandler.interfaces.ICardTransaction;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class OpenPGPTest extends TestCase {
+	private static final String ATR = "3B02AABB";
+	private static final String SELECT = HexHandler.getHexString(OpenPGP.SELECT_FILE, true);
+	
+	private static final byte[] AID = HexHandler.decode("D2760001240102000005000012340000");
+	
+	private StubCard card;
+	private OpenPGP openPGP;
+	private OpenPGPProfileCache cache = new OpenPGPProfileCache(4, 60000);
+	
+	@Override
+	protected void setUp() throws Exception {
+		this.card = new StubCard(ATR, new StubCard.Responder() {
+			@Override
+			public byte[] respond(int _channel, byte[] _command) {
+				if ( _command[1] == (byte)0xCA && _command[3] == 0x4F )
+					return HexHandler.decode(HexHandler.getHexString(AID, true) + "9000");
+				return HexHandler.decode("9000");
+			}
+		});
+		this.openPGP = new OpenPGP(this.card.getTerminal(this.getClass().getSimpleName() + "." + this.getName()), "T=1");
+		assertTrue(this.openPGP.connectToCard());
+		this.openPGP.setProfileCache(this.cache);
+	}
+	
+	private static OpenPGPProfile profile() throws Exception {
+		return new OpenPGPProfile(HexHandler.decode("5B03414243"), HexHandler.decode("4F10" + HexHandler.getHexString(AID, true)),
+			new byte[0], new byte[0]);
+	}
+	
+	/**
+	 * @return True if the cached profile of the card was dropped by the command.
+	 */
+	private boolean invalidates(String _command) throws Exception {
+		this.cache.putProfile(AID, profile());
+		this.openPGP.sendAPDUCommandToCard(HexHandler.decode(_command));
+		return this.cache.getProfile(AID) == null;
+	}
+	
+	public void testSelectionIsTrustedInsideATransaction() throws Exception {
+		this.openPGP.inTransaction(new ICardTransaction<Void>() {
+			@Override
+			public Void execute() throws Exception {
+				openPGP.selectFile();
+				openPGP.verify(OpenPGP.PW1_SIGN, "123456".getBytes());
+				openPGP.selectFile();
+				assertTrue(openPGP.isVerified(OpenPGP.PW1_SIGN));
+				return null;
+			}
+		});
+		assertEquals(1, this.card.count(SELECT));
+	}
+	
+	public void testSelectionIsNotTrustedBetweenTransactions() throws Exception {
+		this.openPGP.selectFile();
+		this.openPGP.verify(OpenPGP.PW1_SIGN, "123456".getBytes());
+		this.openPGP.selectFile();
+		assertEquals(2, this.card.count(SELECT));
+		assertFalse(this.openPGP.isVerified(OpenPGP.PW1_SIGN));
+	}
+	
+	public void testSelectionOnTheLogicalChannel() throws Exception {
+		this.openPGP.openLogicalChannel(1000);
+		this.openPGP.selectFile();
+		this.openPGP.verify(OpenPGP.PW1_SIGN, "123456".getBytes());
+		this.openPGP.selectFile();
+		assertEquals(1, this.card.count("1:" + SELECT));
+		assertTrue(this.openPGP.isVerified(OpenPGP.PW1_SIGN));
+	}
+	
+	public void testWritesInvalidateTheProfileCache() throws Exception {
+		this.openPGP.getAIDBytes();
+		byte[] otherAID = HexHandler.decode("D2760001240102000005000099990000");
+		this.cache.putProfile(otherAID, profile());
+		assertTrue(this.invalidates("00DA005B03414243"));
+		assertTrue(this.invalidates("00DB3FFF03414243"));
+		assertTrue(this.invalidates("00478000000002B60000"));
+		assertFalse(this.invalidates("00478100000002B60000"));
+		assertFalse(this.invalidates("00CA006500"));
+		assertNotNull(this.cache.getProfile(otherAID));
+	}
+	
+	public void testWriteWithUnknownAIDClearsTheProfileCache() throws Exception {
+		byte[] otherAID = HexHandler.decode("D2760001240102000005000099990000");
+		this.cache.putProfile(otherAID, profile());
+		assertTrue(this.invalidates("00DA005B03414243"));
+		assertEquals(0, this.cache.size());
+	}
+	
+	public void testPutDataInvalidatesOnlyTheCard() throws Exception {
+		byte[] otherAID = HexHandler.decode("D2760001240102000005000099990000");
+		this.cache.putProfile(otherAID, profile());
+		this.cache.putProfile(AID, profile());
+		this.openPGP.putData(0x5B, "ABC".getBytes());
+		assertNull(this.cache.getProfile(AID));
+		assertNotNull(this.cache.getProfile(otherAID));
+	}
+}
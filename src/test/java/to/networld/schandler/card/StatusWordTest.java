@@ -0,0 +1,87 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class StatusWordTest extends TestCase {
+	
+	public void testToInt() {
+		assertEquals(0x9000, StatusWord.toInt((byte)0x90, (byte)0x00));
+		assertEquals(0x6A81, StatusWord.toInt((byte)0x6A, (byte)0x81));
+		assertEquals(0xFFFF, StatusWord.toInt((byte)0xFF, (byte)0xFF));
+	}
+	
+	public void testClassification() {
+		assertTrue(StatusWord.isSuccess(StatusWord.SUCCESS));
+		assertFalse(StatusWord.isSuccess(StatusWord.WRONG_LENGTH));
+		assertTrue(StatusWord.isWarning(StatusWord.END_OF_FILE));
+		assertFalse(StatusWord.isWarning(StatusWord.SUCCESS));
+	}
+	
+	public void testNotSupported() {
+		assertTrue(StatusWord.isNotSupported(StatusWord.FUNCTION_NOT_SUPPORTED));
+		assertTrue(StatusWord.isNotSupported(StatusWord.INS_NOT_SUPPORTED));
+		assertTrue(StatusWord.isNotSupported(StatusWord.CLA_NOT_SUPPORTED));
+		assertFalse(StatusWord.isNotSupported(StatusWord.FILE_NOT_FOUND));
+		assertFalse(StatusWord.isNotSupported(StatusWord.WRONG_P1_P2));
+		assertFalse(StatusWord.isNotSupported(StatusWord.SUCCESS));
+	}
+	
+	public void testLookup() {
+		assertEquals("Success", StatusWord.ISO7816.getMessage(StatusWord.SUCCESS));
+		assertEquals(StatusWord.UNKNOWN_MESSAGE, StatusWord.ISO7816.getMessage(0x1234));
+		assertNull(StatusWord.ISO7816.lookup(0x1234));
+		StatusWord sw = StatusWord.valueOf(0x6A82);
+		assertEquals((byte)0x6A, sw.getSW1());
+		assertEquals((byte)0x82, sw.getSW2());
+		assertEquals(sw, StatusWord.valueOf(0x6A82));
+		assertEquals(StatusWord.UNKNOWN_MESSAGE, StatusWord.valueOf(0x1234).getMessage());
+	}
+	
+	public void testOverlay() {
+		StatusWord.Table table = StatusWord.ISO7816.overlay(new int[] { 0x6A82 }, new String[] { "Key not found" });
+		assertEquals("Key not found", table.getMessage(0x6A82));
+		assertEquals("Success", table.getMessage(StatusWord.SUCCESS));
+		assertFalse("Key not found".equals(StatusWord.ISO7816.getMessage(0x6A82)));
+		try {
+			StatusWord.ISO7816.overlay(new int[] { 0x6A82 }, new String[0]);
+			fail("Different lengths accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+	
+	public void testCounts() {
+		StatusWord.resetCounts();
+		StatusWord.record(StatusWord.SUCCESS);
+		StatusWord.record(StatusWord.SUCCESS);
+		StatusWord.record(StatusWord.WRONG_LE | 0x10);
+		assertEquals(2, StatusWord.getCount(StatusWord.SUCCESS));
+		assertEquals(1, StatusWord.getCount(0x6C10));
+		assertEquals(2, StatusWord.getCounts().size());
+		StatusWord.resetCounts();
+		assertEquals(0, StatusWord.getCount(StatusWord.SUCCESS));
+	}
+}
@@ -0,0 +1,236 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.smartcardio.ATR;
+import javax.smartcardio.Card;
+import javax.smartcardio.CardChannel;
+import javax.smartcardio.CardException;
+import javax.smartcardio.CardTerminal;
+import javax.smartcardio.CommandAPDU;
+import javax.smartcardio.ResponseAPDU;
+
+import to.networld.schandler.common.HexHandler;
+
+/**
+ * Card without a reader for the tests. The commands are answered by a
+ * {@link Responder} and recorded as upper case hex strings. The exclusive
+ * access behaves like the one of the Sun provider: a second thread fails to
+ * begin it and its transmits fail while another thread holds it.
+ * 
+ * @author Alex Oberhauser
+ */
+public class StubCard extends Card {
+	
+	/**
+	 * Answers the commands sent to the card.
+	 */
+	public interface Responder {
+		/**
+		 * @param _channel The number of the channel the command was sent over.
+		 * @param _command The command APDU.
+		 * @return The response APDU including the status word.
+		 */
+		byte[] respond(int _channel, byte[] _command);
+	}
+	
+	private final ATR atr;
+	private final Responder responder;
+	private final Channel basicChannel = new Channel(0);
+	private final List<String> commands = new ArrayList<String>();
+	private final List<Integer> closedChannels = new ArrayList<Integer>();
+	private int nextChannel = 1;
+	private Thread exclusiveThread = null;
+	private int exclusiveCount = 0;
+	private boolean disconnected = false;
+	
+	/**
+	 * @param _atr The ATR as hex string.
+	 * @param _responder Answers the commands.
+	 */
+	public StubCard(String _atr, Responder _responder) {
+		this.atr = new ATR(HexHandler.decode(_atr));
+		this.responder = _responder;
+	}
+	
+	/**
+	 * @param _name The name of the reader, has to be unique per test because of the per reader registries.
+	 * @return A reader that has this card inserted.
+	 */
+	public CardTerminal getTerminal(final String _name) {
+		return new CardTerminal() {
+			@Override
+			public String getName() { return _name; }
+			
+			@Override
+			public Card connect(String _protocol) { return StubCard.this; }
+			
+			@Override
+			public boolean isCardPresent() { return true; }
+			
+			@Override
+			public boolean waitForCardPresent(long _timeout) { return true; }
+			
+			@Override
+			public boolean waitForCardAbsent(long _timeout) { return false; }
+		};
+	}
+	
+	/**
+	 * @return The commands sent so far, with channel number prefix "n:" on logical channels.
+	 */
+	public synchronized List<String> getCommands() {
+		return new ArrayList<String>(this.commands);
+	}
+	
+	/**
+	 * Forgets the recorded commands.
+	 */
+	public synchronized void clearCommands() {
+		this.commands.clear();
+	}
+	
+	/**
+	 * @param _prefix The beginning of the command as upper case hex string.
+	 * @return The number of recorded commands that start with the prefix.
+	 */
+	public synchronized int count(String _prefix) {
+		int count = 0;
+		for ( String command : this.commands )
+			if ( command.startsWith(_prefix) ) count++;
+		return count;
+	}
+	
+	/**
+	 * @return The numbers of the logical channels that were closed.
+	 */
+	public synchronized List<Integer> getClosedChannels() {
+		return new ArrayList<Integer>(this.closedChannels);
+	}
+	
+	/**
+	 * @return The number of times the exclusive access was granted.
+	 */
+	public synchronized int getExclusiveCount() { return this.exclusiveCount; }
+	
+	/**
+	 * @return True if a thread holds the exclusive access.
+	 */
+	public synchronized boolean isExclusive() { return this.exclusiveThread != null; }
+	
+	public synchronized boolean isDisconnected() { return this.disconnected; }
+	
+	@Override
+	public ATR getATR() { return this.atr; }
+	
+	@Override
+	public String getProtocol() { return "T=1"; }
+	
+	@Override
+	public CardChannel getBasicChannel() { return this.basicChannel; }
+	
+	@Override
+	public synchronized CardChannel openLogicalChannel() throws CardException {
+		this.checkExclusive();
+		return new Channel(this.nextChannel++);
+	}
+	
+	@Override
+	public synchronized void beginExclusive() throws CardException {
+		if ( this.exclusiveThread != null )
+			throw new CardException("Exclusive access has already been assigned to Thread " + this.exclusiveThread.getName());
+		this.exclusiveThread = Thread.currentThread();
+		this.exclusiveCount++;
+	}
+	
+	@Override
+	public synchronized void endExclusive() throws CardException {
+		if ( this.exclusiveThread != Thread.currentThread() )
+			throw new IllegalStateException("Exclusive access not assigned to current Thread");
+		this.exclusiveThread = null;
+	}
+	
+	@Override
+	public byte[] transmitControlCommand(int _controlCode, byte[] _command) throws CardException {
+		throw new CardException("Not supported");
+	}
+	
+	@Override
+	public synchronized void disconnect(boolean _reset) {
+		this.disconnected = true;
+		this.exclusiveThread = null;
+	}
+	
+	private void checkExclusive() throws CardException {
+		if ( this.disconnected )
+			throw new IllegalStateException("Card has been disconnected");
+		if ( this.exclusiveThread != null && this.exclusiveThread != Thread.currentThread() )
+			throw new CardException("Exclusive access established by another Thread");
+	}
+	
+	private synchronized byte[] exchange(int _channel, byte[] _command) throws CardException {
+		this.checkExclusive();
+		this.commands.add((_channel == 0 ? "" : _channel + ":") + HexHandler.getHexString(_command, true));
+		return this.responder.respond(_channel, _command);
+	}
+	
+	private class Channel extends CardChannel {
+		private final int number;
+		
+		Channel(int _number) {
+			this.number = _number;
+		}
+		
+		@Override
+		public Card getCard() { return StubCard.this; }
+		
+		@Override
+		public int getChannelNumber() { return this.number; }
+		
+		@Override
+		public ResponseAPDU transmit(CommandAPDU _command) throws CardException {
+			return new ResponseAPDU(exchange(this.number, _command.getBytes()));
+		}
+		
+		@Override
+		public int transmit(ByteBuffer _command, ByteBuffer _response) throws CardException {
+			byte[] command = new byte[_command.remaining()];
+			_command.get(command);
+			byte[] response = exchange(this.number, command);
+			_response.put(response);
+			return response.length;
+		}
+		
+		@Override
+		public void close() throws CardException {
+			if ( this.number == 0 )
+				throw new IllegalStateException("Cannot close basic logical channel");
+			synchronized (StubCard.this) {
+				closedChannels.add(this.number);
+			}
+		}
+	}
+}
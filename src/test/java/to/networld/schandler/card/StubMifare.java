@@ -0,0 +1,157 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.card;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mifare Classic 1K tag behind a PC/SC reader for the tests. The reader
+ * keeps the loaded keys per slot, the tag is authenticated to one sector at
+ * a time and is halted by every failed access, like a real tag.
+ * 
+ * @author Alex Oberhauser
+ */
+public class StubMifare implements StubCard.Responder {
+	public static final String ATR = "3B8F8001804F0CA000000306030001000000006A";
+	
+	private final byte[] memory = new byte[MifareLayout.CLASSIC_1K.getBlockCount() * MifareLayout.BLOCK_SIZE];
+	private final Map<Integer, byte[]> readerKeys = new HashMap<Integer, byte[]>();
+	private final Map<Integer, Integer> failures = new HashMap<Integer, Integer>();
+	private byte[] sectorKey = BasicMifare.STD_KEY.clone();
+	private byte[] uid = new byte[] { 0x01, 0x02, 0x03, 0x04 };
+	private int authenticatedSector = -1;
+	private int multiBlockStatus = StatusWord.SUCCESS;
+	private final StubCard card = new StubCard(ATR, this);
+	
+	public StubMifare() {
+		for ( int block = 0; block < MifareLayout.CLASSIC_1K.getBlockCount(); block++ )
+			this.memory[block * MifareLayout.BLOCK_SIZE] = (byte)block;
+	}
+	
+	public StubCard getCard() { return this.card; }
+	
+	/**
+	 * @param _readerName The name of the reader, unique per test.
+	 * @return A connected Mifare card.
+	 * @throws Exception
+	 */
+	public BasicMifare connect(String _readerName) throws Exception {
+		return new BasicMifare(this.card.getTerminal(_readerName), "T=1");
+	}
+	
+	/**
+	 * @param _status The status word for READ BINARY and UPDATE BINARY of more than one block, 0x9000 if supported.
+	 */
+	public synchronized void setMultiBlockStatus(int _status) { this.multiBlockStatus = _status; }
+	
+	/**
+	 * @param _block The block that fails to be accessed.
+	 * @param _status The status word the reader returns, the tag is halted afterwards.
+	 */
+	public synchronized void fail(int _block, int _status) { this.failures.put(_block, _status); }
+	
+	/**
+	 * Replaces the tag, the reader keeps its key slots.
+	 * 
+	 * @param _uid The UID of the new tag.
+	 * @param _fill The content of the first byte of every block.
+	 */
+	public synchronized void swap(byte[] _uid, int _fill) {
+		this.uid = _uid.clone();
+		this.authenticatedSector = -1;
+		for ( int block = 0; block < MifareLayout.CLASSIC_1K.getBlockCount(); block++ ) {
+			Arrays.fill(this.memory, block * MifareLayout.BLOCK_SIZE, (block + 1) * MifareLayout.BLOCK_SIZE, (byte)0x00);
+			this.memory[block * MifareLayout.BLOCK_SIZE] = (byte)_fill;
+		}
+	}
+	
+	/**
+	 * Simulates a power cycle of the reader, the volatile key slots are empty afterwards.
+	 */
+	public synchronized void resetReader() {
+		this.readerKeys.clear();
+		this.authenticatedSector = -1;
+	}
+	
+	/**
+	 * @return A copy of the block.
+	 */
+	public synchronized byte[] getBlock(int _block) {
+		return Arrays.copyOfRange(this.memory, _block * MifareLayout.BLOCK_SIZE, (_block + 1) * MifareLayout.BLOCK_SIZE);
+	}
+	
+	private static byte[] status(int _sw) {
+		return new byte[] { (byte)(_sw >> 8), (byte)_sw };
+	}
+	
+	@Override
+	public synchronized byte[] respond(int _channel, byte[] _command) {
+		int ins = _command[1] & 0xFF;
+		int block = ((_command[2] & 0xFF) << 8) | (_command[3] & 0xFF);
+		switch ( ins ) {
+			case 0xCA:
+				byte[] response = Arrays.copyOf(this.uid, this.uid.length + 2);
+				response[this.uid.length] = (byte)0x90;
+				return response;
+			case 0x82:
+				this.readerKeys.put(_command[3] & 0xFF, Arrays.copyOfRange(_command, 5, 5 + (_command[4] & 0xFF)));
+				return status(StatusWord.SUCCESS);
+			case 0x86:
+				int authBlock = ((_command[6] & 0xFF) << 8) | (_command[7] & 0xFF);
+				if ( !Arrays.equals(this.readerKeys.get(_command[9] & 0xFF), this.sectorKey) ) {
+					this.authenticatedSector = -1;
+					return status(0x6300);
+				}
+				this.authenticatedSector = MifareLayout.CLASSIC_1K.getSectorOfBlock(authBlock);
+				return status(StatusWord.SUCCESS);
+			case 0xB0:
+			case 0xD6:
+				return this.access(ins == 0xD6, block, _command);
+			default:
+				return status(0x6D00);
+		}
+	}
+	
+	private byte[] access(boolean _write, int _block, byte[] _command) {
+		int length = _write ? _command[4] & 0xFF : (_command[4] == 0 ? 16 : _command[4] & 0xFF);
+		if ( this.authenticatedSector != MifareLayout.CLASSIC_1K.getSectorOfBlock(_block) )
+			return status(0x6982);
+		Integer failure = this.failures.get(_block);
+		if ( failure == null && length != MifareLayout.BLOCK_SIZE )
+			failure = this.multiBlockStatus == StatusWord.SUCCESS ? null : this.multiBlockStatus;
+		if ( failure != null ) {
+			this.authenticatedSector = -1;
+			return status(failure);
+		}
+		int offset = _block * MifareLayout.BLOCK_SIZE;
+		if ( _write ) {
+			System.arraycopy(_command, 5, this.memory, offset, length);
+			return status(StatusWord.SUCCESS);
+		}
+		byte[] response = Arrays.copyOfRange(this.memory, offset, offset + length + 2);
+		response[length] = (byte)0x90;
+		response[length + 1] = 0x00;
+		return response;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.common;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+import to.networld.schandler.common.exceptions.MalformedTLVException;
+
+/**
+ * @author Alex Oberhauser
+ */
+public class BerTlvTest extends TestCase {
+	/*
+	 * Application related data with the AID, a discretionary data object with
+	 * the fingerprints and a two byte tag.
+	 */
+	private static final byte[] DATA = HexHandler.decode("6E15" + "4F03D27600" + "730AC508" + "0102030405060708" + "5F520100");
+	
+	public void testWalk() throws Exception {
+		BerTlv outer = new BerTlv(DATA);
+		assertTrue(outer.next());
+		assertEquals(0x6E, outer.getTag());
+		assertTrue(outer.isConstructed());
+		assertEquals(0x15, outer.getLength());
+		assertEquals(2, outer.getValueOffset());
+		assertFalse(outer.next());
+		
+		BerTlv inner = new BerTlv(DATA);
+		inner.next();
+		inner = inner.descend();
+		assertTrue(inner.next());
+		assertEquals(0x4F, inner.getTag());
+		assertFalse(inner.isConstructed());
+		assertEquals("d27600", HexHandler.getHexString(inner.getValueBytes(), false));
+		assertTrue(inner.next());
+		assertEquals(0x73, inner.getTag());
+		assertTrue(inner.next());
+		assertEquals(0x5F52, inner.getTag());
+		assertEquals(1, inner.getLength());
+		assertFalse(inner.next());
+		inner.rewind();
+		assertTrue(inner.seek(0x73));
+	}
+	
+	public void testFindAndSearch() throws Exception {
+		BerTlv fingerprints = BerTlv.find(ByteBuffer.wrap(DATA), "6E/73/C5");
+		assertNotNull(fingerprints);
+		assertEquals("0102030405060708", HexHandler.getHexString(fingerprints.getValueBytes(), false));
+		assertNull(BerTlv.find(ByteBuffer.wrap(DATA), "6E/C5"));
+		assertEquals(0xC5, BerTlv.search(ByteBuffer.wrap(DATA), 0xC5).getTag());
+		assertNull(BerTlv.search(ByteBuffer.wrap(DATA), 0x65));
+	}
+	
+	public void testValueIsNotCopied() throws Exception {
+		byte[] data = DATA.clone();
+		BerTlv aid = BerTlv.find(ByteBuffer.wrap(data), "6E/4F");
+		data[aid.getValueOffset()] = 0x00;
+		assertEquals(0x00, aid.getValue().get(0));
+	}
+	
+	public void testPaddingIsSkipped() throws Exception {
+		BerTlv tlv = new BerTlv(HexHandler.decode("00FF5B0141FF"));
+		assertTrue(tlv.next());
+		assertEquals(0x5B, tlv.getTag());
+		assertFalse(tlv.next());
+	}
+	
+	public void testLongLength() throws Exception {
+		byte[] data = new byte[3 + 200];
+		data[0] = (byte)0x53;
+		data[1] = (byte)0x81;
+		data[2] = (byte)200;
+		BerTlv tlv = new BerTlv(data);
+		assertTrue(tlv.next());
+		assertEquals(200, tlv.getLength());
+		assertEquals(3, tlv.getValueOffset());
+	}
+	
+	public void testTruncatedValue() {
+		try {
+			new BerTlv(HexHandler.decode("5B0541")).next();
+			fail("Truncated value accepted");
+		} catch (MalformedTLVException e) {
+		}
+	}
+	
+	public void testIndefiniteLength() {
+		try {
+			new BerTlv(HexHandler.decode("7380")).next();
+			fail("Indefinite length accepted");
+		} catch (MalformedTLVException e) {
+		}
+	}
+	
+	public void testParsePath() {
+		int[] path = BerTlv.parsePath("6E/73/C5");
+		assertEquals(3, path.length);
+		assertEquals(0x6E, path[0]);
+		assertEquals(0xC5, path[2]);
+	}
+}
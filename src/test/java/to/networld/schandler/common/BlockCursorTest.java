@@ -0,0 +1,125 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the blocks of the cursor with the copies of {@link HexHandler#splitArray(byte[])}.
+ * 
+ * @author Alex Oberhauser
+ */
+public class BlockCursorTest extends TestCase {
+	
+	private static byte[] payload(int _length) {
+		byte[] data = new byte[_length];
+		for ( int count = 0; count < _length; count++ )
+			data[count] = (byte)(count + 1);
+		return data;
+	}
+	
+	private static byte[] block(BlockCursor _cursor) {
+		ByteBuffer block = _cursor.getBlock();
+		byte[] copy = new byte[block.remaining()];
+		block.get(copy);
+		return copy;
+	}
+	
+	public void testSameBlocksAsSplitArray() {
+		int[] lengths = new int[] { 0, 1, 15, 16, 17, 32, 33, 100 };
+		for ( int length : lengths ) {
+			byte[] data = payload(length);
+			Vector<byte[]> expected = HexHandler.splitArray(data);
+			BlockCursor cursor = new BlockCursor(data);
+			assertEquals(expected.size(), cursor.getBlockCount());
+			int index = 0;
+			while ( cursor.next() ) {
+				assertEquals(index, cursor.getIndex());
+				assertTrue("Block " + index + " of " + length + " bytes", Arrays.equals(expected.get(index), block(cursor)));
+				assertEquals((index + 1) * 16 > length, cursor.isPadded());
+				index++;
+			}
+			assertEquals(expected.size(), index);
+			assertFalse(cursor.hasNext());
+			assertFalse(cursor.next());
+		}
+	}
+	
+	public void testOffsetAndBlockSize() {
+		byte[] data = payload(20);
+		BlockCursor cursor = new BlockCursor(data, 3, 10, 4);
+		assertEquals(3, cursor.getBlockCount());
+		assertEquals(4, cursor.getBlockSize());
+		byte[] dst = new byte[12];
+		int offset = 0;
+		while ( cursor.next() )
+			offset += cursor.copyTo(dst, offset);
+		assertTrue(Arrays.equals(new byte[] { 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 0, 0 }, dst));
+	}
+	
+	public void testBufferIsNotModified() {
+		ByteBuffer data = ByteBuffer.wrap(payload(40));
+		data.position(8);
+		data.limit(30);
+		BlockCursor cursor = new BlockCursor(data, 16);
+		assertEquals(2, cursor.getBlockCount());
+		assertTrue(cursor.next());
+		ByteBuffer first = cursor.getBlock();
+		assertTrue(first.isReadOnly());
+		assertEquals(16, first.remaining());
+		assertEquals(9, first.get(first.position()));
+		assertTrue(cursor.next());
+		byte[] last = block(cursor);
+		assertEquals(25, last[0]);
+		assertEquals(30, last[5]);
+		assertEquals(0, last[6]);
+		assertEquals(8, data.position());
+		assertEquals(30, data.limit());
+	}
+	
+	public void testRewind() {
+		BlockCursor cursor = new BlockCursor(payload(32));
+		try {
+			cursor.getBlock();
+			fail("Block before the first call of next returned");
+		} catch (IllegalStateException e) {
+		}
+		while ( cursor.next() ) ;
+		cursor.rewind();
+		assertEquals(-1, cursor.getIndex());
+		assertTrue(cursor.next());
+		assertEquals(1, block(cursor)[0]);
+	}
+	
+	public void testInvalidBlockSize() {
+		try {
+			new BlockCursor(new byte[16], 0, 16, 0);
+			fail("Block size 0 accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+
+package to.networld.schandler.common;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import to.networld.schandler.interfaces.ICard.HASH_TYPE;
+
+/**
+ * Compares the reused digests with fresh {@link MessageDigest} instances.
+ * 
+ * @author Alex Oberhauser
+ */
+public class HashValueHandlerTest extends TestCase {
+	private static final String[] ALGORITHMS = new String[] { "SHA-1", "SHA-256", "SHA-512" };
+	
+	/**
+	 * Longer than the chunks of digestAll and not a multiple of them.
+	 */
+	private static final byte[] DATA = new byte[10000];
+	
+	static {
+		for ( int count = 0; count < DATA.length; count++ )
+			DATA[count] = (byte)(count * 31);
+	}
+	
+	private static byte[] reference(HASH_TYPE _hashType, byte[] _data, int _offset, int _length) throws Exception {
+		MessageDigest md = MessageDigest.getInstance(ALGORITHMS[_hashType.ordinal()]);
+		md.update(_data, _offset, _length);
+		return md.digest();
+	}
+	
+	public void testDigest() throws Exception {
+		for ( HASH_TYPE hashType : HASH_TYPE.values() ) {
+			byte[] expected = reference(hashType, DATA, 0, DATA.length);
+			assertEquals(expected.length, HashValueHandler.getDigestLength(hashType));
+			assertTrue(Arrays.equals(expected, HashValueHandler.digest(hashType, DATA)));
+			assertTrue(Arrays.equals(expected, HashValueHandler.digest(hashType, DATA)));
+			assertTrue(Arrays.equals(reference(hashType, DATA, 5, 100), HashValueHandler.digest(hashType, DATA, 5, 100)));
+		}
+	}
+	
+	public void testDigestIntoArray() throws Exception {
+		byte[] output = new byte[70];
+		int length = HashValueHandler.digest(HASH_TYPE.SHA256, DATA, 0, DATA.length, output, 3);
+		assertEquals(32, length);
+		assertTrue(Arrays.equals(reference(HASH_TYPE.SHA256, DATA, 0, DATA.length), Arrays.copyOfRange(output, 3, 35)));
+		assertEquals(0, output[35]);
+		try {
+			HashValueHandler.digest(HASH_TYPE.SHA512, DATA, 0, DATA.length, output, 10);
+			fail("Too small output array accepted");
+		} catch (DigestException e) {
+		}
+		assertTrue(Arrays.equals(reference(HASH_TYPE.SHA512, DATA, 0, 10), HashValueHandler.digest(HASH_TYPE.SHA512, DATA, 0, 10)));
+	}
+	
+	public void testDigestBuffers() throws Exception {
+		byte[] expected = reference(HASH_TYPE.SHA1, DATA, 100, 1000);
+		ByteBuffer input = ByteBuffer.wrap(DATA, 100, 1000);
+		ByteBuffer output = ByteBuffer.allocate(24);
+		output.position(2);
+		HashValueHandler.digest(HASH_TYPE.SHA1, input, output);
+		assertFalse(input.hasRemaining());
+		assertEquals(22, output.position());
+		assertTrue(Arrays.equals(expected, Arrays.copyOfRange(output.array(), 2, 22)));
+		
+		ByteBuffer direct = ByteBuffer.allocateDirect(20);
+		HashValueHandler.digest(HASH_TYPE.SHA1, ByteBuffer.wrap(DATA, 100, 1000), direct);
+		byte[] directHash = new byte[20];
+		direct.flip();
+		direct.get(directHash);
+		assertTrue(Arrays.equals(expected, directHash));
+		try {
+			HashValueHandler.digest(HASH_TYPE.SHA1, ByteBuffer.wrap(DATA), ByteBuffer.allocate(19));
+			fail("Too small output buffer accepted");
+		} catch (DigestException e) {
+		}
+	}
+	
+	public void testDigestAll() throws Exception {
+		byte[][] hashes = HashValueHandler.digestAll(DATA, 7, DATA.length - 7);
+		byte[][] buffered = new byte[HASH_TYPE.values().length][64];
+		HashValueHandler.digestAll(ByteBuffer.wrap(DATA, 7, DATA.length - 7), buffered);
+		for ( HASH_TYPE hashType : HASH_TYPE.values() ) {
+			byte[] expected = reference(hashType, DATA, 7, DATA.length - 7);
+			assertTrue(Arrays.equals(expected, hashes[hashType.ordinal()]));
+			assertTrue(Arrays.equals(expected, Arrays.copyOf(buffered[hashType.ordinal()], expected.length)));
+		}
+	}
+	
+	public void testComputeHash() throws Exception {
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", HashValueHandler.computeSHA1("abc"));
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HashValueHandler.computeSHA256("abc"));
+		assertEquals(HashValueHandler.computeSHA512("abc"), HashValueHandler.computeHash(HASH_TYPE.SHA512, "abc"));
+		assertEquals(128, HashValueHandler.computeSHA512("abc").length());
+	}
+}
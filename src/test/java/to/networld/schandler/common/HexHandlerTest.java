@@ -0,0 +1,115 @@
+/**
+ * SmartCard Handler Library
+ *
+ * Copyright (C) 2010 by Networld Project
+ * Written by Alex Oberhauser <oberhauseralex@networld.to>
+ * All Rights Reserved
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by 
+ * the Free Software Foundation, version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of 
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this software.  If not, see <http://www.gnu.org/licenses/>
+ */
+
+
+package to.networld.schandler.common;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Vector;
+
+import junit.framework.TestCase;
+
+/**
+ * Compares the table based encoders with the formatting of the JDK.
+ * 
+ * @author Alex Oberhauser
+ */
+public class HexHandlerTest extends TestCase {
+	private static final byte[] ALL_BYTES = new byte[256];
+	
+	static {
+		for ( int count = 0; count < ALL_BYTES.length; count++ )
+			ALL_BYTES[count] = (byte)count;
+	}
+	
+	private static String reference(byte[] _data, boolean _upperCase) {
+		StringBuilder hex = new StringBuilder();
+		for ( byte b : _data )
+			hex.append(String.format(_upperCase ? "%02X" : "%02x", b & 0xFF));
+		return hex.toString();
+	}
+	
+	public void testGetHexString() throws Exception {
+		assertEquals(reference(ALL_BYTES, false), HexHandler.getHexString(ALL_BYTES));
+		assertEquals(reference(ALL_BYTES, true), HexHandler.getHexString(ALL_BYTES, true));
+		assertEquals("", HexHandler.getHexString(new byte[0], true));
+	}
+	
+	public void testGetByteToString() {
+		for ( byte b : ALL_BYTES )
+			assertEquals(String.format("%02x", b & 0xFF), HexHandler.getByteToString(b));
+	}
+	
+	public void testEncodeVariants() {
+		String expected = reference(ALL_BYTES, true).substring(20, 220);
+		
+		char[] chars = new char[202];
+		assertEquals(200, HexHandler.encode(ALL_BYTES, 10, 100, chars, 1, true));
+		assertEquals(expected, new String(chars, 1, 200));
+		
+		StringBuilder builder = new StringBuilder("x");
+		HexHandler.encode(ALL_BYTES, 10, 100, builder, true);
+		assertEquals("x" + expected, builder.toString());
+		
+		ByteBuffer src = ByteBuffer.wrap(ALL_BYTES, 10, 100);
+		ByteBuffer dst = ByteBuffer.allocate(200);
+		HexHandler.encode(src, dst, true);
+		assertFalse(src.hasRemaining());
+		dst.flip();
+		CharBuffer ascii = Charset.forName("US-ASCII").decode(dst);
+		assertEquals(expected, ascii.toString());
+	}
+	
+	public void testDecode() {
+		String hex = reference(ALL_BYTES, false);
+		assertTrue(java.util.Arrays.equals(ALL_BYTES, HexHandler.decode(hex)));
+		assertTrue(java.util.Arrays.equals(ALL_BYTES, HexHandler.decode(hex.toUpperCase())));
+		ByteBuffer dst = ByteBuffer.allocate(2);
+		HexHandler.decode("aBcD", dst);
+		assertEquals((byte)0xAB, dst.get(0));
+		assertEquals((byte)0xCD, dst.get(1));
+		try {
+			HexHandler.decode("abc");
+			fail("Odd number of digits accepted");
+		} catch (NumberFormatException e) {
+		}
+		try {
+			HexHandler.decode("zz");
+			fail("Invalid digit accepted");
+		} catch (NumberFormatException e) {
+		}
+	}
+	
+	public void testGetHexToAscii() {
+		assertEquals("Hello", HexHandler.getHexToAscii("  Hello\u0000\u0000".getBytes()));
+		assertEquals("a b", HexHandler.getHexToAscii(new byte[] { 'a', (byte)0x01, 'b' }));
+		assertEquals("", HexHandler.getHexToAscii(new byte[16]));
+	}
+	
+	public void testSplitArray() {
+		Vector<byte[]> blocks = HexHandler.splitArray(java.util.Arrays.copyOf(ALL_BYTES, 20));
+		assertEquals(2, blocks.size());
+		assertEquals(16, blocks.get(1).length);
+		assertEquals(16, blocks.get(1)[0]);
+		assertEquals(0, blocks.get(1)[4]);
+	}
+}